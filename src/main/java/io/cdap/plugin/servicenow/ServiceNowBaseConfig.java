@@ -53,6 +53,20 @@ public class ServiceNowBaseConfig extends PluginConfig {
   @Description("The existing connection to use.")
   private final ServiceNowConnectorConfig connection;
 
+  @Name(ServiceNowConstants.PROPERTY_MAX_REQUESTS_PER_SECOND)
+  @Macro
+  @Nullable
+  @Description("The maximum number of requests per second sent to ServiceNow by this stage, shared among its " +
+    "tasks. Requests are sent at an even pace, to stay under the rate limit of the instance. No limit if not set.")
+  private Integer maxRequestsPerSecond;
+
+  @Name(ServiceNowConstants.PROPERTY_CONCURRENT_TASKS)
+  @Macro
+  @Nullable
+  @Description("The number of tasks of this stage running at the same time, among which the maximum number of " +
+    "requests per second is divided. Required when the maximum number of requests per second is set.")
+  private Integer concurrentTasks;
+
   public ServiceNowBaseConfig(String clientId, String clientSecret, String restApiEndpoint,
                               String user, String password) {
     this.connection = new ServiceNowConnectorConfig(clientId, clientSecret, restApiEndpoint, user, password);
@@ -63,11 +77,58 @@ public class ServiceNowBaseConfig extends PluginConfig {
     return connection;
   }
 
+  @Nullable
+  public Integer getMaxRequestsPerSecond() {
+    return maxRequestsPerSecond;
+  }
+
+  @Nullable
+  public Integer getConcurrentTasks() {
+    return concurrentTasks;
+  }
+
+  /**
+   * Returns the number of requests per second each task may send to ServiceNow. The maximum number of requests per
+   * second of the stage is divided among its concurrent tasks, which validation requires along with it.
+   *
+   * @return the requests per second of a task, or 0 if they are not limited
+   */
+  public double getRequestsPerSecondPerTask() {
+    if (maxRequestsPerSecond == null) {
+      return 0;
+    }
+    return (double) maxRequestsPerSecond / Math.max(1, concurrentTasks == null ? 1 : concurrentTasks);
+  }
+
   /**
    * Validates {@link ServiceNowSourceConfig} instance.
    */
   public void validate(FailureCollector collector) {
     validateCredentials(collector);
+    validateRequestRate(collector);
+  }
+
+  private void validateRequestRate(FailureCollector collector) {
+    if (!containsMacro(ServiceNowConstants.PROPERTY_MAX_REQUESTS_PER_SECOND) && maxRequestsPerSecond != null
+      && maxRequestsPerSecond <= 0) {
+      collector.addFailure("Invalid maximum number of requests per second.",
+                           "Maximum requests per second must be greater than 0.")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_MAX_REQUESTS_PER_SECOND);
+    }
+    if (!containsMacro(ServiceNowConstants.PROPERTY_CONCURRENT_TASKS) && concurrentTasks != null
+      && concurrentTasks <= 0) {
+      collector.addFailure("Invalid number of concurrent tasks.", "Concurrent tasks must be greater than 0.")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_CONCURRENT_TASKS);
+    }
+    // the tasks that run at the same time depend on the cluster, which the stage cannot tell from its splits
+    if (!containsMacro(ServiceNowConstants.PROPERTY_MAX_REQUESTS_PER_SECOND)
+      && !containsMacro(ServiceNowConstants.PROPERTY_CONCURRENT_TASKS) && maxRequestsPerSecond != null
+      && concurrentTasks == null) {
+      collector.addFailure("Number of concurrent tasks is not set.",
+                           "Set the number of tasks running at the same time, among which the maximum number of " +
+                             "requests per second is divided, such as the number of executors.")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_CONCURRENT_TASKS);
+    }
   }
 
   public void validateCredentials(FailureCollector collector) {
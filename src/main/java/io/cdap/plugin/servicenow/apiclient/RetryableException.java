@@ -21,15 +21,35 @@ public class RetryableException extends RuntimeException {
 
   private static final long serialVersionUID = 1L;
 
+  private final long retryAfterMillis;
+
   public RetryableException() {
     super();
+    this.retryAfterMillis = 0;
   }
 
   public RetryableException(String message) {
+    this(message, 0);
+  }
+
+  /**
+   * @param message the detail message
+   * @param retryAfterMillis how long ServiceNow asked to wait before retrying, in milliseconds, 0 if it did not
+   */
+  public RetryableException(String message, long retryAfterMillis) {
     super(message);
+    this.retryAfterMillis = retryAfterMillis;
   }
 
   public RetryableException(String message, Throwable throwable) {
     super(message, throwable);
+    this.retryAfterMillis = 0;
+  }
+
+  /**
+   * @return how long ServiceNow asked to wait before retrying, in milliseconds, 0 if it did not
+   */
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
   }
 }
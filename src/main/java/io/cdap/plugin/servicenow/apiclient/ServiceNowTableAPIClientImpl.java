@@ -23,15 +23,19 @@ import com.github.rholder.retry.StopStrategies;
 import com.github.rholder.retry.WaitStrategies;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.collect.ObjectArrays;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
+import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
 import io.cdap.plugin.servicenow.restapi.RestAPIClient;
 import io.cdap.plugin.servicenow.restapi.RestAPIResponse;
+import io.cdap.plugin.servicenow.restapi.RestAPIRetryStopStrategy;
+import io.cdap.plugin.servicenow.restapi.RestAPIRetryWaitStrategy;
 import io.cdap.plugin.servicenow.sink.model.APIResponse;
 import io.cdap.plugin.servicenow.sink.model.CreateRecordAPIResponse;
 import io.cdap.plugin.servicenow.sink.model.SchemaResponse;
@@ -39,6 +43,7 @@ import io.cdap.plugin.servicenow.sink.model.ServiceNowSchemaField;
 import io.cdap.plugin.servicenow.util.SchemaBuilder;
 import io.cdap.plugin.servicenow.util.ServiceNowColumn;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowHighWaterMark;
 import io.cdap.plugin.servicenow.util.SourceValueType;
 import io.cdap.plugin.servicenow.util.Util;
 import org.apache.http.HttpEntity;
@@ -50,12 +55,16 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /**
@@ -68,6 +77,10 @@ public class ServiceNowTableAPIClientImpl extends RestAPIClient {
   private static final String FIELD_CREATED_ON = "sys_created_on";
   private static final String FIELD_UPDATED_ON = "sys_updated_on";
   private static final String OAUTH_URL_TEMPLATE = "%s/oauth_token.do";
+  private static final String KEY_AFTER_TEMPLATE = "%s>%s";
+  private static final String KEY_UP_TO_TEMPLATE = "%s<=%s";
+  private static final String ORDER_BY = "ORDERBY";
+  private static final String ORDER_BY_DESC = "ORDERBYDESC";
   private static final Gson GSON = new Gson();
   private final ServiceNowConnectorConfig conf;
   public static JsonArray serviceNowJsonResultArray;
@@ -111,23 +124,115 @@ public class ServiceNowTableAPIClientImpl extends RestAPIClient {
    */
   public List<Map<String, String>> fetchTableRecords(String tableName, SourceValueType valueType, String startDate,
                                                      String endDate, int offset, int limit) throws IOException {
-    ServiceNowTableAPIRequestBuilder requestBuilder = new ServiceNowTableAPIRequestBuilder(
-      this.conf.getRestApiEndpoint(), tableName, false)
-      .setExcludeReferenceLink(true)
-      .setDisplayValue(valueType)
-      .setLimit(limit);
-
-    if (offset > 0) {
-      requestBuilder.setOffset(offset);
+    ServiceNowTableAPIRequestBuilder requestBuilder = createFetchTableRecordsRequest(
+      tableName, valueType, generateQuery(startDate, endDate, null), offset, limit);
+    try {
+      String accessToken = getAccessToken();
+      requestBuilder.setAuthHeader(accessToken);
+      RestAPIResponse apiResponse = executeGet(requestBuilder.build());
+      return parseResponseToResultListOfMap(apiResponse.getResponseBody());
+    } catch (OAuthSystemException e) {
+      throw new RetryableException("Authentication error occurred", e);
+    } catch (OAuthProblemException e) {
+      throw new IOException("Problem occurred while authenticating", e);
     }
+  }
 
-    applyDateRangeToRequest(requestBuilder, startDate, endDate);
+  /**
+   * Fetch the records from ServiceNow table, decoding the response into records while it is read.
+   *
+   * @param tableName The ServiceNow table name
+   * @param valueType The value type
+   * @param startDate The start date
+   * @param endDate   The end date
+   * @param filter    The encoded query the records must match, null to fetch all records of the date range
+   * @param offset    The number of records to skip
+   * @param limit     The number of records to be fetched
+   * @param decoder   The decoder building records of the output schema
+   * @return The list of records
+   */
+  public List<StructuredRecord> fetchTableRecords(String tableName, SourceValueType valueType, String startDate,
+                                                  String endDate, @Nullable String filter, int offset, int limit,
+                                                  ServiceNowTableDataDecoder decoder) throws IOException {
+    ServiceNowTableAPIRequestBuilder requestBuilder = createFetchTableRecordsRequest(
+      tableName, valueType, generateQuery(startDate, endDate, filter), offset, limit);
+    return fetchTableRecords(requestBuilder, limit, decoder);
+  }
+
+  /**
+   * Fetch the records from ServiceNow table in sys_id order, starting after the given sys_id. Unlike offset based
+   * requests, the cost of such a request does not grow with the position of the page in the table.
+   *
+   * @param tableName The ServiceNow table name
+   * @param valueType The value type
+   * @param startDate The start date
+   * @param endDate   The end date
+   * @param filter    The encoded query the records must match, null to fetch all records of the date range
+   * @param afterKey  Only records with a greater sys_id are fetched, null to start at the first record
+   * @param upToKey   Only records with a smaller or equal sys_id are fetched, null to read up to the last record
+   * @param limit     The number of records to be fetched
+   * @param decoder   The decoder building records of the output schema
+   * @return The list of records
+   */
+  public List<StructuredRecord> fetchTableRecordsAfterKey(String tableName, SourceValueType valueType,
+                                                          String startDate, String endDate, @Nullable String filter,
+                                                          @Nullable String afterKey, @Nullable String upToKey,
+                                                          int limit, ServiceNowTableDataDecoder decoder)
+    throws IOException {
+    ServiceNowTableAPIRequestBuilder requestBuilder = createFetchTableRecordsRequest(
+      tableName, valueType, generateQuery(startDate, endDate, filter), 0, limit,
+      afterKey == null ? null : String.format(KEY_AFTER_TEMPLATE, ServiceNowConstants.SYS_ID, afterKey),
+      upToKey == null ? null : String.format(KEY_UP_TO_TEMPLATE, ServiceNowConstants.SYS_ID, upToKey),
+      ORDER_BY + ServiceNowConstants.SYS_ID);
+    return fetchTableRecords(requestBuilder, limit, decoder);
+  }
 
+  private List<StructuredRecord> fetchTableRecords(ServiceNowTableAPIRequestBuilder requestBuilder, int limit,
+                                                   ServiceNowTableDataDecoder decoder) throws IOException {
     try {
       String accessToken = getAccessToken();
       requestBuilder.setAuthHeader(accessToken);
+      requestBuilder.setFields(decoder.getSelectedFields());
+      // Each response gets its own list, since a slow request may be sent again while the first one is read
+      return executeGet(requestBuilder.build(), (content, headers) -> {
+        List<StructuredRecord> records = new ArrayList<>(limit);
+        decoder.decode(content, records::add);
+        return records;
+      });
+    } catch (OAuthSystemException e) {
+      throw new RetryableException("Authentication error occurred", e);
+    } catch (OAuthProblemException e) {
+      throw new IOException("Problem occurred while authenticating", e);
+    }
+  }
+
+  /**
+   * Fetches a sample of the records from ServiceNow table and returns their average size in the response.
+   *
+   * @param tableName  The ServiceNow table name
+   * @param valueType  The value type
+   * @param startDate  The start date
+   * @param endDate    The end date
+   * @param filter     The encoded query the records must match, null to sample all records of the date range
+   * @param fields     The fields to fetch, all fields if empty
+   * @param sampleSize The number of records to be fetched
+   * @return The average number of bytes per record, 0 if no record matches
+   */
+  public long sampleRecordSize(String tableName, SourceValueType valueType, String startDate, String endDate,
+                               @Nullable String filter, Collection<String> fields, int sampleSize)
+    throws IOException {
+    ServiceNowTableAPIRequestBuilder requestBuilder = createFetchTableRecordsRequest(
+      tableName, valueType, generateQuery(startDate, endDate, filter), 0, sampleSize);
+    try {
+      requestBuilder.setAuthHeader(getAccessToken());
+      requestBuilder.setFields(fields.toArray(new String[0]));
       RestAPIResponse apiResponse = executeGet(requestBuilder.build());
-      return parseResponseToResultListOfMap(apiResponse.getResponseBody());
+      String responseBody = apiResponse.getResponseBody();
+      JsonArray records = GSON.fromJson(responseBody, JsonObject.class).getAsJsonArray(ServiceNowConstants.RESULT);
+      if (records == null || records.size() == 0) {
+        return 0;
+      }
+      return responseBody.getBytes(StandardCharsets.UTF_8).length / records.size();
     } catch (OAuthSystemException e) {
       throw new RetryableException("Authentication error occurred", e);
     } catch (OAuthProblemException e) {
@@ -135,15 +240,50 @@ public class ServiceNowTableAPIClientImpl extends RestAPIClient {
     }
   }
 
-  private void applyDateRangeToRequest(ServiceNowTableAPIRequestBuilder requestBuilder, String startDate,
-                                       String endDate) {
-    String dateRange = generateDateRangeQuery(startDate, endDate);
-    if (!Strings.isNullOrEmpty(dateRange)) {
-      requestBuilder.setQuery(dateRange);
+  private ServiceNowTableAPIRequestBuilder createFetchTableRecordsRequest(String tableName, SourceValueType valueType,
+                                                                          String query, int offset, int limit,
+                                                                          String... conditions) {
+    ServiceNowTableAPIRequestBuilder requestBuilder = new ServiceNowTableAPIRequestBuilder(
+      this.conf.getRestApiEndpoint(), tableName, false)
+      .setExcludeReferenceLink(true)
+      .setDisplayValue(valueType)
+      .setLimit(limit);
+
+    if (offset > 0) {
+      requestBuilder.setOffset(offset);
     }
+
+    String fullQuery = joinQuery(ObjectArrays.concat(query, conditions));
+    if (!fullQuery.isEmpty()) {
+      requestBuilder.setQuery(fullQuery);
+    }
+    return requestBuilder;
+  }
+
+  /**
+   * Generates the encoded query selecting the records created or updated in the date range that match the filter.
+   *
+   * @param startDate The start date, null to not restrict the dates
+   * @param endDate   The end date, null to not restrict the dates
+   * @param filter    The encoded query the records must match, null to not filter the records
+   * @return The encoded query, empty if all records are selected
+   */
+  public static String generateQuery(@Nullable String startDate, @Nullable String endDate, @Nullable String filter) {
+    return joinQuery(generateDateRangeQuery(startDate, endDate), filter);
   }
 
-  private String generateDateRangeQuery(String startDate, String endDate) {
+  /**
+   * Joins the encoded queries so that records must match all of them. An OR condition binds to the condition before
+   * it, so each part keeps its meaning as long as it does not start a new query with ^NQ.
+   *
+   * @param queries The encoded queries, empty and null ones are skipped
+   * @return The encoded query, empty if there is no condition
+   */
+  public static String joinQuery(String... queries) {
+    return Arrays.stream(queries).filter(part -> !Strings.isNullOrEmpty(part)).collect(Collectors.joining("^"));
+  }
+
+  private static String generateDateRangeQuery(String startDate, String endDate) {
     if (Util.isNullOrEmpty(startDate) || Util.isNullOrEmpty(endDate)) {
       return "";
     }
@@ -199,8 +339,8 @@ public class ServiceNowTableAPIClientImpl extends RestAPIClient {
   }
 
   /**
-   * Attempt four times with an exponential delay of 120 seconds to fetch the list of records from ServiceNow table when
-   * RetryableException is thrown          .
+   * Attempt four times with a jittered exponential delay of up to 120 seconds, or the delay asked by ServiceNow, to
+   * fetch the list of records from ServiceNow table when RetryableException is thrown.
    *
    * @param tableName The ServiceNow table name
    * @param valueType The value type
@@ -213,25 +353,81 @@ public class ServiceNowTableAPIClientImpl extends RestAPIClient {
   public List<Map<String, String>> fetchTableRecordsRetryableMode(String tableName, SourceValueType valueType,
                                                                   String startDate, String endDate, int offset,
                                                                   int limit) throws IOException {
-    final List<Map<String, String>> results = new ArrayList<>();
-    Callable<Boolean> fetchRecords = () -> {
-      results.addAll(fetchTableRecords(tableName, valueType, startDate, endDate, offset, limit));
-      return true;
-    };
+    return callRetryableMode(() -> fetchTableRecords(tableName, valueType, startDate, endDate, offset, limit),
+                             offset, limit);
+  }
 
-    Retryer<Boolean> retryer = RetryerBuilder.<Boolean>newBuilder()
-      .retryIfExceptionOfType(RetryableException.class)
-      .withWaitStrategy(WaitStrategies.exponentialWait(ServiceNowConstants.WAIT_TIME, TimeUnit.MILLISECONDS))
-      .withStopStrategy(StopStrategies.stopAfterAttempt(ServiceNowConstants.MAX_NUMBER_OF_RETRY_ATTEMPTS))
-      .build();
+  /**
+   * Attempt four times with a jittered exponential delay of up to 120 seconds, or the delay asked by ServiceNow, to
+   * fetch the records from ServiceNow table when RetryableException is thrown. A page is decoded completely before
+   * its records are returned, so a failed attempt never leaves partial results behind.
+   *
+   * @param tableName The ServiceNow table name
+   * @param valueType The value type
+   * @param startDate The start date
+   * @param endDate   The end date
+   * @param filter    The encoded query the records must match, null to fetch all records of the date range
+   * @param offset    The number of records to skip
+   * @param limit     The number of records to be fetched
+   * @param decoder   The decoder building records of the output schema
+   * @return The list of records
+   */
+  public List<StructuredRecord> fetchTableRecordsRetryableMode(String tableName, SourceValueType valueType,
+                                                               String startDate, String endDate,
+                                                               @Nullable String filter, int offset, int limit,
+                                                               ServiceNowTableDataDecoder decoder)
+    throws IOException {
+    return callRetryableMode(() -> fetchTableRecords(tableName, valueType, startDate, endDate, filter, offset, limit,
+                                                     decoder), offset, limit);
+  }
 
+  /**
+   * Attempt four times with a jittered exponential delay of up to 120 seconds, or the delay asked by ServiceNow, to
+   * fetch the records after the given sys_id when RetryableException is thrown.
+   *
+   * @param tableName The ServiceNow table name
+   * @param valueType The value type
+   * @param startDate The start date
+   * @param endDate   The end date
+   * @param filter    The encoded query the records must match, null to fetch all records of the date range
+   * @param afterKey  Only records with a greater sys_id are fetched, null to start at the first record
+   * @param upToKey   Only records with a smaller or equal sys_id are fetched, null to read up to the last record
+   * @param limit     The number of records to be fetched
+   * @param decoder   The decoder building records of the output schema
+   * @return The list of records
+   */
+  public List<StructuredRecord> fetchTableRecordsAfterKeyRetryableMode(String tableName, SourceValueType valueType,
+                                                                       String startDate, String endDate,
+                                                                       @Nullable String filter,
+                                                                       @Nullable String afterKey,
+                                                                       @Nullable String upToKey, int limit,
+                                                                       ServiceNowTableDataDecoder decoder)
+    throws IOException {
+    Retryer<List<StructuredRecord>> retryer = createFetchRetryer();
     try {
-      retryer.call(fetchRecords);
+      return retryer.call(() -> fetchTableRecordsAfterKey(tableName, valueType, startDate, endDate, filter, afterKey,
+                                                          upToKey, limit, decoder));
+    } catch (RetryException | ExecutionException e) {
+      throw new IOException(String.format("Data Recovery failed for batch after key %s.", afterKey), e);
+    }
+  }
+
+  private <T> T callRetryableMode(Callable<T> fetchRecords, int offset, int limit) throws IOException {
+    Retryer<T> retryer = createFetchRetryer();
+    try {
+      return retryer.call(fetchRecords);
     } catch (RetryException | ExecutionException e) {
       throw new IOException(String.format("Data Recovery failed for batch %s to %s.", offset, (offset + limit)), e);
     }
+  }
 
-    return results;
+  private <T> Retryer<T> createFetchRetryer() {
+    return RetryerBuilder.<T>newBuilder()
+      .retryIfExceptionOfType(RetryableException.class)
+      .withWaitStrategy(new RestAPIRetryWaitStrategy(ServiceNowConstants.BASE_DELAY, ServiceNowConstants.WAIT_TIME))
+      .withStopStrategy(new RestAPIRetryStopStrategy(ServiceNowConstants.MAX_NUMBER_OF_RETRY_ATTEMPTS,
+                                                     getRetryBudget()))
+      .build();
   }
 
   /**
@@ -319,11 +515,27 @@ public class ServiceNowTableAPIClientImpl extends RestAPIClient {
    * @throws IOException
    */
   public int getTableRecordCount(String tableName, String accessToken) throws IOException {
+    return getTableRecordCount(tableName, null, accessToken);
+  }
+
+  /**
+   * Get the number of records in the table that match the query
+   *
+   * @param tableName ServiceNow table name for which record count is fetched.
+   * @param query Encoded query the records must match, null to count all records
+   * @param accessToken Access Token for the call
+   * @return the record count
+   * @throws IOException
+   */
+  public int getTableRecordCount(String tableName, @Nullable String query, String accessToken) throws IOException {
     ServiceNowTableAPIRequestBuilder requestBuilder = new ServiceNowTableAPIRequestBuilder(
       this.conf.getRestApiEndpoint(), tableName, false)
       .setExcludeReferenceLink(true)
       .setDisplayValue(SourceValueType.SHOW_DISPLAY_VALUE)
       .setLimit(1);
+    if (!Strings.isNullOrEmpty(query)) {
+      requestBuilder.setQuery(query);
+    }
     RestAPIResponse apiResponse = null;
     requestBuilder.setResponseHeaders(ServiceNowConstants.HEADER_NAME_TOTAL_COUNT);
     requestBuilder.setAuthHeader(accessToken);
@@ -331,6 +543,61 @@ public class ServiceNowTableAPIClientImpl extends RestAPIClient {
     return getRecordCountFromHeader(apiResponse);
   }
 
+  /**
+   * Get the mark of the last updated record of the table that matches the query, ordering the records updated in
+   * the same second by sys_id.
+   *
+   * @param tableName ServiceNow table name
+   * @param query Encoded query the records must match, null to consider all records
+   * @param accessToken Access Token for the call
+   * @return the mark of the last updated record, or null if no record matches the query
+   * @throws IOException
+   */
+  @Nullable
+  public ServiceNowHighWaterMark fetchHighWaterMark(String tableName, @Nullable String query, String accessToken)
+    throws IOException {
+    return fetchHighWaterMark(tableName, ServiceNowConstants.SYS_UPDATED_ON, query, accessToken);
+  }
+
+  /**
+   * Get the mark of the latest record of the table that matches the query, ordering the records by the time field
+   * and then by sys_id.
+   *
+   * @param tableName ServiceNow table name
+   * @param timeField the field holding the time of the records
+   * @param query Encoded query the records must match, null to consider all records
+   * @param accessToken Access Token for the call
+   * @return the mark of the latest record, or null if no record matches the query
+   * @throws IOException
+   */
+  @Nullable
+  public ServiceNowHighWaterMark fetchHighWaterMark(String tableName, String timeField, @Nullable String query,
+                                                    String accessToken) throws IOException {
+    ServiceNowTableAPIRequestBuilder requestBuilder = new ServiceNowTableAPIRequestBuilder(
+      this.conf.getRestApiEndpoint(), tableName, false)
+      .setExcludeReferenceLink(true)
+      .setDisplayValue(SourceValueType.SHOW_ACTUAL_VALUE)
+      .setFields(timeField, ServiceNowConstants.SYS_ID)
+      .setQuery(joinQuery(query, ORDER_BY_DESC + timeField, ORDER_BY_DESC + ServiceNowConstants.SYS_ID))
+      .setLimit(1);
+    requestBuilder.setAuthHeader(accessToken);
+    RestAPIResponse apiResponse = executeGet(requestBuilder.build());
+    List<Map<String, String>> records = parseResponseToResultListOfMap(apiResponse.getResponseBody());
+    if (records.isEmpty()) {
+      return null;
+    }
+
+    Map<String, String> record = records.get(0);
+    String updatedOn = record.get(timeField);
+    String sysId = record.get(ServiceNowConstants.SYS_ID);
+    if (Strings.isNullOrEmpty(updatedOn) || Strings.isNullOrEmpty(sysId)) {
+      throw new IllegalStateException(String.format(
+        "Incremental extraction requires the '%s' and '%s' fields in table '%s'.", timeField,
+        ServiceNowConstants.SYS_ID, tableName));
+    }
+    return new ServiceNowHighWaterMark(updatedOn, sysId);
+  }
+
   /**
    * Create a new record in the ServiceNow Table
    *
@@ -43,6 +43,11 @@ public class ServiceNowTableAPIRequestBuilder extends RestAPIRequest.Builder {
    */
   private static final String SCHEMA_API_URL_TEMPLATE = "%s/api/now/doc/table/schema/%s";
 
+  /**
+   * ServiceNow API URL to insert records into an import set staging table
+   */
+  private static final String IMPORT_SET_API_URL_TEMPLATE = "%s/api/now/import/%s/insertMultiple";
+
   public ServiceNowTableAPIRequestBuilder(String instanceBaseUrl, String tableName, boolean isSchemaRequired) {
     if (isSchemaRequired) {
       this.setUrl(String.format(SCHEMA_API_URL_TEMPLATE, instanceBaseUrl, tableName));
@@ -55,6 +60,19 @@ public class ServiceNowTableAPIRequestBuilder extends RestAPIRequest.Builder {
     this.setUrl(String.format(BATCH_API_URL_TEMPLATE, instanceBaseUrl));
   }
 
+  /**
+   * Creates a builder for a request that inserts multiple records into an import set staging table.
+   *
+   * @param instanceBaseUrl  the ServiceNow instance URL
+   * @param stagingTableName the name of the import set staging table
+   * @return the request builder
+   */
+  public static ServiceNowTableAPIRequestBuilder forImportSet(String instanceBaseUrl, String stagingTableName) {
+    ServiceNowTableAPIRequestBuilder requestBuilder = new ServiceNowTableAPIRequestBuilder(instanceBaseUrl);
+    requestBuilder.setUrl(String.format(IMPORT_SET_API_URL_TEMPLATE, instanceBaseUrl, stagingTableName));
+    return requestBuilder;
+  }
+
   /**
    * Sets the filter query for ServiceNow Rest API request.
    *
@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.apiclient;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.servicenow.connector.ServiceNowRecordConverter;
+import io.cdap.plugin.servicenow.restapi.RestAPIResponse;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Decodes a Table API response while it is read, building one {@link StructuredRecord} per row of the
+ * {@code result} array without first materializing the page as a JSON tree or as maps.
+ */
+public class ServiceNowTableDataDecoder {
+  private static final Gson GSON = new Gson();
+
+  private final Schema schema;
+  private final List<Schema.Field> fields;
+  private final Map<String, Integer> fieldIndexes;
+  private final ServiceNowRecordConverter converter;
+  private final Map<String, String> constantFields;
+  private final boolean selectFields;
+
+  /**
+   * @param schema the schema of the records to build
+   * @param tableNameField the field to set to the table name instead of decoding it, or null if there is none
+   * @param tableName the table name
+   */
+  public ServiceNowTableDataDecoder(Schema schema, @Nullable String tableNameField, String tableName) {
+    this(schema, tableNameField, tableName, false);
+  }
+
+  /**
+   * @param schema the schema of the records to build
+   * @param tableNameField the field to set to the table name instead of decoding it, or null if there is none
+   * @param tableName the table name
+   * @param selectFields whether only the fields of the schema should be requested from ServiceNow
+   */
+  public ServiceNowTableDataDecoder(Schema schema, @Nullable String tableNameField, String tableName,
+                                    boolean selectFields) {
+    this(schema, tableNameField == null ? Collections.emptyMap() : Collections.singletonMap(tableNameField, tableName),
+         selectFields);
+  }
+
+  /**
+   * @param schema the schema of the records to build
+   * @param constantFields the value of the fields to set in every record instead of decoding them, by field name
+   * @param selectFields whether only the fields of the schema should be requested from ServiceNow
+   */
+  public ServiceNowTableDataDecoder(Schema schema, Map<String, String> constantFields, boolean selectFields) {
+    this.schema = schema;
+    this.fields = schema.getFields();
+    this.fieldIndexes = new HashMap<>();
+    for (int i = 0; i < fields.size(); i++) {
+      fieldIndexes.put(fields.get(i).getName(), i);
+    }
+    this.converter = new ServiceNowRecordConverter(schema);
+    this.constantFields = constantFields;
+    this.selectFields = selectFields;
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Returns the fields to request from ServiceNow, so that columns which are not decoded are not sent at all.
+   *
+   * @return the names of the fields read from the response, or an empty array if all fields should be requested
+   */
+  public String[] getSelectedFields() {
+    if (!selectFields) {
+      return new String[0];
+    }
+    return fields.stream()
+      .map(Schema.Field::getName)
+      .filter(name -> !constantFields.containsKey(name))
+      .toArray(String[]::new);
+  }
+
+  /**
+   * Decodes the response and passes every row to the consumer as soon as it has been read.
+   * Throws a {@link RetryableException} or {@link NonRetryableException} if the response reports a failure.
+   *
+   * @param content the response body
+   * @param consumer receives the decoded records
+   */
+  public void decode(InputStream content, Consumer<StructuredRecord> consumer) throws IOException {
+    JsonReader reader = new JsonReader(new InputStreamReader(content, StandardCharsets.UTF_8));
+    JsonObject envelope = new JsonObject();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (ServiceNowConstants.RESULT.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          consumer.accept(decodeRow(reader));
+        }
+        reader.endArray();
+      } else if (ServiceNowConstants.STATUS.equals(name) || ServiceNowConstants.ERROR.equals(name)) {
+        envelope.add(name, GSON.fromJson(reader, JsonElement.class));
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+
+    RestAPIResponse.validateRestApiResponse(envelope);
+  }
+
+  private StructuredRecord decodeRow(JsonReader reader) throws IOException {
+    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(schema);
+    boolean[] decoded = new boolean[fields.size()];
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      Integer index = fieldIndexes.get(reader.nextName());
+      if (index == null || constantFields.containsKey(fields.get(index).getName())) {
+        reader.skipValue();
+        continue;
+      }
+      converter.convert(index, nextValue(reader), recordBuilder);
+      decoded[index] = true;
+    }
+    reader.endObject();
+
+    for (int i = 0; i < decoded.length; i++) {
+      String name = fields.get(i).getName();
+      if (constantFields.containsKey(name)) {
+        recordBuilder.set(name, constantFields.get(name));
+      } else if (!decoded[i]) {
+        converter.convert(i, null, recordBuilder);
+      }
+    }
+    return recordBuilder.build();
+  }
+
+  @Nullable
+  private static String nextValue(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case NULL:
+        reader.nextNull();
+        return null;
+      case BOOLEAN:
+        return String.valueOf(reader.nextBoolean());
+      case BEGIN_OBJECT:
+      case BEGIN_ARRAY:
+        return GSON.fromJson(reader, JsonElement.class).toString();
+      default:
+        // Strings and numbers
+        return reader.nextString();
+    }
+  }
+}
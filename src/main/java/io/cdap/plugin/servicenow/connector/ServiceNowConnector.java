@@ -186,15 +186,9 @@ public class ServiceNowConnector implements DirectConnector {
     List<StructuredRecord> recordList = new ArrayList<>();
     Schema schema = getSchema(tableName);
     if (schema != null) {
-      List<Schema.Field> tableFields = schema.getFields();
-      for (int i = 0; i < result.size(); i++) {
-        StructuredRecord.Builder recordBuilder = StructuredRecord.builder(schema);
-        for (Schema.Field field : tableFields) {
-          String fieldName = field.getName();
-          ServiceNowRecordConverter.convertToValue(fieldName, field.getSchema(), result.get(i), recordBuilder);
-        }
-        StructuredRecord structuredRecord = recordBuilder.build();
-        recordList.add(structuredRecord);
+      ServiceNowRecordConverter converter = new ServiceNowRecordConverter(schema);
+      for (Map<String, String> record : result) {
+        recordList.add(converter.convert(record));
       }
     }
     return recordList;
@@ -27,92 +27,151 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalQuery;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
- * Utility class for converting the record from ServiceNow data type to CDAP schema data types
+ * Converts records from ServiceNow data types to CDAP schema data types.
+ * An instance compiles the schema once into one converter per field, so that rows are converted without resolving
+ * the field types or creating formatters again for every value.
  */
 public class ServiceNowRecordConverter {
   private static final String DATE_PATTERN = "yyyy-MM-dd";
   private static final String DATE_TIME_PATTERN = "yyyy-MM-dd HH:mm:ss";
   private static final String TIME_PATTERN = "HH:mm:ss";
+  private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(DATE_PATTERN);
+  private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern(DATE_TIME_PATTERN);
+  private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern(TIME_PATTERN);
+  private static final ThreadLocal<NumberFormat> NUMBER_FORMAT =
+    ThreadLocal.withInitial(() -> NumberFormat.getNumberInstance(Locale.US));
+  // Plain numbers with at most this many digits are parsed exactly by Integer.parseInt and Double.parseDouble
+  private static final int MAX_FAST_INTEGER_DIGITS = 9;
+  private static final int MAX_FAST_DECIMAL_DIGITS = 15;
+
+  private final Schema schema;
+  private final FieldConverter[] converters;
+
+  /**
+   * @param schema the schema of the records to build
+   */
+  public ServiceNowRecordConverter(Schema schema) {
+    this.schema = schema;
+    List<Schema.Field> fields = schema.getFields();
+    this.converters = new FieldConverter[fields.size()];
+    for (int i = 0; i < converters.length; i++) {
+      converters[i] = compile(fields.get(i).getName(), fields.get(i).getSchema());
+    }
+  }
+
+  /**
+   * Builds a record from the ServiceNow values of its fields.
+   *
+   * @param record the values returned by ServiceNow, by field name
+   * @return the converted record
+   */
+  public StructuredRecord convert(Map<String, String> record) {
+    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(schema);
+    for (FieldConverter converter : converters) {
+      converter.convert(record.get(converter.fieldName), recordBuilder);
+    }
+    return recordBuilder.build();
+  }
+
+  /**
+   * Converts the ServiceNow value of a field and sets it on the record builder.
+   *
+   * @param fieldIndex the position of the field in the schema
+   * @param fieldValue the value returned by ServiceNow, may be null
+   * @param recordBuilder the builder to set the converted value on
+   */
+  public void convert(int fieldIndex, @Nullable String fieldValue, StructuredRecord.Builder recordBuilder) {
+    converters[fieldIndex].convert(fieldValue, recordBuilder);
+  }
 
   public static void convertToValue(String fieldName, Schema fieldSchema, Map<String, String> record,
                                     StructuredRecord.Builder recordBuilder) {
-    String fieldValue = record.get(fieldName);
-    if (fieldValue == null || fieldValue.isEmpty()) {
-      // Set 'null' value as it is
-      recordBuilder.set(fieldName, null);
-      return;
-    }
+    convertToValue(fieldName, fieldSchema, record.get(fieldName), recordBuilder);
+  }
+
+  /**
+   * Converts the ServiceNow value of a field and sets it on the record builder.
+   *
+   * @param fieldName the field name
+   * @param fieldSchema the schema of the field
+   * @param fieldValue the value returned by ServiceNow, may be null
+   * @param recordBuilder the builder to set the converted value on
+   */
+  public static void convertToValue(String fieldName, Schema fieldSchema, @Nullable String fieldValue,
+                                    StructuredRecord.Builder recordBuilder) {
+    compile(fieldName, fieldSchema).convert(fieldValue, recordBuilder);
+  }
+
+  private static FieldConverter compile(String fieldName, Schema fieldSchema) {
+    Schema nonNullableSchema = fieldSchema.isNullable() ? fieldSchema.getNonNullable() : fieldSchema;
+    return new FieldConverter(fieldName, compileValueConverter(fieldName, nonNullableSchema));
+  }
 
-    fieldSchema = fieldSchema.isNullable() ? fieldSchema.getNonNullable() : fieldSchema;
+  private static ValueConverter compileValueConverter(String fieldName, Schema fieldSchema) {
     Schema.LogicalType fieldLogicalType = fieldSchema.getLogicalType();
     // Get values of logical types properly
     if (fieldLogicalType != null) {
       switch (fieldLogicalType) {
         case DATETIME:
-          DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern(DATE_TIME_PATTERN);
-          try {
-            recordBuilder.setDateTime(fieldName, LocalDateTime.parse(fieldValue, dateTimeFormatter));
-          } catch (DateTimeParseException exception) {
-            throw new UnexpectedFormatException(
-              String.format("Field '%s' of type '%s' with value '%s' is not in ISO-8601 format.",
-                            fieldName, fieldSchema.getDisplayName(), fieldValue), exception);
-          }
-          return;
+          return (recordBuilder, value) -> recordBuilder.setDateTime(
+            fieldName, parseTemporal(fieldName, fieldSchema, value, DATE_TIME_FORMATTER, LocalDateTime::from));
         case DATE:
-          DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern(DATE_PATTERN);
-          try {
-            recordBuilder.setDate(fieldName, LocalDate.parse(fieldValue, dateFormatter));
-          } catch (DateTimeParseException exception) {
-            throw new UnexpectedFormatException(
-              String.format("Field '%s' of type '%s' with value '%s' is not in ISO-8601 format.",
-                            fieldName, fieldSchema.getDisplayName(), fieldValue), exception);
-          }
-          return;
+          return (recordBuilder, value) -> recordBuilder.setDate(
+            fieldName, parseTemporal(fieldName, fieldSchema, value, DATE_FORMATTER, LocalDate::from));
         case TIME_MICROS:
-          DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern(TIME_PATTERN);
-          try {
-            recordBuilder.setTime(fieldName, LocalTime.parse(fieldValue, timeFormatter));
-          } catch (DateTimeParseException exception) {
-            throw new UnexpectedFormatException(
-              String.format("Field '%s' of type '%s' with value '%s' is not in ISO-8601 format.",
-                            fieldName, fieldSchema.getDisplayName(), fieldValue), exception);
-          }
-          return;
+          return (recordBuilder, value) -> recordBuilder.setTime(
+            fieldName, parseTemporal(fieldName, fieldSchema, value, TIME_FORMATTER, LocalTime::from));
         default:
-          throw new IllegalStateException(String.format("Field '%s' is of unsupported type '%s'", fieldName,
-                                                            fieldLogicalType.name().toLowerCase()));
+          return (recordBuilder, value) -> {
+            throw new IllegalStateException(String.format("Field '%s' is of unsupported type '%s'", fieldName,
+                                                          fieldLogicalType.name().toLowerCase()));
+          };
       }
     }
 
     Schema.Type fieldType = fieldSchema.getType();
     switch (fieldType) {
       case STRING:
-        recordBuilder.set(fieldName, fieldValue);
-        return;
+        return (recordBuilder, value) -> recordBuilder.set(fieldName, value);
       case DOUBLE:
-        recordBuilder.set(fieldName, convertToDoubleValue(fieldValue));
-        return;
+        return (recordBuilder, value) -> recordBuilder.set(fieldName, convertToDoubleValue(value));
       case INT:
-        recordBuilder.set(fieldName, convertToIntegerValue(fieldValue));
-        return;
+        return (recordBuilder, value) -> recordBuilder.set(fieldName, convertToIntegerValue(value));
       case BOOLEAN:
-        recordBuilder.set(fieldName, convertToBooleanValue(fieldValue));
-        return;
+        return (recordBuilder, value) -> recordBuilder.set(fieldName, convertToBooleanValue(value));
       default:
-        throw new IllegalStateException(
-          String.format("Record type '%s' is not supported for field '%s'", fieldType.name(), fieldName));
+        return (recordBuilder, value) -> {
+          throw new IllegalStateException(
+            String.format("Record type '%s' is not supported for field '%s'", fieldType.name(), fieldName));
+        };
     }
+  }
 
+  private static <T> T parseTemporal(String fieldName, Schema fieldSchema, String fieldValue,
+                                     DateTimeFormatter formatter, TemporalQuery<T> query) {
+    try {
+      return formatter.parse(fieldValue, query);
+    } catch (DateTimeParseException exception) {
+      throw new UnexpectedFormatException(
+        String.format("Field '%s' of type '%s' with value '%s' is not in ISO-8601 format.",
+                      fieldName, fieldSchema.getDisplayName(), fieldValue), exception);
+    }
   }
 
   @VisibleForTesting
   public static Double convertToDoubleValue(String fieldValue) {
+    if (isPlainNumber(fieldValue, true, MAX_FAST_DECIMAL_DIGITS)) {
+      return Double.parseDouble(fieldValue);
+    }
     try {
-      return NumberFormat.getNumberInstance(Locale.US).parse(fieldValue).doubleValue();
+      return NUMBER_FORMAT.get().parse(fieldValue).doubleValue();
     } catch (ParseException exception) {
       throw new UnexpectedFormatException(
         String.format("Field with value '%s' is not in valid format.", fieldValue), exception);
@@ -121,8 +180,11 @@ public class ServiceNowRecordConverter {
 
   @VisibleForTesting
   public static Integer convertToIntegerValue(String fieldValue) {
+    if (isPlainNumber(fieldValue, false, MAX_FAST_INTEGER_DIGITS)) {
+      return Integer.parseInt(fieldValue);
+    }
     try {
-      return NumberFormat.getNumberInstance(java.util.Locale.US).parse(fieldValue).intValue();
+      return NUMBER_FORMAT.get().parse(fieldValue).intValue();
     } catch (ParseException exception) {
       throw new UnexpectedFormatException(
         String.format("Field with value '%s' is not in valid format.", fieldValue), exception);
@@ -139,4 +201,56 @@ public class ServiceNowRecordConverter {
       String.format("Field with value '%s' is not in valid format.", fieldValue));
     
   }
+
+  /**
+   * Checks whether the value is an optionally negative run of digits, with an optional fraction, that the JDK parsers
+   * read to the same value as {@link NumberFormat}. Anything else, such as grouping separators, is left to
+   * {@link NumberFormat}.
+   */
+  private static boolean isPlainNumber(String value, boolean allowFraction, int maxDigits) {
+    int start = value.startsWith("-") ? 1 : 0;
+    int length = value.length();
+    int digits = 0;
+    int point = -1;
+    for (int i = start; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digits++;
+      } else if (c == '.' && allowFraction && point < 0) {
+        point = i;
+      } else {
+        return false;
+      }
+    }
+    return digits > 0 && digits <= maxDigits && point != start && point != length - 1;
+  }
+
+  /**
+   * Converts a ServiceNow value that is neither null nor empty.
+   */
+  private interface ValueConverter {
+    void convert(StructuredRecord.Builder recordBuilder, String fieldValue);
+  }
+
+  /**
+   * Converts the value of a field, setting null for missing or empty values.
+   */
+  private static final class FieldConverter {
+    private final String fieldName;
+    private final ValueConverter valueConverter;
+
+    private FieldConverter(String fieldName, ValueConverter valueConverter) {
+      this.fieldName = fieldName;
+      this.valueConverter = valueConverter;
+    }
+
+    private void convert(@Nullable String fieldValue, StructuredRecord.Builder recordBuilder) {
+      if (fieldValue == null || fieldValue.isEmpty()) {
+        // Set 'null' value as it is
+        recordBuilder.set(fieldName, null);
+        return;
+      }
+      valueConverter.convert(recordBuilder, fieldValue);
+    }
+  }
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import org.apache.oltu.oauth2.client.response.OAuthJSONAccessTokenResponse;
+import org.apache.oltu.oauth2.common.exception.OAuthProblemException;
+import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Per-JVM cache of OAuth access tokens, keyed by the connection they were issued for.
+ * A token is reused until shortly before it expires. Only one caller per connection requests a new token at a time;
+ * the others wait for it and then reuse the token it obtained.
+ */
+public final class OAuthTokenCache {
+  private static final Logger LOG = LoggerFactory.getLogger(OAuthTokenCache.class);
+  private static final OAuthTokenCache INSTANCE = new OAuthTokenCache(System::currentTimeMillis);
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final LongSupplier clock;
+
+  @VisibleForTesting
+  OAuthTokenCache(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * @return the cache shared by all clients in this JVM
+   */
+  public static OAuthTokenCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Builds the cache key of a connection. Secrets are hashed so that they are not kept in the key.
+   *
+   * @param tokenUrl The OAuth token endpoint
+   * @param clientId The Client Id for ServiceNow
+   * @param clientSecret The Client Secret for ServiceNow
+   * @param user The user id for ServiceNow
+   * @param password The password for ServiceNow
+   * @return the cache key
+   */
+  public static String getKey(String tokenUrl, String clientId, String clientSecret, String user, String password) {
+    String secrets = Strings.nullToEmpty(clientSecret) + '\u0000' + Strings.nullToEmpty(password);
+    return String.join("\u0000", Strings.nullToEmpty(tokenUrl), Strings.nullToEmpty(clientId),
+                       Strings.nullToEmpty(user), Hashing.sha256().hashString(secrets, StandardCharsets.UTF_8)
+                         .toString());
+  }
+
+  /**
+   * Returns a valid access token for the connection, requesting a new one when there is no cached token or the
+   * cached token is about to expire. If the cached token came with a refresh token, the refresh_token grant is
+   * tried first and the requester falls back to a full grant when the refresh is rejected.
+   *
+   * @param key The connection key, see {@link #getKey}
+   * @param requester Requests a token from the OAuth endpoint
+   * @return the access token
+   */
+  public String getAccessToken(String key, TokenRequester requester) throws OAuthSystemException,
+    OAuthProblemException {
+    Entry entry = entries.computeIfAbsent(key, k -> new Entry());
+    CachedToken cached = entry.token;
+    if (cached != null && cached.isValid(clock.getAsLong())) {
+      return cached.accessToken;
+    }
+
+    synchronized (entry) {
+      // Another caller may have obtained a token while this one was waiting for the lock.
+      cached = entry.token;
+      long now = clock.getAsLong();
+      if (cached != null && cached.isValid(now)) {
+        return cached.accessToken;
+      }
+
+      OAuthJSONAccessTokenResponse response = null;
+      if (cached != null && cached.refreshToken != null) {
+        try {
+          response = requester.request(cached.refreshToken);
+        } catch (OAuthProblemException e) {
+          LOG.debug("Refresh token was rejected, requesting a new access token.", e);
+        }
+      }
+      if (response == null) {
+        response = requester.request(null);
+      }
+
+      String accessToken = response.getAccessToken();
+      Long expiresIn = response.getExpiresIn();
+      long skew = ServiceNowConstants.ACCESS_TOKEN_EXPIRY_SKEW;
+      if (accessToken != null && expiresIn != null && TimeUnit.SECONDS.toMillis(expiresIn) > skew) {
+        entry.token = new CachedToken(accessToken, response.getRefreshToken(),
+                                      now + TimeUnit.SECONDS.toMillis(expiresIn) - skew);
+      } else {
+        // Without a usable lifetime the token cannot be reused safely.
+        entry.token = null;
+      }
+      return accessToken;
+    }
+  }
+
+  /**
+   * Drops the cached token of the connection, so that the next caller requests a new one.
+   *
+   * @param key The connection key, see {@link #getKey}
+   */
+  public void invalidate(String key) {
+    invalidate(key, null);
+  }
+
+  /**
+   * Drops the cached token of the connection if it is the given one, for instance after ServiceNow rejected it
+   * because it was revoked before it expired. A token that another caller already obtained in its place is kept.
+   *
+   * @param key The connection key, see {@link #getKey}
+   * @param accessToken the rejected access token, or {@code null} to drop whichever token is cached
+   */
+  public void invalidate(String key, @Nullable String accessToken) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return;
+    }
+    synchronized (entry) {
+      CachedToken cached = entry.token;
+      if (cached != null && (accessToken == null || cached.accessToken.equals(accessToken))) {
+        LOG.debug("Dropping the cached access token rejected by ServiceNow.");
+        entry.token = null;
+      }
+    }
+  }
+
+  /**
+   * Requests an access token from the OAuth endpoint.
+   */
+  public interface TokenRequester {
+
+    /**
+     * @param refreshToken the refresh token to use, or {@code null} to request a token with the configured grant
+     * @return the token endpoint response
+     */
+    OAuthJSONAccessTokenResponse request(@Nullable String refreshToken) throws OAuthSystemException,
+      OAuthProblemException;
+  }
+
+  private static class Entry {
+    private volatile CachedToken token;
+  }
+
+  private static class CachedToken {
+    private final String accessToken;
+    private final String refreshToken;
+    private final long refreshAtMillis;
+
+    private CachedToken(String accessToken, @Nullable String refreshToken, long refreshAtMillis) {
+      this.accessToken = accessToken;
+      this.refreshToken = refreshToken;
+      this.refreshAtMillis = refreshAtMillis;
+    }
+
+    private boolean isValid(long now) {
+      return now < refreshAtMillis;
+    }
+  }
+}
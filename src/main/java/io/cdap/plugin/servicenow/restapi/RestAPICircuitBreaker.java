@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Circuit breaker of a ServiceNow instance, shared by all clients in this JVM. The circuit opens when too many of the
+ * latest requests to the instance failed with a server or transport error, and requests are then rejected without
+ * being sent. Once the circuit has been open for a while, a single probe request is let through: the circuit closes
+ * if it succeeds and opens again otherwise.
+ */
+public class RestAPICircuitBreaker {
+  private static final Logger LOG = LoggerFactory.getLogger(RestAPICircuitBreaker.class);
+  private static final ConcurrentMap<String, RestAPICircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+  /**
+   * The states of a circuit.
+   */
+  enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String host;
+  private final LongSupplier clock;
+  private final boolean[] failures = new boolean[ServiceNowConstants.CIRCUIT_BREAKER_WINDOW];
+  private int requests;
+  private int failureCount;
+  private State state = State.CLOSED;
+  private long openedAt;
+  private boolean probing;
+
+  @VisibleForTesting
+  RestAPICircuitBreaker(String host, LongSupplier clock) {
+    this.host = host;
+    this.clock = clock;
+  }
+
+  /**
+   * @param host the host of the ServiceNow instance
+   * @return the circuit breaker of the instance
+   */
+  public static RestAPICircuitBreaker forHost(@Nullable String host) {
+    return BREAKERS.computeIfAbsent(Strings.nullToEmpty(host),
+                                    key -> new RestAPICircuitBreaker(key, System::currentTimeMillis));
+  }
+
+  @VisibleForTesting
+  synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * Asks whether a request may be sent to the instance. A caller that is allowed to send the request must then
+   * report its outcome through {@link #onSuccess()}, {@link #onFailure()} or {@link #onCancel()}.
+   *
+   * @return 0 if the request may be sent, otherwise how long to wait before trying again, in milliseconds
+   */
+  public synchronized long tryAcquire() {
+    long now = clock.getAsLong();
+    if (state == State.OPEN) {
+      long remaining = openedAt + ServiceNowConstants.CIRCUIT_BREAKER_OPEN_TIME - now;
+      if (remaining > 0) {
+        return remaining;
+      }
+      state = State.HALF_OPEN;
+      probing = false;
+    }
+    if (state == State.HALF_OPEN) {
+      if (probing) {
+        return ServiceNowConstants.CIRCUIT_BREAKER_OPEN_TIME / 10;
+      }
+      LOG.info("Sending a probe request to ServiceNow instance '{}'.", host);
+      probing = true;
+    }
+    return 0;
+  }
+
+  /**
+   * Records that the instance answered a request.
+   */
+  public synchronized void onSuccess() {
+    if (state == State.HALF_OPEN) {
+      LOG.info("Closing the circuit of ServiceNow instance '{}', which answered the probe request.", host);
+      state = State.CLOSED;
+      requests = 0;
+      failureCount = 0;
+      return;
+    }
+    record(false);
+  }
+
+  /**
+   * Records that a request failed with a server or transport error.
+   */
+  public synchronized void onFailure() {
+    if (state == State.HALF_OPEN) {
+      open();
+      return;
+    }
+    record(true);
+    if (state == State.CLOSED && requests >= ServiceNowConstants.CIRCUIT_BREAKER_MIN_REQUESTS
+      && failureCount >= ServiceNowConstants.CIRCUIT_BREAKER_FAILURE_RATE * Math.min(requests, failures.length)) {
+      open();
+    }
+  }
+
+  /**
+   * Records that a request was aborted by the caller before the instance answered it.
+   */
+  public synchronized void onCancel() {
+    if (state == State.HALF_OPEN) {
+      // another probe may be sent
+      probing = false;
+    }
+  }
+
+  private void record(boolean failure) {
+    int index = requests % failures.length;
+    if (requests >= failures.length && failures[index]) {
+      failureCount--;
+    }
+    failures[index] = failure;
+    if (failure) {
+      failureCount++;
+    }
+    requests++;
+  }
+
+  private void open() {
+    LOG.warn("Opening the circuit of ServiceNow instance '{}' after repeated failures, requests are suspended for "
+               + "{} ms.", host, ServiceNowConstants.CIRCUIT_BREAKER_OPEN_TIME);
+    state = State.OPEN;
+    openedAt = clock.getAsLong();
+    requests = 0;
+    failureCount = 0;
+  }
+}
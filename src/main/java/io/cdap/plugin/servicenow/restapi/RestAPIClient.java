@@ -16,16 +16,21 @@
 
 package io.cdap.plugin.servicenow.restapi;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jcraft.jsch.IO;
 import io.cdap.plugin.servicenow.apiclient.NonRetryableException;
 import io.cdap.plugin.servicenow.apiclient.RetryableException;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowStageMetrics;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.oltu.oauth2.client.OAuthClient;
 import org.apache.oltu.oauth2.client.URLConnectionClient;
 import org.apache.oltu.oauth2.client.request.OAuthClientRequest;
@@ -38,17 +43,98 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 
 /**
  * An abstract class to call Rest API.
  */
 public abstract class RestAPIClient {
   private static final Logger LOG = LoggerFactory.getLogger(RestAPIClient.class);
+  private static final String BEARER_PREFIX = "Bearer ";
+  private static final ExecutorService HEDGING_EXECUTOR = Executors.newCachedThreadPool(
+    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("servicenow-hedged-request-%d").build());
+
+  private volatile RestAPIRateLimiter rateLimiter;
+  private volatile double hedgePercentile;
+  private volatile boolean compressRequests;
+  private volatile TokenSource tokenSource;
+  private volatile ServiceNowStageMetrics metrics;
+  private volatile RestAPIRetryBudget retryBudget = new RestAPIRetryBudget(1);
+  // when the circuit of the instance first rejected a request of this client since the last one it let through
+  private final AtomicLong rejectedSince = new AtomicLong();
+
+  /**
+   * Limits the rate of the requests sent by this client.
+   *
+   * @param rateLimiter the limiter, which may be shared with other clients of the same task, or null for no limit
+   */
+  public void setRateLimiter(@Nullable RestAPIRateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * Makes the requests sent by this client add to the given retry budget. By default the client has the whole
+   * budget of a stage to itself.
+   *
+   * @param retryBudget the retry budget of the task, which may be shared with other clients of the same task
+   */
+  public void setRetryBudget(RestAPIRetryBudget retryBudget) {
+    this.retryBudget = retryBudget;
+  }
+
+  /**
+   * @return the retry budget to which the requests sent by this client add
+   */
+  public RestAPIRetryBudget getRetryBudget() {
+    return retryBudget;
+  }
+
+  /**
+   * Counts the bytes of the responses received by this client, and the time its requests were held back by an open
+   * circuit, in the metrics of its stage.
+   *
+   * @param metrics the metrics of the stage, or null to not count them
+   */
+  public void setMetrics(@Nullable ServiceNowStageMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Compresses the bodies of POST requests with gzip, unless the instance turned out not to accept them. The
+   * entities of the requests must be repeatable, since a request is sent again uncompressed when it is rejected.
+   *
+   * @param compressRequests whether request bodies are compressed
+   */
+  public void setCompressRequests(boolean compressRequests) {
+    this.compressRequests = compressRequests;
+  }
+
+  /**
+   * Sends streamed GET requests a second time when they take longer than the given percentile of the latest ones
+   * sent to the instance, and keeps the response that arrives first.
+   *
+   * @param hedgePercentile the percentile of the latencies after which a request is sent again, 0 to never send a
+   *                        request twice
+   */
+  public void setHedgePercentile(double hedgePercentile) {
+    this.hedgePercentile = hedgePercentile;
+  }
 
   /**
    * Executes the Rest API request and returns the response.
@@ -57,14 +143,143 @@ public abstract class RestAPIClient {
    * @return an instance of RestAPIResponse object.
    */
   public RestAPIResponse executeGet(RestAPIRequest request) throws IOException {
+    try (CloseableHttpResponse httpResponse = execute(createGet(request))) {
+      return RestAPIResponse.parse(httpResponse, request.getResponseHeaders());
+    }
+  }
+
+  /**
+   * Executes the Rest API request and passes the response body to the handler as a stream, so that large responses
+   * are decoded while they are read instead of being buffered as a String first.
+   * Throws a {@link RetryableException} or {@link NonRetryableException} if the HTTP status reports an error.
+   *
+   * @param request the Rest API request
+   * @param handler consumes the response body
+   * @return the value returned by the handler
+   */
+  public <T> T executeGet(RestAPIRequest request, RestAPIResponseHandler<T> handler) throws IOException {
+    double percentile = hedgePercentile;
+    if (percentile > 0) {
+      return executeHedgedGet(request, handler, percentile);
+    }
+    return executeGet(request, createGet(request), handler);
+  }
+
+  /**
+   * Sends the GET request, and sends it again if it is still running once the given percentile of the latencies of
+   * the instance has passed. The response that arrives first is handled, and the other request is aborted. The
+   * handler must thus not share state between calls. The latencies are measured from the time the rate limit and the
+   * throttle let a request through, and no request is sent again while the instance asks to slow down. The second
+   * request is not counted in the retry budget, since it is no sign that the instance is healthy.
+   */
+  private <T> T executeHedgedGet(RestAPIRequest request, RestAPIResponseHandler<T> handler, double percentile)
+    throws IOException {
+    HttpGet primary = createGet(request);
+    String host = primary.getURI().getHost();
+    RestAPILatencyTracker latencies = RestAPILatencyTracker.forHost(host);
+    awaitTurn(host);
+    long hedgeDelay = latencies.getPercentile(percentile);
+
+    CompletionService<T> completionService = new ExecutorCompletionService<>(HEDGING_EXECUTOR);
+    List<HttpGet> requests = new ArrayList<>(2);
+    List<Future<T>> attempts = new ArrayList<>(2);
+    try {
+      requests.add(primary);
+      attempts.add(completionService.submit(() -> executeTimedGet(request, primary, handler, latencies, false)));
+      Future<T> done = hedgeDelay < 0 ? completionService.take()
+        : completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+      if (done == null && RestAPIThrottle.getInstance().getDelayMillis(host) > 0) {
+        LOG.debug("Not sending the request to '{}' again, since the instance asked to slow down.", primary.getURI());
+        done = completionService.take();
+      } else if (done == null) {
+        LOG.debug("Sending the request to '{}' again, since it takes longer than {} ms.", primary.getURI(),
+                  hedgeDelay);
+        HttpGet hedge = createGet(request);
+        requests.add(hedge);
+        attempts.add(completionService.submit(() -> {
+          awaitTurn(host);
+          return executeTimedGet(request, hedge, handler, latencies, true);
+        }));
+        done = completionService.take();
+      }
+
+      ExecutionException failure;
+      try {
+        return done.get();
+      } catch (ExecutionException e) {
+        failure = e;
+      }
+      // The other request may still succeed
+      if (attempts.size() > 1) {
+        try {
+          return completionService.take().get();
+        } catch (ExecutionException e) {
+          LOG.debug("The hedged request to '{}' failed as well.", primary.getURI(), e);
+        }
+      }
+      throw unwrap(failure);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the response from ServiceNow.");
+    } finally {
+      for (int i = 0; i < attempts.size(); i++) {
+        if (!attempts.get(i).isDone()) {
+          requests.get(i).abort();
+          attempts.get(i).cancel(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends the GET request, whose turn has already come, and records its latency.
+   */
+  private <T> T executeTimedGet(RestAPIRequest request, HttpGet httpGet, RestAPIResponseHandler<T> handler,
+                                RestAPILatencyTracker latencies, boolean hedge) throws IOException {
+    long start = System.nanoTime();
+    T result;
+    try (CloseableHttpResponse httpResponse = executeInTurn(httpGet, !hedge)) {
+      result = handle(request, httpResponse, handler);
+    }
+    latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    return result;
+  }
+
+  private <T> T executeGet(RestAPIRequest request, HttpGet httpGet, RestAPIResponseHandler<T> handler)
+    throws IOException {
+    try (CloseableHttpResponse httpResponse = execute(httpGet)) {
+      return handle(request, httpResponse, handler);
+    }
+  }
+
+  private static <T> T handle(RestAPIRequest request, CloseableHttpResponse httpResponse,
+                              RestAPIResponseHandler<T> handler) throws IOException {
+    RestAPIResponse.validateHttpResponse(httpResponse);
+    Map<String, String> headers = RestAPIResponse.getHeaders(httpResponse, request.getResponseHeaders());
+    // Closing the content reads any remaining bytes, which lets the connection go back to the pool
+    try (InputStream content = httpResponse.getEntity().getContent()) {
+      return handler.handle(content, headers);
+    }
+  }
+
+  private static HttpGet createGet(RestAPIRequest request) {
     HttpGet httpGet = new HttpGet(request.getUrl());
     request.getHeaders().entrySet().forEach(e -> httpGet.addHeader(e.getKey(), e.getValue()));
+    return httpGet;
+  }
 
-    try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
-      try (CloseableHttpResponse httpResponse = httpClient.execute(httpGet)) {
-        return RestAPIResponse.parse(httpResponse, request.getResponseHeaders());
-      }
+  private static IOException unwrap(ExecutionException e) {
+    Throwable cause = e.getCause();
+    if (cause instanceof IOException) {
+      return (IOException) cause;
+    }
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
     }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    return new IOException(cause);
   }
 
   /**
@@ -74,21 +289,158 @@ public abstract class RestAPIClient {
    * @return an instance of RestAPIResponse object.
    */
   public RestAPIResponse executePost(RestAPIRequest request) throws IOException {
-    HttpPost httpPost = new HttpPost(request.getUrl());
-    request.getHeaders().entrySet().forEach(e -> httpPost.addHeader(e.getKey(), e.getValue()));
-    httpPost.setEntity(request.getEntity());
+    HttpPost httpPost = createPost(request, false);
+    String host = httpPost.getURI().getHost();
 
     // We're retrying all transport exceptions while executing the HTTP POST method and the generic transport
     // exceptions in HttpClient are represented by the standard java.io.IOException class
     // https://hc.apache.org/httpclient-legacy/exception-handling.html
-    try (CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
-      try (CloseableHttpResponse httpResponse = httpClient.execute(httpPost)) {
-        return RestAPIResponse.parse(httpResponse, request.getResponseHeaders());
+    if (compressRequests && request.getEntity() != null && RestAPIContentEncoding.acceptsCompressedRequests(host)) {
+      try (CloseableHttpResponse httpResponse = execute(createPost(request, true))) {
+        if (!RestAPIContentEncoding.rejectsCompression(httpResponse)) {
+          return RestAPIResponse.parse(httpResponse, request.getResponseHeaders());
+        }
       }
+      RestAPIContentEncoding.rejectCompressedRequests(host);
+    }
+
+    try (CloseableHttpResponse httpResponse = execute(httpPost)) {
+      return RestAPIResponse.parse(httpResponse, request.getResponseHeaders());
+    }
+  }
+
+  private static HttpPost createPost(RestAPIRequest request, boolean compress) {
+    HttpPost httpPost = new HttpPost(request.getUrl());
+    request.getHeaders().entrySet().forEach(e -> httpPost.addHeader(e.getKey(), e.getValue()));
+    httpPost.setEntity(compress ? RestAPIContentEncoding.compress(request.getEntity()) : request.getEntity());
+    return httpPost;
+  }
+
+  /**
+   * Sends the request once the rate limit of this client allows it and the instance no longer asks to slow down,
+   * and passes the delay asked by the response, if any, to the throttle shared by all clients. Requests are rejected
+   * without being sent while the circuit of the instance is open. A compressed response is asked for, and its
+   * entity decodes the content while it is read. A request whose access token is rejected is sent once more with a
+   * new token.
+   */
+  private CloseableHttpResponse execute(HttpRequestBase request) throws IOException {
+    awaitTurn(request.getURI().getHost());
+    return executeInTurn(request, true);
+  }
+
+  /**
+   * Sends the request, whose turn has already come, and sends it once more with a new token if its access token is
+   * rejected.
+   *
+   * @param countInBudget whether the request adds to the retry budget
+   */
+  private CloseableHttpResponse executeInTurn(HttpRequestBase request, boolean countInBudget) throws IOException {
+    CloseableHttpResponse httpResponse = send(request, countInBudget);
+    if (httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_UNAUTHORIZED) {
+      return httpResponse;
+    }
+    Header authorization = request.getFirstHeader(HttpHeaders.AUTHORIZATION);
+    String accessToken = renewAccessToken(authorization == null ? null : authorization.getValue());
+    if (accessToken == null) {
+      return httpResponse;
+    }
+    httpResponse.close();
+    request.setHeader(HttpHeaders.AUTHORIZATION, BEARER_PREFIX + accessToken);
+    awaitTurn(request.getURI().getHost());
+    return send(request, countInBudget);
+  }
+
+  /**
+   * Waits until the rate limit of this client allows a request and the instance no longer asks to slow down.
+   */
+  private void awaitTurn(String host) throws InterruptedIOException {
+    RestAPIRateLimiter limiter = rateLimiter;
+    if (limiter != null) {
+      limiter.acquire();
+    }
+    RestAPIThrottle.getInstance().await(host);
+  }
+
+  private CloseableHttpResponse send(HttpRequestBase request, boolean countInBudget) throws IOException {
+    String host = request.getURI().getHost();
+    RestAPICircuitBreaker circuitBreaker = beforeSend(host, countInBudget);
+    RestAPIContentEncoding.acceptCompression(request);
+    CloseableHttpResponse httpResponse;
+    try {
+      httpResponse = getHttpClient().execute(request);
+    } catch (IOException | RuntimeException e) {
+      if (request.isAborted()) {
+        // A hedged request that lost the race says nothing about the instance
+        circuitBreaker.onCancel();
+      } else {
+        circuitBreaker.onFailure();
+      }
+      throw e;
+    }
+    afterResponse(host, circuitBreaker, httpResponse);
+    return httpResponse;
+  }
+
+  /**
+   * Checks that the circuit of the instance lets the request through, and counts it in the retry budget. Once a
+   * request goes through after others were rejected, the time since the first rejection is counted in the metrics.
+   *
+   * @param countInBudget whether the request adds to the retry budget
+   * @return the circuit breaker to which the outcome of the request must be reported
+   */
+  private RestAPICircuitBreaker beforeSend(String host, boolean countInBudget) {
+    RestAPICircuitBreaker circuitBreaker = RestAPICircuitBreaker.forHost(host);
+    long rejectedMillis = circuitBreaker.tryAcquire();
+    long now = System.currentTimeMillis();
+    if (rejectedMillis > 0) {
+      rejectedSince.compareAndSet(0, now);
+      throw new RetryableException(String.format(
+        "Requests to ServiceNow instance '%s' are suspended after repeated failures.", host), rejectedMillis);
     }
+    long since = rejectedSince.getAndSet(0);
+    ServiceNowStageMetrics stageMetrics = metrics;
+    if (since > 0 && stageMetrics != null) {
+      stageMetrics.count(ServiceNowConstants.METRIC_CIRCUIT_OPEN_TIME, now - since);
+    }
+    if (countInBudget) {
+      retryBudget.onRequest();
+    }
+    return circuitBreaker;
   }
+
   /**
-   * Generates access token and returns the same.
+   * Reports the outcome of the request to the circuit breaker, makes the entity decode the content while it is read,
+   * and passes the delay asked by the response, if any, to the throttle.
+   */
+  private void afterResponse(String host, RestAPICircuitBreaker circuitBreaker, HttpResponse httpResponse) {
+    if (RestAPIResponse.isServerFailure(httpResponse.getStatusLine().getStatusCode())) {
+      circuitBreaker.onFailure();
+    } else {
+      circuitBreaker.onSuccess();
+    }
+
+    httpResponse.setEntity(RestAPIContentEncoding.decode(httpResponse.getEntity(), metrics));
+
+    long retryAfterMillis = RestAPIResponse.getRetryAfterMillis(httpResponse, System.currentTimeMillis());
+    if (retryAfterMillis > 0) {
+      LOG.debug("ServiceNow instance '{}' asked to wait {} ms before the next request.", host, retryAfterMillis);
+      RestAPIThrottle.getInstance().pause(host, retryAfterMillis);
+    }
+  }
+
+  /**
+   * Returns the HTTP client used to execute requests. The client is backed by the per-JVM connection pool and
+   * must not be closed by the caller.
+   *
+   * @return the shared HTTP client
+   */
+  protected CloseableHttpClient getHttpClient() {
+    return RestAPIConnectionPool.getHttpClient();
+  }
+
+  /**
+   * Returns an access token for the given connection. Tokens are cached per connection and reused until shortly
+   * before they expire, so that every request does not need a round trip to the OAuth endpoint.
    *
    * @param restApiEndpoint The rest API endpoint for ServiceNow
    * @param clientId The Client Id for ServiceNow
@@ -101,18 +453,72 @@ public abstract class RestAPIClient {
    */
   protected String generateAccessToken(String restApiEndpoint, String clientId, String clientSecret, String user,
                                        String password) throws OAuthSystemException, OAuthProblemException {
-    String token = "NO-VALUE";
+    String key = OAuthTokenCache.getKey(restApiEndpoint, clientId, clientSecret, user, password);
+    TokenSource source = new TokenSource(key, refreshToken ->
+      requestAccessToken(restApiEndpoint, clientId, clientSecret, user, password, refreshToken));
+    tokenSource = source;
+    return OAuthTokenCache.getInstance().getAccessToken(source.key, source.requester);
+  }
 
+  /**
+   * Drops the access token that ServiceNow rejected from the cache, since it may have been revoked before it
+   * expired, and requests a new one.
+   *
+   * @param authorization the Authorization header of the rejected request, null if it had none
+   * @return the new access token, or null if the request did not carry a token issued through this client or no new
+   *   token could be obtained
+   */
+  @Nullable
+  private String renewAccessToken(@Nullable String authorization) {
+    TokenSource source = tokenSource;
+    if (source == null || authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+      return null;
+    }
+    String rejectedToken = authorization.substring(BEARER_PREFIX.length());
+    OAuthTokenCache.getInstance().invalidate(source.key, rejectedToken);
+    try {
+      String accessToken = OAuthTokenCache.getInstance().getAccessToken(source.key, source.requester);
+      return rejectedToken.equals(accessToken) ? null : accessToken;
+    } catch (OAuthSystemException | OAuthProblemException e) {
+      LOG.warn("Failed to renew the access token rejected by ServiceNow.", e);
+      return null;
+    }
+  }
+
+  /**
+   * Requests a new access token from the OAuth endpoint, using the refresh_token grant when a refresh token is
+   * given and the password grant otherwise.
+   */
+  private OAuthJSONAccessTokenResponse requestAccessToken(String restApiEndpoint, String clientId,
+                                                          String clientSecret, String user, String password,
+                                                          @Nullable String refreshToken)
+    throws OAuthSystemException, OAuthProblemException {
     OAuthClient client = new OAuthClient(new URLConnectionClient());
-    OAuthClientRequest request = OAuthClientRequest.tokenLocation(restApiEndpoint)
-      .setGrantType(GrantType.PASSWORD)
+    OAuthClientRequest.TokenRequestBuilder builder = OAuthClientRequest.tokenLocation(restApiEndpoint)
       .setClientId(clientId)
-      .setClientSecret(clientSecret)
-      .setUsername(user)
-      .setPassword(password)
-      .buildBodyMessage();
+      .setClientSecret(clientSecret);
+    if (refreshToken == null) {
+      builder.setGrantType(GrantType.PASSWORD)
+        .setUsername(user)
+        .setPassword(password);
+    } else {
+      builder.setGrantType(GrantType.REFRESH_TOKEN)
+        .setRefreshToken(refreshToken);
+    }
+
+    return client.accessToken(builder.buildBodyMessage(), OAuth.HttpMethod.POST, OAuthJSONAccessTokenResponse.class);
+  }
 
-    token = client.accessToken(request, OAuth.HttpMethod.POST, OAuthJSONAccessTokenResponse.class).getAccessToken();
-    return token;
+  /**
+   * Connection through which this client last obtained an access token.
+   */
+  private static final class TokenSource {
+    private final String key;
+    private final OAuthTokenCache.TokenRequester requester;
+
+    private TokenSource(String key, OAuthTokenCache.TokenRequester requester) {
+      this.key = key;
+      this.requester = requester;
+    }
   }
 }
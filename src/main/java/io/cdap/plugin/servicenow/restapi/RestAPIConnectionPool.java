@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-JVM pool of keep-alive HTTP connections shared by all {@link RestAPIClient} instances.
+ * Reusing pooled connections avoids a new TCP and TLS handshake for every request.
+ */
+public final class RestAPIConnectionPool {
+
+  private RestAPIConnectionPool() {
+  }
+
+  /**
+   * @return the shared HTTP client. Callers must not close it.
+   */
+  public static CloseableHttpClient getHttpClient() {
+    return Holder.HTTP_CLIENT;
+  }
+
+  /**
+   * @return total number of leased, available and pending connections across all routes
+   */
+  public static PoolStats getPoolStats() {
+    return Holder.CONNECTION_MANAGER.getTotalStats();
+  }
+
+  /**
+   * @return number of connections leased from the pool since it was created
+   */
+  public static long getLeaseCount() {
+    return Holder.CONNECTION_MANAGER.leaseCount.get();
+  }
+
+  /**
+   * @return number of requests that timed out or were interrupted while waiting for a connection
+   */
+  public static long getFailedLeaseCount() {
+    return Holder.CONNECTION_MANAGER.failedLeaseCount.get();
+  }
+
+  /**
+   * @return total time in milliseconds spent waiting for the connections that were leased
+   */
+  public static long getTotalLeaseWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(Holder.CONNECTION_MANAGER.totalLeaseWaitNanos.get());
+  }
+
+  /**
+   * @return longest time in milliseconds a single request waited for a connection
+   */
+  public static long getMaxLeaseWaitMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(Holder.CONNECTION_MANAGER.maxLeaseWaitNanos.get());
+  }
+
+  private static LeaseTrackingConnectionManager createConnectionManager() {
+    LeaseTrackingConnectionManager connectionManager = new LeaseTrackingConnectionManager();
+    connectionManager.setMaxTotal(ServiceNowConstants.HTTP_MAX_CONNECTIONS);
+    connectionManager.setDefaultMaxPerRoute(ServiceNowConstants.HTTP_MAX_CONNECTIONS_PER_ROUTE);
+    // only a connection that stayed idle for a while is checked before it is leased again
+    connectionManager.setValidateAfterInactivity(ServiceNowConstants.HTTP_VALIDATE_AFTER_INACTIVITY);
+    return connectionManager;
+  }
+
+  private static CloseableHttpClient createHttpClient(PoolingHttpClientConnectionManager connectionManager) {
+    RequestConfig requestConfig = RequestConfig.custom()
+      .setConnectionRequestTimeout(ServiceNowConstants.HTTP_CONNECTION_REQUEST_TIMEOUT)
+      .build();
+
+    // The connection manager keeps the TLS socket of an idle connection open, so the negotiated session is reused
+    // by every request that leases it. The user token is per connection, so the client is told not to track it.
+    // Compressed responses are decoded by RestAPIClient instead, which counts the bytes received.
+    return HttpClientBuilder.create()
+      .setConnectionManager(connectionManager)
+      .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+      .setDefaultRequestConfig(requestConfig)
+      .disableConnectionState()
+      .disableContentCompression()
+      .build();
+  }
+
+  /**
+   * Creates the pool on first use, so that loading this class does not initialize the TLS stack.
+   */
+  private static class Holder {
+    private static final LeaseTrackingConnectionManager CONNECTION_MANAGER = createConnectionManager();
+    private static final CloseableHttpClient HTTP_CLIENT = createHttpClient(CONNECTION_MANAGER);
+  }
+
+  /**
+   * Connection manager that records how long callers wait to lease a connection.
+   */
+  private static class LeaseTrackingConnectionManager extends PoolingHttpClientConnectionManager {
+    private final AtomicLong leaseCount = new AtomicLong();
+    private final AtomicLong failedLeaseCount = new AtomicLong();
+    private final AtomicLong totalLeaseWaitNanos = new AtomicLong();
+    private final AtomicLong maxLeaseWaitNanos = new AtomicLong();
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+      ConnectionRequest delegate = super.requestConnection(route, state);
+      return new ConnectionRequest() {
+        @Override
+        public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+          throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+          long start = System.nanoTime();
+          HttpClientConnection connection;
+          try {
+            connection = delegate.get(timeout, timeUnit);
+          } catch (InterruptedException | ExecutionException | ConnectionPoolTimeoutException | RuntimeException e) {
+            failedLeaseCount.incrementAndGet();
+            throw e;
+          }
+          recordLease(System.nanoTime() - start);
+          return connection;
+        }
+
+        @Override
+        public boolean cancel() {
+          return delegate.cancel();
+        }
+      };
+    }
+
+    private void recordLease(long waitNanos) {
+      leaseCount.incrementAndGet();
+      totalLeaseWaitNanos.addAndGet(waitNanos);
+      maxLeaseWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowStageMetrics;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.entity.BufferedHttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Negotiates compressed responses with ServiceNow and decodes them while they are read. The bytes received from
+ * ServiceNow and the bytes they decode to are counted in the metrics of the stage that sent the request, so that the
+ * savings can be seen. Request bodies are compressed as well, unless the instance turned out not to accept them.
+ */
+public final class RestAPIContentEncoding {
+  private static final Logger LOG = LoggerFactory.getLogger(RestAPIContentEncoding.class);
+  static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+  private static final String GZIP = "gzip";
+  private static final String X_GZIP = "x-gzip";
+  private static final String DEFLATE = "deflate";
+  private static final int BUFFER_SIZE = 8192;
+
+  // errors of ServiceNow for a request body it could not parse
+  private static final List<String> UNREADABLE_REQUEST_ERRORS =
+    Arrays.asList("exception while reading request", "not valid json");
+  // instances that did not accept a compressed request body
+  private static final Set<String> UNCOMPRESSED_REQUEST_HOSTS = ConcurrentHashMap.newKeySet();
+
+  private RestAPIContentEncoding() {
+  }
+
+  /**
+   * Asks for a compressed response, unless the request already names the encodings it accepts.
+   */
+  static void acceptCompression(HttpRequest request) {
+    if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+      request.addHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPTED_ENCODINGS);
+    }
+  }
+
+  /**
+   * @param host the host of the ServiceNow instance
+   * @return whether request bodies sent to the instance should be compressed
+   */
+  static boolean acceptsCompressedRequests(@Nullable String host) {
+    return host == null || !UNCOMPRESSED_REQUEST_HOSTS.contains(host);
+  }
+
+  /**
+   * An instance that does not decode request bodies either rejects their encoding or fails to parse them. Any other
+   * failure, such as a bad record in the payload, is the same for an uncompressed body, so the request is not sent
+   * again.
+   *
+   * @param response the response to a request with a compressed body, whose entity is buffered when it is read
+   * @return whether the instance could not read the compressed body, in which case the request is sent again
+   *   uncompressed
+   */
+  static boolean rejectsCompression(HttpResponse response) throws IOException {
+    int status = response.getStatusLine().getStatusCode();
+    if (status == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE) {
+      return true;
+    }
+    if (status != HttpStatus.SC_BAD_REQUEST || response.getEntity() == null) {
+      return false;
+    }
+    // the body is still parsed into the error of the request when the payload itself is wrong
+    response.setEntity(new BufferedHttpEntity(response.getEntity()));
+    return isUnreadableRequestError(EntityUtils.toString(response.getEntity()));
+  }
+
+  /**
+   * @param responseBody the body of a response with a 400 status
+   * @return whether the error reports that the request body could not be parsed
+   */
+  static boolean isUnreadableRequestError(String responseBody) {
+    String body = responseBody.toLowerCase(Locale.ROOT);
+    return UNREADABLE_REQUEST_ERRORS.stream().anyMatch(body::contains);
+  }
+
+  /**
+   * Records that the instance did not accept a compressed request body, so that the following requests are sent
+   * uncompressed.
+   *
+   * @param host the host of the ServiceNow instance
+   */
+  static void rejectCompressedRequests(@Nullable String host) {
+    if (host != null && UNCOMPRESSED_REQUEST_HOSTS.add(host)) {
+      LOG.info("ServiceNow instance '{}' does not accept compressed request bodies, they are sent uncompressed.",
+               host);
+    }
+  }
+
+  /**
+   * Wraps the entity of a request so that it is compressed with gzip while it is sent.
+   *
+   * @param entity the entity of the request, which must be repeatable for the request to be sent again
+   * @return the compressing entity
+   */
+  static HttpEntity compress(HttpEntity entity) {
+    return new GzipCompressingEntity(entity);
+  }
+
+  /**
+   * Wraps the entity of a response so that its content is decoded while it is read.
+   *
+   * @param entity  the entity of the response, null if it has none
+   * @param metrics the metrics counting the bytes of the response, null if they are not counted
+   * @return the decoding entity, or null if the response has no entity
+   */
+  @Nullable
+  static HttpEntity decode(@Nullable HttpEntity entity, @Nullable ServiceNowStageMetrics metrics) {
+    if (entity == null) {
+      return null;
+    }
+    return new DecodingEntity(entity, metrics);
+  }
+
+  /**
+   * Entity whose content is the decoded content of the wrapped entity.
+   */
+  private static final class DecodingEntity extends HttpEntityWrapper {
+    private final String encoding;
+    private final ServiceNowStageMetrics metrics;
+
+    private DecodingEntity(HttpEntity wrappedEntity, @Nullable ServiceNowStageMetrics metrics) {
+      super(wrappedEntity);
+      this.metrics = metrics;
+      Header header = wrappedEntity.getContentEncoding();
+      this.encoding = header == null || wrappedEntity.getContentLength() == 0 ? null
+        : header.getValue().trim().toLowerCase(Locale.ROOT);
+    }
+
+    private boolean isEncoded() {
+      return GZIP.equals(encoding) || X_GZIP.equals(encoding) || DEFLATE.equals(encoding);
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      InputStream content = new CountingInputStream(wrappedEntity.getContent(), metrics,
+                                                    ServiceNowConstants.METRIC_RECEIVED_BYTES);
+      if (GZIP.equals(encoding) || X_GZIP.equals(encoding)) {
+        content = new GZIPInputStream(content, BUFFER_SIZE);
+      } else if (DEFLATE.equals(encoding)) {
+        content = new InflaterInputStream(content);
+      }
+      return new CountingInputStream(content, metrics, ServiceNowConstants.METRIC_DECODED_BYTES);
+    }
+
+    @Override
+    public long getContentLength() {
+      return isEncoded() ? -1 : super.getContentLength();
+    }
+
+    @Nullable
+    @Override
+    public Header getContentEncoding() {
+      return isEncoded() ? null : super.getContentEncoding();
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+      try (InputStream content = getContent()) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+          outStream.write(buffer, 0, read);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stream adding the number of bytes read to the metric of the stage.
+   */
+  private static final class CountingInputStream extends FilterInputStream {
+    private final ServiceNowStageMetrics metrics;
+    private final String metricName;
+
+    private CountingInputStream(InputStream in, @Nullable ServiceNowStageMetrics metrics, String metricName) {
+      super(in);
+      this.metrics = metrics;
+      this.metricName = metricName;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read > 0) {
+        count(read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      if (skipped > 0) {
+        count(skipped);
+      }
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void count(long bytes) {
+      if (metrics != null) {
+        metrics.count(metricName, bytes);
+      }
+    }
+  }
+}
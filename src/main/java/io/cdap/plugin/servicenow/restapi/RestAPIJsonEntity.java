@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import com.google.gson.Gson;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Request entity holding an object that is serialized to JSON while the request is sent, instead of being built
+ * as a String first. The entity can be sent again, for instance when the request is retried.
+ */
+public class RestAPIJsonEntity extends AbstractHttpEntity {
+  private final Object value;
+  private final Gson gson;
+
+  /**
+   * @param value the object sent as JSON
+   * @param gson  serializes the object
+   */
+  public RestAPIJsonEntity(Object value, Gson gson) {
+    this.value = value;
+    this.gson = gson;
+    setContentType(ContentType.APPLICATION_JSON.toString());
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  /**
+   * Serializes the object in memory. Sending the request goes through {@link #writeTo(OutputStream)} instead.
+   */
+  @Override
+  public InputStream getContent() {
+    return new ByteArrayInputStream(gson.toJson(value).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public void writeTo(OutputStream outStream) throws IOException {
+    // The stream belongs to the caller, so it is flushed but not closed
+    Writer writer = new BufferedWriter(new OutputStreamWriter(outStream, StandardCharsets.UTF_8));
+    gson.toJson(value, writer);
+    writer.flush();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+}
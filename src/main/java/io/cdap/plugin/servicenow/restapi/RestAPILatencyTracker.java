@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * Latencies of the latest page requests sent to a ServiceNow instance, shared by all clients in this JVM, from which
+ * the time after which a page request is considered slow is derived.
+ */
+public class RestAPILatencyTracker {
+  private static final ConcurrentMap<String, RestAPILatencyTracker> TRACKERS = new ConcurrentHashMap<>();
+
+  private final long[] latencies;
+  private final int minLatencies;
+  private int count;
+
+  @VisibleForTesting
+  RestAPILatencyTracker(int window, int minLatencies) {
+    this.latencies = new long[window];
+    this.minLatencies = minLatencies;
+  }
+
+  /**
+   * @param host the host of the ServiceNow instance
+   * @return the latency tracker of the instance
+   */
+  public static RestAPILatencyTracker forHost(@Nullable String host) {
+    return TRACKERS.computeIfAbsent(Strings.nullToEmpty(host), key -> new RestAPILatencyTracker(
+      ServiceNowConstants.HEDGING_LATENCY_WINDOW, ServiceNowConstants.HEDGING_MIN_LATENCIES));
+  }
+
+  /**
+   * Records the latency of a request that completed.
+   *
+   * @param latencyMillis the time the request took, in milliseconds
+   */
+  public synchronized void record(long latencyMillis) {
+    latencies[count % latencies.length] = latencyMillis;
+    count++;
+  }
+
+  /**
+   * Returns the latency below which the given share of the latest requests completed.
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the latency in milliseconds, or -1 if too few requests completed yet to tell
+   */
+  public synchronized long getPercentile(double percentile) {
+    int size = Math.min(count, latencies.length);
+    if (size < minLatencies) {
+      return -1;
+    }
+    long[] sorted = Arrays.copyOf(latencies, size);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(percentile / 100 * size) - 1;
+    return sorted[Math.max(0, Math.min(size - 1, index))];
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket limiting the rate at which a task sends requests to ServiceNow. Tokens are added at the given rate
+ * and the bucket only holds a tenth of a second worth of them, so that requests are spread evenly over time instead
+ * of being sent in bursts that the instance would reject.
+ */
+public class RestAPIRateLimiter {
+  private static final double BURST_SECONDS = 0.1;
+
+  private final double permitsPerSecond;
+  private final double capacity;
+  private final LongSupplier nanoClock;
+  private double tokens;
+  private long lastRefillNanos;
+
+  /**
+   * @param permitsPerSecond the number of requests allowed per second
+   */
+  public RestAPIRateLimiter(double permitsPerSecond) {
+    this(permitsPerSecond, System::nanoTime);
+  }
+
+  @VisibleForTesting
+  RestAPIRateLimiter(double permitsPerSecond, LongSupplier nanoClock) {
+    Preconditions.checkArgument(permitsPerSecond > 0, "The request rate must be greater than 0.");
+    this.permitsPerSecond = permitsPerSecond;
+    this.capacity = Math.max(1, permitsPerSecond * BURST_SECONDS);
+    this.nanoClock = nanoClock;
+    this.tokens = capacity;
+    this.lastRefillNanos = nanoClock.getAsLong();
+  }
+
+  public double getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  /**
+   * Waits until a request can be sent.
+   */
+  public void acquire() throws InterruptedIOException {
+    long waitNanos = reserve();
+    if (waitNanos <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to send the request to ServiceNow.");
+    }
+  }
+
+  /**
+   * Takes a token for a request. When the bucket is empty the token is borrowed from the future, so that the
+   * callers waiting at the same time are given successive slots.
+   *
+   * @return how long the caller must wait before sending the request, in nanoseconds
+   */
+  @VisibleForTesting
+  synchronized long reserve() {
+    long now = nanoClock.getAsLong();
+    tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+    lastRefillNanos = now;
+    tokens -= 1;
+    return tokens >= 0 ? 0 : (long) (-tokens / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+  }
+}
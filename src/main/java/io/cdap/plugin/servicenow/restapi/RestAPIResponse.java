@@ -24,18 +24,22 @@ import io.cdap.plugin.servicenow.util.ServiceNowConstants;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /**
  * Pojo class to capture the API response.
@@ -44,12 +48,16 @@ public class RestAPIResponse {
   private static final Gson GSON = new Gson();
   private static final String HTTP_ERROR_MESSAGE = "Http call to ServiceNow instance returned status code %d.";
   private static final String REST_ERROR_MESSAGE = "Rest Api response has errors. Error message: %s.";
-  private static final Set<Integer> SUCCESS_CODES = new HashSet<>(Collections.singletonList(HttpStatus.SC_OK));
+  private static final Set<Integer> SUCCESS_CODES = new HashSet<>(Arrays.asList(HttpStatus.SC_OK,
+          HttpStatus.SC_CREATED));
   private static final Set<Integer> RETRYABLE_CODES = new HashSet<>(Arrays.asList(429,
           HttpStatus.SC_BAD_GATEWAY,
           HttpStatus.SC_SERVICE_UNAVAILABLE,
           HttpStatus.SC_REQUEST_TIMEOUT,
           HttpStatus.SC_GATEWAY_TIMEOUT));
+  static final String RETRY_AFTER = "Retry-After";
+  static final String RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+  static final String RATE_LIMIT_RESET = "X-RateLimit-Reset";
   private final int httpStatus;
   private final Map<String, String> headers;
   private final String responseBody;
@@ -71,15 +79,8 @@ public class RestAPIResponse {
    */
   public static RestAPIResponse parse(HttpResponse httpResponse, String... headerNames) throws IOException {
     validateHttpResponse(httpResponse);
-    List<String> headerNameList = headerNames == null ? Collections.emptyList() : Arrays.asList(headerNames);
     int httpStatus = httpResponse.getStatusLine().getStatusCode();
-    Map<String, String> headers = new HashMap<>();
-
-    if (!headerNameList.isEmpty()) {
-      headers.putAll(Arrays.stream(httpResponse.getAllHeaders())
-        .filter(o -> headerNameList.contains(o.getName()))
-        .collect(Collectors.toMap(Header::getName, Header::getValue)));
-    }
+    Map<String, String> headers = getHeaders(httpResponse, headerNames);
     String responseBody = EntityUtils.toString(httpResponse.getEntity());
     validateRestApiResponse(responseBody);
     return new RestAPIResponse(httpStatus, headers, responseBody);
@@ -93,8 +94,35 @@ public class RestAPIResponse {
     return httpStatus;
   }
 
+  /**
+   * Extracts the given headers from the HttpResponse.
+   *
+   * @param httpResponse The HttpResponse object
+   * @param headerNames The list of header names to be extracted
+   * @return map of header name to value for the headers present in the response
+   */
+  static Map<String, String> getHeaders(HttpResponse httpResponse, String... headerNames) {
+    List<String> headerNameList = headerNames == null ? Collections.emptyList() : Arrays.asList(headerNames);
+    Map<String, String> headers = new HashMap<>();
+
+    if (!headerNameList.isEmpty()) {
+      headers.putAll(Arrays.stream(httpResponse.getAllHeaders())
+        .filter(o -> headerNameList.contains(o.getName()))
+        .collect(Collectors.toMap(Header::getName, Header::getValue)));
+    }
+    return headers;
+  }
+
   private static void validateRestApiResponse(String responseBody) {
-    JsonObject jo = GSON.fromJson(responseBody, JsonObject.class);
+    validateRestApiResponse(GSON.fromJson(responseBody, JsonObject.class));
+  }
+
+  /**
+   * Throws a {@link RetryableException} or {@link NonRetryableException} if the response envelope reports a failure.
+   *
+   * @param jo The top level response object, or an object holding only its status and error members
+   */
+  public static void validateRestApiResponse(JsonObject jo) {
     // check if status is "failure"
     String status = null;
     if (jo.get(ServiceNowConstants.STATUS) != null) {
@@ -112,17 +140,74 @@ public class RestAPIResponse {
     }
   }
 
-  private static void validateHttpResponse(HttpResponse response) {
+  static void validateHttpResponse(HttpResponse response) {
     int code = response.getStatusLine().getStatusCode();
     if (SUCCESS_CODES.contains(code)) {
       return;
     }
     if (RETRYABLE_CODES.contains(code)) {
-      throw new RetryableException(String.format(HTTP_ERROR_MESSAGE, code));
+      throw new RetryableException(String.format(HTTP_ERROR_MESSAGE, code),
+                                   getRetryAfterMillis(response, System.currentTimeMillis()));
     }
     throw new NonRetryableException(String.format(HTTP_ERROR_MESSAGE, code));
   }
 
+  /**
+   * @param httpStatus the HTTP status of a response
+   * @return whether the status reports that the instance could not serve the request, rather than a wrong request or
+   *   a rate limit, which the throttle already handles
+   */
+  static boolean isServerFailure(int httpStatus) {
+    return httpStatus != 429
+      && (httpStatus >= HttpStatus.SC_INTERNAL_SERVER_ERROR || RETRYABLE_CODES.contains(httpStatus));
+  }
+
+  /**
+   * Returns how long ServiceNow asks clients to wait before sending the next request: the Retry-After header of a
+   * rejected request, or the time until the rate limit window resets once no request is left in it.
+   *
+   * @param response  The HttpResponse object
+   * @param nowMillis The current time in milliseconds since the epoch
+   * @return the delay in milliseconds, 0 if the response does not ask to wait
+   */
+  static long getRetryAfterMillis(HttpResponse response, long nowMillis) {
+    String retryAfter = getHeaderValue(response, RETRY_AFTER);
+    if (retryAfter != null) {
+      // either a number of seconds or an HTTP date
+      Long seconds = parseLong(retryAfter);
+      if (seconds != null) {
+        return Math.max(0, TimeUnit.SECONDS.toMillis(seconds));
+      }
+      Date date = DateUtils.parseDate(retryAfter);
+      return date == null ? 0 : Math.max(0, date.getTime() - nowMillis);
+    }
+
+    Long remaining = parseLong(getHeaderValue(response, RATE_LIMIT_REMAINING));
+    Long resetSeconds = parseLong(getHeaderValue(response, RATE_LIMIT_RESET));
+    if (remaining != null && remaining <= 0 && resetSeconds != null) {
+      return Math.max(0, TimeUnit.SECONDS.toMillis(resetSeconds) - nowMillis);
+    }
+    return 0;
+  }
+
+  @Nullable
+  private static Long parseLong(@Nullable String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  @Nullable
+  private static String getHeaderValue(HttpResponse response, String name) {
+    Header header = response.getFirstHeader(name);
+    return header == null || header.getValue() == null ? null : header.getValue().trim();
+  }
+
   public Map<String, String> getHeaders() {
     return headers;
   }
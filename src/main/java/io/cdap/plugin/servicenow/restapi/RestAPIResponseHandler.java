@@ -0,0 +1,36 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Consumes the body of a successful Rest API response as a stream, without buffering it in memory.
+ *
+ * @param <T> the type of the value produced from the response
+ */
+public interface RestAPIResponseHandler<T> {
+
+  /**
+   * @param content the response body. It is closed by the caller.
+   * @param headers the response headers requested by the {@link RestAPIRequest}
+   * @return the value produced from the response
+   */
+  T handle(InputStream content, Map<String, String> headers) throws IOException;
+}
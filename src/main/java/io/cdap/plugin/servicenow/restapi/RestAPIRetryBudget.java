@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+
+/**
+ * Budget of the retries of the requests sent to ServiceNow by a task. Every request sent adds a fraction of a retry to
+ * the budget and every retry takes a whole one, so that retries stay a small share of the requests. When ServiceNow
+ * keeps failing, the budget runs out and requests fail at once instead of piling more retries onto the instance.
+ * The retries a stage holds in reserve are divided among its tasks, so that they do not grow with the number of
+ * executors.
+ */
+public class RestAPIRetryBudget {
+  // the balance is kept in thousandths of a retry, so that adding up fractions does not lose any to rounding
+  private static final long SCALE = 1000;
+
+  private final long ratio;
+  private final long max;
+  private long balance;
+
+  /**
+   * Creates the budget of one of the given number of tasks, which share the retries held in reserve by the stage.
+   * Each task keeps at least one retry, so that a single transient failure does not fail it.
+   *
+   * @param tasks the number of tasks among which the budget of the stage is divided
+   */
+  public RestAPIRetryBudget(int tasks) {
+    this(ServiceNowConstants.RETRY_BUDGET_RATIO,
+         Math.max(1, ServiceNowConstants.RETRY_BUDGET_INITIAL / Math.max(1, tasks)),
+         Math.max(1, ServiceNowConstants.RETRY_BUDGET_MAX / Math.max(1, tasks)));
+  }
+
+  @VisibleForTesting
+  RestAPIRetryBudget(double ratio, double initial, double max) {
+    this.ratio = Math.round(ratio * SCALE);
+    this.max = Math.round(max * SCALE);
+    this.balance = Math.round(initial * SCALE);
+  }
+
+  /**
+   * Records that a request was sent.
+   */
+  public synchronized void onRequest() {
+    balance = Math.min(max, balance + ratio);
+  }
+
+  /**
+   * Takes a retry from the budget.
+   *
+   * @return false if the budget is spent and the request must not be retried
+   */
+  public synchronized boolean tryRetry() {
+    if (balance < SCALE) {
+      return false;
+    }
+    balance -= SCALE;
+    return true;
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import com.github.rholder.retry.Attempt;
+import com.github.rholder.retry.StopStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops retrying a ServiceNow request after the given number of attempts, or as soon as the retry budget of the task
+ * is spent, so that the task fails fast while ServiceNow keeps failing.
+ */
+public class RestAPIRetryStopStrategy implements StopStrategy {
+  private static final Logger LOG = LoggerFactory.getLogger(RestAPIRetryStopStrategy.class);
+
+  private final int maxAttempts;
+  private final RestAPIRetryBudget budget;
+
+  /**
+   * @param maxAttempts the maximum number of attempts of a request
+   * @param budget      the retry budget of the task sending the request
+   */
+  public RestAPIRetryStopStrategy(int maxAttempts, RestAPIRetryBudget budget) {
+    this.maxAttempts = maxAttempts;
+    this.budget = budget;
+  }
+
+  @Override
+  public boolean shouldStop(Attempt failedAttempt) {
+    if (failedAttempt.getAttemptNumber() >= maxAttempts) {
+      return true;
+    }
+    if (!budget.tryRetry()) {
+      LOG.warn("Not retrying the failed ServiceNow request, since the retry budget is spent.");
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import com.github.rholder.retry.Attempt;
+import com.github.rholder.retry.WaitStrategy;
+import com.google.common.annotations.VisibleForTesting;
+import io.cdap.plugin.servicenow.apiclient.RetryableException;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Waits between attempts of a ServiceNow request. When ServiceNow said how long to wait, through the Retry-After or
+ * rate limit headers, that delay is used. Otherwise the delay doubles after every attempt, up to a maximum, and a
+ * random part of it is dropped so that the tasks that failed at the same time do not retry at the same time.
+ */
+public class RestAPIRetryWaitStrategy implements WaitStrategy {
+  private final long baseDelayMillis;
+  private final long maxDelayMillis;
+  private final Supplier<Random> random;
+
+  /**
+   * @param baseDelayMillis the longest delay after the first attempt, in milliseconds
+   * @param maxDelayMillis  the longest delay after any attempt, in milliseconds
+   */
+  public RestAPIRetryWaitStrategy(long baseDelayMillis, long maxDelayMillis) {
+    this(baseDelayMillis, maxDelayMillis, ThreadLocalRandom::current);
+  }
+
+  @VisibleForTesting
+  RestAPIRetryWaitStrategy(long baseDelayMillis, long maxDelayMillis, Supplier<Random> random) {
+    this.baseDelayMillis = baseDelayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+    this.random = random;
+  }
+
+  @Override
+  public long computeSleepTime(Attempt failedAttempt) {
+    if (failedAttempt.hasException() && failedAttempt.getExceptionCause() instanceof RetryableException) {
+      long retryAfterMillis = ((RetryableException) failedAttempt.getExceptionCause()).getRetryAfterMillis();
+      if (retryAfterMillis > 0) {
+        return Math.min(retryAfterMillis, maxDelayMillis);
+      }
+    }
+
+    return computeSleepTime(failedAttempt.getAttemptNumber());
+  }
+
+  /**
+   * Computes the delay after a failed attempt when ServiceNow did not say how long to wait.
+   *
+   * @param attemptNumber the number of the failed attempt, starting at 1
+   * @return the delay before the next attempt, in milliseconds
+   */
+  public long computeSleepTime(long attemptNumber) {
+    int doublings = (int) Math.min(attemptNumber - 1, Long.SIZE - 2);
+    long ceiling = baseDelayMillis > maxDelayMillis >> doublings ? maxDelayMillis : baseDelayMillis << doublings;
+    // keeps at least half of the delay, so that a retry never comes right after the failure
+    long half = ceiling / 2;
+    return half + (long) (random.get().nextDouble() * (ceiling - half));
+  }
+}
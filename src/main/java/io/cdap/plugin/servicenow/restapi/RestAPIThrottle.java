@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.restapi;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Per-JVM record of the ServiceNow instances that asked clients to slow down, through a Retry-After header or an
+ * exhausted rate limit. Every request sent to such an instance from this JVM waits until the delay is over, so that
+ * all tasks back off together instead of each of them finding out through its own rejected request.
+ */
+public final class RestAPIThrottle {
+  private static final Logger LOG = LoggerFactory.getLogger(RestAPIThrottle.class);
+  private static final RestAPIThrottle INSTANCE = new RestAPIThrottle(System::currentTimeMillis);
+
+  private final ConcurrentMap<String, Long> resumeTimes = new ConcurrentHashMap<>();
+  private final LongSupplier clock;
+
+  @VisibleForTesting
+  RestAPIThrottle(LongSupplier clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * @return the throttle shared by all clients in this JVM
+   */
+  public static RestAPIThrottle getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Holds back the requests to the host for the given delay, unless they are already held back for longer.
+   * The delay is capped, so that a wrong header cannot stall the pipeline.
+   *
+   * @param host        the host of the ServiceNow instance
+   * @param delayMillis the delay asked by the instance, in milliseconds
+   */
+  public void pause(@Nullable String host, long delayMillis) {
+    if (delayMillis <= 0) {
+      return;
+    }
+    long resumeTime = clock.getAsLong() + Math.min(delayMillis, ServiceNowConstants.WAIT_TIME);
+    resumeTimes.merge(Strings.nullToEmpty(host), resumeTime, Math::max);
+  }
+
+  /**
+   * @param host the host of the ServiceNow instance
+   * @return how long requests to the host are still held back, in milliseconds
+   */
+  public long getDelayMillis(@Nullable String host) {
+    Long resumeTime = resumeTimes.get(Strings.nullToEmpty(host));
+    return resumeTime == null ? 0 : Math.max(0, resumeTime - clock.getAsLong());
+  }
+
+  /**
+   * Waits until requests to the host are no longer held back. A random fraction of the delay is added, so that the
+   * waiting requests are not all sent again at the same instant.
+   *
+   * @param host the host of the ServiceNow instance
+   */
+  public void await(@Nullable String host) throws InterruptedIOException {
+    long delayMillis = getDelayMillis(host);
+    if (delayMillis <= 0) {
+      return;
+    }
+    long sleepMillis = delayMillis + ThreadLocalRandom.current().nextLong(delayMillis / 10 + 1);
+    LOG.debug("ServiceNow instance '{}' asked to slow down, waiting {} ms before sending the request.", host,
+              sleepMillis);
+    try {
+      Thread.sleep(sleepMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to send the request to ServiceNow.");
+    }
+  }
+}
@@ -16,7 +16,6 @@
 
 package io.cdap.plugin.servicenow.sink;
 
-import com.google.gson.JsonObject;
 import io.cdap.cdap.api.annotation.Description;
 import io.cdap.cdap.api.annotation.Metadata;
 import io.cdap.cdap.api.annotation.MetadataProperty;
@@ -35,10 +34,12 @@ import io.cdap.cdap.etl.api.batch.BatchSink;
 import io.cdap.cdap.etl.api.batch.BatchSinkContext;
 import io.cdap.cdap.etl.api.connector.Connector;
 import io.cdap.plugin.common.LineageRecorder;
+import io.cdap.plugin.servicenow.sink.model.SerializedRecord;
 import io.cdap.plugin.servicenow.sink.output.ServiceNowOutputFormat;
 import io.cdap.plugin.servicenow.sink.output.ServiceNowOutputFormatProvider;
 import io.cdap.plugin.servicenow.sink.transform.ServiceNowTransformer;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowStageMetrics;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.NullWritable;
 
@@ -51,10 +52,11 @@ import java.util.stream.Collectors;
 @Name(ServiceNowConstants.PLUGIN_NAME)
 @Description("Writes to the target table in ServiceNow.")
 @Metadata(properties = {@MetadataProperty(key = Connector.PLUGIN_TYPE, value = ServiceNowConstants.PLUGIN_NAME)})
-public class ServiceNowSink extends BatchSink<StructuredRecord, NullWritable, JsonObject> {
+public class ServiceNowSink extends BatchSink<StructuredRecord, NullWritable, SerializedRecord> {
 
   private final ServiceNowSinkConfig conf;
   private ServiceNowTransformer transformer;
+  private String stageKey;
 
   public ServiceNowSink(ServiceNowSinkConfig conf) {
     this.conf = conf;
@@ -84,7 +86,7 @@ public class ServiceNowSink extends BatchSink<StructuredRecord, NullWritable, Js
     conf.validate(collector);
     collector.getOrThrowException();
     Configuration hConf = new Configuration();
-    ServiceNowOutputFormat.setOutput(hConf, conf);
+    ServiceNowOutputFormat.setOutput(hConf, conf, ServiceNowStageMetrics.getStageKey(context));
     context.addOutput(Output.of(conf.referenceName, new ServiceNowOutputFormatProvider(hConf)));
 
     LineageRecorder lineageRecorder = new LineageRecorder(context, conf.referenceName);
@@ -102,13 +104,23 @@ public class ServiceNowSink extends BatchSink<StructuredRecord, NullWritable, Js
   @Override
   public void initialize(BatchRuntimeContext context) throws Exception {
     super.initialize(context);
-    this.transformer = new ServiceNowTransformer();
+    // Records are inserted without their sys_id, which ServiceNow assigns
+    this.transformer = new ServiceNowTransformer(!ServiceNowConstants.UPDATE_OPERATION.equals(conf.getOperation()));
+    stageKey = ServiceNowStageMetrics.getStageKey(context);
+    ServiceNowStageMetrics.register(stageKey, context.getMetrics());
   }
 
   @Override
-  public void transform(StructuredRecord record, Emitter<KeyValue<NullWritable, JsonObject>> emitter) {
-    JsonObject jsonObject = transformer.transform(record);
-    emitter.emit(new KeyValue<>(null, jsonObject));
+  public void destroy() {
+    if (stageKey != null) {
+      ServiceNowStageMetrics.unregister(stageKey);
+    }
+    super.destroy();
+  }
+
+  @Override
+  public void transform(StructuredRecord record, Emitter<KeyValue<NullWritable, SerializedRecord>> emitter) {
+    emitter.emit(new KeyValue<>(null, transformer.serialize(record)));
   }
 
 }
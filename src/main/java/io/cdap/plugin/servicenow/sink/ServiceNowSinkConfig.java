@@ -51,7 +51,8 @@ public class ServiceNowSinkConfig extends ServiceNowBaseConfig {
   @Name(ServiceNowConstants.PROPERTY_OPERATION)
   @Macro
   @Description("The type of the operation to be performed in ServiceNow tables. Note, for Update operation, sys_id " +
-    "must be present.")
+    "must be present. Import Set operation inserts the records into the import set staging table given as table " +
+    "name, whose transform maps load them into the target tables.")
   private final String operation;
 
   @Name("referenceName")
@@ -64,6 +65,47 @@ public class ServiceNowSinkConfig extends ServiceNowBaseConfig {
   @Description("The schema of the table to read.")
   private String schema;
 
+  @Name(ServiceNowConstants.PROPERTY_MAX_IN_FLIGHT_BATCHES)
+  @Macro
+  @Nullable
+  @Description("The maximum number of batches sent to ServiceNow at the same time by each task. Writing stops while " +
+    "this many batches are waiting for a response. Default is 1, which sends the batches one after the other.")
+  private Integer maxInFlightBatches;
+
+  @Name(ServiceNowConstants.PROPERTY_BATCH_SIZE)
+  @Macro
+  @Nullable
+  @Description("The number of records sent to ServiceNow in one batch request. When the batch size is adaptive, " +
+    "this is the initial batch size. Default is 50.")
+  private Integer batchSize;
+
+  @Name(ServiceNowConstants.PROPERTY_ADAPTIVE_BATCH_SIZE)
+  @Macro
+  @Nullable
+  @Description("Whether the batch size grows while batches complete within the target latency, and shrinks when " +
+    "ServiceNow is too slow, exceeds the maximum execution time or leaves requests unserviced. Default is false.")
+  private Boolean adaptiveBatchSize;
+
+  @Name(ServiceNowConstants.PROPERTY_TARGET_BATCH_LATENCY)
+  @Macro
+  @Nullable
+  @Description("The time in seconds a batch may take before the adaptive batch size shrinks. Default is 20.")
+  private Integer targetBatchLatency;
+
+  @Name(ServiceNowConstants.PROPERTY_FAIL_ON_IMPORT_SET_ERRORS)
+  @Macro
+  @Nullable
+  @Description("Whether a batch fails when the transform of the import set reports errors for some of its rows. " +
+    "Only used by the Import Set operation. Default is false, which logs the errors as warnings.")
+  private Boolean failOnImportSetErrors;
+
+  @Name(ServiceNowConstants.PROPERTY_COMPRESS_REQUESTS)
+  @Macro
+  @Nullable
+  @Description("Whether the batches sent to ServiceNow are compressed with gzip. Batches are sent uncompressed to an " +
+    "instance that does not accept compressed requests. Default is true.")
+  private Boolean compressRequests;
+
   /**
    * Constructor for ServiceNowSinkConfig object.
    *
@@ -97,6 +139,30 @@ public class ServiceNowSinkConfig extends ServiceNowBaseConfig {
     return operation;
   }
 
+  public int getMaxInFlightBatches() {
+    return maxInFlightBatches == null ? ServiceNowConstants.MAX_IN_FLIGHT_BATCHES : maxInFlightBatches;
+  }
+
+  public int getBatchSize() {
+    return batchSize == null ? ServiceNowConstants.RECORDS_PER_BATCH : batchSize;
+  }
+
+  public boolean isAdaptiveBatchSize() {
+    return adaptiveBatchSize != null && adaptiveBatchSize;
+  }
+
+  public boolean isFailOnImportSetErrors() {
+    return failOnImportSetErrors != null && failOnImportSetErrors;
+  }
+
+  public boolean isCompressRequests() {
+    return compressRequests == null || compressRequests;
+  }
+
+  public int getTargetBatchLatency() {
+    return targetBatchLatency == null ? ServiceNowConstants.TARGET_BATCH_LATENCY : targetBatchLatency;
+  }
+
   /**
    * Validates {@link ServiceNowSinkConfig} instance.
    */
@@ -104,6 +170,8 @@ public class ServiceNowSinkConfig extends ServiceNowBaseConfig {
     IdUtils.validateReferenceName(referenceName, collector);
     super.validate(collector);
     validateTable(collector);
+    validateMaxInFlightBatches(collector);
+    validateBatchSize(collector);
   }
 
   private void validateTable(FailureCollector collector) {
@@ -121,6 +189,32 @@ public class ServiceNowSinkConfig extends ServiceNowBaseConfig {
     }
   }
 
+  private void validateMaxInFlightBatches(FailureCollector collector) {
+    if (containsMacro(ServiceNowConstants.PROPERTY_MAX_IN_FLIGHT_BATCHES)) {
+      return;
+    }
+
+    if (getMaxInFlightBatches() < 1 || getMaxInFlightBatches() > ServiceNowConstants.HTTP_MAX_CONNECTIONS_PER_ROUTE) {
+      collector.addFailure("Invalid number of in-flight batches.", "In-flight batches must be between 1 and " +
+          ServiceNowConstants.HTTP_MAX_CONNECTIONS_PER_ROUTE + ".")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_MAX_IN_FLIGHT_BATCHES);
+    }
+  }
+
+  private void validateBatchSize(FailureCollector collector) {
+    if (!containsMacro(ServiceNowConstants.PROPERTY_BATCH_SIZE)
+      && (getBatchSize() < 1 || getBatchSize() > ServiceNowConstants.MAX_RECORDS_PER_BATCH)) {
+      collector.addFailure("Invalid Batch Size.", "Batch Size must be between 1 and " +
+          ServiceNowConstants.MAX_RECORDS_PER_BATCH + ".")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_BATCH_SIZE);
+    }
+
+    if (!containsMacro(ServiceNowConstants.PROPERTY_TARGET_BATCH_LATENCY) && getTargetBatchLatency() <= 0) {
+      collector.addFailure("Invalid Target Batch Latency.", "Target Batch Latency must be greater than 0.")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_TARGET_BATCH_LATENCY);
+    }
+  }
+
   /**
    * @return the schema of the table
    */
@@ -159,6 +253,7 @@ public class ServiceNowSinkConfig extends ServiceNowBaseConfig {
     String externalIdFieldName = null;
     switch (operation) {
       case ServiceNowConstants.INSERT_OPERATION:
+      case ServiceNowConstants.IMPORT_SET_OPERATION:
         break;
       case ServiceNowConstants.UPDATE_OPERATION:
         externalIdFieldName = ServiceNowConstants.SYS_ID;
@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.sink.model;
+
+import javax.annotation.Nullable;
+
+/**
+ * A record serialized as the UTF-8 JSON object that is sent to ServiceNow, along with its sys_id.
+ */
+public class SerializedRecord {
+
+  private final byte[] json;
+  private final String sysId;
+
+  public SerializedRecord(byte[] json, @Nullable String sysId) {
+    this.json = json;
+    this.sysId = sysId;
+  }
+
+  /**
+   * @return the UTF-8 bytes of the JSON object holding the fields of the record
+   */
+  public byte[] getJson() {
+    return json;
+  }
+
+  /**
+   * @return the sys_id of the record, or null if the record has none
+   */
+  @Nullable
+  public String getSysId() {
+    return sysId;
+  }
+
+}
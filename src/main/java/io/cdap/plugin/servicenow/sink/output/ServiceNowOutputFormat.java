@@ -15,8 +15,8 @@
  */
 package io.cdap.plugin.servicenow.sink.output;
 
-import com.google.gson.JsonObject;
 import io.cdap.plugin.servicenow.sink.ServiceNowSinkConfig;
+import io.cdap.plugin.servicenow.sink.model.SerializedRecord;
 import io.cdap.plugin.servicenow.sink.transform.ServiceNowRecordWriter;
 import io.cdap.plugin.servicenow.source.ServiceNowJobConfiguration;
 import org.apache.hadoop.conf.Configuration;
@@ -33,19 +33,20 @@ import java.io.IOException;
  * An OutputFormat that sends the output of a Hadoop job to the ServiceNow record writer, also
  * it defines the output committer.
  */
-public class ServiceNowOutputFormat extends OutputFormat<NullWritable, JsonObject> {
+public class ServiceNowOutputFormat extends OutputFormat<NullWritable, SerializedRecord> {
   
-  public static void setOutput(Configuration conf, ServiceNowSinkConfig pluginConf) {
+  public static void setOutput(Configuration conf, ServiceNowSinkConfig pluginConf, String stageKey) {
     ServiceNowJobConfiguration jobConf = new ServiceNowJobConfiguration(conf);
     jobConf.setSinkPluginConfiguration(pluginConf);
+    jobConf.setStageKey(stageKey);
   }
 
   @Override
-  public RecordWriter<NullWritable, JsonObject> getRecordWriter(TaskAttemptContext taskAttemptContext) {
+  public RecordWriter<NullWritable, SerializedRecord> getRecordWriter(TaskAttemptContext taskAttemptContext) {
     ServiceNowJobConfiguration jobConfig = new ServiceNowJobConfiguration(taskAttemptContext.getConfiguration());
     ServiceNowSinkConfig pluginConf = jobConfig.getSinkPluginConf();
     try {
-      return new ServiceNowRecordWriter(pluginConf);
+      return new ServiceNowRecordWriter(pluginConf, jobConfig.getStageKey());
     } catch (Exception e) {
       throw new RuntimeException("There was issue communicating with Servicenow", e);
     }
@@ -18,42 +18,56 @@ package io.cdap.plugin.servicenow.sink.service;
 import com.github.rholder.retry.RetryException;
 import com.github.rholder.retry.Retryer;
 import com.github.rholder.retry.RetryerBuilder;
-import com.github.rholder.retry.StopStrategies;
-import com.github.rholder.retry.WaitStrategies;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
-import io.cdap.cdap.api.retry.RetryableException;
+import io.cdap.plugin.servicenow.apiclient.RetryableException;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIRequestBuilder;
 import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
+import io.cdap.plugin.servicenow.restapi.RestAPIJsonEntity;
+import io.cdap.plugin.servicenow.restapi.RestAPIRateLimiter;
 import io.cdap.plugin.servicenow.restapi.RestAPIResponse;
+import io.cdap.plugin.servicenow.restapi.RestAPIRetryBudget;
+import io.cdap.plugin.servicenow.restapi.RestAPIRetryStopStrategy;
+import io.cdap.plugin.servicenow.restapi.RestAPIRetryWaitStrategy;
 import io.cdap.plugin.servicenow.sink.ServiceNowSinkConfig;
 import io.cdap.plugin.servicenow.sink.model.RestRequest;
+import io.cdap.plugin.servicenow.sink.model.SerializedRecord;
 import io.cdap.plugin.servicenow.sink.model.ServiceNowBatchRequest;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowStageMetrics;
 import org.apache.http.Header;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 import javax.ws.rs.core.MediaType;
 
 /**
@@ -62,37 +76,69 @@ import javax.ws.rs.core.MediaType;
 public class ServiceNowSinkAPIRequestImpl {
 
   private static final Logger LOG = LoggerFactory.getLogger(ServiceNowSinkAPIRequestImpl.class);
+  private static final byte[] IMPORT_SET_PAYLOAD_PREFIX = "{\"records\":[".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] IMPORT_SET_PAYLOAD_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+  private static final Set<String> IMPORT_SET_LOADED_STATUSES = ImmutableSet.of("inserted", "updated");
+  private static final List<Header> HEADERS = Collections.unmodifiableList(Arrays.asList(
+    new BasicHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON),
+    new BasicHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON)));
 
   private final ServiceNowSinkConfig config;
   private final ServiceNowTableAPIClientImpl restApi;
   private final Gson gson = new Gson();
   private final JsonParser jsonParser = new JsonParser();
+  private final RestAPIRetryWaitStrategy waitStrategy;
+  private final ServiceNowStageMetrics metrics;
+  private final RestAPIRetryBudget retryBudget;
 
-  public ServiceNowSinkAPIRequestImpl(ServiceNowSinkConfig conf) {
+  /**
+   * @param conf     the sink configuration
+   * @param stageKey the key of the sink stage, under which the metrics are counted, or null to not count them
+   */
+  public ServiceNowSinkAPIRequestImpl(ServiceNowSinkConfig conf, @Nullable String stageKey) {
+    this(conf, stageKey,
+         new RestAPIRetryWaitStrategy(ServiceNowConstants.BASE_DELAY, ServiceNowConstants.WAIT_TIME));
+  }
+
+  @VisibleForTesting
+  public ServiceNowSinkAPIRequestImpl(ServiceNowSinkConfig conf, @Nullable String stageKey,
+                                      RestAPIRetryWaitStrategy waitStrategy) {
     this.config = conf;
+    this.waitStrategy = waitStrategy;
+    this.metrics = new ServiceNowStageMetrics(stageKey);
     restApi = new ServiceNowTableAPIClientImpl(config.getConnection());
+    restApi.setMetrics(metrics);
+    // batch payloads are large and mostly base64 text, which compresses well
+    restApi.setCompressRequests(config.isCompressRequests());
+    // each task writes through its own instance, so the concurrent tasks divide the retry budget of the stage
+    Integer concurrentTasks = config.getConcurrentTasks();
+    retryBudget = new RestAPIRetryBudget(concurrentTasks == null ? 1 : concurrentTasks);
+    restApi.setRetryBudget(retryBudget);
+    double requestsPerSecond = config.getRequestsPerSecondPerTask();
+    if (requestsPerSecond > 0) {
+      restApi.setRateLimiter(new RestAPIRateLimiter(requestsPerSecond));
+    }
   }
 
-  public RestRequest getRestRequest(JsonObject jsonObject) {
-    JsonElement jsonElement = jsonObject.get(ServiceNowConstants.SYS_ID);
-    String sysId = null;
+  /**
+   * Creates the Batch API sub-request that inserts or updates the record. The JSON of the record is sent as it is,
+   * so it must not hold sys_id for insert operations.
+   *
+   * @param record The serialized record
+   * @return The rest request
+   */
+  public RestRequest getRestRequest(SerializedRecord record) {
+    String sysId = record.getSysId();
     // sys_id is mandatory for update operation
-    if (jsonElement == null && config.getOperation().equals(ServiceNowConstants.UPDATE_OPERATION)) {
+    if (sysId == null && config.getOperation().equals(ServiceNowConstants.UPDATE_OPERATION)) {
       throw new IllegalStateException("No sys_id found in the record to be updated");
-      // sys_id need to be removed for insert operation
-    } else if (jsonElement != null && config.getOperation().equals(ServiceNowConstants.INSERT_OPERATION)) {
-      jsonObject.remove(ServiceNowConstants.SYS_ID);
-      // this condition will run when jsonElement is not null and operation is update
-    } else if (jsonElement != null) {
-      sysId = jsonElement.getAsString();
     }
-    String data = jsonObject.toString();
-    String encodedData = Base64.getEncoder().encodeToString(data.getBytes(StandardCharsets.UTF_8));
+    String encodedData = Base64.getEncoder().encodeToString(record.getJson());
 
     RestRequest restRequest = new RestRequest();
     restRequest.setUrl(getUrl(sysId));
     restRequest.setId(UUID.randomUUID().toString());
-    restRequest.setHeaders(getHeaders());
+    restRequest.setHeaders(HEADERS);
     restRequest.setMethod(ServiceNowConstants.HTTP_POST);
     if (config.getOperation().equals(ServiceNowConstants.UPDATE_OPERATION)) {
       restRequest.setMethod(ServiceNowConstants.HTTP_PUT);
@@ -102,12 +148,43 @@ public class ServiceNowSinkAPIRequestImpl {
   }
 
   /**
-   * Inserts/Updates the list of records into ServiceNow table
+   * Inserts/Updates the list of records into ServiceNow table. The requests that ServiceNow left unserviced, or that
+   * exceeded the maximum execution time, are sent again after a delay, up to the maximum number of attempts.
    *
    * @param restRequestsMap The map of restRequests
    * @param accessToken    The access token
+   * @return true if ServiceNow could not service all the requests of the batch at the first attempt, because the
+   * batch exceeded the maximum execution time or some requests were left unserviced
+   */
+  public boolean createPostRequest(Map<String, RestRequest> restRequestsMap, String accessToken) {
+    Map<String, RestRequest> pendingRequests = restRequestsMap;
+    for (int attempt = 1; ; attempt++) {
+      pendingRequests = postRequests(pendingRequests, accessToken);
+      if (pendingRequests.isEmpty()) {
+        return attempt > 1;
+      }
+      if (attempt >= ServiceNowConstants.MAX_NUMBER_OF_RETRY_ATTEMPTS) {
+        throw new IllegalStateException(String.format(
+          "ServiceNow did not service %d requests of the batch after %d attempts.", pendingRequests.size(), attempt));
+      }
+
+      long delayMillis = waitStrategy.computeSleepTime(attempt);
+      LOG.debug("Sending {} unserviced requests again in {} ms.", pendingRequests.size(), delayMillis);
+      try {
+        TimeUnit.MILLISECONDS.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting to send the unserviced requests again.", e);
+      }
+    }
+  }
+
+  /**
+   * Sends the requests as one Batch API call.
+   *
+   * @return the requests that ServiceNow left unserviced or that exceeded the maximum execution time
    */
-  public void createPostRequest(Map<String, RestRequest> restRequestsMap, String accessToken) {
+  private Map<String, RestRequest> postRequests(Map<String, RestRequest> restRequestsMap, String accessToken) {
     ServiceNowBatchRequest payloadRequest = getPayloadRequest(restRequestsMap);
     ServiceNowTableAPIRequestBuilder requestBuilder = new ServiceNowTableAPIRequestBuilder(
       config.getConnection().getRestApiEndpoint());
@@ -117,13 +194,12 @@ public class ServiceNowSinkAPIRequestImpl {
       requestBuilder.setAuthHeader(accessToken);
       requestBuilder.setAcceptHeader(MediaType.APPLICATION_JSON);
       requestBuilder.setContentTypeHeader(MediaType.APPLICATION_JSON);
-      StringEntity stringEntity = new StringEntity(gson.toJson(payloadRequest), ContentType.APPLICATION_JSON);
-      requestBuilder.setEntity(stringEntity);
+      requestBuilder.setEntity(new RestAPIJsonEntity(payloadRequest, gson));
       apiResponse = restApi.executePost(requestBuilder.build());
 
       JsonObject responseJSON = jsonParser.parse(apiResponse.getResponseBody()).getAsJsonObject();
       JsonArray servicedRequestsArray = responseJSON.get(ServiceNowConstants.SERVICED_REQUESTS).getAsJsonArray();
-      JsonElement failedRequestId = null;
+      List<JsonElement> failedRequestIds = new ArrayList<>();
       for (int i = 0; i < servicedRequestsArray.size(); i++) {
         int statusCode = servicedRequestsArray.get(i).getAsJsonObject().get(ServiceNowConstants.STATUS_CODE)
                 .getAsInt();
@@ -141,7 +217,7 @@ public class ServiceNowSinkAPIRequestImpl {
                   errorDetail.equals(ServiceNowConstants.UPDATE_ERROR)) {
             LOG.warn("Error Response : {} ", decodedResponseBody);
           } else if (errorDetail.contains((ServiceNowConstants.MAXIMUM_EXECUTION_TIME_EXCEEDED))) {
-            failedRequestId = servicedRequestsArray.get(i).getAsJsonObject().get(ServiceNowConstants.ID);
+            failedRequestIds.add(servicedRequestsArray.get(i).getAsJsonObject().get(ServiceNowConstants.ID));
           } else {
             throw new IllegalStateException(errorDetail);
           }
@@ -150,18 +226,11 @@ public class ServiceNowSinkAPIRequestImpl {
 
       JsonArray unservicedRequestsArray = responseJSON.get(ServiceNowConstants.UNSERVICED_REQUESTS).getAsJsonArray();
 
-      if (unservicedRequestsArray.size() > 0) {
-        // Add failed request Id to unserviced requests
-        if (failedRequestId != null) {
-          unservicedRequestsArray.add(failedRequestId);
-        }
+      // Add failed request Ids to unserviced requests
+      failedRequestIds.forEach(unservicedRequestsArray::add);
 
-        // Process unserviced requests array into unserviced requests map
-        Map<String, RestRequest> unservicedRequestsMap = processUnservicedRequestsArray(restRequestsMap,
-                unservicedRequestsArray);
-        // Retry unserviced requests
-        createPostRequest(unservicedRequestsMap, accessToken);
-      }
+      // Process unserviced requests array into unserviced requests map
+      return processUnservicedRequestsArray(restRequestsMap, unservicedRequestsArray);
     } catch (IOException e) {
       LOG.error("Error while connecting to ServiceNow", e.getMessage());
       throw new RetryableException("Error while connecting to ServiceNow", e);
@@ -198,25 +267,163 @@ public class ServiceNowSinkAPIRequestImpl {
   }
 
   /**
-   * Retries to insert/update the records into ServiceNow table when RetryableException is thrown          .
+   * Retries to insert/update the records into ServiceNow table when RetryableException is thrown: after a connection
+   * error, after ServiceNow asked to retry later, in which case its Retry-After delay is waited, or while the circuit
+   * of the instance is open after repeated failures, in which case the time until the circuit half-opens is waited.
    *
    * @param restRequestsMap The map of rest Requests
+   * @return true if ServiceNow could not service all the requests of the batch at the first attempt
+   */
+  public boolean createPostRequestRetryableMode(Map<String, RestRequest> restRequestsMap) throws ExecutionException,
+    RetryException {
+    String accessToken = restApi.getAccessTokenRetryableMode();
+    Callable<Boolean> fetchRecords = () -> createPostRequest(restRequestsMap, accessToken);
+
+    Retryer retryer = RetryerBuilder.newBuilder()
+      .retryIfExceptionOfType(RetryableException.class)
+      .withWaitStrategy(waitStrategy)
+      .withStopStrategy(new RestAPIRetryStopStrategy(ServiceNowConstants.MAX_NUMBER_OF_RETRY_ATTEMPTS, retryBudget))
+      .build();
+
+    try {
+      return (Boolean) retryer.call(fetchRecords);
+    } finally {
+      metrics.report();
+    }
+  }
+
+  /**
+   * Inserts the records into the import set staging table, from which the transform maps of the table load them
+   * into the target tables. The staging table assigns its own sys_id, so the records must not hold one.
+   *
+   * @param records     The records to insert
+   * @param accessToken The access token
+   * @return the number of rows by the status the transform reported for them, empty when the transform runs
+   * asynchronously
+   */
+  public Map<String, Integer> createImportSetRequest(List<SerializedRecord> records, String accessToken) {
+    ServiceNowTableAPIRequestBuilder requestBuilder = ServiceNowTableAPIRequestBuilder.forImportSet(
+      config.getConnection().getRestApiEndpoint(), config.getTableName());
+
+    try {
+      requestBuilder.setAuthHeader(accessToken);
+      requestBuilder.setAcceptHeader(MediaType.APPLICATION_JSON);
+      requestBuilder.setContentTypeHeader(MediaType.APPLICATION_JSON);
+      requestBuilder.setEntity(new ByteArrayEntity(getImportSetPayload(records), ContentType.APPLICATION_JSON));
+      RestAPIResponse apiResponse = restApi.executePost(requestBuilder.build());
+
+      JsonObject responseJSON = jsonParser.parse(apiResponse.getResponseBody()).getAsJsonObject();
+      return countImportSetResults(responseJSON, records.size());
+    } catch (IOException e) {
+      LOG.error("Error while connecting to ServiceNow", e.getMessage());
+      throw new RetryableException("Error while connecting to ServiceNow", e);
+    }
+  }
+
+  /**
+   * Builds the insertMultiple payload by copying the JSON of each record into the records array.
+   */
+  private static byte[] getImportSetPayload(List<SerializedRecord> records) {
+    int size = IMPORT_SET_PAYLOAD_PREFIX.length + records.size() + IMPORT_SET_PAYLOAD_SUFFIX.length;
+    for (SerializedRecord record : records) {
+      size += record.getJson().length;
+    }
+    ByteArrayOutputStream payload = new ByteArrayOutputStream(size);
+    payload.write(IMPORT_SET_PAYLOAD_PREFIX, 0, IMPORT_SET_PAYLOAD_PREFIX.length);
+    for (int i = 0; i < records.size(); i++) {
+      if (i > 0) {
+        payload.write(',');
+      }
+      byte[] json = records.get(i).getJson();
+      payload.write(json, 0, json.length);
+    }
+    payload.write(IMPORT_SET_PAYLOAD_SUFFIX, 0, IMPORT_SET_PAYLOAD_SUFFIX.length);
+    return payload.toByteArray();
+  }
+
+  /**
+   * Counts the rows of the import set by status in the stage metrics, and logs the rows that the transform could not
+   * load. When the transform runs asynchronously, the response only holds the id of the import set.
+   *
+   * @param responseJSON The import set response
+   * @param recordCount  The number of records sent
+   * @return the number of rows by status
+   * @throws IllegalStateException if the transform failed some rows and the sink fails on import set errors
+   */
+  private Map<String, Integer> countImportSetResults(JsonObject responseJSON, int recordCount) {
+    JsonElement importSetId = responseJSON.get(ServiceNowConstants.IMPORT_SET_ID);
+    JsonElement results = responseJSON.get(ServiceNowConstants.RESULT);
+    if (results == null || !results.isJsonArray()) {
+      LOG.debug("Inserted {} records into import set {}", recordCount, importSetId);
+      return Collections.emptyMap();
+    }
+
+    Map<String, Integer> statusCounts = new TreeMap<>();
+    JsonElement firstError = null;
+    for (JsonElement result : results.getAsJsonArray()) {
+      JsonObject row = result.getAsJsonObject();
+      JsonElement status = row.get(ServiceNowConstants.STATUS);
+      String statusValue = status == null || status.isJsonNull() ? "unknown" : status.getAsString();
+      statusCounts.merge(statusValue, 1, Integer::sum);
+      if (ServiceNowConstants.ERROR.equals(statusValue)) {
+        JsonElement error = row.has(ServiceNowConstants.ERROR_MESSAGE) ?
+          row.get(ServiceNowConstants.ERROR_MESSAGE) : row;
+        firstError = firstError == null ? error : firstError;
+        LOG.warn("Error Response : {} ", error);
+      }
+    }
+    statusCounts.forEach((status, count) ->
+      metrics.count(ServiceNowConstants.METRIC_IMPORT_SET_ROWS_PREFIX + status, count));
+
+    if (firstError != null && config.isFailOnImportSetErrors()) {
+      throw new IllegalStateException(String.format(
+        "The transform of import set %s failed %d of %d rows. First error: %s",
+        importSetId, statusCounts.get(ServiceNowConstants.ERROR), recordCount, firstError));
+    }
+    if (statusCounts.keySet().stream().anyMatch(status -> !IMPORT_SET_LOADED_STATUSES.contains(status))) {
+      LOG.info("Inserted {} records into import set {} with row statuses {}", recordCount, importSetId, statusCounts);
+    } else {
+      LOG.debug("Inserted {} records into import set {} with row statuses {}", recordCount, importSetId, statusCounts);
+    }
+    return statusCounts;
+  }
+
+  /**
+   * Retries to insert the records into the import set staging table when RetryableException is thrown, after a
+   * connection error, after ServiceNow asked to retry later, or while the circuit of the instance is open.
+   *
+   * @param records The records to insert
+   * @return true if ServiceNow could not accept the records at the first attempt
    */
-  public void createPostRequestRetryableMode(Map<String, RestRequest> restRequestsMap) throws ExecutionException,
+  public boolean createImportSetRequestRetryableMode(List<SerializedRecord> records) throws ExecutionException,
     RetryException {
     String accessToken = restApi.getAccessTokenRetryableMode();
-    Callable<Boolean> fetchRecords = () -> {
-      createPostRequest(restRequestsMap, accessToken);
+    AtomicInteger attempts = new AtomicInteger();
+    Callable<Boolean> insertRecords = () -> {
+      attempts.incrementAndGet();
+      createImportSetRequest(records, accessToken);
       return true;
     };
 
     Retryer retryer = RetryerBuilder.newBuilder()
       .retryIfExceptionOfType(RetryableException.class)
-      .withWaitStrategy(WaitStrategies.fixedWait(ServiceNowConstants.BASE_DELAY, TimeUnit.MILLISECONDS))
-      .withStopStrategy(StopStrategies.stopAfterAttempt(ServiceNowConstants.MAX_NUMBER_OF_RETRY_ATTEMPTS))
+      .withWaitStrategy(waitStrategy)
+      .withStopStrategy(new RestAPIRetryStopStrategy(ServiceNowConstants.MAX_NUMBER_OF_RETRY_ATTEMPTS, retryBudget))
       .build();
 
-    retryer.call(fetchRecords);
+    try {
+      retryer.call(insertRecords);
+    } finally {
+      metrics.report();
+    }
+    return attempts.get() > 1;
+  }
+
+  /**
+   * Adds the metrics counted since the last report to the stage metrics of the sink.
+   */
+  public void reportMetrics() {
+    metrics.report();
   }
 
   /**
@@ -231,18 +438,4 @@ public class ServiceNowSinkAPIRequestImpl {
       String.format(ServiceNowConstants.INSERT_TABLE_API_URL_TEMPLATE, config.getTableName());
   }
 
-  /**
-   * Gets the list of headers for ServiceNow Batch Request
-   *
-   * @return The list of headers
-   */
-  private List<Header> getHeaders() {
-    List<Header> headers = new ArrayList<>();
-    Header contentTypeHeader = new BasicHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
-    Header acceptHeader = new BasicHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
-    headers.add(contentTypeHeader);
-    headers.add(acceptHeader);
-    return headers;
-  }
-
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.sink.transform;
+
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+
+/**
+ * Decides how many records are sent to ServiceNow in one batch request.
+ * In adaptive mode the batch grows by an eighth after each full batch that completes within the target latency, and
+ * is halved after a batch that is too slow or that ServiceNow could not fully service.
+ */
+public class ServiceNowBatchSizer {
+  private static final int GROWTH_DIVISOR = 8;
+
+  private final boolean adaptive;
+  private final long targetLatencyMillis;
+  private int batchSize;
+
+  /**
+   * @param batchSize           the initial number of records per batch
+   * @param adaptive            whether the batch size changes with the responses of ServiceNow
+   * @param targetLatencyMillis the longest time a batch may take without shrinking the batch size
+   */
+  public ServiceNowBatchSizer(int batchSize, boolean adaptive, long targetLatencyMillis) {
+    this.batchSize = batchSize;
+    this.adaptive = adaptive;
+    this.targetLatencyMillis = targetLatencyMillis;
+  }
+
+  public synchronized int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Adjusts the batch size to the outcome of a batch.
+   *
+   * @param size          the number of records in the batch
+   * @param latencyMillis the time the batch took
+   * @param overloaded    whether ServiceNow exceeded the execution time or left requests unserviced
+   */
+  public synchronized void onBatchCompleted(int size, long latencyMillis, boolean overloaded) {
+    if (!adaptive) {
+      return;
+    }
+
+    if (overloaded || latencyMillis > targetLatencyMillis) {
+      batchSize = Math.max(1, batchSize / 2);
+    } else if (size >= batchSize) {
+      batchSize = Math.min(ServiceNowConstants.MAX_RECORDS_PER_BATCH,
+                           batchSize + Math.max(1, batchSize / GROWTH_DIVISOR));
+    }
+  }
+}
@@ -16,9 +16,12 @@
 package io.cdap.plugin.servicenow.sink.transform;
 
 import com.github.rholder.retry.RetryException;
-import com.google.gson.JsonObject;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.cdap.plugin.servicenow.sink.ServiceNowSinkConfig;
 import io.cdap.plugin.servicenow.sink.model.RestRequest;
+import io.cdap.plugin.servicenow.sink.model.SerializedRecord;
 import io.cdap.plugin.servicenow.sink.service.ServiceNowSinkAPIRequestImpl;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
 import org.apache.hadoop.io.NullWritable;
@@ -26,48 +29,205 @@ import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
- *  ServiceNow Record Writer class to insert/update records
+ *  ServiceNow Record Writer class to insert/update records.
+ *  Up to the configured number of batches are sent at the same time. Writing blocks while that many batches wait
+ *  for a response, and failures are reported in the order the batches were written. The size of each batch is
+ *  decided by a {@link ServiceNowBatchSizer}.
  */
-public class ServiceNowRecordWriter extends RecordWriter<NullWritable, JsonObject> {
+public class ServiceNowRecordWriter extends RecordWriter<NullWritable, SerializedRecord> {
 
+  private final ServiceNowSinkAPIRequestImpl servicenowSinkAPIImpl;
+  private final ServiceNowBatchSizer batchSizer;
+  private final boolean importSet;
+  private final int maxInFlightBatches;
+  private final Semaphore inFlightBatches;
+  private final Deque<Future<Void>> pendingBatches = new ArrayDeque<>();
   private Map<String, RestRequest> restRequestsMap = new HashMap<>();
-  private ServiceNowSinkAPIRequestImpl servicenowSinkAPIImpl;
+  private List<SerializedRecord> importSetRecords = new ArrayList<>();
+  private ExecutorService executor;
 
-  public ServiceNowRecordWriter(ServiceNowSinkConfig config) {
-    servicenowSinkAPIImpl = new ServiceNowSinkAPIRequestImpl(config);
+  public ServiceNowRecordWriter(ServiceNowSinkConfig config, @Nullable String stageKey) {
+    this(new ServiceNowSinkAPIRequestImpl(config, stageKey),
+         new ServiceNowBatchSizer(config.getBatchSize(), config.isAdaptiveBatchSize(),
+                                  TimeUnit.SECONDS.toMillis(config.getTargetBatchLatency())),
+         ServiceNowConstants.IMPORT_SET_OPERATION.equals(config.getOperation()), config.getMaxInFlightBatches());
+  }
+
+  @VisibleForTesting
+  public ServiceNowRecordWriter(ServiceNowSinkAPIRequestImpl servicenowSinkAPIImpl, ServiceNowBatchSizer batchSizer,
+                                boolean importSet, int maxInFlightBatches) {
+    this.servicenowSinkAPIImpl = servicenowSinkAPIImpl;
+    this.batchSizer = batchSizer;
+    this.importSet = importSet;
+    this.maxInFlightBatches = maxInFlightBatches;
+    this.inFlightBatches = new Semaphore(maxInFlightBatches);
   }
 
   @Override
-  public void write(NullWritable key, JsonObject jsonObject) throws IOException {
+  public void write(NullWritable key, SerializedRecord record) throws IOException {
 
-    RestRequest restRequest = servicenowSinkAPIImpl.getRestRequest(jsonObject);
-    restRequestsMap.put(restRequest.getId(), restRequest);
-    if (restRequestsMap.size() == ServiceNowConstants.RECORDS_PER_BATCH) {
-      try {
-        servicenowSinkAPIImpl.createPostRequestRetryableMode(restRequestsMap);
-      } catch (RetryException | ExecutionException exception) {
-        restRequestsMap.clear();
-        throw new IOException("Error writing to ServiceNow", exception);
-      }
-      restRequestsMap.clear();
+    if (importSet) {
+      importSetRecords.add(record);
+    } else {
+      RestRequest restRequest = servicenowSinkAPIImpl.getRestRequest(record);
+      restRequestsMap.put(restRequest.getId(), restRequest);
+    }
+    if (getPendingRecords() >= batchSizer.getBatchSize()) {
+      submitBatch();
     }
   }
 
   @Override
   public void close(TaskAttemptContext taskAttemptContext) throws IOException {
-    //create POST request for remaining requests
-    if (!restRequestsMap.isEmpty()) {
+    IOException failure = null;
+    try {
+      //create POST request for remaining requests
+      if (getPendingRecords() > 0) {
+        submitBatch();
+      }
+    } catch (InterruptedIOException e) {
+      shutdown();
+      throw e;
+    } catch (IOException e) {
+      failure = e;
+    }
+
+    try {
+      while (!pendingBatches.isEmpty()) {
+        try {
+          awaitBatch(pendingBatches.poll());
+        } catch (InterruptedIOException e) {
+          throw e;
+        } catch (IOException e) {
+          if (failure == null) {
+            failure = e;
+          } else {
+            failure.addSuppressed(e);
+          }
+        }
+      }
+    } finally {
+      shutdown();
+      servicenowSinkAPIImpl.reportMetrics();
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private int getPendingRecords() {
+    return importSet ? importSetRecords.size() : restRequestsMap.size();
+  }
+
+  /**
+   * Sends the collected records as one batch, in the background if more than one batch may be in flight.
+   */
+  private void submitBatch() throws IOException {
+    int size = getPendingRecords();
+    BatchRequest batch = takeBatch();
+    if (maxInFlightBatches <= 1) {
+      postBatch(size, batch);
+      return;
+    }
+
+    reportCompletedBatches();
+    try {
+      inFlightBatches.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a batch to be written to ServiceNow");
+    }
+
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(maxInFlightBatches, new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat("servicenow-batch-writer-%d").build());
+    }
+    pendingBatches.add(executor.submit(() -> {
       try {
-        servicenowSinkAPIImpl.createPostRequestRetryableMode(restRequestsMap);
-      } catch (RetryException | ExecutionException exception) {
-        throw new IOException("Error writing to ServiceNow", exception);
+        postBatch(size, batch);
+        return null;
+      } finally {
+        inFlightBatches.release();
       }
+    }));
+  }
+
+  /**
+   * Removes the batches that are done from the head of the queue, throwing the failure of the first failed one.
+   */
+  private void reportCompletedBatches() throws IOException {
+    while (!pendingBatches.isEmpty() && pendingBatches.peek().isDone()) {
+      awaitBatch(pendingBatches.poll());
+    }
+  }
+
+  private void awaitBatch(Future<Void> batch) throws IOException {
+    try {
+      batch.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a batch to be written to ServiceNow");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException("Error writing to ServiceNow", e.getCause());
+    }
+  }
+
+  /**
+   * Takes the collected records, leaving the writer ready to collect the next batch.
+   */
+  private BatchRequest takeBatch() {
+    if (importSet) {
+      List<SerializedRecord> records = importSetRecords;
+      importSetRecords = new ArrayList<>();
+      return () -> servicenowSinkAPIImpl.createImportSetRequestRetryableMode(records);
     }
+    Map<String, RestRequest> requests = restRequestsMap;
+    restRequestsMap = new HashMap<>();
+    return () -> servicenowSinkAPIImpl.createPostRequestRetryableMode(requests);
+  }
+
+  private void postBatch(int size, BatchRequest batch) throws IOException {
+    long startTime = System.nanoTime();
+    try {
+      boolean overloaded = batch.post();
+      batchSizer.onBatchCompleted(size, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), overloaded);
+    } catch (RetryException | ExecutionException exception) {
+      throw new IOException("Error writing to ServiceNow", exception);
+    }
+  }
+
+  private void shutdown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Sends a batch of records to ServiceNow.
+   */
+  private interface BatchRequest {
+
+    /**
+     * @return true if ServiceNow could not service the whole batch at the first attempt
+     */
+    boolean post() throws ExecutionException, RetryException;
   }
-  
 }
@@ -13,12 +13,15 @@
  * License for the specific language governing permissions and limitations under
  * the License.
  */
+
 package io.cdap.plugin.servicenow.sink.transform;
 
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.format.UnexpectedFormatException;
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.servicenow.sink.model.SerializedRecord;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,82 +29,143 @@ import org.slf4j.LoggerFactory;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.time.Instant;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.time.ZoneId;
 import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
-import java.util.Date;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 /**
- *  Transforms structured record to JSON object
+ *  Transforms structured record to JSON object.
+ *  The schema of the records is compiled once into one writer per field, and each record is written as UTF-8 JSON
+ *  into a reused buffer, so that no intermediate JSON tree or strings are built for the values.
  */
 public class ServiceNowTransformer {
   private static final Logger LOG = LoggerFactory.getLogger(ServiceNowTransformer.class);
   private static final String DATE_PATTERN = "yyyy-MM-dd";
   private static final String DATE_TIME_PATTERN = "yyyy-MM-dd'T'HH:mm:ss";
+  private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(DATE_PATTERN);
+  private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern(DATE_TIME_PATTERN);
+  // Timestamps are sent as the string form of a ZonedDateTime in the UTC region
+  private static final String UTC_ZONE_SUFFIX = "Z[UTC]";
+  private static final long MICROS_PER_SECOND = TimeUnit.SECONDS.toMicros(1);
+  private static final byte[] NULL_VALUE = "\"null\"".getBytes(StandardCharsets.UTF_8);
+  private static final int INITIAL_BUFFER_SIZE = 1024;
+  private static final JsonParser JSON_PARSER = new JsonParser();
+
+  private final boolean excludeSysId;
+  private final JsonBuffer buffer = new JsonBuffer(INITIAL_BUFFER_SIZE);
+  private Schema compiledSchema;
+  private FieldWriter[] fieldWriters;
+
+  public ServiceNowTransformer() {
+    this(false);
+  }
+
+  /**
+   * @param excludeSysId whether sys_id is left out of the JSON object, for operations where ServiceNow assigns it
+   */
+  public ServiceNowTransformer(boolean excludeSysId) {
+    this.excludeSysId = excludeSysId;
+  }
 
   public JsonObject transform(StructuredRecord record) {
-    List<Schema.Field> fields = Objects.requireNonNull(record.getSchema().getFields(),
-                                                       "Schema fields cannot be empty");
-    JsonObject jsonObject = new JsonObject();
-    for (Schema.Field field : fields) {
-      String fieldName = field.getName();
-      Schema nonNullableSchema = field.getSchema().isNullable() ? field.getSchema().getNonNullable()
-        : field.getSchema();
-      jsonObject.addProperty(field.getName(), String.valueOf(extractValue(fieldName, record.get(field.getName()),
-                                                                          nonNullableSchema)));
-    }
-    return jsonObject;
+    String json = new String(serialize(record).getJson(), StandardCharsets.UTF_8);
+    return JSON_PARSER.parse(json).getAsJsonObject();
   }
 
-  private Object extractValue(String fieldName, Object value, Schema schema) {
-    if (value == null) {
-      // Return 'null' value as it is
-      return null;
+  /**
+   * Serializes the record into the JSON object sent to ServiceNow, in which every value is a string.
+   *
+   * @param record the record to serialize
+   * @return the UTF-8 JSON of the record along with its sys_id
+   */
+  public SerializedRecord serialize(StructuredRecord record) {
+    String sysId = null;
+    boolean first = true;
+    buffer.reset();
+    buffer.write('{');
+    for (FieldWriter fieldWriter : getFieldWriters(record.getSchema())) {
+      Object value = record.get(fieldWriter.fieldName);
+      if (fieldWriter.sysId) {
+        sysId = value == null ? null : value.toString();
+        if (excludeSysId) {
+          continue;
+        }
+      }
+
+      if (!first) {
+        buffer.write(',');
+      }
+      first = false;
+      buffer.write(fieldWriter.name);
+      if (value == null) {
+        // Write 'null' value as it is
+        buffer.write(NULL_VALUE);
+      } else {
+        fieldWriter.valueWriter.write(buffer, value);
+      }
     }
+    buffer.write('}');
+    return new SerializedRecord(buffer.toByteArray(), sysId);
+  }
 
+  private FieldWriter[] getFieldWriters(Schema schema) {
+    if (schema != compiledSchema && !schema.equals(compiledSchema)) {
+      List<Schema.Field> fields = Objects.requireNonNull(schema.getFields(), "Schema fields cannot be empty");
+      FieldWriter[] writers = new FieldWriter[fields.size()];
+      for (int i = 0; i < writers.length; i++) {
+        Schema.Field field = fields.get(i);
+        Schema nonNullableSchema = field.getSchema().isNullable() ? field.getSchema().getNonNullable()
+          : field.getSchema();
+        writers[i] = new FieldWriter(field.getName(), compileValueWriter(field.getName(), nonNullableSchema));
+      }
+      fieldWriters = writers;
+      compiledSchema = schema;
+    }
+    return fieldWriters;
+  }
+
+  private ValueWriter compileValueWriter(String fieldName, Schema schema) {
     Schema.LogicalType fieldLogicalType = schema.getLogicalType();
     // Get values of logical types properly
     if (fieldLogicalType != null) {
       switch (fieldLogicalType) {
         case TIMESTAMP_MILLIS:
-          return extractUTCDateTime(TimeUnit.MILLISECONDS.toMicros((long) value));
+          return (out, value) -> out.writeQuotedAscii(
+            formatUTCDateTime(TimeUnit.MILLISECONDS.toMicros((long) value)));
         case TIMESTAMP_MICROS:
-          return extractUTCDateTime((Long) value);
+          return (out, value) -> out.writeQuotedAscii(formatUTCDateTime((Long) value));
         case TIME_MILLIS:
-          LocalTime time = LocalTime.ofNanoOfDay(TimeUnit.MILLISECONDS.toNanos(((Integer) value)));
-          return time;
+          return (out, value) -> out.writeQuotedAscii(
+            LocalTime.ofNanoOfDay(TimeUnit.MILLISECONDS.toNanos((Integer) value)).toString());
         case TIME_MICROS:
-          LocalTime localTime = LocalTime.ofNanoOfDay(TimeUnit.MICROSECONDS.toNanos((Long) value));
-          return localTime;
+          return (out, value) -> out.writeQuotedAscii(
+            LocalTime.ofNanoOfDay(TimeUnit.MICROSECONDS.toNanos((Long) value)).toString());
         case DATE:
-          SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN);
-          Date date = new Date(Integer.parseInt(value.toString()) * TimeUnit.DAYS.toMillis(1));
-          return dateFormat.format(date);
+          return (out, value) -> {
+            int days = value instanceof Number ? ((Number) value).intValue() : Integer.parseInt(value.toString());
+            out.writeQuotedAscii(DATE_FORMATTER.format(LocalDate.ofEpochDay(days)));
+          };
         case DATETIME:
-          SimpleDateFormat dateTimeFormat = new SimpleDateFormat(DATE_TIME_PATTERN);
-          Date dateTime;
-          try {
-            dateTime = dateTimeFormat.parse(value.toString());
-          } catch (ParseException exception) {
-            LOG.error("Cannot parse the value {} to dateTime", value);
-            throw new UnexpectedFormatException(
-              String.format("Datetime field with value '%s' is not in ISO-8601 format.", schema.getDisplayName(),
-                            fieldName), exception);
-          }
-          return dateTimeFormat.format(dateTime);
+          return (out, value) -> out.writeQuotedAscii(
+            DATE_TIME_FORMATTER.format(parseDateTime(fieldName, value.toString())));
         case DECIMAL:
-          return new BigDecimal(new BigInteger((byte[]) value), schema.getScale())
-            .setScale(ServiceNowConstants.DEFAULT_SCALE, RoundingMode.HALF_UP);
+          int scale = schema.getScale();
+          return (out, value) -> out.writeQuotedAscii(
+            new BigDecimal(new BigInteger((byte[]) value), scale)
+              .setScale(ServiceNowConstants.DEFAULT_SCALE, RoundingMode.HALF_UP).toString());
         default:
-          throw new UnexpectedFormatException(String.format("Field '%s' is of unsupported type '%s'", fieldName,
-                                                            fieldLogicalType.name().toLowerCase()));
+          return (out, value) -> {
+            throw new UnexpectedFormatException(String.format("Field '%s' is of unsupported type '%s'", fieldName,
+                                                              fieldLogicalType.name().toLowerCase()));
+          };
       }
     }
 
@@ -109,32 +173,289 @@ public class ServiceNowTransformer {
     switch (fieldType) {
       case DOUBLE:
       case FLOAT:
-        return BigDecimal.valueOf((Double) value).setScale(ServiceNowConstants.DEFAULT_SCALE, RoundingMode.HALF_UP);
-      case BOOLEAN:
+        return (out, value) -> out.writeQuotedScaledDouble(((Number) value).doubleValue());
       case INT:
       case LONG:
+        return (out, value) -> out.writeQuotedLong(((Number) value).longValue());
+      case BOOLEAN:
       case STRING:
-        return value;
+        return (out, value) -> out.writeQuotedString(value.toString());
       default:
-        throw new UnexpectedFormatException(String.format("Field '%s' is of unsupported type '%s'", fieldName,
-                                                          fieldLogicalType.name().toLowerCase()));
+        return (out, value) -> {
+          throw new UnexpectedFormatException(String.format("Field '%s' is of unsupported type '%s'", fieldName,
+                                                            fieldType.name().toLowerCase()));
+        };
+    }
+  }
+
+  private static LocalDateTime parseDateTime(String fieldName, String value) {
+    try {
+      return LocalDateTime.parse(value);
+    } catch (DateTimeParseException exception) {
+      LOG.error("Cannot parse the value {} to dateTime", value);
+      throw new UnexpectedFormatException(
+        String.format("Datetime field '%s' with value '%s' is not in ISO-8601 format.", fieldName, value),
+        exception);
     }
   }
 
   /**
-   * Get UTC zoned date and time represented by the specified timestamp in microseconds.
+   * Formats the UTC date and time represented by the specified timestamp in microseconds.
    *
    * @param micros timestamp in microseconds
-   * @return UTC {@link ZonedDateTime} corresponding to the specified timestamp
+   * @return the UTC date and time, in the format of {@link java.time.ZonedDateTime#toString()}
+   */
+  private static String formatUTCDateTime(long micros) {
+    long seconds = Math.floorDiv(micros, MICROS_PER_SECOND);
+    int nanos = (int) TimeUnit.MICROSECONDS.toNanos(Math.floorMod(micros, MICROS_PER_SECOND));
+    return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC).toString() + UTC_ZONE_SUFFIX;
+  }
+
+  /**
+   * Writes a non-null value as a JSON string.
+   */
+  private interface ValueWriter {
+    void write(JsonBuffer out, Object value);
+  }
+
+  /**
+   * Writes a field of the record, with its name encoded once.
    */
-  private ZonedDateTime extractUTCDateTime(long micros) {
-    ZoneId zoneId = ZoneId.ofOffset("UTC", ZoneOffset.UTC);
-    long mod = TimeUnit.MICROSECONDS.convert(1, TimeUnit.SECONDS);
-    int fraction = (int) (micros % mod);
-    long tsInSeconds = TimeUnit.MICROSECONDS.toSeconds(micros);
-    // create an Instant with time in seconds and fraction which will be stored as nano seconds.
-    Instant instant = Instant.ofEpochSecond(tsInSeconds, TimeUnit.MICROSECONDS.toNanos(fraction));
-    return ZonedDateTime.ofInstant(instant, zoneId);
+  private static final class FieldWriter {
+    private final String fieldName;
+    private final byte[] name;
+    private final boolean sysId;
+    private final ValueWriter valueWriter;
+
+    private FieldWriter(String fieldName, ValueWriter valueWriter) {
+      JsonBuffer nameBuffer = new JsonBuffer(fieldName.length() + 3);
+      nameBuffer.writeQuotedString(fieldName);
+      nameBuffer.write(':');
+      this.fieldName = fieldName;
+      this.name = nameBuffer.toByteArray();
+      this.sysId = ServiceNowConstants.SYS_ID.equals(fieldName);
+      this.valueWriter = valueWriter;
+    }
+  }
+
+  /**
+   * A growable byte buffer that writes JSON strings as UTF-8, escaping them the same way as Gson.
+   */
+  private static final class JsonBuffer {
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+    private static final int MAX_DOUBLE_DIGITS = 32;
+
+    private final char[] digits = new char[MAX_DOUBLE_DIGITS];
+    private byte[] bytes;
+    private int size;
+
+    private JsonBuffer(int capacity) {
+      this.bytes = new byte[capacity];
+    }
+
+    private void reset() {
+      size = 0;
+    }
+
+    private byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+
+    private void ensureCapacity(int extra) {
+      if (size + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+      }
+    }
+
+    private void write(int b) {
+      ensureCapacity(1);
+      bytes[size++] = (byte) b;
+    }
+
+    private void write(byte[] data) {
+      ensureCapacity(data.length);
+      System.arraycopy(data, 0, bytes, size, data.length);
+      size += data.length;
+    }
+
+    /**
+     * Writes a string that is known to contain only ASCII characters that need no escaping.
+     */
+    private void writeQuotedAscii(String value) {
+      ensureCapacity(value.length() + 2);
+      bytes[size++] = '"';
+      for (int i = 0; i < value.length(); i++) {
+        bytes[size++] = (byte) value.charAt(i);
+      }
+      bytes[size++] = '"';
+    }
+
+    private void writeQuotedLong(long value) {
+      if (value == Long.MIN_VALUE) {
+        writeQuotedAscii(Long.toString(value));
+        return;
+      }
+      ensureCapacity(22);
+      bytes[size++] = '"';
+      if (value < 0) {
+        bytes[size++] = '-';
+        value = -value;
+      }
+      int start = size;
+      do {
+        bytes[size++] = (byte) ('0' + value % 10);
+        value /= 10;
+      } while (value != 0);
+      for (int i = start, j = size - 1; i < j; i++, j--) {
+        byte digit = bytes[i];
+        bytes[i] = bytes[j];
+        bytes[j] = digit;
+      }
+      bytes[size++] = '"';
+    }
+
+    /**
+     * Writes the value rounded half up to {@link ServiceNowConstants#DEFAULT_SCALE} decimals, the same way as
+     * {@link BigDecimal#valueOf(double)}, working on the digits of {@link Double#toString(double)} when it is not in
+     * scientific notation.
+     */
+    private void writeQuotedScaledDouble(double value) {
+      String text = Double.toString(value);
+      int point = text.indexOf('.');
+      if (point < 0 || text.indexOf('E') >= 0 || point + ServiceNowConstants.DEFAULT_SCALE > MAX_DOUBLE_DIGITS) {
+        writeQuotedAscii(BigDecimal.valueOf(value)
+                           .setScale(ServiceNowConstants.DEFAULT_SCALE, RoundingMode.HALF_UP).toString());
+        return;
+      }
+
+      boolean negative = text.charAt(0) == '-';
+      int start = negative ? 1 : 0;
+      int count = 0;
+      for (int i = start; i < point; i++) {
+        digits[count++] = text.charAt(i);
+      }
+      int integerDigits = count;
+      for (int i = 0; i < ServiceNowConstants.DEFAULT_SCALE; i++) {
+        int index = point + 1 + i;
+        digits[count++] = index < text.length() ? text.charAt(index) : '0';
+      }
+
+      boolean carry = false;
+      int roundingIndex = point + 1 + ServiceNowConstants.DEFAULT_SCALE;
+      if (roundingIndex < text.length() && text.charAt(roundingIndex) >= '5') {
+        int i = count - 1;
+        while (i >= 0 && digits[i] == '9') {
+          digits[i--] = '0';
+        }
+        if (i >= 0) {
+          digits[i]++;
+        } else {
+          carry = true;
+        }
+      }
+
+      boolean zero = !carry;
+      for (int i = 0; i < count && zero; i++) {
+        zero = digits[i] == '0';
+      }
+
+      ensureCapacity(count + 5);
+      bytes[size++] = '"';
+      if (negative && !zero) {
+        bytes[size++] = '-';
+      }
+      if (carry) {
+        bytes[size++] = '1';
+      }
+      for (int i = 0; i < count; i++) {
+        if (i == integerDigits) {
+          bytes[size++] = '.';
+        }
+        bytes[size++] = (byte) digits[i];
+      }
+      bytes[size++] = '"';
+    }
+
+    private void writeQuotedString(String value) {
+      int length = value.length();
+      // Each char takes at most 6 bytes, as an escape or as part of a UTF-8 sequence
+      ensureCapacity(length * 6 + 2);
+      bytes[size++] = '"';
+      for (int i = 0; i < length; i++) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+          writeAsciiChar(c);
+        } else if (c < 0x800) {
+          bytes[size++] = (byte) (0xc0 | (c >> 6));
+          bytes[size++] = (byte) (0x80 | (c & 0x3f));
+        } else if (c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR) {
+          // Escaped by Gson since JavaScript treats them as line terminators
+          writeUnicodeEscape(c);
+        } else if (Character.isSurrogate(c)) {
+          if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(++i));
+            bytes[size++] = (byte) (0xf0 | (codePoint >> 18));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            bytes[size++] = (byte) (0x80 | (codePoint & 0x3f));
+          } else {
+            // Unpaired surrogates are replaced like String.getBytes does
+            bytes[size++] = '?';
+          }
+        } else {
+          bytes[size++] = (byte) (0xe0 | (c >> 12));
+          bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+          bytes[size++] = (byte) (0x80 | (c & 0x3f));
+        }
+      }
+      bytes[size++] = '"';
+    }
+
+    private void writeAsciiChar(char c) {
+      switch (c) {
+        case '"':
+        case '\\':
+          bytes[size++] = '\\';
+          bytes[size++] = (byte) c;
+          return;
+        case '\t':
+          bytes[size++] = '\\';
+          bytes[size++] = 't';
+          return;
+        case '\b':
+          bytes[size++] = '\\';
+          bytes[size++] = 'b';
+          return;
+        case '\n':
+          bytes[size++] = '\\';
+          bytes[size++] = 'n';
+          return;
+        case '\r':
+          bytes[size++] = '\\';
+          bytes[size++] = 'r';
+          return;
+        case '\f':
+          bytes[size++] = '\\';
+          bytes[size++] = 'f';
+          return;
+        default:
+          if (c < 0x20) {
+            writeUnicodeEscape(c);
+          } else {
+            bytes[size++] = (byte) c;
+          }
+      }
+    }
+
+    private void writeUnicodeEscape(char c) {
+      bytes[size++] = '\\';
+      bytes[size++] = 'u';
+      bytes[size++] = HEX_DIGITS[(c >> 12) & 0xf];
+      bytes[size++] = HEX_DIGITS[(c >> 8) & 0xf];
+      bytes[size++] = HEX_DIGITS[(c >> 4) & 0xf];
+      bytes[size++] = HEX_DIGITS[c & 0xf];
+    }
   }
-  
 }
@@ -16,30 +16,52 @@
 
 package io.cdap.plugin.servicenow.source;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableDataDecoder;
+import io.cdap.plugin.servicenow.restapi.RestAPIRateLimiter;
+import io.cdap.plugin.servicenow.restapi.RestAPIRetryBudget;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowStageMetrics;
+import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
+import io.cdap.plugin.servicenow.util.SourceValueType;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapreduce.RecordReader;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Base Record reader class that provides a basic structure for Derived Record Reader classes.
  */
 public abstract class ServiceNowBaseRecordReader extends RecordReader<NullWritable, StructuredRecord> {
+  private static final float MAX_PARTIAL_PROGRESS = 0.99f;
+
   protected ServiceNowInputSplit split;
   protected int pos;
   protected List<Schema.Field> tableFields;
   protected Schema schema;
+  protected ServiceNowTableDataDecoder decoder;
+  protected ServiceNowPagePrefetcher pages;
+  protected ServiceNowStageMetrics metrics;
 
   protected String tableName;
   protected String tableNameField;
-  protected List<Map<String, String>> results;
-  protected Iterator<Map<String, String>> iterator;
-  protected Map<String, String> row;
+  protected List<StructuredRecord> results;
+  protected Iterator<StructuredRecord> iterator;
+  protected StructuredRecord row;
+  protected int pageOffset;
+  protected String filter;
+  protected Map<String, String> constantFields = Collections.emptyMap();
+  private String auditQuery;
+  private ServiceNowTableDataDecoder auditDecoder;
 
   public ServiceNowBaseRecordReader() {
   }
@@ -52,10 +74,155 @@ public abstract class ServiceNowBaseRecordReader extends RecordReader<NullWritab
 
   public abstract StructuredRecord getCurrentValue() throws IOException;
 
+  /**
+   * Returns the share of the estimated records of the split that have been read. The estimate may be off, so the
+   * progress stays below 1 until the split is read completely.
+   */
   public float getProgress() throws IOException, InterruptedException {
-    return pos / (float) split.getLength();
+    if (results == null && iterator != null) {
+      return 1.0f;
+    }
+    long expected = split == null ? 0 : split.getEstimatedRecordCount();
+    if (expected <= 0) {
+      return 0.0f;
+    }
+    return Math.min(pos / (float) expected, MAX_PARTIAL_PROGRESS);
   }
 
   public void close() throws IOException {
+    if (pages != null) {
+      pages.close();
+    }
+    if (metrics != null) {
+      metrics.report();
+    }
+  }
+
+  /**
+   * Moves to the next page of the split. Once all pages have been read, results is null and the iterator is empty.
+   */
+  @VisibleForTesting
+  void fetchData() throws IOException {
+    results = pages.nextPage();
+    iterator = results == null ? Collections.emptyIterator() : results.iterator();
+    if (metrics != null) {
+      metrics.report();
+    }
+  }
+
+  /**
+   * Moves to the next page of the split in offset pagination and returns the number of records to request from
+   * {@link #pageOffset}. A split is read page by page until a page is not full or the range of the split is read.
+   *
+   * @param previousPage the page read before, or null for the first page
+   * @param pageSize     the number of records per page
+   * @return the number of records of the next page, or 0 if the split has no more pages
+   */
+  protected int nextPageLimit(@Nullable List<StructuredRecord> previousPage, int pageSize) {
+    if (previousPage == null) {
+      pageOffset = split.getOffset();
+    } else if (previousPage.size() < pageSize) {
+      return 0;
+    } else {
+      pageOffset += pageSize;
+    }
+    long remaining = split.getOffset() + (long) split.getLimit() - pageOffset;
+    return (int) Math.max(0, Math.min(pageSize, remaining));
+  }
+
+  /**
+   * Limits the client reading the split to the number of requests per second given to the split and to the share of
+   * the retry budget of the split, and makes it send slow page requests again if hedging is enabled.
+   */
+  protected void configureClient(ServiceNowTableAPIClientImpl restApi, ServiceNowBaseSourceConfig pluginConf) {
+    restApi.setRetryBudget(new RestAPIRetryBudget(split.getSplitCount()));
+    if (split.getRequestsPerSecond() > 0) {
+      restApi.setRateLimiter(new RestAPIRateLimiter(split.getRequestsPerSecond()));
+    }
+    restApi.setHedgePercentile(pluginConf.getHedgePercentile());
+  }
+
+  /**
+   * Makes the client count its transfers in the metrics of the stage named by the job configuration, which are
+   * reported once per page.
+   *
+   * @param restApi   the client reading the split
+   * @param jobConfig the job configuration
+   */
+  protected void countMetrics(ServiceNowTableAPIClientImpl restApi, ServiceNowJobConfiguration jobConfig) {
+    metrics = new ServiceNowStageMetrics(jobConfig.getStageKey());
+    restApi.setMetrics(metrics);
+  }
+
+  /**
+   * Returns the schema that the input format stored in the job configuration for the table of the split, and sets
+   * the filter of the records to read in the table.
+   *
+   * @param jobConfig  the job configuration
+   * @param tableName  the table name
+   * @param pluginConf the source configuration
+   */
+  protected Schema initializeTable(ServiceNowJobConfiguration jobConfig, String tableName,
+                                   ServiceNowBaseSourceConfig pluginConf) {
+    ServiceNowTableInfo tableInfo = jobConfig.getTableInfo(tableName);
+    if (tableInfo == null) {
+      throw new IllegalStateException(String.format("No schema found in the job configuration for table '%s'.",
+                                                    tableName));
+    }
+    filter = Strings.emptyToNull(ServiceNowTableAPIClientImpl.joinQuery(pluginConf.getFilter(),
+                                                                        tableInfo.getFilter()));
+    if (split.isDeletedRecords()) {
+      String deletesRange = jobConfig.getDeletesRange();
+      if (deletesRange == null) {
+        throw new IllegalStateException(String.format("No range of deleted records found for table '%s'.",
+                                                      tableName));
+      }
+      auditQuery = ServiceNowDeletedRecords.getAuditQuery(tableName, deletesRange);
+      auditDecoder = ServiceNowDeletedRecords.createAuditDecoder();
+    }
+    return tableInfo.getSchema();
+  }
+
+  /**
+   * Fetches the next page of the audits of the records deleted from the table, and returns their tombstones.
+   *
+   * @param restApi      the client used to send the request
+   * @param previousPage the page read before, or null for the first page
+   * @param pageSize     the number of records per page
+   * @return the tombstones, or null if all deleted records have been read
+   */
+  @Nullable
+  protected List<StructuredRecord> fetchDeletedRecords(ServiceNowTableAPIClientImpl restApi,
+                                                       @Nullable List<StructuredRecord> previousPage, int pageSize)
+    throws IOException {
+    int limit = nextPageLimit(previousPage, pageSize);
+    if (limit == 0) {
+      return null;
+    }
+    List<StructuredRecord> audits = restApi.fetchTableRecordsRetryableMode(
+      ServiceNowConstants.AUDIT_DELETE_TABLE, SourceValueType.SHOW_ACTUAL_VALUE, null, null, auditQuery, pageOffset,
+      limit, auditDecoder);
+    return ServiceNowDeletedRecords.createTombstones(schema, audits, constantFields);
+  }
+
+  /**
+   * Returns the sys_id after which the next page starts in keyset pagination: the lower bound of the split before
+   * the first page, and the sys_id of the last record of the previous page afterwards.
+   *
+   * @param previousPage the page read before, or null for the first page
+   */
+  protected String getNextPageAfterKey(@Nullable List<StructuredRecord> previousPage) {
+    if (previousPage == null) {
+      return split.getLowerKey();
+    }
+
+    Object key = previousPage.isEmpty() ? null : previousPage.get(previousPage.size() - 1)
+      .get(ServiceNowConstants.SYS_ID);
+    if (key == null) {
+      throw new IllegalStateException(
+        String.format("Keyset pagination requires the '%s' field in table '%s'.", ServiceNowConstants.SYS_ID,
+                      tableName));
+    }
+    return key.toString();
   }
 }
@@ -24,13 +24,19 @@ import io.cdap.cdap.api.annotation.Name;
 import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.plugin.common.IdUtils;
 import io.cdap.plugin.servicenow.ServiceNowBaseConfig;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
 
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.SourcePaginationMode;
 import io.cdap.plugin.servicenow.util.SourceValueType;
 import io.cdap.plugin.servicenow.util.Util;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.annotation.Nullable;
 
 /**
@@ -61,6 +67,13 @@ public class ServiceNowBaseSourceConfig extends ServiceNowBaseConfig {
   @Description("The End date to be used to filter the data. The format must be 'yyyy-MM-dd'.")
   private String endDate;
 
+  @Name(ServiceNowConstants.PROPERTY_FILTER)
+  @Macro
+  @Nullable
+  @Description("An encoded query the records must match, for example `active=true^priority<=2`. It is combined with "
+    + "the date range, and the filtering is done by ServiceNow.")
+  private String filter;
+
   @Name(ServiceNowConstants.PROPERTY_TABLE_NAME_FIELD)
   @Macro
   @Nullable
@@ -75,6 +88,69 @@ public class ServiceNowBaseSourceConfig extends ServiceNowBaseConfig {
   @Description("The number of records to fetch from ServiceNow. Default is 5000.")
   private Integer pageSize;
 
+  @Name(ServiceNowConstants.PROPERTY_PAGINATION_MODE)
+  @Macro
+  @Nullable
+  @Description("How pages of a table are requested. "
+          + "`Offset` - pages are requested by row offset. "
+          + "`Keyset` - rows are read in sys_id order and each page starts after the last sys_id of the previous "
+          + "page, which keeps requests fast on large tables and is not affected by rows added during the run. "
+          + "Default is Offset.")
+  private String paginationMode;
+
+  @Name(ServiceNowConstants.PROPERTY_FIELDS)
+  @Macro
+  @Nullable
+  @Description("Comma-separated list of the fields to read. Only these columns are requested from ServiceNow, "
+          + "which makes responses smaller for wide tables. Fields that a table does not have are ignored. "
+          + "All fields are read if empty.")
+  private String fields;
+
+  @Name(ServiceNowConstants.PROPERTY_PREFETCH_PAGES)
+  @Macro
+  @Nullable
+  @Description("The number of pages fetched in the background while the records of the current page are read. "
+          + "0 fetches each page only when it is needed. Default is 1.")
+  private Integer prefetchPages;
+
+  @Name(ServiceNowConstants.PROPERTY_HEDGE_PERCENTILE)
+  @Macro
+  @Nullable
+  @Description("The latency percentile, between 50 and 99, after which a page request still running is sent again. "
+          + "The response that arrives first is read and the other request is cancelled. Pages are never requested "
+          + "twice if not set.")
+  private Integer hedgePercentile;
+
+  @Name(ServiceNowConstants.PROPERTY_ROWS_PER_SPLIT)
+  @Macro
+  @Nullable
+  @Description("The number of records each split reads, rounded up to whole pages. A split reads its records page "
+          + "by page. Cannot be used with Splits Per Table. By default each split reads a single page.")
+  private Integer rowsPerSplit;
+
+  @Name(ServiceNowConstants.PROPERTY_SPLITS_PER_TABLE)
+  @Macro
+  @Nullable
+  @Description("The number of splits each table is read with. Tables with fewer pages get one split per page. "
+          + "Cannot be used with Rows Per Split. By default each split reads a single page.")
+  private Integer splitsPerTable;
+
+  @Name(ServiceNowConstants.PROPERTY_INCREMENTAL_STATE_PATH)
+  @Macro
+  @Nullable
+  @Description("Path of the file keeping, for each table, the update time and sys_id of the last record read, on a "
+          + "local, HDFS or GCS file system. When set, each run only reads the records updated since the previous "
+          + "successful run, and updates the file once it succeeds.")
+  private String incrementalStatePath;
+
+  @Name(ServiceNowConstants.PROPERTY_CAPTURE_DELETES)
+  @Macro
+  @Nullable
+  @Description("Whether the records deleted since the previous run are read as tombstones, from the sys_audit_delete "
+          + "table. Every record gets an 'operation' field, set to 'upsert' or 'delete'. Tombstones only hold the "
+          + "sys_id of the deleted record. Requires an incremental state path.")
+  private Boolean captureDeletes;
+
   /**
    * Constructor for ServiceNowSourceConfig object.
    *
@@ -116,6 +192,20 @@ public class ServiceNowBaseSourceConfig extends ServiceNowBaseConfig {
     return endDate;
   }
 
+  @Nullable
+  public String getFilter() {
+    return filter;
+  }
+
+  /**
+   * Returns the encoded query selecting the records to read, combining the date range and the filter.
+   *
+   * @return The encoded query, empty if all records are read
+   */
+  public String getQuery() {
+    return ServiceNowTableAPIClientImpl.generateQuery(startDate, endDate, filter);
+  }
+
   public String getTableNameField() {
     return Strings.isNullOrEmpty(tableNameField) ? ServiceNowConstants.TABLE_NAME_FIELD_DEFAULT : tableNameField;
   }
@@ -124,6 +214,66 @@ public class ServiceNowBaseSourceConfig extends ServiceNowBaseConfig {
     return pageSize == null ? ServiceNowConstants.PAGE_SIZE : pageSize;
   }
 
+  public Integer getPrefetchPages() {
+    return prefetchPages == null ? ServiceNowConstants.PREFETCH_PAGES : prefetchPages;
+  }
+
+  /**
+   * @return the latency percentile after which a page request is sent again, 0 if pages are never requested twice
+   */
+  public int getHedgePercentile() {
+    return hedgePercentile == null ? 0 : hedgePercentile;
+  }
+
+  @Nullable
+  public Integer getRowsPerSplit() {
+    return rowsPerSplit;
+  }
+
+  @Nullable
+  public Integer getSplitsPerTable() {
+    return splitsPerTable;
+  }
+
+  @Nullable
+  public String getIncrementalStatePath() {
+    return Strings.isNullOrEmpty(incrementalStatePath) ? null : incrementalStatePath;
+  }
+
+  public boolean isCaptureDeletes() {
+    return Boolean.TRUE.equals(captureDeletes);
+  }
+
+  /**
+   * Returns the pagination mode chosen.
+   *
+   * @return An instance of SourcePaginationMode, or null if the value is not supported
+   */
+  @Nullable
+  public SourcePaginationMode getPaginationMode() {
+    if (Strings.isNullOrEmpty(paginationMode)) {
+      return SourcePaginationMode.OFFSET;
+    }
+    return SourcePaginationMode.fromValue(paginationMode).orElse(null);
+  }
+
+  /**
+   * Returns the fields to read, in the order they were given. The sys_id field is added in keyset pagination mode,
+   * since pages are addressed by it, and when deleted records are captured, since tombstones are identified by it.
+   *
+   * @return the field names, or an empty set if all fields are read
+   */
+  public Set<String> getFields() {
+    Set<String> fieldNames = Strings.isNullOrEmpty(fields) ? new LinkedHashSet<>() : Stream.of(fields.split(","))
+      .map(String::trim)
+      .filter(name -> !name.isEmpty())
+      .collect(Collectors.toCollection(LinkedHashSet::new));
+    if (!fieldNames.isEmpty() && (getPaginationMode() == SourcePaginationMode.KEYSET || isCaptureDeletes())) {
+      fieldNames.add(ServiceNowConstants.SYS_ID);
+    }
+    return fieldNames;
+  }
+
   /**
    * Validates {@link ServiceNowBaseSourceConfig} instance.
    */
@@ -133,6 +283,11 @@ public class ServiceNowBaseSourceConfig extends ServiceNowBaseConfig {
     validateValueType(collector);
     validateDateRange(collector);
     validatePageSize(collector);
+    validatePaginationMode(collector);
+    validatePrefetchPages(collector);
+    validateHedgePercentile(collector);
+    validateSplitSize(collector);
+    validateCaptureDeletes(collector);
   }
 
   /**
@@ -233,6 +388,68 @@ public class ServiceNowBaseSourceConfig extends ServiceNowBaseConfig {
     }
   }
 
+  private void validatePrefetchPages(FailureCollector collector) {
+    if (containsMacro(ServiceNowConstants.PROPERTY_PREFETCH_PAGES)) {
+      return;
+    }
+
+    if (getPrefetchPages() < 0 || getPrefetchPages() > ServiceNowConstants.MAX_PREFETCH_PAGES) {
+      collector.addFailure("Invalid number of prefetched pages.", "Prefetched pages must be between 0 and " +
+          ServiceNowConstants.MAX_PREFETCH_PAGES + ".")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_PREFETCH_PAGES);
+    }
+  }
+
+  private void validateHedgePercentile(FailureCollector collector) {
+    if (containsMacro(ServiceNowConstants.PROPERTY_HEDGE_PERCENTILE) || hedgePercentile == null) {
+      return;
+    }
+
+    if (hedgePercentile < ServiceNowConstants.MIN_HEDGE_PERCENTILE
+      || hedgePercentile > ServiceNowConstants.MAX_HEDGE_PERCENTILE) {
+      collector.addFailure("Invalid hedge percentile.", "Hedge percentile must be between " +
+          ServiceNowConstants.MIN_HEDGE_PERCENTILE + " and " + ServiceNowConstants.MAX_HEDGE_PERCENTILE + ".")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_HEDGE_PERCENTILE);
+    }
+  }
+
+  private void validateCaptureDeletes(FailureCollector collector) {
+    if (isCaptureDeletes() && !containsMacro(ServiceNowConstants.PROPERTY_INCREMENTAL_STATE_PATH)
+      && getIncrementalStatePath() == null) {
+      collector.addFailure("Deleted records can only be captured in incremental extraction.",
+                           "Set the incremental state path.")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_CAPTURE_DELETES)
+        .withConfigProperty(ServiceNowConstants.PROPERTY_INCREMENTAL_STATE_PATH);
+    }
+  }
+
+  private void validateSplitSize(FailureCollector collector) {
+    if (!containsMacro(ServiceNowConstants.PROPERTY_ROWS_PER_SPLIT) && rowsPerSplit != null && rowsPerSplit <= 0) {
+      collector.addFailure("Invalid number of rows per split.", "Rows per split must be greater than 0.")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_ROWS_PER_SPLIT);
+    }
+    if (!containsMacro(ServiceNowConstants.PROPERTY_SPLITS_PER_TABLE) && splitsPerTable != null
+      && splitsPerTable <= 0) {
+      collector.addFailure("Invalid number of splits per table.", "Splits per table must be greater than 0.")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_SPLITS_PER_TABLE);
+    }
+    if (rowsPerSplit != null && splitsPerTable != null) {
+      collector.addFailure("Rows per split and splits per table cannot both be set.", "Set only one of them.")
+        .withConfigProperty(ServiceNowConstants.PROPERTY_ROWS_PER_SPLIT)
+        .withConfigProperty(ServiceNowConstants.PROPERTY_SPLITS_PER_TABLE);
+    }
+  }
+
+  private void validatePaginationMode(FailureCollector collector) {
+    if (containsMacro(ServiceNowConstants.PROPERTY_PAGINATION_MODE) || getPaginationMode() != null) {
+      return;
+    }
+
+    collector.addFailure("Unsupported pagination mode: " + paginationMode,
+                         String.format("Supported pagination modes are: %s", SourcePaginationMode.getSupportedModes()))
+      .withConfigProperty(ServiceNowConstants.PROPERTY_PAGINATION_MODE);
+  }
+
   public boolean shouldGetSchema() {
     return !containsMacro(ServiceNowConstants.PROPERTY_QUERY_MODE)
       && !containsMacro(ServiceNowConstants.PROPERTY_APPLICATION_NAME)
@@ -240,7 +457,8 @@ public class ServiceNowBaseSourceConfig extends ServiceNowBaseConfig {
       && !containsMacro(ServiceNowConstants.PROPERTY_TABLE_NAME)
       && !containsMacro(ServiceNowConstants.PROPERTY_TABLE_NAMES)
       && shouldConnect()
-      && !containsMacro(ServiceNowConstants.PROPERTY_VALUE_TYPE);
+      && !containsMacro(ServiceNowConstants.PROPERTY_VALUE_TYPE)
+      && !containsMacro(ServiceNowConstants.PROPERTY_FIELDS);
   }
 
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.source;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableDataDecoder;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the tombstones of the records deleted from a table, from their audits in the sys_audit_delete table.
+ * A tombstone has the schema of the records of the table, with only the sys_id of the deleted record set and the
+ * operation field set to delete.
+ */
+public class ServiceNowDeletedRecords {
+  private static final Schema AUDIT_SCHEMA = Schema.recordOf(
+    ServiceNowConstants.AUDIT_DELETE_TABLE,
+    Schema.Field.of(ServiceNowConstants.AUDIT_DELETE_DOCUMENT_KEY, Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+  private static final String ORDER_BY = "ORDERBY";
+
+  private ServiceNowDeletedRecords() {
+  }
+
+  /**
+   * Returns the schema with the operation field added.
+   *
+   * @param schema the schema of the records of a table
+   * @throws IllegalArgumentException if the table already has a field with the name of the operation field
+   */
+  public static Schema addOperationField(Schema schema) {
+    List<Schema.Field> fields = new ArrayList<>(schema.getFields());
+    addOperationField(schema.getRecordName(), fields);
+    return Schema.recordOf(schema.getRecordName(), fields);
+  }
+
+  /**
+   * Adds the operation field to the fields of the records of a table.
+   *
+   * @param tableName the table name
+   * @param fields    the fields of the records of the table
+   * @throws IllegalArgumentException if the table already has a field with the name of the operation field
+   */
+  public static void addOperationField(String tableName, List<Schema.Field> fields) {
+    if (fields.stream().anyMatch(field -> field.getName().equals(ServiceNowConstants.OPERATION_FIELD))) {
+      throw new IllegalArgumentException(String.format(
+        "Deleted records cannot be captured from table '%s', since it already has a field named '%s'.", tableName,
+        ServiceNowConstants.OPERATION_FIELD));
+    }
+    fields.add(Schema.Field.of(ServiceNowConstants.OPERATION_FIELD, Schema.of(Schema.Type.STRING)));
+  }
+
+  /**
+   * Returns the decoder of the audits of deleted records, which only reads the sys_id of the deleted record.
+   */
+  public static ServiceNowTableDataDecoder createAuditDecoder() {
+    return new ServiceNowTableDataDecoder(AUDIT_SCHEMA, Collections.emptyMap(), true);
+  }
+
+  /**
+   * Generates the encoded query selecting the audits of the records deleted from the table, in a stable order so
+   * that they can be read page by page.
+   *
+   * @param tableName    the table name
+   * @param deletesRange the encoded query selecting the audits of the deleted records to read
+   * @return the encoded query on the audit table
+   */
+  public static String getAuditQuery(String tableName, String deletesRange) {
+    return ServiceNowTableAPIClientImpl.joinQuery(
+      String.format("%s=%s", ServiceNowConstants.AUDIT_DELETE_TABLE_NAME, tableName), deletesRange,
+      ORDER_BY + ServiceNowConstants.SYS_CREATED_ON, ORDER_BY + ServiceNowConstants.SYS_ID);
+  }
+
+  /**
+   * Creates the tombstone of the record deleted according to the audit.
+   *
+   * @param schema         the schema of the records of the table, with the operation field
+   * @param audit          the audit of the deleted record
+   * @param constantFields the fields set in every record of the table, such as the table name, by field name
+   * @return the tombstone
+   */
+  public static StructuredRecord createTombstone(Schema schema, StructuredRecord audit,
+                                                 Map<String, String> constantFields) {
+    StructuredRecord.Builder builder = StructuredRecord.builder(schema);
+    String sysId = audit.get(ServiceNowConstants.AUDIT_DELETE_DOCUMENT_KEY);
+    if (schema.getField(ServiceNowConstants.SYS_ID) != null) {
+      builder.set(ServiceNowConstants.SYS_ID, sysId);
+    }
+    constantFields.forEach(builder::set);
+    builder.set(ServiceNowConstants.OPERATION_FIELD, ServiceNowConstants.OPERATION_DELETE);
+    return builder.build();
+  }
+
+  /**
+   * Creates the tombstones of the records deleted according to the audits.
+   */
+  static List<StructuredRecord> createTombstones(Schema schema, List<StructuredRecord> audits,
+                                                 Map<String, String> constantFields) {
+    List<StructuredRecord> tombstones = new ArrayList<>(audits.size());
+    for (StructuredRecord audit : audits) {
+      tombstones.add(createTombstone(schema, audit, constantFields));
+    }
+    return tombstones;
+  }
+}
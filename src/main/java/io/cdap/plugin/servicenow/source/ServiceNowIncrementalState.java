@@ -0,0 +1,237 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.source;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowHighWaterMark;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.oltu.oauth2.common.exception.OAuthProblemException;
+import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * The high-water marks of incremental extraction, kept as a JSON file on any Hadoop file system (local, HDFS, GCS).
+ * A run reads the records of each table updated after the mark saved by the previous run, up to a few seconds
+ * before the last record updated when the run starts. The new marks are only saved once the run succeeds, so that a
+ * failed run is read again by the next one.
+ */
+public class ServiceNowIncrementalState {
+  private static final Logger LOG = LoggerFactory.getLogger(ServiceNowIncrementalState.class);
+  private static final Gson GSON = new Gson();
+  private static final Type MARKS_TYPE = new TypeToken<Map<String, ServiceNowHighWaterMark>>() {
+  }.getType();
+  // not a valid table name, so that it never clashes with the mark of a table
+  private static final String DELETES_KEY = "@" + ServiceNowConstants.AUDIT_DELETE_TABLE;
+
+  private final Path path;
+  private final Map<String, ServiceNowHighWaterMark> previousMarks;
+  private final Map<String, ServiceNowHighWaterMark> currentMarks = new HashMap<>();
+
+  private ServiceNowIncrementalState(Path path, Map<String, ServiceNowHighWaterMark> previousMarks) {
+    this.path = path;
+    this.previousMarks = previousMarks;
+  }
+
+  /**
+   * Loads the marks saved by the previous run at the state path of the source.
+   *
+   * @param pluginConf the source configuration
+   * @param conf       the configuration of the file system
+   * @return the state of incremental extraction, or null if the source reads all records
+   */
+  @Nullable
+  public static ServiceNowIncrementalState load(ServiceNowBaseSourceConfig pluginConf, Configuration conf) {
+    String path = pluginConf.getIncrementalStatePath();
+    if (path == null) {
+      return null;
+    }
+    try {
+      return load(path, conf);
+    } catch (IOException e) {
+      throw new RuntimeException(String.format("Error in reading the incremental state from %s due to reason: %s",
+                                               path, e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Loads the marks saved by the previous run. If a run failed while replacing the file, the marks are loaded from
+   * the backup of the file. No mark is loaded if neither exists yet.
+   *
+   * @param path the path of the state file
+   * @param conf the configuration of the file system
+   * @return the state of incremental extraction
+   */
+  public static ServiceNowIncrementalState load(String path, Configuration conf) throws IOException {
+    Path statePath = new Path(path);
+    FileSystem fs = statePath.getFileSystem(conf);
+    Path readPath = statePath;
+    if (!fs.exists(readPath)) {
+      readPath = getBackupPath(statePath);
+      if (!fs.exists(readPath)) {
+        LOG.info("No incremental state found at {}, all records are read", path);
+        return new ServiceNowIncrementalState(statePath, new HashMap<>());
+      }
+      LOG.warn("No incremental state found at {}, reading its backup {}", path, readPath);
+    }
+
+    try (Reader reader = new InputStreamReader(fs.open(readPath), StandardCharsets.UTF_8)) {
+      Map<String, ServiceNowHighWaterMark> marks = GSON.fromJson(reader, MARKS_TYPE);
+      return new ServiceNowIncrementalState(statePath, marks == null ? new HashMap<>() : marks);
+    }
+  }
+
+  private static Path getBackupPath(Path path) {
+    return new Path(path.getParent(), "." + path.getName() + ".bak");
+  }
+
+  /**
+   * Fetches the mark of the last updated record of each table, which bounds the records read by this run once moved
+   * back by the lookback, so that the latest updates are read by the next run.
+   *
+   * @param restApi    the client used to send the requests
+   * @param tableNames the ServiceNow table names
+   * @param query      the encoded query selecting the records to read, null to consider all records
+   */
+  public void fetchCurrentMarks(ServiceNowTableAPIClientImpl restApi, Collection<String> tableNames,
+                                @Nullable String query) {
+    Map<String, ServiceNowHighWaterMark> marks = ServiceNowTableMetadataFetcher.fetchHighWaterMarks(
+      restApi, tableNames, query, ServiceNowConstants.MAX_METADATA_REQUESTS);
+    marks.forEach((tableName, mark) -> currentMarks.put(
+      tableName, mark.lookBack(ServiceNowConstants.INCREMENTAL_LOOKBACK_SECONDS)));
+  }
+
+  /**
+   * Fetches the mark of the last audit of a deleted record of the tables, which bounds the deleted records read by
+   * this run. The audits of all tables share a single mark.
+   *
+   * @param restApi    the client used to send the request
+   * @param tableNames the ServiceNow table names
+   */
+  public void fetchCurrentDeletesMark(ServiceNowTableAPIClientImpl restApi, Collection<String> tableNames) {
+    try {
+      ServiceNowHighWaterMark mark = restApi.fetchHighWaterMark(
+        ServiceNowConstants.AUDIT_DELETE_TABLE, ServiceNowConstants.SYS_CREATED_ON, getAuditQuery(tableNames),
+        restApi.getAccessToken());
+      // without any audit yet, the next run reads the audits from the first one
+      currentMarks.put(DELETES_KEY, mark == null ? ServiceNowHighWaterMark.EARLIEST :
+        mark.lookBack(ServiceNowConstants.INCREMENTAL_LOOKBACK_SECONDS));
+    } catch (OAuthProblemException | OAuthSystemException | IOException e) {
+      throw new RuntimeException(String.format("Error in fetching the deleted records mark due to reason: %s",
+                                               e.getMessage()), e);
+    }
+  }
+
+  /**
+   * Returns the encoded query selecting the audits of the records deleted since the previous run. The first run
+   * with deleted record capture only sets the mark, since it does not know what the previous run read.
+   *
+   * @return the encoded query on the audit table, or null if there are no deleted records to read
+   */
+  @Nullable
+  public String getDeletesRange() {
+    ServiceNowHighWaterMark previousMark = previousMarks.get(DELETES_KEY);
+    ServiceNowHighWaterMark currentMark = currentMarks.get(DELETES_KEY);
+    if (previousMark == null || currentMark == null || currentMark.compareTo(previousMark) <= 0) {
+      return null;
+    }
+    return ServiceNowHighWaterMark.getRangeQuery(ServiceNowConstants.SYS_CREATED_ON, previousMark, currentMark);
+  }
+
+  private static String getAuditQuery(Collection<String> tableNames) {
+    return String.format("%sIN%s", ServiceNowConstants.AUDIT_DELETE_TABLE_NAME, String.join(",", tableNames));
+  }
+
+  /**
+   * Returns the encoded query selecting the records of the table to read in this run.
+   *
+   * @param tableName the table name
+   * @return the encoded query, null if all records of the table are read
+   */
+  @Nullable
+  public String getFilter(String tableName) {
+    ServiceNowHighWaterMark previousMark = previousMarks.get(tableName);
+    ServiceNowHighWaterMark currentMark = currentMarks.get(tableName);
+    if (previousMark != null && (currentMark == null || currentMark.compareTo(previousMark) < 0)) {
+      // the records read before were deleted, or no longer match the query: there is nothing new to read
+      currentMark = previousMark;
+    }
+    String filter = ServiceNowHighWaterMark.getRangeQuery(previousMark, currentMark);
+    return filter.isEmpty() ? null : filter;
+  }
+
+  /**
+   * Returns the encoded query selecting the records to read in this run, for each of the tables.
+   */
+  public Map<String, String> getFilters(Collection<String> tableNames) {
+    Map<String, String> filters = new HashMap<>();
+    for (String tableName : tableNames) {
+      filters.put(tableName, getFilter(tableName));
+    }
+    return filters;
+  }
+
+  /**
+   * Saves the marks reached by this run, keeping the marks of the tables that were not read. The new marks are fully
+   * written to a temporary file first, and the previous file is kept as a backup until the temporary file is renamed
+   * in its place. Since the file system may not replace a file atomically, a run failing between the two renames
+   * leaves only the backup, which the next run loads instead.
+   *
+   * @param conf the configuration of the file system
+   */
+  public void save(Configuration conf) throws IOException {
+    Map<String, ServiceNowHighWaterMark> marks = new TreeMap<>(previousMarks);
+    currentMarks.forEach((tableName, mark) -> marks.merge(tableName, mark, ServiceNowHighWaterMark::max));
+
+    FileSystem fs = path.getFileSystem(conf);
+    Path tempPath = new Path(path.getParent(), "." + path.getName() + ".tmp");
+    try (Writer writer = new OutputStreamWriter(fs.create(tempPath, true), StandardCharsets.UTF_8)) {
+      GSON.toJson(marks, MARKS_TYPE, writer);
+    }
+    if (fs.exists(path)) {
+      Path backupPath = getBackupPath(path);
+      if (fs.exists(backupPath) && !fs.delete(backupPath, false)) {
+        throw new IOException(String.format("Unable to delete the incremental state backup at %s", backupPath));
+      }
+      if (!fs.rename(path, backupPath)) {
+        throw new IOException(String.format("Unable to back up the incremental state at %s", path));
+      }
+    }
+    if (!fs.rename(tempPath, path)) {
+      throw new IOException(String.format("Unable to write the incremental state to %s", path));
+    }
+    LOG.info("Saved the incremental state of {} tables to {}", marks.size(), path);
+  }
+}
@@ -17,7 +17,6 @@
 package io.cdap.plugin.servicenow.source;
 
 import io.cdap.cdap.api.data.format.StructuredRecord;
-import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
 import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
@@ -31,8 +30,6 @@ import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
-import org.apache.oltu.oauth2.common.exception.OAuthProblemException;
-import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +37,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /**
@@ -58,13 +57,43 @@ public class ServiceNowInputFormat extends InputFormat<NullWritable, StructuredR
    */
   public static List<ServiceNowTableInfo> setInput(Configuration jobConfig, SourceQueryMode mode,
                                                    ServiceNowSourceConfig conf) {
+    return setInput(jobConfig, mode, conf, null);
+  }
+
+  /**
+   * Updates the jobConfig with the ServiceNow table information, which will then be read in getSplit() function.
+   *
+   * @param jobConfig        the job configuration
+   * @param mode             the query mode
+   * @param conf             the database conf
+   * @param incrementalState the marks bounding the records read in each table, null to read all records
+   * @return Collection of ServiceNowTableInfo containing table and schema.
+   */
+  public static List<ServiceNowTableInfo> setInput(Configuration jobConfig, SourceQueryMode mode,
+                                                   ServiceNowSourceConfig conf,
+                                                   @Nullable ServiceNowIncrementalState incrementalState) {
     ServiceNowJobConfiguration jobConf = new ServiceNowJobConfiguration(jobConfig);
     jobConf.setPluginConfiguration(conf);
 
+    List<String> tableNames = getTableNames(mode, conf.getTableName(), conf.getApplicationName());
+    ServiceNowTableAPIClientImpl restApi = new ServiceNowTableAPIClientImpl(conf.getConnection());
+    Map<String, String> filters = Collections.emptyMap();
+    if (incrementalState != null) {
+      incrementalState.fetchCurrentMarks(restApi, tableNames, conf.getQuery());
+      filters = incrementalState.getFilters(tableNames);
+      if (conf.isCaptureDeletes()) {
+        incrementalState.fetchCurrentDeletesMark(restApi, tableNames);
+        jobConf.setDeletesRange(incrementalState.getDeletesRange());
+      }
+    }
+
     // Depending on conf value fetch the list of fields for each table and create schema object
     // return the schema object for each table as ServiceNowTableInfo
-    List<ServiceNowTableInfo> tableInfos = fetchTableInfo(mode, conf.getConnection(), conf.getTableName(),
-                                                          conf.getApplicationName());
+    List<ServiceNowTableInfo> tableInfos = ServiceNowTableMetadataFetcher.fetch(
+        restApi, tableNames, conf.getQuery(), filters, ServiceNowConstants.MAX_METADATA_REQUESTS)
+      .stream()
+      .map(tableInfo -> tableInfo.selectFields(conf.getFields()))
+      .collect(Collectors.toList());
     jobConf.setTableInfos(tableInfos);
 
     return tableInfos;
@@ -73,42 +102,34 @@ public class ServiceNowInputFormat extends InputFormat<NullWritable, StructuredR
   public static List<ServiceNowTableInfo> fetchTableInfo(SourceQueryMode mode, ServiceNowConnectorConfig conf,
                                                          @Nullable String tableName,
                                                          @Nullable SourceApplication application) {
-    // When mode = Table, fetch details from the table name provided in plugin config
-    if (mode == SourceQueryMode.TABLE) {
-      ServiceNowTableInfo tableInfo = getTableMetaData(tableName, conf);
-      return (tableInfo == null) ? Collections.emptyList() : Collections.singletonList(tableInfo);
-    }
-
-    // When mode = Reporting, get the list of tables for application name provided in plugin config
-    // and then fetch details from each of the tables.
-    List<ServiceNowTableInfo> tableInfos = new ArrayList<>();
-
-    List<String> tableNames = application.getTableNames();
-    for (String table : tableNames) {
-      ServiceNowTableInfo tableInfo = getTableMetaData(table, conf);
-      if (tableInfo == null) {
-        continue;
-      }
-      tableInfos.add(tableInfo);
-    }
-
-    return tableInfos;
+    return fetchTableInfo(mode, conf, tableName, application, null);
   }
 
-  private static ServiceNowTableInfo getTableMetaData(String tableName, ServiceNowConnectorConfig conf) {
-    // Call API to fetch first record from the table
+  /**
+   * Fetches the schema of the tables to read, and the number of records matching the query in each of them.
+   *
+   * @param mode        the query mode
+   * @param conf        the connection configuration
+   * @param tableName   the table name, used in table mode
+   * @param application the application whose tables are read, used in reporting mode
+   * @param query       the encoded query selecting the records to read, null to read all records
+   * @return the information of each table
+   */
+  public static List<ServiceNowTableInfo> fetchTableInfo(SourceQueryMode mode, ServiceNowConnectorConfig conf,
+                                                         @Nullable String tableName,
+                                                         @Nullable SourceApplication application,
+                                                         @Nullable String query) {
     ServiceNowTableAPIClientImpl restApi = new ServiceNowTableAPIClientImpl(conf);
+    return ServiceNowTableMetadataFetcher.fetch(restApi, getTableNames(mode, tableName, application), query,
+                                                ServiceNowConstants.MAX_METADATA_REQUESTS);
+  }
 
-    Schema schema = null;
-    int recordCount = 0;
-    try {
-      schema = restApi.fetchTableSchema(tableName);
-      recordCount = restApi.getTableRecordCount(tableName);
-    } catch (OAuthProblemException | OAuthSystemException | IOException e) {
-      throw new RuntimeException(String.format("Error in fetching table metadata due to reason: %s", e.getMessage()),
-                                 e);
-    }
-    return new ServiceNowTableInfo(tableName, schema, recordCount);
+  private static List<String> getTableNames(SourceQueryMode mode, @Nullable String tableName,
+                                            @Nullable SourceApplication application) {
+    // When mode = Table, fetch details from the table name provided in plugin config.
+    // When mode = Reporting, get the list of tables for application name provided in plugin config
+    // and then fetch details from each of the tables.
+    return mode == SourceQueryMode.TABLE ? Collections.singletonList(tableName) : application.getTableNames();
   }
 
   @Override
@@ -124,32 +145,14 @@ public class ServiceNowInputFormat extends InputFormat<NullWritable, StructuredR
    */
   public List<InputSplit> getSplits(Configuration configuration) {
     ServiceNowJobConfiguration jobConfig = new ServiceNowJobConfiguration(configuration);
-    int pageSize = jobConfig.getPluginConf().getPageSize().intValue();
-    List<ServiceNowTableInfo> tableInfos = jobConfig.getTableInfos();
-    List<InputSplit> resultSplits = new ArrayList<>();
-
-    for (ServiceNowTableInfo tableInfo : tableInfos) {
-      String tableName = tableInfo.getTableName();
-      int totalRecords = tableInfo.getRecordCount();
-      if (totalRecords <= pageSize) {
-        // add single split for table and continue
-        resultSplits.add(new ServiceNowInputSplit(tableName, 0));
-        continue;
-      }
-
-      int pages = (tableInfo.getRecordCount() / pageSize);
-      if (tableInfo.getRecordCount() % pageSize > 0) {
-        pages++;
-      }
-      int offset = 0;
-
-      for (int page = 1; page <= pages; page++) {
-        resultSplits.add(new ServiceNowInputSplit(tableName, offset));
-        offset += pageSize;
-      }
-    }
-
-    return resultSplits;
+    ServiceNowSourceConfig pluginConf = jobConfig.getPluginConf();
+    List<InputSplit> splits = new ArrayList<>(ServiceNowSplitPlanner.createSplits(jobConfig.getTableInfos(),
+                                                                                  pluginConf));
+    splits.addAll(ServiceNowSplitPlanner.createDeletedRecordsSplits(jobConfig.getTableInfos(),
+                                                                    jobConfig.getDeletesRange()));
+    ServiceNowSplitPlanner.setRequestsPerSecond(splits, pluginConf);
+    ServiceNowSplitPlanner.setSplitCount(splits);
+    return splits;
   }
 
   @Override
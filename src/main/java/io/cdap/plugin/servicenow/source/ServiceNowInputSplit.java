@@ -22,6 +22,7 @@ import org.apache.hadoop.mapreduce.InputSplit;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import javax.annotation.Nullable;
 
 /**
  * ServiceNow input split.
@@ -29,16 +30,67 @@ import java.io.IOException;
 public class ServiceNowInputSplit extends InputSplit implements Writable {
   private String tableName;
   private int offset;
+  private int limit = Integer.MAX_VALUE;
+  private String lowerKey;
+  private String upperKey;
+  private long estimatedRecordCount;
+  private long estimatedLength;
+  private boolean deletedRecords;
+  private double requestsPerSecond;
+  private int splitCount = 1;
 
   // used by mapreduce
   public ServiceNowInputSplit() {
   }
 
+  /**
+   * Creates a split covering the records from the given offset to the end of the table.
+   *
+   * @param tableName The ServiceNow table name
+   * @param offset    The offset of the first record
+   */
   public ServiceNowInputSplit(String tableName, int offset) {
     this.tableName = tableName;
     this.offset = offset;
   }
 
+  /**
+   * Creates a split covering the records in the range [offset, offset + limit), read page by page.
+   *
+   * @param tableName The ServiceNow table name
+   * @param offset    The offset of the first record
+   * @param limit     The maximum number of records to read
+   */
+  public ServiceNowInputSplit(String tableName, int offset, int limit) {
+    this.tableName = tableName;
+    this.offset = offset;
+    this.limit = limit;
+  }
+
+  /**
+   * Creates a split covering the records with a sys_id in the range (lowerKey, upperKey].
+   *
+   * @param tableName The ServiceNow table name
+   * @param lowerKey  The exclusive lower bound, null if the range starts at the first record
+   * @param upperKey  The inclusive upper bound, null if the range ends at the last record
+   */
+  public ServiceNowInputSplit(String tableName, @Nullable String lowerKey, @Nullable String upperKey) {
+    this.tableName = tableName;
+    this.lowerKey = lowerKey;
+    this.upperKey = upperKey;
+  }
+
+  /**
+   * Creates a split reading the records of the table deleted since the previous run, as tombstones.
+   *
+   * @param tableName The ServiceNow table name
+   */
+  public static ServiceNowInputSplit forDeletedRecords(String tableName) {
+    ServiceNowInputSplit split = new ServiceNowInputSplit(tableName, 0);
+    split.deletedRecords = true;
+    return split;
+  }
+
   public String getTableName() {
     return tableName;
   }
@@ -47,21 +99,113 @@ public class ServiceNowInputSplit extends InputSplit implements Writable {
     return offset;
   }
 
+  public int getLimit() {
+    return limit;
+  }
+
+  @Nullable
+  public String getLowerKey() {
+    return lowerKey;
+  }
+
+  @Nullable
+  public String getUpperKey() {
+    return upperKey;
+  }
+
+  /**
+   * @return whether the split reads the audits of deleted records instead of the records of the table
+   */
+  public boolean isDeletedRecords() {
+    return deletedRecords;
+  }
+
+  /**
+   * @return the estimated number of records of the split, 0 if unknown
+   */
+  public long getEstimatedRecordCount() {
+    return estimatedRecordCount;
+  }
+
+  /**
+   * Sets the estimated size of the split, used to schedule large splits first and to report the reading progress.
+   *
+   * @param recordCount the estimated number of records
+   * @param length      the estimated number of bytes
+   */
+  void setEstimate(long recordCount, long length) {
+    this.estimatedRecordCount = recordCount;
+    this.estimatedLength = length;
+  }
+
+  /**
+   * @return the number of requests per second the task reading the split may send, 0 if they are not limited
+   */
+  public double getRequestsPerSecond() {
+    return requestsPerSecond;
+  }
+
+  void setRequestsPerSecond(double requestsPerSecond) {
+    this.requestsPerSecond = requestsPerSecond;
+  }
+
+  /**
+   * @return the number of splits of the source, among which its retry budget is divided
+   */
+  public int getSplitCount() {
+    return splitCount;
+  }
+
+  void setSplitCount(int splitCount) {
+    this.splitCount = splitCount;
+  }
+
   @Override
   public void write(DataOutput dataOutput) throws IOException {
     dataOutput.writeUTF(this.tableName);
     dataOutput.writeInt(this.offset);
+    dataOutput.writeInt(this.limit);
+    writeNullableString(dataOutput, this.lowerKey);
+    writeNullableString(dataOutput, this.upperKey);
+    dataOutput.writeLong(this.estimatedRecordCount);
+    dataOutput.writeLong(this.estimatedLength);
+    dataOutput.writeBoolean(this.deletedRecords);
+    dataOutput.writeDouble(this.requestsPerSecond);
+    dataOutput.writeInt(this.splitCount);
   }
 
   @Override
   public void readFields(DataInput dataInput) throws IOException {
     this.tableName = dataInput.readUTF();
     this.offset = dataInput.readInt();
+    this.limit = dataInput.readInt();
+    this.lowerKey = readNullableString(dataInput);
+    this.upperKey = readNullableString(dataInput);
+    this.estimatedRecordCount = dataInput.readLong();
+    this.estimatedLength = dataInput.readLong();
+    this.deletedRecords = dataInput.readBoolean();
+    this.requestsPerSecond = dataInput.readDouble();
+    this.splitCount = dataInput.readInt();
+  }
+
+  private static void writeNullableString(DataOutput dataOutput, @Nullable String value) throws IOException {
+    dataOutput.writeBoolean(value != null);
+    if (value != null) {
+      dataOutput.writeUTF(value);
+    }
+  }
+
+  @Nullable
+  private static String readNullableString(DataInput dataInput) throws IOException {
+    return dataInput.readBoolean() ? dataInput.readUTF() : null;
   }
 
+  /**
+   * Returns the estimated number of bytes of the split, 0 if unknown.
+   */
   @Override
-  public long getLength() throws IOException, InterruptedException {
-    return 0;
+  public long getLength() {
+    return estimatedLength;
   }
 
   @Override
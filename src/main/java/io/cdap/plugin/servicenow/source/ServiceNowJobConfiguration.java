@@ -23,7 +23,10 @@ import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
 import org.apache.hadoop.conf.Configuration;
 
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /**
  * Allows to specify and access connection configuration properties of {@link Configuration}.
@@ -31,6 +34,9 @@ import java.util.List;
 public class ServiceNowJobConfiguration {
   private static final String PLUGIN_CONF_FIELD = "servicenow.plugin.conf";
   private static final String INFO_FIELD = "servicenow.table.info";
+  private static final String TABLE_NAMES_FIELD = "servicenow.table.names";
+  private static final String DELETES_RANGE_FIELD = "servicenow.deletes.range";
+  private static final String STAGE_KEY_FIELD = "servicenow.stage.key";
 
   private static final Type PLUGIN_CONF_TYPE = new TypeToken<ServiceNowSourceConfig>() {
   }.getType();
@@ -38,7 +44,7 @@ public class ServiceNowJobConfiguration {
   }.getType();
   private static final Type PLUGIN_SINK_CONF_TYPE = new TypeToken<ServiceNowSinkConfig>() {
   }.getType();
-  private static final Type INFO_TYPE = new TypeToken<List<ServiceNowTableInfo>>() {
+  private static final Type TABLE_NAMES_TYPE = new TypeToken<List<String>>() {
   }.getType();
 
   private static final Gson GSON = new Gson();
@@ -77,11 +83,78 @@ public class ServiceNowJobConfiguration {
   }
 
   public List<ServiceNowTableInfo> getTableInfos() {
-    return GSON.fromJson(getConf().get(INFO_FIELD), INFO_TYPE);
+    List<String> tableNames = GSON.fromJson(getConf().get(TABLE_NAMES_FIELD), TABLE_NAMES_TYPE);
+    if (tableNames == null) {
+      return Collections.emptyList();
+    }
+    return tableNames.stream().map(this::getTableInfo).collect(Collectors.toList());
   }
 
+  /**
+   * Returns the information of a single table, without deserializing the information of the other tables.
+   *
+   * @param tableName the table name
+   * @return the table information, or null if the table is not read by the job
+   */
+  @Nullable
+  public ServiceNowTableInfo getTableInfo(String tableName) {
+    return GSON.fromJson(getConf().get(getTableInfoField(tableName)), ServiceNowTableInfo.class);
+  }
+
+  /**
+   * Stores the information of each table under its own key, so that a task can look up the table it reads.
+   *
+   * @param infoList the information of the tables read by the job
+   */
   public void setTableInfos(List<ServiceNowTableInfo> infoList) {
-    set(INFO_FIELD, GSON.toJson(infoList));
+    List<String> tableNames = infoList.stream().map(ServiceNowTableInfo::getTableName).collect(Collectors.toList());
+    set(TABLE_NAMES_FIELD, GSON.toJson(tableNames));
+    for (ServiceNowTableInfo tableInfo : infoList) {
+      set(getTableInfoField(tableInfo.getTableName()), GSON.toJson(tableInfo));
+    }
+  }
+
+  /**
+   * Returns the encoded query selecting the audits of the deleted records to read as tombstones.
+   *
+   * @return the encoded query, or null if deleted records are not read
+   */
+  @Nullable
+  public String getDeletesRange() {
+    return getConf().get(DELETES_RANGE_FIELD);
+  }
+
+  /**
+   * @param deletesRange the encoded query selecting the audits of the deleted records to read, null to not read any
+   */
+  public void setDeletesRange(@Nullable String deletesRange) {
+    if (deletesRange == null) {
+      getConf().unset(DELETES_RANGE_FIELD);
+    } else {
+      set(DELETES_RANGE_FIELD, deletesRange);
+    }
+  }
+
+  /**
+   * Returns the key of the stage, under which the readers or writers count the metrics of the stage.
+   *
+   * @return the key of the stage, or null if the metrics are not counted
+   */
+  @Nullable
+  public String getStageKey() {
+    return getConf().get(STAGE_KEY_FIELD);
+  }
+
+  /**
+   * @param stageKey the key of the stage, as returned by
+   *                 {@link io.cdap.plugin.servicenow.util.ServiceNowStageMetrics#getStageKey}
+   */
+  public void setStageKey(String stageKey) {
+    set(STAGE_KEY_FIELD, stageKey);
+  }
+
+  private static String getTableInfoField(String tableName) {
+    return INFO_FIELD + "." + tableName;
   }
 
   private void set(String key, String value) {
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.source;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.oltu.oauth2.common.exception.OAuthProblemException;
+import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a table into sys_id ranges holding about the same number of records, for keyset pagination.
+ * The key distribution is sampled by counting the records whose sys_id starts with each hex digit, and boundaries
+ * are interpolated within those buckets.
+ */
+public class ServiceNowKeyRangeSplitter {
+  private static final String KEY_PREFIX_TEMPLATE = "%sSTARTSWITH%s";
+  private static final int KEY_LENGTH = 32;
+  private static final int KEY_RADIX = 16;
+  private static final BigInteger BUCKET_WIDTH = BigInteger.valueOf(KEY_RADIX).pow(KEY_LENGTH - 1);
+
+  private ServiceNowKeyRangeSplitter() {
+  }
+
+  /**
+   * Creates splits that cover all records of the table, each holding a sys_id range.
+   *
+   * @param restApi   the client used to sample the key distribution
+   * @param tableName the ServiceNow table name
+   * @param query     the encoded query selecting the records to read, empty to read all records
+   * @param numSplits the number of splits wanted
+   * @return the splits, in key order
+   */
+  public static List<InputSplit> createSplits(ServiceNowTableAPIClientImpl restApi, String tableName, String query,
+                                              int numSplits) {
+    if (numSplits <= 1) {
+      return Collections.singletonList(new ServiceNowInputSplit(tableName, null, null));
+    }
+
+    long[] prefixCounts = new long[KEY_RADIX];
+    try {
+      String accessToken = restApi.getAccessToken();
+      for (int digit = 0; digit < KEY_RADIX; digit++) {
+        String prefixQuery = String.format(KEY_PREFIX_TEMPLATE, ServiceNowConstants.SYS_ID,
+                                           Character.forDigit(digit, KEY_RADIX));
+        prefixCounts[digit] = restApi.getTableRecordCount(
+          tableName, ServiceNowTableAPIClientImpl.joinQuery(query, prefixQuery), accessToken);
+      }
+    } catch (OAuthProblemException | OAuthSystemException | IOException e) {
+      throw new RuntimeException(String.format("Error in sampling keys of table %s due to reason: %s", tableName,
+                                               e.getMessage()), e);
+    }
+
+    List<InputSplit> splits = new ArrayList<>();
+    String lowerKey = null;
+    for (String boundary : computeBoundaries(prefixCounts, numSplits)) {
+      splits.add(new ServiceNowInputSplit(tableName, lowerKey, boundary));
+      lowerKey = boundary;
+    }
+    splits.add(new ServiceNowInputSplit(tableName, lowerKey, null));
+    return splits;
+  }
+
+  /**
+   * Computes the keys that divide the records into ranges of about the same size, assuming keys are spread evenly
+   * within each bucket.
+   *
+   * @param prefixCounts number of records per leading hex digit of sys_id
+   * @param numSplits    the number of ranges wanted
+   * @return at most numSplits - 1 distinct boundaries in ascending order
+   */
+  @VisibleForTesting
+  static List<String> computeBoundaries(long[] prefixCounts, int numSplits) {
+    long total = 0;
+    for (long count : prefixCounts) {
+      total += count;
+    }
+
+    List<String> boundaries = new ArrayList<>();
+    if (total == 0) {
+      return boundaries;
+    }
+
+    int bucket = 0;
+    long recordsBeforeBucket = 0;
+    for (int split = 1; split < numSplits; split++) {
+      long target = (long) ((double) total * split / numSplits);
+      while (recordsBeforeBucket + prefixCounts[bucket] <= target) {
+        recordsBeforeBucket += prefixCounts[bucket];
+        bucket++;
+      }
+
+      BigInteger offset = BUCKET_WIDTH.multiply(BigInteger.valueOf(target - recordsBeforeBucket))
+        .divide(BigInteger.valueOf(prefixCounts[bucket]));
+      BigInteger key = BUCKET_WIDTH.multiply(BigInteger.valueOf(bucket)).add(offset);
+      String boundary = Strings.padStart(key.toString(KEY_RADIX), KEY_LENGTH, '0');
+      if (boundaries.isEmpty() || !boundaries.get(boundaries.size() - 1).equals(boundary)) {
+        boundaries.add(boundary);
+      }
+    }
+    return boundaries;
+  }
+}
@@ -18,9 +18,7 @@ package io.cdap.plugin.servicenow.source;
 
 import com.google.common.base.Strings;
 import io.cdap.cdap.api.data.format.StructuredRecord;
-import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
-import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
 import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
 import org.apache.hadoop.conf.Configuration;
@@ -30,8 +28,6 @@ import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
-import org.apache.oltu.oauth2.common.exception.OAuthProblemException;
-import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,9 +36,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 
 /**
  * ServiceNow input format.
@@ -60,50 +58,47 @@ public class ServiceNowMultiInputFormat extends InputFormat<NullWritable, Struct
    */
   public static Set<ServiceNowTableInfo> setInput(Configuration jobConfig,
                                                   ServiceNowMultiSourceConfig conf) {
+    return setInput(jobConfig, conf, null);
+  }
+
+  /**
+   * Updates the jobConfig with the ServiceNow table information, which will then be read in getSplit() function.
+   *
+   * @param jobConfig        the job configuration
+   * @param conf             the database conf
+   * @param incrementalState the marks bounding the records read in each table, null to read all records
+   * @return Collection of ServiceNowTableInfo containing table and schema.
+   */
+  public static Set<ServiceNowTableInfo> setInput(Configuration jobConfig, ServiceNowMultiSourceConfig conf,
+                                                  @Nullable ServiceNowIncrementalState incrementalState) {
     ServiceNowJobConfiguration jobConf = new ServiceNowJobConfiguration(jobConfig);
     jobConf.setMultiSourcePluginConfiguration(conf);
 
+    Set<String> tableNames = getList(conf.getTableNames());
+    ServiceNowTableAPIClientImpl restApi = new ServiceNowTableAPIClientImpl(conf.getConnection());
+    Map<String, String> filters = Collections.emptyMap();
+    if (incrementalState != null) {
+      incrementalState.fetchCurrentMarks(restApi, tableNames, conf.getQuery());
+      filters = incrementalState.getFilters(tableNames);
+      if (conf.isCaptureDeletes()) {
+        incrementalState.fetchCurrentDeletesMark(restApi, tableNames);
+        jobConf.setDeletesRange(incrementalState.getDeletesRange());
+      }
+    }
+
     // Depending on conf value fetch the list of fields for each table and create schema object
     // return the schema object for each table as ServiceNowTableInfo
-    Set<ServiceNowTableInfo> tableInfos = fetchTablesInfo(conf.getConnection(), conf.getTableNames());
+    Set<ServiceNowTableInfo> tableInfos = ServiceNowTableMetadataFetcher.fetch(
+        restApi, tableNames, conf.getQuery(), filters, ServiceNowConstants.MAX_METADATA_REQUESTS)
+      .stream()
+      .map(tableInfo -> tableInfo.selectFields(conf.getFields()))
+      .collect(Collectors.toCollection(LinkedHashSet::new));
 
     jobConf.setTableInfos(tableInfos.stream().collect(Collectors.toList()));
 
     return tableInfos;
   }
 
-  static Set<ServiceNowTableInfo> fetchTablesInfo(ServiceNowConnectorConfig conf, String tableNames) {
-
-    Set<ServiceNowTableInfo> tablesInfos = new LinkedHashSet<>();
-
-    Set<String> tableNameSet = getList(tableNames);
-    for (String table : tableNameSet) {
-      ServiceNowTableInfo tableInfo = getTableMetaData(table, conf);
-      if (tableInfo == null) {
-        continue;
-      }
-      tablesInfos.add(tableInfo);
-    }
-
-    return tablesInfos;
-  }
-
-  private static ServiceNowTableInfo getTableMetaData(String tableName, ServiceNowConnectorConfig conf) {
-    // Call API to fetch first record from the table
-    ServiceNowTableAPIClientImpl restApi = new ServiceNowTableAPIClientImpl(conf);
-
-    Schema schema;
-    int recordCount;
-    try {
-      schema = restApi.fetchTableSchema(tableName);
-      recordCount = restApi.getTableRecordCount(tableName);
-    } catch (OAuthProblemException | OAuthSystemException | IOException e) {
-      throw new RuntimeException(e);
-    }
-    LOG.debug("table {}, rows = {}", tableName, recordCount);
-    return new ServiceNowTableInfo(tableName, schema, recordCount);
-  }
-
   public static Set<String> getList(String value) {
     return Strings.isNullOrEmpty(value)
       ? Collections.emptySet()
@@ -116,27 +111,18 @@ public class ServiceNowMultiInputFormat extends InputFormat<NullWritable, Struct
   @Override
   public List<InputSplit> getSplits(JobContext jobContext) throws IOException, InterruptedException {
     ServiceNowJobConfiguration jobConfig = new ServiceNowJobConfiguration(jobContext.getConfiguration());
-    int pageSize = jobConfig.getPluginConf().getPageSize().intValue();
-    List<ServiceNowTableInfo> tableInfos = jobConfig.getTableInfos();
-    List<InputSplit> resultSplits = new ArrayList<>();
-
-    for (ServiceNowTableInfo tableInfo : tableInfos) {
-      String tableName = tableInfo.getTableName();
-      int totalRecords = tableInfo.getRecordCount();
-
-      int pages = (totalRecords / pageSize);
-      if (totalRecords % pageSize > 0) {
-        pages++;
-      }
-      int offset = 0;
-
-      for (int page = 1; page <= pages; page++) {
-        resultSplits.add(new ServiceNowInputSplit(tableName, offset));
-        offset += pageSize;
-      }
-    }
-
-    return resultSplits;
+    ServiceNowMultiSourceConfig pluginConf = jobConfig.getMultiSourcePluginConf();
+    // empty tables are not read
+    List<ServiceNowTableInfo> tableInfos = jobConfig.getTableInfos().stream()
+      .filter(tableInfo -> tableInfo.getRecordCount() > 0)
+      .collect(Collectors.toList());
+    List<InputSplit> splits = new ArrayList<>(ServiceNowSplitPlanner.createSplits(tableInfos, pluginConf));
+    // records may have been deleted from tables that are empty now
+    splits.addAll(ServiceNowSplitPlanner.createDeletedRecordsSplits(jobConfig.getTableInfos(),
+                                                                    jobConfig.getDeletesRange()));
+    ServiceNowSplitPlanner.setRequestsPerSecond(splits, pluginConf);
+    ServiceNowSplitPlanner.setSplitCount(splits);
+    return splits;
   }
 
   @Override
@@ -16,22 +16,23 @@
 
 package io.cdap.plugin.servicenow.source;
 
-import com.google.common.annotations.VisibleForTesting;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
-import io.cdap.plugin.servicenow.connector.ServiceNowRecordConverter;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableDataDecoder;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.SourcePaginationMode;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
-import org.apache.oltu.oauth2.common.exception.OAuthProblemException;
-import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Record reader that reads the entire contents of a ServiceNow table.
@@ -50,21 +51,28 @@ public class ServiceNowMultiRecordReader extends ServiceNowBaseRecordReader {
   public void initialize(InputSplit split, TaskAttemptContext context) {
     this.split = (ServiceNowInputSplit) split;
     this.pos = 0;
+    ServiceNowJobConfiguration jobConfig = new ServiceNowJobConfiguration(context.getConfiguration());
     restApi = new ServiceNowTableAPIClientImpl(multiSourcePluginConf.getConnection());
+    configureClient(restApi, multiSourcePluginConf);
+    countMetrics(restApi, jobConfig);
     tableName = ((ServiceNowInputSplit) split).getTableName();
     tableNameField = multiSourcePluginConf.getTableNameField();
-    fetchSchema(restApi);
+    pages = new ServiceNowPagePrefetcher(this::fetchPage, multiSourcePluginConf.getPrefetchPages());
+    initializeSchema(initializeTable(jobConfig, tableName, multiSourcePluginConf));
   }
 
   @Override
   public boolean nextKeyValue() throws IOException {
     try {
-      if (results == null) {
+      if (iterator == null) {
         fetchData();
       }
 
-      if (!iterator.hasNext()) {
-        return false;
+      while (!iterator.hasNext()) {
+        if (results == null) {
+          return false;
+        }
+        fetchData();
       }
 
       row = iterator.next();
@@ -78,43 +86,57 @@ public class ServiceNowMultiRecordReader extends ServiceNowBaseRecordReader {
 
   @Override
   public StructuredRecord getCurrentValue() throws IOException {
-    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(schema);
-    recordBuilder.set(tableNameField, tableName);
+    return row;
+  }
 
-    try {
-      for (Schema.Field field : tableFields) {
-        String fieldName = field.getName();
-        ServiceNowRecordConverter.convertToValue(fieldName, field.getSchema(), row,
-                                                 recordBuilder);
+  @Nullable
+  private List<StructuredRecord> fetchPage(@Nullable List<StructuredRecord> previousPage) throws IOException {
+    if (split.isDeletedRecords()) {
+      return fetchDeletedRecords(restApi, previousPage, multiSourcePluginConf.getPageSize());
+    }
+
+    if (multiSourcePluginConf.getPaginationMode() == SourcePaginationMode.KEYSET) {
+      // a key range is read until a page is not full
+      if (previousPage != null && previousPage.size() < multiSourcePluginConf.getPageSize()) {
+        return null;
       }
-    } catch (Exception e) {
-      throw new IOException("Error decoding row from table " + tableName, e);
+      return restApi.fetchTableRecordsAfterKeyRetryableMode(tableName, multiSourcePluginConf.getValueType(),
+                                                            multiSourcePluginConf.getStartDate(),
+                                                            multiSourcePluginConf.getEndDate(),
+                                                            filter,
+                                                            getNextPageAfterKey(previousPage), split.getUpperKey(),
+                                                            multiSourcePluginConf.getPageSize(), decoder);
     }
-    return recordBuilder.build();
-  }
 
-  @VisibleForTesting
-  void fetchData() throws IOException {
+    int limit = nextPageLimit(previousPage, multiSourcePluginConf.getPageSize());
+    if (limit == 0) {
+      return null;
+    }
     // Get the table data
-    results = restApi.fetchTableRecordsRetryableMode(tableName, multiSourcePluginConf.getValueType(),
-                                                     multiSourcePluginConf.getStartDate(),
-                                                     multiSourcePluginConf.getEndDate(), split.getOffset(),
-                                                     multiSourcePluginConf.getPageSize());
-
-    iterator = results.iterator();
+    return restApi.fetchTableRecordsRetryableMode(tableName, multiSourcePluginConf.getValueType(),
+                                                  multiSourcePluginConf.getStartDate(),
+                                                  multiSourcePluginConf.getEndDate(),
+                                                  filter, pageOffset, limit, decoder);
   }
 
-  private void fetchSchema(ServiceNowTableAPIClientImpl restApi) {
-    // Fetch the schema
-    try {
-      Schema tempSchema = restApi.fetchTableSchema(tableName);
-      tableFields = tempSchema.getFields();
-      List<Schema.Field> schemaFields = new ArrayList<>(tableFields);
-      schemaFields.add(Schema.Field.of(tableNameField, Schema.of(Schema.Type.STRING)));
-      schema = Schema.recordOf(tableName, schemaFields);
-    } catch (OAuthProblemException | OAuthSystemException | IOException e) {
-      throw new RuntimeException(e);
+  /**
+   * Initializes the output schema from the table schema, in which the input format already kept only the selected
+   * fields.
+   */
+  private void initializeSchema(Schema tableSchema) {
+    boolean selectedFields = !multiSourcePluginConf.getFields().isEmpty();
+    tableFields = tableSchema.getFields();
+    List<Schema.Field> schemaFields = new ArrayList<>(tableFields);
+    schemaFields.add(Schema.Field.of(tableNameField, Schema.of(Schema.Type.STRING)));
+    Map<String, String> constantFields = new HashMap<>();
+    constantFields.put(tableNameField, tableName);
+    if (multiSourcePluginConf.isCaptureDeletes()) {
+      ServiceNowDeletedRecords.addOperationField(tableName, schemaFields);
+      constantFields.put(ServiceNowConstants.OPERATION_FIELD, ServiceNowConstants.OPERATION_UPSERT);
     }
+    schema = Schema.recordOf(tableName, schemaFields);
+    this.constantFields = constantFields;
+    decoder = new ServiceNowTableDataDecoder(schema, constantFields, selectedFields);
   }
 
 }
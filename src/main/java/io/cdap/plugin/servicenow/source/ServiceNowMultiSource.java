@@ -28,17 +28,20 @@ import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
 import io.cdap.cdap.etl.api.StageConfigurer;
 import io.cdap.cdap.etl.api.action.SettableArguments;
+import io.cdap.cdap.etl.api.batch.BatchRuntimeContext;
 import io.cdap.cdap.etl.api.batch.BatchSource;
 import io.cdap.cdap.etl.api.batch.BatchSourceContext;
 import io.cdap.plugin.common.LineageRecorder;
 import io.cdap.plugin.common.SourceInputFormatProvider;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowStageMetrics;
 import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.NullWritable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
@@ -56,6 +59,8 @@ public class ServiceNowMultiSource extends BatchSource<NullWritable, StructuredR
   private static final Logger LOG = LoggerFactory.getLogger(ServiceNowMultiSource.class);
 
   private final ServiceNowMultiSourceConfig conf;
+  private ServiceNowIncrementalState incrementalState;
+  private String stageKey;
 
   public ServiceNowMultiSource(ServiceNowMultiSourceConfig conf) {
     this.conf = conf;
@@ -83,7 +88,9 @@ public class ServiceNowMultiSource extends BatchSource<NullWritable, StructuredR
     collector.getOrThrowException();
 
     Configuration hConf = new Configuration();
-    Collection<ServiceNowTableInfo> tables = ServiceNowMultiInputFormat.setInput(hConf, conf);
+    incrementalState = ServiceNowIncrementalState.load(conf, hConf);
+    Collection<ServiceNowTableInfo> tables = ServiceNowMultiInputFormat.setInput(hConf, conf, incrementalState);
+    new ServiceNowJobConfiguration(hConf).setStageKey(ServiceNowStageMetrics.getStageKey(context));
     SettableArguments arguments = context.getArguments();
     for (ServiceNowTableInfo tableInfo : tables) {
       arguments.set(ServiceNowConstants.TABLE_PREFIX + tableInfo.getTableName(), tableInfo.getSchema().toString());
@@ -94,6 +101,34 @@ public class ServiceNowMultiSource extends BatchSource<NullWritable, StructuredR
                               new SourceInputFormatProvider(ServiceNowMultiInputFormat.class, hConf)));
   }
 
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+    super.onRunFinish(succeeded, context);
+    if (succeeded && incrementalState != null) {
+      try {
+        incrementalState.save(new Configuration());
+      } catch (IOException e) {
+        throw new RuntimeException(String.format("Error in saving the incremental state due to reason: %s",
+                                                 e.getMessage()), e);
+      }
+    }
+  }
+
+  @Override
+  public void initialize(BatchRuntimeContext context) throws Exception {
+    super.initialize(context);
+    stageKey = ServiceNowStageMetrics.getStageKey(context);
+    ServiceNowStageMetrics.register(stageKey, context.getMetrics());
+  }
+
+  @Override
+  public void destroy() {
+    if (stageKey != null) {
+      ServiceNowStageMetrics.unregister(stageKey);
+    }
+    super.destroy();
+  }
+
   @Override
   public void transform(KeyValue<NullWritable, StructuredRecord> input, Emitter<StructuredRecord> emitter) {
     emitter.emit(input.getValue());
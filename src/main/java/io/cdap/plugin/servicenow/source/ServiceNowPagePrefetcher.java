@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.source;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the pages of a split one after the other. When pages are fetched ahead, a background thread downloads and
+ * decodes the following pages while the records of the current page are emitted, keeping at most the given number
+ * of complete pages waiting.
+ */
+public class ServiceNowPagePrefetcher implements Closeable {
+  private static final Page END = new Page(null, null);
+
+  private final PageFetcher fetcher;
+  private final BlockingQueue<Page> queue;
+  private ExecutorService executor;
+  private List<StructuredRecord> previousPage;
+  private boolean finished;
+
+  /**
+   * @param fetcher    fetches each page given the page before it
+   * @param pagesAhead the number of pages fetched ahead of the reader, 0 to fetch each page when it is needed
+   */
+  public ServiceNowPagePrefetcher(PageFetcher fetcher, int pagesAhead) {
+    this.fetcher = fetcher;
+    this.queue = pagesAhead > 0 ? new ArrayBlockingQueue<>(pagesAhead) : null;
+  }
+
+  /**
+   * Returns the next page, waiting for it to be fetched if needed.
+   *
+   * @return the records of the next page, or null if there are no more pages
+   */
+  @Nullable
+  public List<StructuredRecord> nextPage() throws IOException {
+    if (finished) {
+      return null;
+    }
+    if (queue == null) {
+      previousPage = fetcher.fetch(previousPage);
+      finished = previousPage == null;
+      return previousPage;
+    }
+
+    if (executor == null) {
+      executor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("servicenow-page-prefetch-%d").build());
+      executor.execute(this::fetchPages);
+    }
+
+    Page page;
+    try {
+      page = queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the next page");
+    }
+    if (page.error != null) {
+      finished = true;
+      if (page.error instanceof Error) {
+        throw (Error) page.error;
+      }
+      throw new IOException("Error in fetching the next page: " + page.error.getMessage(), page.error);
+    }
+    finished = page == END;
+    return page.records;
+  }
+
+  private void fetchPages() {
+    try {
+      Page page;
+      List<StructuredRecord> records = null;
+      do {
+        try {
+          records = fetcher.fetch(records);
+          page = records == null ? END : new Page(records, null);
+        } catch (Throwable t) {
+          // Errors end the fetching as well, so that the reader fails instead of waiting for a page forever
+          page = new Page(null, t);
+        }
+        queue.put(page);
+      } while (page.records != null);
+    } catch (InterruptedException e) {
+      // Closed while waiting for the reader to take a page
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void close() {
+    finished = true;
+    if (executor != null) {
+      executor.shutdownNow();
+      queue.clear();
+    }
+  }
+
+  /**
+   * Fetches a page of records.
+   */
+  public interface PageFetcher {
+
+    /**
+     * Fetches the page that follows the given one.
+     *
+     * @param previousPage the page read before, or null to fetch the first page
+     * @return the records of the page, or null if there are no more pages
+     */
+    @Nullable
+    List<StructuredRecord> fetch(@Nullable List<StructuredRecord> previousPage) throws IOException;
+  }
+
+  /**
+   * A fetched page, or the failure that ended the fetching.
+   */
+  private static final class Page {
+    private final List<StructuredRecord> records;
+    private final Throwable error;
+
+    private Page(@Nullable List<StructuredRecord> records, @Nullable Throwable error) {
+      this.records = records;
+      this.error = error;
+    }
+  }
+}
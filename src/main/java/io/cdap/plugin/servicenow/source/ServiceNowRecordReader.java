@@ -19,8 +19,9 @@ package io.cdap.plugin.servicenow.source;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
-import io.cdap.plugin.servicenow.connector.ServiceNowRecordConverter;
-import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableDataDecoder;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.SourcePaginationMode;
 import io.cdap.plugin.servicenow.util.SourceQueryMode;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -28,7 +29,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Record reader that reads the entire contents of a ServiceNow table.
@@ -46,7 +50,9 @@ public class ServiceNowRecordReader extends ServiceNowBaseRecordReader {
   @Override
   public void initialize(InputSplit split, TaskAttemptContext context) {
     initialize(split);
-    fetchAndInitializeSchema(new ServiceNowJobConfiguration(context.getConfiguration()).getTableInfos(), tableName);
+    ServiceNowJobConfiguration jobConfig = new ServiceNowJobConfiguration(context.getConfiguration());
+    countMetrics(restApi, jobConfig);
+    fetchAndInitializeSchema(jobConfig, tableName);
   }
 
   /**
@@ -64,12 +70,15 @@ public class ServiceNowRecordReader extends ServiceNowBaseRecordReader {
   @Override
   public boolean nextKeyValue() throws IOException {
     try {
-      if (results == null) {
+      if (iterator == null) {
         fetchData();
       }
 
-      if (!iterator.hasNext()) {
-        return false;
+      while (!iterator.hasNext()) {
+        if (results == null) {
+          return false;
+        }
+        fetchData();
       }
 
       row = iterator.next();
@@ -84,64 +93,76 @@ public class ServiceNowRecordReader extends ServiceNowBaseRecordReader {
 
   @Override
   public StructuredRecord getCurrentValue() throws IOException {
-    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(schema);
+    return row;
+  }
 
-    if (pluginConf.getQueryMode() == SourceQueryMode.REPORTING) {
-      recordBuilder.set(tableNameField, tableName);
+  @Nullable
+  private List<StructuredRecord> fetchPage(@Nullable List<StructuredRecord> previousPage) throws IOException {
+    if (split.isDeletedRecords()) {
+      return fetchDeletedRecords(restApi, previousPage, pluginConf.getPageSize());
     }
 
-    try {
-      for (Schema.Field field : tableFields) {
-        String fieldName = field.getName();
-        ServiceNowRecordConverter.convertToValue(fieldName, field.getSchema(), row, recordBuilder);
+    List<StructuredRecord> page;
+    if (pluginConf.getPaginationMode() == SourcePaginationMode.KEYSET) {
+      // a key range is read until a page is not full
+      if (previousPage != null && previousPage.size() < pluginConf.getPageSize()) {
+        return null;
       }
-    } catch (Exception e) {
-      LOG.error("Error decoding row from table " + tableName, e);
-      throw new IOException("Error decoding row from table " + tableName, e);
+      page = restApi.fetchTableRecordsAfterKeyRetryableMode(tableName, pluginConf.getValueType(),
+                                                            pluginConf.getStartDate(), pluginConf.getEndDate(),
+                                                            filter, getNextPageAfterKey(previousPage),
+                                                            split.getUpperKey(), pluginConf.getPageSize(), decoder);
+    } else {
+      int limit = nextPageLimit(previousPage, pluginConf.getPageSize());
+      if (limit == 0) {
+        return null;
+      }
+      // Get the table data
+      page = restApi.fetchTableRecordsRetryableMode(tableName, pluginConf.getValueType(), pluginConf.getStartDate(),
+                                                    pluginConf.getEndDate(), filter,
+                                                    pageOffset, limit, decoder);
     }
-    return recordBuilder.build();
-  }
-
-  private void fetchData() throws IOException {
-    // Get the table data
-    results = restApi.fetchTableRecordsRetryableMode(tableName, pluginConf.getValueType(), pluginConf.getStartDate(),
-                                                     pluginConf.getEndDate(), split.getOffset(),
-                                                     pluginConf.getPageSize());
-    LOG.debug("Results size={}", results.size());
-
-    iterator = results.iterator();
+    LOG.debug("Results size={}", page.size());
+    return page;
   }
 
   protected void initialize(InputSplit split) {
     this.split = (ServiceNowInputSplit) split;
     this.pos = 0;
+    this.filter = pluginConf.getFilter();
     restApi = new ServiceNowTableAPIClientImpl(pluginConf.getConnection());
+    configureClient(restApi, pluginConf);
     tableName = ((ServiceNowInputSplit) split).getTableName();
     tableNameField = pluginConf.getTableNameField();
+    pages = new ServiceNowPagePrefetcher(this::fetchPage, pluginConf.getPrefetchPages());
   }
 
   /**
-   * Fetches the schema of the given tableName from the tableInfos and initialize schema using it.
+   * Fetches the schema of the given tableName from the job configuration and initialize schema using it.
    *
-   * @param tableInfos List of TableInfo objects containing TableName, RecordCount and Schema.
+   * @param jobConfig Job configuration holding the TableInfo of each table.
    * @param tableName Table Name to initialize this reader for.
    */
-  private void fetchAndInitializeSchema(List<ServiceNowTableInfo> tableInfos, String tableName) {
-    Schema tempSchema = tableInfos.stream()
-        .filter((tableInfo) -> tableInfo.getTableName().equalsIgnoreCase(tableName))
-        .findFirst().get().getSchema();
-
-    initializeSchema(tableName, tempSchema);
+  private void fetchAndInitializeSchema(ServiceNowJobConfiguration jobConfig, String tableName) {
+    initializeSchema(tableName, initializeTable(jobConfig, tableName, pluginConf));
   }
 
   private void initializeSchema(String tableName, Schema schema) {
     tableFields = schema.getFields();
     List<Schema.Field> schemaFields = new ArrayList<>(tableFields);
+    Map<String, String> constantFields = new HashMap<>();
 
     if (pluginConf.getQueryMode() == SourceQueryMode.REPORTING) {
       schemaFields.add(Schema.Field.of(tableNameField, Schema.of(Schema.Type.STRING)));
+      constantFields.put(tableNameField, tableName);
+    }
+    if (pluginConf.isCaptureDeletes()) {
+      ServiceNowDeletedRecords.addOperationField(tableName, schemaFields);
+      constantFields.put(ServiceNowConstants.OPERATION_FIELD, ServiceNowConstants.OPERATION_UPSERT);
     }
 
     this.schema = Schema.recordOf(tableName, schemaFields);
+    this.constantFields = constantFields;
+    this.decoder = new ServiceNowTableDataDecoder(this.schema, constantFields, !pluginConf.getFields().isEmpty());
   }
 }
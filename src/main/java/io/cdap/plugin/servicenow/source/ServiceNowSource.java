@@ -30,12 +30,14 @@ import io.cdap.cdap.etl.api.FailureCollector;
 import io.cdap.cdap.etl.api.PipelineConfigurer;
 import io.cdap.cdap.etl.api.StageConfigurer;
 import io.cdap.cdap.etl.api.action.SettableArguments;
+import io.cdap.cdap.etl.api.batch.BatchRuntimeContext;
 import io.cdap.cdap.etl.api.batch.BatchSource;
 import io.cdap.cdap.etl.api.batch.BatchSourceContext;
 import io.cdap.cdap.etl.api.connector.Connector;
 import io.cdap.plugin.common.LineageRecorder;
 import io.cdap.plugin.common.SourceInputFormatProvider;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowStageMetrics;
 import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
 import io.cdap.plugin.servicenow.util.SourceQueryMode;
 import org.apache.hadoop.conf.Configuration;
@@ -43,6 +45,7 @@ import org.apache.hadoop.io.NullWritable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
@@ -61,6 +64,8 @@ public class ServiceNowSource extends BatchSource<NullWritable, StructuredRecord
   private static final Logger LOG = LoggerFactory.getLogger(ServiceNowSource.class);
 
   private final ServiceNowSourceConfig conf;
+  private ServiceNowIncrementalState incrementalState;
+  private String stageKey;
 
   public ServiceNowSource(ServiceNowSourceConfig conf) {
     this.conf = conf;
@@ -83,7 +88,10 @@ public class ServiceNowSource extends BatchSource<NullWritable, StructuredRecord
                                                                                  conf.getConnection(),
                                                                                  conf.getTableName(),
                                                                                  conf.getApplicationName());
-      stageConfigurer.setOutputSchema(tableInfo.stream().findFirst().get().getSchema());
+      ServiceNowTableInfo selectedTableInfo = tableInfo.stream().findFirst().get().selectFields(conf.getFields());
+      Schema schema = selectedTableInfo.getSchema();
+      stageConfigurer.setOutputSchema(conf.isCaptureDeletes()
+                                        ? ServiceNowDeletedRecords.addOperationField(schema) : schema);
     } else if (conf.getQueryMode() == SourceQueryMode.REPORTING) {
       stageConfigurer.setOutputSchema(null);
     }
@@ -98,7 +106,9 @@ public class ServiceNowSource extends BatchSource<NullWritable, StructuredRecord
     SourceQueryMode mode = conf.getQueryMode(collector);
 
     Configuration hConf = new Configuration();
-    Collection<ServiceNowTableInfo> tables = ServiceNowInputFormat.setInput(hConf, mode, conf);
+    incrementalState = ServiceNowIncrementalState.load(conf, hConf);
+    Collection<ServiceNowTableInfo> tables = ServiceNowInputFormat.setInput(hConf, mode, conf, incrementalState);
+    new ServiceNowJobConfiguration(hConf).setStageKey(ServiceNowStageMetrics.getStageKey(context));
     SettableArguments arguments = context.getArguments();
     for (ServiceNowTableInfo tableInfo : tables) {
       arguments.set(ServiceNowConstants.TABLE_PREFIX + tableInfo.getTableName(), tableInfo.getSchema().toString());
@@ -109,6 +119,34 @@ public class ServiceNowSource extends BatchSource<NullWritable, StructuredRecord
                               new SourceInputFormatProvider(ServiceNowInputFormat.class, hConf)));
   }
 
+  @Override
+  public void onRunFinish(boolean succeeded, BatchSourceContext context) {
+    super.onRunFinish(succeeded, context);
+    if (succeeded && incrementalState != null) {
+      try {
+        incrementalState.save(new Configuration());
+      } catch (IOException e) {
+        throw new RuntimeException(String.format("Error in saving the incremental state due to reason: %s",
+                                                 e.getMessage()), e);
+      }
+    }
+  }
+
+  @Override
+  public void initialize(BatchRuntimeContext context) throws Exception {
+    super.initialize(context);
+    stageKey = ServiceNowStageMetrics.getStageKey(context);
+    ServiceNowStageMetrics.register(stageKey, context.getMetrics());
+  }
+
+  @Override
+  public void destroy() {
+    if (stageKey != null) {
+      ServiceNowStageMetrics.unregister(stageKey);
+    }
+    super.destroy();
+  }
+
   @Override
   public void transform(KeyValue<NullWritable, StructuredRecord> input, Emitter<StructuredRecord> emitter) {
     emitter.emit(input.getValue());
@@ -0,0 +1,278 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.source;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
+import io.cdap.plugin.servicenow.util.SourcePaginationMode;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+/**
+ * Plans the splits of the tables read by a source. The split size is independent of the page size: each split holds
+ * a whole number of pages, which its reader requests one after the other.
+ * The size of each split is estimated from a sample of the records of its table, so that the largest splits are
+ * scheduled first and do not become the stragglers of the job.
+ */
+public class ServiceNowSplitPlanner {
+  private static final Logger LOG = LoggerFactory.getLogger(ServiceNowSplitPlanner.class);
+
+  private ServiceNowSplitPlanner() {
+  }
+
+  /**
+   * Creates the splits that read all records of the tables, largest estimated split first.
+   *
+   * @param tableInfos the tables to read
+   * @param pluginConf the source configuration
+   * @return the splits of all tables
+   */
+  public static List<InputSplit> createSplits(List<ServiceNowTableInfo> tableInfos,
+                                              ServiceNowBaseSourceConfig pluginConf) {
+    return createSplits(new ServiceNowTableAPIClientImpl(pluginConf.getConnection()), tableInfos, pluginConf);
+  }
+
+  @VisibleForTesting
+  static List<InputSplit> createSplits(ServiceNowTableAPIClientImpl restApi, List<ServiceNowTableInfo> tableInfos,
+                                       ServiceNowBaseSourceConfig pluginConf) {
+    Map<String, Long> recordSizes = estimateRecordSizes(restApi, tableInfos, pluginConf,
+                                                        ServiceNowConstants.MAX_METADATA_REQUESTS);
+    List<InputSplit> splits = new ArrayList<>();
+    for (ServiceNowTableInfo tableInfo : tableInfos) {
+      List<InputSplit> tableSplits = createSplits(restApi, tableInfo, pluginConf);
+      setEstimates(tableSplits, tableInfo.getRecordCount(), recordSizes.get(tableInfo.getTableName()),
+                   pluginConf.getPaginationMode());
+      splits.addAll(tableSplits);
+    }
+    // the sort is stable, so splits of the same size keep the order of their tables
+    splits.sort(Comparator.comparingLong((InputSplit split) -> ((ServiceNowInputSplit) split).getLength())
+                  .reversed());
+    return splits;
+  }
+
+  /**
+   * Creates the splits that read all records of the table.
+   *
+   * @param restApi    the client used to sample the keys of the table in keyset pagination
+   * @param tableInfo  the table to read
+   * @param pluginConf the source configuration
+   * @return the splits of the table
+   */
+  static List<InputSplit> createSplits(ServiceNowTableAPIClientImpl restApi, ServiceNowTableInfo tableInfo,
+                                       ServiceNowBaseSourceConfig pluginConf) {
+    String tableName = tableInfo.getTableName();
+    int pageSize = pluginConf.getPageSize();
+    int numSplits = getSplitCount(tableInfo.getRecordCount(), pageSize, pluginConf.getRowsPerSplit(),
+                                  pluginConf.getSplitsPerTable());
+
+    if (pluginConf.getPaginationMode() == SourcePaginationMode.KEYSET) {
+      if (numSplits <= 1) {
+        return Collections.singletonList(new ServiceNowInputSplit(tableName, null, null));
+      }
+      String query = ServiceNowTableAPIClientImpl.joinQuery(pluginConf.getQuery(), tableInfo.getFilter());
+      return ServiceNowKeyRangeSplitter.createSplits(restApi, tableName, query, numSplits);
+    }
+    return createOffsetSplits(tableName, tableInfo.getRecordCount(), pageSize, numSplits);
+  }
+
+  /**
+   * Estimates the average size of a record of each table from a sample of its records. The samples of all tables
+   * are fetched on a bounded pool of threads. A table that cannot be sampled gets a default size, as the estimates
+   * only drive the scheduling and the reported progress.
+   *
+   * @return the estimated number of bytes per record, by table name
+   */
+  @VisibleForTesting
+  static Map<String, Long> estimateRecordSizes(ServiceNowTableAPIClientImpl restApi,
+                                               List<ServiceNowTableInfo> tableInfos,
+                                               ServiceNowBaseSourceConfig pluginConf, int maxThreads) {
+    Map<String, Long> recordSizes = new HashMap<>();
+    List<ServiceNowTableInfo> sampledTables = tableInfos.stream()
+      .filter(tableInfo -> tableInfo.getRecordCount() > 0)
+      .collect(Collectors.toList());
+    if (sampledTables.isEmpty()) {
+      return recordSizes;
+    }
+
+    int sampleSize = Math.min(pluginConf.getPageSize(), ServiceNowConstants.RECORD_SIZE_SAMPLE_SIZE);
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(maxThreads, sampledTables.size())),
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("servicenow-sample-%d").build());
+    Map<String, Future<Long>> samples = new LinkedHashMap<>();
+    try {
+      for (ServiceNowTableInfo tableInfo : sampledTables) {
+        List<String> fields = tableInfo.getSchema().getFields().stream()
+          .map(Schema.Field::getName)
+          .collect(Collectors.toList());
+        String filter = Strings.emptyToNull(ServiceNowTableAPIClientImpl.joinQuery(pluginConf.getFilter(),
+                                                                                   tableInfo.getFilter()));
+        samples.put(tableInfo.getTableName(), executor.submit(
+          () -> restApi.sampleRecordSize(tableInfo.getTableName(), pluginConf.getValueType(),
+                                         pluginConf.getStartDate(), pluginConf.getEndDate(), filter, fields,
+                                         sampleSize)));
+      }
+
+      for (Map.Entry<String, Future<Long>> sample : samples.entrySet()) {
+        long recordSize = ServiceNowConstants.DEFAULT_RECORD_SIZE;
+        try {
+          long sampledSize = sample.getValue().get();
+          if (sampledSize > 0) {
+            recordSize = sampledSize;
+          }
+        } catch (ExecutionException e) {
+          LOG.warn("Failed to sample the records of table {}, assuming {} bytes per record", sample.getKey(),
+                   recordSize, e.getCause());
+        }
+        LOG.debug("table {}, estimated record size = {}", sample.getKey(), recordSize);
+        recordSizes.put(sample.getKey(), recordSize);
+      }
+      return recordSizes;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while sampling table records", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Sets the estimated number of records and bytes of the splits of a table. Offset splits know their range of
+   * records, while the key ranges are planned to hold about the same number of records each.
+   */
+  @VisibleForTesting
+  static void setEstimates(List<InputSplit> splits, int recordCount, @Nullable Long recordSize,
+                           SourcePaginationMode paginationMode) {
+    long bytesPerRecord = recordSize == null ? ServiceNowConstants.DEFAULT_RECORD_SIZE : recordSize;
+    for (InputSplit inputSplit : splits) {
+      ServiceNowInputSplit split = (ServiceNowInputSplit) inputSplit;
+      long records;
+      if (paginationMode == SourcePaginationMode.KEYSET) {
+        records = divideRoundingUp(recordCount, splits.size());
+      } else {
+        records = Math.max(0, Math.min(split.getLimit(), (long) recordCount - split.getOffset()));
+      }
+      split.setEstimate(records, records * bytesPerRecord);
+    }
+  }
+
+  /**
+   * Creates one split per table reading the records deleted in the given range of the audit table.
+   *
+   * @param tableInfos   the tables read by the source
+   * @param deletesRange the range of the audits of deleted records to read, null if none should be read
+   * @return the splits, empty if no range is given
+   */
+  static List<InputSplit> createDeletedRecordsSplits(List<ServiceNowTableInfo> tableInfos,
+                                                     @Nullable String deletesRange) {
+    if (deletesRange == null) {
+      return Collections.emptyList();
+    }
+    List<InputSplit> splits = new ArrayList<>();
+    for (ServiceNowTableInfo tableInfo : tableInfos) {
+      splits.add(ServiceNowInputSplit.forDeletedRecords(tableInfo.getTableName()));
+    }
+    return splits;
+  }
+
+  /**
+   * Divides the requests per second allowed to the source among its concurrent tasks, whichever splits they read.
+   *
+   * @param splits     all splits of the source
+   * @param pluginConf the source configuration
+   */
+  static void setRequestsPerSecond(List<InputSplit> splits, ServiceNowBaseSourceConfig pluginConf) {
+    double requestsPerSecond = pluginConf.getRequestsPerSecondPerTask();
+    for (InputSplit split : splits) {
+      ((ServiceNowInputSplit) split).setRequestsPerSecond(requestsPerSecond);
+    }
+  }
+
+  /**
+   * Gives each split the number of splits of the source, so that the task reading it takes its share of the retry
+   * budget of the source, whichever executor it runs on.
+   *
+   * @param splits all splits of the source
+   */
+  static void setSplitCount(List<InputSplit> splits) {
+    for (InputSplit split : splits) {
+      ((ServiceNowInputSplit) split).setSplitCount(splits.size());
+    }
+  }
+
+  /**
+   * Computes the number of splits of a table. By default each split reads a single page.
+   *
+   * @param recordCount    the number of records of the table
+   * @param pageSize       the number of records per page
+   * @param rowsPerSplit   the number of records wanted per split, or null
+   * @param splitsPerTable the number of splits wanted per table, or null
+   * @return the number of splits, between 1 and the number of pages
+   */
+  static int getSplitCount(int recordCount, int pageSize, @Nullable Integer rowsPerSplit,
+                           @Nullable Integer splitsPerTable) {
+    int pages = Math.max(1, divideRoundingUp(recordCount, pageSize));
+    int numSplits = pages;
+    if (splitsPerTable != null) {
+      numSplits = splitsPerTable;
+    } else if (rowsPerSplit != null) {
+      numSplits = divideRoundingUp(recordCount, Math.max(rowsPerSplit, pageSize));
+    }
+    return Math.max(1, Math.min(numSplits, pages));
+  }
+
+  /**
+   * Creates offset splits holding the same number of whole pages, the last split holding the remainder.
+   */
+  static List<InputSplit> createOffsetSplits(String tableName, int recordCount, int pageSize, int numSplits) {
+    if (numSplits <= 1) {
+      return Collections.singletonList(new ServiceNowInputSplit(tableName, 0, Math.max(recordCount, pageSize)));
+    }
+
+    int pages = divideRoundingUp(recordCount, pageSize);
+    int pagesPerSplit = divideRoundingUp(pages, numSplits);
+    int splitLength = pagesPerSplit * pageSize;
+    List<InputSplit> splits = new ArrayList<>();
+    for (int offset = 0; offset < recordCount; offset += splitLength) {
+      splits.add(new ServiceNowInputSplit(tableName, offset, splitLength));
+    }
+    return splits;
+  }
+
+  private static int divideRoundingUp(int dividend, int divisor) {
+    return (int) ((dividend + (long) divisor - 1) / divisor);
+  }
+}
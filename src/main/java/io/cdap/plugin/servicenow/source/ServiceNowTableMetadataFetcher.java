@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.source;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.util.ServiceNowHighWaterMark;
+import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
+import org.apache.oltu.oauth2.common.exception.OAuthProblemException;
+import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+
+/**
+ * Fetches the schema and the record count of several tables. The requests of all tables are sent on a bounded pool
+ * of threads with a single access token, and a table that fails does not stop the lookups of the other tables.
+ */
+public class ServiceNowTableMetadataFetcher {
+  private static final Logger LOG = LoggerFactory.getLogger(ServiceNowTableMetadataFetcher.class);
+
+  private ServiceNowTableMetadataFetcher() {
+  }
+
+  /**
+   * Fetches the schema of each table, and the number of its records matching the query.
+   *
+   * @param restApi    the client used to send the requests
+   * @param tableNames the ServiceNow table names
+   * @param query      the encoded query selecting the records to read, null to count all records
+   * @param maxThreads the maximum number of requests sent at the same time
+   * @return the information of each table, in the order of the table names
+   * @throws RuntimeException if the metadata of any table could not be fetched, after all lookups are done
+   */
+  public static List<ServiceNowTableInfo> fetch(ServiceNowTableAPIClientImpl restApi, Collection<String> tableNames,
+                                                @Nullable String query, int maxThreads) {
+    return fetch(restApi, tableNames, query, Collections.emptyMap(), maxThreads);
+  }
+
+  /**
+   * Fetches the schema of each table, and the number of its records matching both the query and the filter of the
+   * table.
+   *
+   * @param restApi    the client used to send the requests
+   * @param tableNames the ServiceNow table names
+   * @param query      the encoded query selecting the records to read, null to count all records
+   * @param filters    the encoded query selecting the records to read in each table, by table name
+   * @param maxThreads the maximum number of requests sent at the same time
+   * @return the information of each table, in the order of the table names
+   * @throws RuntimeException if the metadata of any table could not be fetched, after all lookups are done
+   */
+  public static List<ServiceNowTableInfo> fetch(ServiceNowTableAPIClientImpl restApi, Collection<String> tableNames,
+                                                @Nullable String query, Map<String, String> filters,
+                                                int maxThreads) {
+    if (tableNames.isEmpty()) {
+      return new ArrayList<>();
+    }
+
+    String accessToken = getAccessToken(restApi);
+    // Schema and count requests are independent, so both are sent for every table before any result is awaited
+    ExecutorService executor = newExecutor(maxThreads, tableNames.size() * 2);
+    Map<String, Future<Schema>> schemas = new LinkedHashMap<>();
+    Map<String, Future<Integer>> recordCounts = new LinkedHashMap<>();
+    try {
+      for (String tableName : tableNames) {
+        String tableQuery = ServiceNowTableAPIClientImpl.joinQuery(query, filters.get(tableName));
+        schemas.put(tableName, executor.submit(() -> restApi.fetchTableSchema(tableName, accessToken)));
+        recordCounts.put(tableName, executor.submit(
+          () -> restApi.getTableRecordCount(tableName, Strings.emptyToNull(tableQuery), accessToken)));
+      }
+
+      List<ServiceNowTableInfo> tableInfos = new ArrayList<>();
+      Map<String, Throwable> failures = new LinkedHashMap<>();
+      for (String tableName : tableNames) {
+        try {
+          Schema schema = schemas.get(tableName).get();
+          int recordCount = recordCounts.get(tableName).get();
+          LOG.debug("table {}, rows = {}", tableName, recordCount);
+          tableInfos.add(new ServiceNowTableInfo(tableName, schema, recordCount, filters.get(tableName)));
+        } catch (ExecutionException e) {
+          LOG.error("Failed to fetch metadata of table {}", tableName, e.getCause());
+          failures.put(tableName, e.getCause());
+        }
+      }
+
+      if (!failures.isEmpty()) {
+        throw createFailure(failures);
+      }
+      return tableInfos;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while fetching table metadata", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Fetches the mark of the last updated record of each table that matches the query.
+   *
+   * @param restApi    the client used to send the requests
+   * @param tableNames the ServiceNow table names
+   * @param query      the encoded query selecting the records to read, null to consider all records
+   * @param maxThreads the maximum number of requests sent at the same time
+   * @return the mark of each table, by table name. Tables without any matching record have no mark.
+   * @throws RuntimeException if the mark of any table could not be fetched, after all lookups are done
+   */
+  public static Map<String, ServiceNowHighWaterMark> fetchHighWaterMarks(ServiceNowTableAPIClientImpl restApi,
+                                                                         Collection<String> tableNames,
+                                                                         @Nullable String query, int maxThreads) {
+    if (tableNames.isEmpty()) {
+      return new HashMap<>();
+    }
+
+    String accessToken = getAccessToken(restApi);
+    ExecutorService executor = newExecutor(maxThreads, tableNames.size());
+    Map<String, Future<ServiceNowHighWaterMark>> marks = new LinkedHashMap<>();
+    try {
+      for (String tableName : tableNames) {
+        marks.put(tableName, executor.submit(() -> restApi.fetchHighWaterMark(tableName, query, accessToken)));
+      }
+
+      Map<String, ServiceNowHighWaterMark> highWaterMarks = new HashMap<>();
+      Map<String, Throwable> failures = new LinkedHashMap<>();
+      for (Map.Entry<String, Future<ServiceNowHighWaterMark>> mark : marks.entrySet()) {
+        try {
+          ServiceNowHighWaterMark highWaterMark = mark.getValue().get();
+          LOG.debug("table {}, high-water mark = {}", mark.getKey(), highWaterMark);
+          if (highWaterMark != null) {
+            highWaterMarks.put(mark.getKey(), highWaterMark);
+          }
+        } catch (ExecutionException e) {
+          LOG.error("Failed to fetch the high-water mark of table {}", mark.getKey(), e.getCause());
+          failures.put(mark.getKey(), e.getCause());
+        }
+      }
+
+      if (!failures.isEmpty()) {
+        throw createFailure(failures);
+      }
+      return highWaterMarks;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while fetching table metadata", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String getAccessToken(ServiceNowTableAPIClientImpl restApi) {
+    try {
+      return restApi.getAccessToken();
+    } catch (OAuthProblemException | OAuthSystemException e) {
+      throw new RuntimeException(String.format("Error in fetching table metadata due to reason: %s", e.getMessage()),
+                                 e);
+    }
+  }
+
+  private static ExecutorService newExecutor(int maxThreads, int requests) {
+    return Executors.newFixedThreadPool(
+      Math.max(1, Math.min(maxThreads, requests)),
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("servicenow-metadata-%d").build());
+  }
+
+  private static RuntimeException createFailure(Map<String, Throwable> failures) {
+    List<String> reasons = new ArrayList<>();
+    Throwable cause = null;
+    for (Map.Entry<String, Throwable> failure : failures.entrySet()) {
+      reasons.add(String.format("%s: %s", failure.getKey(), failure.getValue().getMessage()));
+      if (cause == null) {
+        cause = failure.getValue();
+      }
+    }
+    RuntimeException exception = new RuntimeException(
+      String.format("Error in fetching table metadata due to reason: %s", String.join("; ", reasons)), cause);
+    failures.values().stream().skip(1).forEach(exception::addSuppressed);
+    return exception;
+  }
+}
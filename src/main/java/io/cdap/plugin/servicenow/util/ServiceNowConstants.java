@@ -91,6 +91,91 @@ public interface ServiceNowConstants {
    */
   String PROPERTY_PAGE_SIZE = "pageSize";
 
+  /**
+   * Configuration property name used to specify the pagination mode.
+   */
+  String PROPERTY_PAGINATION_MODE = "paginationMode";
+
+  /**
+   * Configuration property name used to specify the fields to read.
+   */
+  String PROPERTY_FIELDS = "fields";
+
+  /**
+   * Configuration property name used to specify the filter.
+   */
+  String PROPERTY_FILTER = "filter";
+
+  /**
+   * Configuration property name used to specify the number of pages fetched ahead.
+   */
+  String PROPERTY_PREFETCH_PAGES = "prefetchPages";
+
+  /**
+   * Configuration property name used to specify the latency percentile after which a page request is sent again.
+   */
+  String PROPERTY_HEDGE_PERCENTILE = "hedgePercentile";
+
+  /**
+   * Configuration property name used to specify the number of records read by each split.
+   */
+  String PROPERTY_ROWS_PER_SPLIT = "rowsPerSplit";
+
+  /**
+   * Configuration property name used to specify the number of splits each table is read with.
+   */
+  String PROPERTY_SPLITS_PER_TABLE = "splitsPerTable";
+
+  /**
+   * Configuration property name used to specify the path of the incremental extraction state.
+   */
+  String PROPERTY_INCREMENTAL_STATE_PATH = "incrementalStatePath";
+
+  /**
+   * Configuration property name used to specify whether deleted records are read as tombstones.
+   */
+  String PROPERTY_CAPTURE_DELETES = "captureDeletes";
+
+  /**
+   * Configuration property name used to specify the number of requests per second sent to ServiceNow by a stage.
+   */
+  String PROPERTY_MAX_REQUESTS_PER_SECOND = "maxRequestsPerSecond";
+
+  /**
+   * Configuration property name used to specify the number of tasks of a stage running at the same time.
+   */
+  String PROPERTY_CONCURRENT_TASKS = "concurrentTasks";
+
+  /**
+   * Configuration property name used to specify the number of batches the sink sends to ServiceNow at the same time.
+   */
+  String PROPERTY_MAX_IN_FLIGHT_BATCHES = "maxInFlightBatches";
+
+  /**
+   * Configuration property name used to specify the number of records the sink sends in one batch.
+   */
+  String PROPERTY_BATCH_SIZE = "batchSize";
+
+  /**
+   * Configuration property name used to specify whether the sink adapts the batch size to ServiceNow responses.
+   */
+  String PROPERTY_ADAPTIVE_BATCH_SIZE = "adaptiveBatchSize";
+
+  /**
+   * Configuration property name used to specify the batch latency the adaptive batch size aims for.
+   */
+  String PROPERTY_TARGET_BATCH_LATENCY = "targetBatchLatency";
+
+  /**
+   * Configuration property name used to specify whether rows that the import set transform fails fail the batch.
+   */
+  String PROPERTY_FAIL_ON_IMPORT_SET_ERRORS = "failOnImportSetErrors";
+
+  /**
+   * Configuration property name used to specify whether the bodies of the requests of the sink are compressed.
+   */
+  String PROPERTY_COMPRESS_REQUESTS = "compressRequests";
+
   /**
    * Configuration property name used to get the schema.
    */
@@ -131,6 +216,26 @@ public interface ServiceNowConstants {
    */
   int PAGE_SIZE = 5000;
 
+  /**
+   * The default number of pages fetched ahead of the record reader.
+   */
+  int PREFETCH_PAGES = 1;
+
+  /**
+   * The max limit for the number of pages fetched ahead of the record reader.
+   */
+  int MAX_PREFETCH_PAGES = 10;
+
+  /**
+   * The lowest latency percentile after which a page request may be sent again.
+   */
+  int MIN_HEDGE_PERCENTILE = 50;
+
+  /**
+   * The highest latency percentile after which a page request may be sent again.
+   */
+  int MAX_HEDGE_PERCENTILE = 99;
+
   /**
    * The total count.
    */
@@ -192,7 +297,7 @@ public interface ServiceNowConstants {
   String UPDATE_ERROR = "Record doesn't exist or ACL restricts the record retrieval";
 
   /**
-   * The wait time for API retry in milliseconds.
+   * The maximum wait time between API retries in milliseconds.
    */
   int WAIT_TIME = 120000;
   
@@ -221,6 +326,21 @@ public interface ServiceNowConstants {
    */
   String UPDATE_OPERATION = "update";
 
+  /**
+   * The Import Set operation, which loads the records into a staging table through the Import Set API
+   */
+  String IMPORT_SET_OPERATION = "importSet";
+
+  /**
+   * The sys_id of the import set that received the records.
+   */
+  String IMPORT_SET_ID = "import_set_id";
+
+  /**
+   * The error message of a row in the import set response.
+   */
+  String ERROR_MESSAGE = "error_message";
+
   /**
    * The HTTP POST Request
    */
@@ -236,6 +356,53 @@ public interface ServiceNowConstants {
    */
   String SYS_ID = "sys_id";
 
+  /**
+   * The ServiceNow field holding the time a record was last updated
+   */
+  String SYS_UPDATED_ON = "sys_updated_on";
+
+  /**
+   * The ServiceNow field holding the time a record was created
+   */
+  String SYS_CREATED_ON = "sys_created_on";
+
+  /**
+   * Number of seconds before the last update of a table at which a run of incremental extraction stops reading, so
+   * that records still being updated in the same second, or committed late with an earlier time, are read by the
+   * next run.
+   */
+  int INCREMENTAL_LOOKBACK_SECONDS = 10;
+
+  /**
+   * The ServiceNow table auditing the deleted records
+   */
+  String AUDIT_DELETE_TABLE = "sys_audit_delete";
+
+  /**
+   * The field of the audit of a deleted record holding the name of its table
+   */
+  String AUDIT_DELETE_TABLE_NAME = "tablename";
+
+  /**
+   * The field of the audit of a deleted record holding its sys_id
+   */
+  String AUDIT_DELETE_DOCUMENT_KEY = "documentkey";
+
+  /**
+   * The field added to the records read with deleted record capture, holding the operation they stand for
+   */
+  String OPERATION_FIELD = "operation";
+
+  /**
+   * The operation of a record that was created or updated
+   */
+  String OPERATION_UPSERT = "upsert";
+
+  /**
+   * The operation of a tombstone, standing for a deleted record
+   */
+  String OPERATION_DELETE = "delete";
+
   /**
    * The response body
    */
@@ -262,7 +429,7 @@ public interface ServiceNowConstants {
   String UNSERVICED_REQUESTS = "unserviced_requests";
 
   /**
-   * The initial wait time for HTTP POST API retry in milliseconds.
+   * The maximum wait time after the first failed API call in milliseconds, doubled after every further failure.
    */
   int BASE_DELAY = 5000;
 
@@ -271,6 +438,21 @@ public interface ServiceNowConstants {
    */
   int RECORDS_PER_BATCH = 50;
 
+  /**
+   * The max limit for the number of requests sent to ServiceNow Batch API as a payload.
+   */
+  int MAX_RECORDS_PER_BATCH = 1000;
+
+  /**
+   * The default batch latency in seconds that the adaptive batch size aims for.
+   */
+  int TARGET_BATCH_LATENCY = 20;
+
+  /**
+   * The default number of batches the sink sends to ServiceNow at the same time.
+   */
+  int MAX_IN_FLIGHT_BATCHES = 1;
+
   /**
    * ServiceNow Table Rest API supports up to 2 digits only after the decimal for decimal types. Anything greater than
    * that gets rounded off.
@@ -281,4 +463,110 @@ public interface ServiceNowConstants {
    * Default Precision supported by ServiceNow Rest API
    */
   int DEFAULT_PRECISION = 20;
+
+  /**
+   * Maximum number of pooled HTTP connections kept open per JVM.
+   */
+  int HTTP_MAX_CONNECTIONS = 64;
+
+  /**
+   * Maximum number of pooled HTTP connections kept open to a single ServiceNow instance.
+   */
+  int HTTP_MAX_CONNECTIONS_PER_ROUTE = 16;
+
+  /**
+   * Maximum time in milliseconds to wait for a pooled HTTP connection to become available.
+   */
+  int HTTP_CONNECTION_REQUEST_TIMEOUT = 300000;
+
+  /**
+   * Time in milliseconds a pooled HTTP connection may stay idle before it is checked for staleness when leased.
+   */
+  int HTTP_VALIDATE_AFTER_INACTIVITY = 2000;
+
+  /**
+   * Maximum number of table schema and record count requests sent at the same time while discovering tables.
+   */
+  int MAX_METADATA_REQUESTS = 8;
+
+  /**
+   * Number of records fetched from each table to estimate the size of a record while planning splits.
+   */
+  int RECORD_SIZE_SAMPLE_SIZE = 100;
+
+  /**
+   * The estimated size in bytes of a record when the records of a table could not be sampled.
+   */
+  long DEFAULT_RECORD_SIZE = 1024;
+
+  /**
+   * Time in milliseconds before its expiry at which a cached access token is renewed.
+   */
+  long ACCESS_TOKEN_EXPIRY_SKEW = 60000;
+
+  /**
+   * Number of the latest requests to a ServiceNow instance whose failure rate decides whether its circuit opens.
+   */
+  int CIRCUIT_BREAKER_WINDOW = 20;
+
+  /**
+   * Minimum number of requests to a ServiceNow instance before its circuit may open.
+   */
+  int CIRCUIT_BREAKER_MIN_REQUESTS = 10;
+
+  /**
+   * Share of the latest requests to a ServiceNow instance that must fail for its circuit to open.
+   */
+  double CIRCUIT_BREAKER_FAILURE_RATE = 0.5;
+
+  /**
+   * Time in milliseconds a circuit stays open before a probe request is sent to the ServiceNow instance.
+   */
+  long CIRCUIT_BREAKER_OPEN_TIME = 30000;
+
+  /**
+   * Name of the metric counting the milliseconds during which the requests of a stage were held back by the open
+   * circuit of the ServiceNow instance.
+   */
+  String METRIC_CIRCUIT_OPEN_TIME = "servicenow.circuit.open.ms";
+
+  /**
+   * Name of the metric counting the response bytes received from ServiceNow, compressed or not.
+   */
+  String METRIC_RECEIVED_BYTES = "servicenow.bytes.received";
+
+  /**
+   * Name of the metric counting the response bytes read from ServiceNow once decoded.
+   */
+  String METRIC_DECODED_BYTES = "servicenow.bytes.decoded";
+
+  /**
+   * Prefix of the metrics counting the import set rows by the status the transform reported for them.
+   */
+  String METRIC_IMPORT_SET_ROWS_PREFIX = "servicenow.importset.rows.";
+
+  /**
+   * Share of a retry added to the retry budget by every request sent to ServiceNow.
+   */
+  double RETRY_BUDGET_RATIO = 0.1;
+
+  /**
+   * Number of retries in the retry budget before any request is sent.
+   */
+  double RETRY_BUDGET_INITIAL = 10;
+
+  /**
+   * Maximum number of retries the retry budget can hold.
+   */
+  double RETRY_BUDGET_MAX = 100;
+
+  /**
+   * Number of the latest page requests to a ServiceNow instance whose latencies decide when a request is sent again.
+   */
+  int HEDGING_LATENCY_WINDOW = 100;
+
+  /**
+   * Minimum number of completed page requests to a ServiceNow instance before a request may be sent again.
+   */
+  int HEDGING_MIN_LATENCIES = 20;
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.util;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * The position of the last record read from a table in incremental extraction: its sys_updated_on, in the
+ * "yyyy-MM-dd HH:mm:ss" format of actual values, and its sys_id to order the records updated in the same second.
+ * The audits of deleted records are positioned by their sys_created_on instead.
+ */
+public class ServiceNowHighWaterMark implements Comparable<ServiceNowHighWaterMark> {
+  /**
+   * The mark before all records, for a table that had no record when it was first read.
+   */
+  public static final ServiceNowHighWaterMark EARLIEST = new ServiceNowHighWaterMark("", "");
+
+  // sys_ids are 32 lowercase hexadecimal digits, so no record is positioned after this one in the same second
+  private static final String LAST_SYS_ID = "ffffffffffffffffffffffffffffffff";
+  private static final DateTimeFormatter ACTUAL_VALUE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+  private static final Comparator<ServiceNowHighWaterMark> ORDER = Comparator
+    .comparing(ServiceNowHighWaterMark::getUpdatedOn)
+    .thenComparing(ServiceNowHighWaterMark::getSysId);
+
+  private final String updatedOn;
+  private final String sysId;
+
+  /**
+   * @param updatedOn the sys_updated_on of the record, as an actual value
+   * @param sysId     the sys_id of the record
+   */
+  public ServiceNowHighWaterMark(String updatedOn, String sysId) {
+    this.updatedOn = updatedOn;
+    this.sysId = sysId;
+  }
+
+  public String getUpdatedOn() {
+    return updatedOn;
+  }
+
+  public String getSysId() {
+    return sysId;
+  }
+
+  /**
+   * Returns the mark after every record updated at least the given number of seconds before this mark. The last
+   * second of a table may still receive updates, and transactions may commit records with an earlier time, so the
+   * upper mark of a run is moved back before them for the next run to read them.
+   *
+   * @param seconds the number of seconds to move back, at least 1 to exclude the second of this mark
+   * @return the earlier mark, or this mark if it is {@link #EARLIEST}
+   */
+  public ServiceNowHighWaterMark lookBack(int seconds) {
+    if (EARLIEST.equals(this)) {
+      return this;
+    }
+    LocalDateTime time = LocalDateTime.parse(updatedOn, ACTUAL_VALUE_FORMAT).minusSeconds(seconds);
+    return new ServiceNowHighWaterMark(time.format(ACTUAL_VALUE_FORMAT), LAST_SYS_ID);
+  }
+
+  /**
+   * Generates the encoded query selecting the records positioned after the lower mark and up to the upper mark.
+   * Every condition is a single AND term, whose OR binds to the condition before it, so the query can be joined
+   * with other conditions.
+   *
+   * @param lowerMark the mark of the last record already read, null to read from the first record
+   * @param upperMark the mark of the last record to read, null to read up to the last record
+   * @return the encoded query, empty if the range is not bounded
+   */
+  public static String getRangeQuery(@Nullable ServiceNowHighWaterMark lowerMark,
+                                     @Nullable ServiceNowHighWaterMark upperMark) {
+    return getRangeQuery(ServiceNowConstants.SYS_UPDATED_ON, lowerMark, upperMark);
+  }
+
+  /**
+   * Generates the encoded query selecting the records positioned after the lower mark and up to the upper mark,
+   * ordering records by the given time field.
+   *
+   * @param timeField the field holding the time of the records
+   * @param lowerMark the mark of the last record already read, null or {@link #EARLIEST} to read from the first record
+   * @param upperMark the mark of the last record to read, null to read up to the last record
+   * @return the encoded query, empty if the range is not bounded
+   */
+  public static String getRangeQuery(String timeField, @Nullable ServiceNowHighWaterMark lowerMark,
+                                     @Nullable ServiceNowHighWaterMark upperMark) {
+    List<String> conditions = new ArrayList<>();
+    if (lowerMark != null && !EARLIEST.equals(lowerMark)) {
+      conditions.add(String.format("%1$s>=%2$s^%1$s>%2$s^OR%3$s>%4$s", timeField, lowerMark.updatedOn,
+                                   ServiceNowConstants.SYS_ID, lowerMark.sysId));
+    }
+    if (upperMark != null) {
+      conditions.add(String.format("%1$s<=%2$s^%1$s<%2$s^OR%3$s<=%4$s", timeField, upperMark.updatedOn,
+                                   ServiceNowConstants.SYS_ID, upperMark.sysId));
+    }
+    return String.join("^", conditions);
+  }
+
+  /**
+   * Returns the later of the two marks.
+   */
+  @Nullable
+  public static ServiceNowHighWaterMark max(@Nullable ServiceNowHighWaterMark first,
+                                           @Nullable ServiceNowHighWaterMark second) {
+    if (first == null) {
+      return second;
+    }
+    return second == null || first.compareTo(second) >= 0 ? first : second;
+  }
+
+  @Override
+  public int compareTo(ServiceNowHighWaterMark other) {
+    return ORDER.compare(this, other);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ServiceNowHighWaterMark that = (ServiceNowHighWaterMark) o;
+    return updatedOn.equals(that.updatedOn) && sysId.equals(that.sysId);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(updatedOn, sysId);
+  }
+
+  @Override
+  public String toString() {
+    return updatedOn + "/" + sysId;
+  }
+}
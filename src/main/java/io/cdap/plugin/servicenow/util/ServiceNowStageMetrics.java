@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.util;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.cdap.cdap.etl.api.StageContext;
+import io.cdap.cdap.etl.api.StageMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Counts the metrics of one ServiceNow stage from its record readers and writers, which do not have access to the
+ * {@link StageMetrics} of the stage. The stage is identified by a key naming the pipeline run and the stage, which the
+ * plugin passes to its readers or writers through the job configuration. The plugin registers its stage metrics under
+ * that key when it is initialized, and unregisters them when it is destroyed. Counts reported while the stage metrics
+ * are not registered in this JVM are kept until they are.
+ */
+public class ServiceNowStageMetrics {
+  private static final Logger LOG = LoggerFactory.getLogger(ServiceNowStageMetrics.class);
+
+  private static final ConcurrentMap<String, StageMetrics> STAGE_METRICS = new ConcurrentHashMap<>();
+  // counts of the stages whose metrics are not registered yet, by stage key
+  private static final Map<String, Map<String, Long>> PENDING = new HashMap<>();
+
+  private final String stageKey;
+  private final ConcurrentMap<String, AtomicLong> unreported = new ConcurrentHashMap<>();
+
+  /**
+   * @param stageKey the key of the stage, or null to not report the counts
+   */
+  public ServiceNowStageMetrics(@Nullable String stageKey) {
+    this.stageKey = stageKey;
+  }
+
+  /**
+   * Returns the key identifying the stage within its pipeline run, the same in the driver and in every executor.
+   *
+   * @param context the context of the stage
+   * @return the key of the stage
+   */
+  public static String getStageKey(StageContext context) {
+    return String.format("%s.%s.%d.%s", context.getNamespace(), context.getPipelineName(),
+                         context.getLogicalStartTime(), context.getStageName());
+  }
+
+  /**
+   * Registers the stage metrics of the stage with the given key, and adds to them the counts kept for the stage.
+   *
+   * @param stageKey The key of the stage
+   * @param metrics  The stage metrics
+   */
+  public static void register(String stageKey, StageMetrics metrics) {
+    Map<String, Long> pending;
+    synchronized (PENDING) {
+      STAGE_METRICS.put(stageKey, metrics);
+      pending = PENDING.remove(stageKey);
+    }
+    if (pending != null) {
+      pending.forEach((name, value) -> count(metrics, name, value));
+    }
+  }
+
+  /**
+   * Unregisters the stage metrics of the stage with the given key, and drops the counts kept for the stage.
+   *
+   * @param stageKey The key of the stage
+   */
+  public static void unregister(String stageKey) {
+    synchronized (PENDING) {
+      STAGE_METRICS.remove(stageKey);
+      PENDING.remove(stageKey);
+    }
+  }
+
+  /**
+   * Adds the delta to the metric until it is reported.
+   */
+  public void count(String name, long delta) {
+    if (delta != 0) {
+      unreported.computeIfAbsent(name, key -> new AtomicLong()).addAndGet(delta);
+    }
+  }
+
+  /**
+   * Adds the counts made since the last report to the stage metrics, or keeps them for the stage until its metrics
+   * are registered.
+   */
+  public void report() {
+    if (stageKey == null) {
+      return;
+    }
+    StageMetrics metrics = STAGE_METRICS.get(stageKey);
+    if (metrics == null) {
+      synchronized (PENDING) {
+        metrics = STAGE_METRICS.get(stageKey);
+        if (metrics == null) {
+          LOG.debug("Keeping the metrics of stage {} until the stage is initialized.", stageKey);
+          Map<String, Long> pending = PENDING.computeIfAbsent(stageKey, key -> new HashMap<>());
+          for (Map.Entry<String, AtomicLong> entry : unreported.entrySet()) {
+            pending.merge(entry.getKey(), entry.getValue().getAndSet(0), Long::sum);
+          }
+          return;
+        }
+      }
+    }
+    for (Map.Entry<String, AtomicLong> entry : unreported.entrySet()) {
+      count(metrics, entry.getKey(), entry.getValue().getAndSet(0));
+    }
+  }
+
+  @VisibleForTesting
+  public long getUnreported(String name) {
+    AtomicLong value = unreported.get(name);
+    return value == null ? 0 : value.get();
+  }
+
+  private static void count(StageMetrics metrics, String name, long value) {
+    while (value != 0) {
+      int delta = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+      metrics.count(name, delta);
+      value -= delta;
+    }
+  }
+}
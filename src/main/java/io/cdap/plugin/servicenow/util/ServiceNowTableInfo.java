@@ -18,6 +18,11 @@ package io.cdap.plugin.servicenow.util;
 
 import io.cdap.cdap.api.data.schema.Schema;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
 /**
  * Information about a ServiceNow table.
  */
@@ -25,6 +30,7 @@ public class ServiceNowTableInfo {
   private final String tableName;
   private final Schema schema;
   private final int recordCount;
+  private final String filter;
 
   /**
    * Constructor for ServiceNowTableInfo object.
@@ -34,9 +40,22 @@ public class ServiceNowTableInfo {
    * @param recordCount The record count
    */
   public ServiceNowTableInfo(String tableName, Schema schema, int recordCount) {
+    this(tableName, schema, recordCount, null);
+  }
+
+  /**
+   * Constructor for ServiceNowTableInfo object.
+   *
+   * @param tableName The table name
+   * @param schema The instance of Schema object
+   * @param recordCount The record count, of the records matching the filter
+   * @param filter The encoded query selecting the records to read in this table only, null if there is none
+   */
+  public ServiceNowTableInfo(String tableName, Schema schema, int recordCount, @Nullable String filter) {
     this.tableName = tableName;
     this.schema = schema;
     this.recordCount = recordCount;
+    this.filter = filter;
   }
 
   public String getTableName() {
@@ -50,4 +69,34 @@ public class ServiceNowTableInfo {
   public int getRecordCount() {
     return recordCount;
   }
+
+  /**
+   * @return the encoded query selecting the records to read in this table, in addition to the query of the source,
+   *   or null if there is none
+   */
+  @Nullable
+  public String getFilter() {
+    return filter;
+  }
+
+  /**
+   * Returns the information of the same table, with only the given fields kept in the schema.
+   *
+   * @param fieldNames The fields to keep, all fields are kept if empty
+   * @return The instance of ServiceNowTableInfo object
+   */
+  public ServiceNowTableInfo selectFields(Collection<String> fieldNames) {
+    if (fieldNames.isEmpty()) {
+      return this;
+    }
+
+    List<Schema.Field> fields = schema.getFields().stream()
+      .filter(field -> fieldNames.contains(field.getName()))
+      .collect(Collectors.toList());
+    if (fields.isEmpty()) {
+      throw new IllegalArgumentException(String.format("None of the fields %s exist in table '%s'.", fieldNames,
+                                                       tableName));
+    }
+    return new ServiceNowTableInfo(tableName, Schema.recordOf(schema.getRecordName(), fields), recordCount, filter);
+  }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.plugin.servicenow.util;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Indicates how the pages of a ServiceNow table are addressed.
+ */
+public enum SourcePaginationMode {
+
+  /**
+   * Pages are addressed by their row offset.
+   */
+  OFFSET("Offset"),
+
+  /**
+   * Pages are addressed by the last sys_id of the previous page, in sys_id order.
+   */
+  KEYSET("Keyset");
+
+  private final String value;
+
+  SourcePaginationMode(String value) {
+    this.value = value;
+  }
+
+  /**
+   * Converts pagination mode string value into {@link SourcePaginationMode} enum.
+   *
+   * @param stringValue pagination mode string value
+   * @return source pagination mode in optional container
+   */
+  public static Optional<SourcePaginationMode> fromValue(String stringValue) {
+    return Stream.of(values())
+      .filter(mode -> mode.value.equalsIgnoreCase(stringValue))
+      .findAny();
+  }
+
+  public static String getSupportedModes() {
+    return Arrays.stream(SourcePaginationMode.values()).map(SourcePaginationMode::getValue)
+      .collect(Collectors.joining(", "));
+  }
+
+  public String getValue() {
+    return value;
+  }
+}
@@ -0,0 +1,32 @@
+package io.cdap.plugin.servicenow.apiclient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ServiceNowTableAPIClientImplTest {
+
+  @Test
+  public void testGenerateQueryWithDateRangeAndFilter() {
+    String query = ServiceNowTableAPIClientImpl.generateQuery("2022-01-01", "2022-01-31", "active=true^priority<=2");
+
+    Assert.assertTrue(query.startsWith("sys_created_onBETWEEN"));
+    Assert.assertTrue(query.contains("^ORsys_updated_onBETWEEN"));
+    Assert.assertTrue(query.endsWith("^active=true^priority<=2"));
+  }
+
+  @Test
+  public void testGenerateQueryWithFilterOnly() {
+    Assert.assertEquals("active=true", ServiceNowTableAPIClientImpl.generateQuery(null, null, "active=true"));
+  }
+
+  @Test
+  public void testGenerateQueryWithoutConditions() {
+    Assert.assertEquals("", ServiceNowTableAPIClientImpl.generateQuery(null, null, null));
+  }
+
+  @Test
+  public void testJoinQuerySkipsEmptyParts() {
+    Assert.assertEquals("active=true^sys_idSTARTSWITHa",
+                        ServiceNowTableAPIClientImpl.joinQuery("", "active=true", null, "sys_idSTARTSWITHa"));
+  }
+}
@@ -0,0 +1,88 @@
+package io.cdap.plugin.servicenow.apiclient;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ServiceNowTableDataDecoderTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "sys_user",
+    Schema.Field.of("sys_id", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("notification", Schema.nullableOf(Schema.of(Schema.Type.INT))),
+    Schema.Field.of("vip", Schema.nullableOf(Schema.of(Schema.Type.BOOLEAN))),
+    Schema.Field.of("sys_updated_on", Schema.nullableOf(Schema.of(Schema.LogicalType.DATETIME))),
+    Schema.Field.of("tablename", Schema.of(Schema.Type.STRING)));
+
+  @Test
+  public void testDecode() throws IOException {
+    String body = "{\"result\":[" +
+      "{\"sys_id\":\"1\",\"notification\":\"2\",\"vip\":\"true\",\"sys_updated_on\":\"2019-04-05 21:54:45\"," +
+      "\"country\":\"India\",\"manager\":{\"value\":\"abc\"}}," +
+      "{\"sys_id\":\"2\",\"notification\":\"\",\"vip\":false}" +
+      "]}";
+    ServiceNowTableDataDecoder decoder = new ServiceNowTableDataDecoder(SCHEMA, "tablename", "sys_user");
+    List<StructuredRecord> records = new ArrayList<>();
+
+    decoder.decode(toStream(body), records::add);
+
+    Assert.assertEquals(2, records.size());
+    StructuredRecord first = records.get(0);
+    Assert.assertEquals("1", first.get("sys_id"));
+    Assert.assertEquals(2, (int) first.get("notification"));
+    Assert.assertTrue(first.get("vip"));
+    Assert.assertEquals(LocalDateTime.of(2019, 4, 5, 21, 54, 45), first.getDateTime("sys_updated_on"));
+    Assert.assertEquals("sys_user", first.get("tablename"));
+    StructuredRecord second = records.get(1);
+    Assert.assertEquals("2", second.get("sys_id"));
+    Assert.assertNull(second.get("notification"));
+    Assert.assertFalse(second.get("vip"));
+    Assert.assertNull(second.get("sys_updated_on"));
+    Assert.assertEquals("sys_user", second.get("tablename"));
+  }
+
+  @Test(expected = NonRetryableException.class)
+  public void testDecodeFailure() throws IOException {
+    String body = "{\"error\":{\"message\":\"Invalid table sys_users\",\"detail\":null},\"status\":\"failure\"}";
+    ServiceNowTableDataDecoder decoder = new ServiceNowTableDataDecoder(SCHEMA, "tablename", "sys_user");
+
+    decoder.decode(toStream(body), record -> Assert.fail());
+  }
+
+  @Test(expected = RetryableException.class)
+  public void testDecodeRetryableFailure() throws IOException {
+    String body = "{\"status\":\"failure\",\"error\":{\"message\":\"Transaction cancelled: maximum execution time " +
+      "exceeded\",\"detail\":\"\"}}";
+    ServiceNowTableDataDecoder decoder = new ServiceNowTableDataDecoder(SCHEMA, "tablename", "sys_user");
+
+    decoder.decode(toStream(body), record -> Assert.fail());
+  }
+
+  @Test
+  public void testGetSelectedFields() {
+    ServiceNowTableDataDecoder decoder = new ServiceNowTableDataDecoder(SCHEMA, "tablename", "sys_user", true);
+
+    Assert.assertArrayEquals(new String[]{"sys_id", "notification", "vip", "sys_updated_on"},
+                             decoder.getSelectedFields());
+  }
+
+  @Test
+  public void testGetSelectedFieldsWithoutSelection() {
+    ServiceNowTableDataDecoder decoder = new ServiceNowTableDataDecoder(SCHEMA, "tablename", "sys_user");
+
+    Assert.assertEquals(0, decoder.getSelectedFields().length);
+  }
+
+  private static InputStream toStream(String body) {
+    return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -26,6 +26,7 @@ import io.cdap.cdap.etl.mock.common.MockConnectorContext;
 import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
 import io.cdap.plugin.common.ConfigUtil;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.restapi.RestAPIConnectionPool;
 import io.cdap.plugin.servicenow.restapi.RestAPIResponse;
 import io.cdap.plugin.servicenow.source.ServiceNowBaseSourceConfig;
 import io.cdap.plugin.servicenow.source.ServiceNowInputFormat;
@@ -39,7 +40,6 @@ import io.cdap.plugin.servicenow.util.SourceValueType;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.oltu.oauth2.client.OAuthClient;
 import org.apache.oltu.oauth2.client.URLConnectionClient;
 import org.apache.oltu.oauth2.client.response.OAuthJSONAccessTokenResponse;
@@ -62,7 +62,7 @@ import java.util.Set;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({ServiceNowTableAPIClientImpl.class, ServiceNowBaseSourceConfig.class, ServiceNowSource.class,
-  HttpClientBuilder.class, RestAPIResponse.class, ServiceNowInputFormat.class})
+  RestAPIConnectionPool.class, RestAPIResponse.class, ServiceNowInputFormat.class})
 public class ServiceNowConnectorTest {
 
   private static final String CLIENT_ID = "clientId";
@@ -145,11 +145,9 @@ public class ServiceNowConnectorTest {
     Mockito.when(accessTokenResponse.getAccessToken()).thenReturn("token");
     RestAPIResponse response = Mockito.spy(restAPIResponse);
     CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
-    HttpClientBuilder httpClientBuilder = Mockito.mock(HttpClientBuilder.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
     PowerMockito.mockStatic(RestAPIResponse.class);
-    PowerMockito.when(HttpClientBuilder.create()).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(httpClient);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
     CloseableHttpResponse httpResponse = Mockito.mock(CloseableHttpResponse.class);
     Mockito.when(httpClient.execute(Mockito.any())).thenReturn(httpResponse);
     PowerMockito.when(RestAPIResponse.parse(ArgumentMatchers.any(), ArgumentMatchers.anyString())).
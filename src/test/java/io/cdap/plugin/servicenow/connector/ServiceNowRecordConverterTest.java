@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2023 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.servicenow.connector;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.format.UnexpectedFormatException;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+public class ServiceNowRecordConverterTest {
+
+  private static final Schema SCHEMA = Schema.recordOf(
+    "record",
+    Schema.Field.of("name", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("count", Schema.nullableOf(Schema.of(Schema.Type.INT))),
+    Schema.Field.of("amount", Schema.nullableOf(Schema.of(Schema.Type.DOUBLE))),
+    Schema.Field.of("active", Schema.nullableOf(Schema.of(Schema.Type.BOOLEAN))),
+    Schema.Field.of("opened_at", Schema.nullableOf(Schema.of(Schema.LogicalType.DATETIME))),
+    Schema.Field.of("due_date", Schema.nullableOf(Schema.of(Schema.LogicalType.DATE))),
+    Schema.Field.of("duration", Schema.nullableOf(Schema.of(Schema.LogicalType.TIME_MICROS))),
+    Schema.Field.of("sys_tags", Schema.nullableOf(Schema.of(Schema.LogicalType.TIMESTAMP_MICROS))));
+
+  @Test
+  public void testConvertRecord() {
+    Map<String, String> values = new HashMap<>();
+    values.put("name", "INC0010001");
+    values.put("count", "1,234");
+    values.put("amount", "42.5");
+    values.put("active", "TRUE");
+    values.put("opened_at", "2023-01-02 03:04:05");
+    values.put("due_date", "2023-01-02");
+    values.put("duration", "03:04:05");
+    values.put("sys_tags", "");
+
+    StructuredRecord record = new ServiceNowRecordConverter(SCHEMA).convert(values);
+
+    Assert.assertEquals("INC0010001", record.get("name"));
+    Assert.assertEquals(1234, record.<Integer>get("count").intValue());
+    Assert.assertEquals(42.5, record.<Double>get("amount"), 0.0);
+    Assert.assertTrue(record.<Boolean>get("active"));
+    Assert.assertEquals(LocalDateTime.of(2023, 1, 2, 3, 4, 5), record.getDateTime("opened_at"));
+    Assert.assertEquals(LocalDate.of(2023, 1, 2), record.getDate("due_date"));
+    Assert.assertEquals(LocalTime.of(3, 4, 5), record.getTime("duration"));
+    // Unsupported types only fail for values that need to be converted
+    Assert.assertNull(record.get("sys_tags"));
+  }
+
+  @Test
+  public void testConvertFieldByIndex() {
+    ServiceNowRecordConverter converter = new ServiceNowRecordConverter(SCHEMA);
+    StructuredRecord.Builder recordBuilder = StructuredRecord.builder(SCHEMA);
+
+    converter.convert(1, "7", recordBuilder);
+    converter.convert(2, null, recordBuilder);
+
+    StructuredRecord record = recordBuilder.build();
+    Assert.assertEquals(7, record.<Integer>get("count").intValue());
+    Assert.assertNull(record.get("amount"));
+  }
+
+  @Test(expected = UnexpectedFormatException.class)
+  public void testConvertInvalidDateTime() {
+    new ServiceNowRecordConverter(SCHEMA).convert(4, "2023-01-02T03:04:05", StructuredRecord.builder(SCHEMA));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testConvertUnsupportedType() {
+    new ServiceNowRecordConverter(SCHEMA).convert(7, "tag", StructuredRecord.builder(SCHEMA));
+  }
+
+  @Test
+  public void testNumbersMatchNumberFormat() throws ParseException {
+    NumberFormat numberFormat = NumberFormat.getNumberInstance(Locale.US);
+    String[] values = {"0", "-0", "42", "-42", "007", "3.75", "-3.75", "0.1", "123456789", "1234567890",
+      "3000000000", "12345678901234567890", "1,234.5", ".5", "5.", "1E5", "12abc"};
+    for (String value : values) {
+      Number expected = numberFormat.parse(value);
+      Assert.assertEquals(value, Double.valueOf(expected.doubleValue()),
+                          ServiceNowRecordConverter.convertToDoubleValue(value));
+      Assert.assertEquals(value, Integer.valueOf(expected.intValue()),
+                          ServiceNowRecordConverter.convertToIntegerValue(value));
+    }
+  }
+}
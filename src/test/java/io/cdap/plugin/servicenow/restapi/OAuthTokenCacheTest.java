@@ -0,0 +1,195 @@
+package io.cdap.plugin.servicenow.restapi;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIRequestBuilder;
+import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
+import org.apache.oltu.oauth2.client.response.OAuthJSONAccessTokenResponse;
+import org.apache.oltu.oauth2.common.error.OAuthError;
+import org.apache.oltu.oauth2.common.exception.OAuthProblemException;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class OAuthTokenCacheTest {
+
+  private static final String KEY = OAuthTokenCache.getKey("https://example.service-now.com/oauth_token.do",
+                                                           "clientId", "clientSecret", "user", "password");
+
+  private final AtomicLong now = new AtomicLong();
+  private final List<String> requests = new ArrayList<>();
+  private OAuthTokenCache cache;
+
+  @Before
+  public void setUp() {
+    now.set(1000000L);
+    requests.clear();
+    cache = new OAuthTokenCache(now::get);
+  }
+
+  @Test
+  public void testTokenIsReusedUntilExpiry() throws Exception {
+    OAuthTokenCache.TokenRequester requester = refreshToken -> {
+      requests.add(refreshToken);
+      return createResponse("token" + requests.size(), 1800L, null);
+    };
+
+    Assert.assertEquals("token1", cache.getAccessToken(KEY, requester));
+    now.addAndGet(1000000L);
+    Assert.assertEquals("token1", cache.getAccessToken(KEY, requester));
+    Assert.assertEquals(1, requests.size());
+
+    // within the expiry skew
+    now.addAndGet(780000L);
+    Assert.assertEquals("token2", cache.getAccessToken(KEY, requester));
+    Assert.assertEquals(2, requests.size());
+  }
+
+  @Test
+  public void testRefreshTokenGrantIsUsed() throws Exception {
+    OAuthTokenCache.TokenRequester requester = refreshToken -> {
+      requests.add(refreshToken);
+      return createResponse("token" + requests.size(), 1800L, "refresh" + requests.size());
+    };
+
+    Assert.assertEquals("token1", cache.getAccessToken(KEY, requester));
+    now.addAndGet(1800000L);
+    Assert.assertEquals("token2", cache.getAccessToken(KEY, requester));
+    Assert.assertNull(requests.get(0));
+    Assert.assertEquals("refresh1", requests.get(1));
+  }
+
+  @Test
+  public void testRejectedRefreshTokenFallsBackToNewGrant() throws Exception {
+    OAuthTokenCache.TokenRequester requester = refreshToken -> {
+      requests.add(refreshToken);
+      if (refreshToken != null) {
+        throw OAuthProblemException.error(OAuthError.TokenResponse.INVALID_GRANT);
+      }
+      return createResponse("token" + requests.size(), 1800L, "refresh");
+    };
+
+    Assert.assertEquals("token1", cache.getAccessToken(KEY, requester));
+    now.addAndGet(1800000L);
+    Assert.assertEquals("token3", cache.getAccessToken(KEY, requester));
+    Assert.assertEquals("refresh", requests.get(1));
+    Assert.assertNull(requests.get(2));
+  }
+
+  @Test
+  public void testTokenWithoutExpiryIsNotCached() throws Exception {
+    OAuthTokenCache.TokenRequester requester = refreshToken -> {
+      requests.add(refreshToken);
+      return createResponse("token" + requests.size(), null, null);
+    };
+
+    Assert.assertEquals("token1", cache.getAccessToken(KEY, requester));
+    Assert.assertEquals("token2", cache.getAccessToken(KEY, requester));
+  }
+
+  @Test
+  public void testConnectionsAreCachedSeparately() throws Exception {
+    String otherKey = OAuthTokenCache.getKey("https://example.service-now.com/oauth_token.do",
+                                             "clientId", "clientSecret", "user", "otherPassword");
+    OAuthTokenCache.TokenRequester requester = refreshToken -> {
+      requests.add(refreshToken);
+      return createResponse("token" + requests.size(), 1800L, null);
+    };
+
+    Assert.assertNotEquals(KEY, otherKey);
+    Assert.assertEquals("token1", cache.getAccessToken(KEY, requester));
+    Assert.assertEquals("token2", cache.getAccessToken(otherKey, requester));
+    Assert.assertEquals("token1", cache.getAccessToken(KEY, requester));
+  }
+
+  @Test
+  public void testInvalidatedTokenIsRequestedAgain() throws Exception {
+    OAuthTokenCache.TokenRequester requester = refreshToken -> {
+      requests.add(refreshToken);
+      return createResponse("token" + requests.size(), 1800L, "refresh");
+    };
+
+    Assert.assertEquals("token1", cache.getAccessToken(KEY, requester));
+    // a token that was already replaced is not dropped again
+    cache.invalidate(KEY, "token0");
+    Assert.assertEquals("token1", cache.getAccessToken(KEY, requester));
+
+    cache.invalidate(KEY, "token1");
+    Assert.assertEquals("token2", cache.getAccessToken(KEY, requester));
+    // the refresh token may have been revoked along with the access token
+    Assert.assertNull(requests.get(1));
+
+    cache.invalidate(KEY);
+    Assert.assertEquals("token3", cache.getAccessToken(KEY, requester));
+  }
+
+  @Test
+  public void testRevokedTokenIsReplaced() throws Exception {
+    AtomicInteger issued = new AtomicInteger();
+    AtomicReference<String> validToken = new AtomicReference<>();
+    List<String> authorizations = new CopyOnWriteArrayList<>();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/oauth_token.do", exchange -> {
+      String token = "revocable" + issued.incrementAndGet();
+      validToken.set(token);
+      respond(exchange, 200, "{\"access_token\":\"" + token + "\",\"expires_in\":1800}");
+    });
+    server.createContext("/api", exchange -> {
+      String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+      authorizations.add(authorization);
+      respond(exchange, ("Bearer " + validToken.get()).equals(authorization) ? 200 : 401, "{\"result\":[]}");
+    });
+    server.start();
+    try {
+      String endpoint = String.format("http://localhost:%d", server.getAddress().getPort());
+      ServiceNowConnectorConfig config = Mockito.mock(ServiceNowConnectorConfig.class);
+      Mockito.when(config.getRestApiEndpoint()).thenReturn(endpoint);
+      Mockito.when(config.getClientId()).thenReturn("revocableClient");
+      ServiceNowTableAPIClientImpl client = new ServiceNowTableAPIClientImpl(config);
+      String accessToken = client.getAccessToken();
+      Assert.assertEquals("revocable1", accessToken);
+
+      // the token is revoked on the instance before it expires
+      validToken.set(null);
+      RestAPIResponse response = client.executePost(
+        new ServiceNowTableAPIRequestBuilder(endpoint).setAuthHeader(accessToken).build());
+      Assert.assertEquals(200, response.getHttpStatus());
+      Assert.assertEquals(Arrays.asList("Bearer revocable1", "Bearer revocable2"), authorizations);
+      Assert.assertEquals("revocable2", client.getAccessToken());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static OAuthJSONAccessTokenResponse createResponse(String accessToken, Long expiresIn,
+                                                             String refreshToken) {
+    OAuthJSONAccessTokenResponse response = Mockito.mock(OAuthJSONAccessTokenResponse.class);
+    Mockito.when(response.getAccessToken()).thenReturn(accessToken);
+    Mockito.when(response.getExpiresIn()).thenReturn(expiresIn);
+    Mockito.when(response.getRefreshToken()).thenReturn(refreshToken);
+    return response;
+  }
+}
@@ -0,0 +1,82 @@
+package io.cdap.plugin.servicenow.restapi;
+
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RestAPICircuitBreakerTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private RestAPICircuitBreaker breaker;
+
+  @Before
+  public void setUp() {
+    now.set(1000000L);
+    breaker = new RestAPICircuitBreaker("example.service-now.com", now::get);
+  }
+
+  @Test
+  public void testCircuitOpensOnErrorRate() {
+    // a few failures among successes keep the circuit closed
+    for (int i = 0; i < 20; i++) {
+      Assert.assertEquals(0, breaker.tryAcquire());
+      if (i % 3 == 0) {
+        breaker.onFailure();
+      } else {
+        breaker.onSuccess();
+      }
+    }
+    Assert.assertEquals(RestAPICircuitBreaker.State.CLOSED, breaker.getState());
+
+    // the window of the last 20 requests holds 7 failures, it takes 5 more for half of them to fail
+    failRequests(4);
+    Assert.assertEquals(RestAPICircuitBreaker.State.CLOSED, breaker.getState());
+    failRequests(1);
+    Assert.assertEquals(RestAPICircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertEquals(ServiceNowConstants.CIRCUIT_BREAKER_OPEN_TIME, breaker.tryAcquire());
+  }
+
+  @Test
+  public void testCircuitNeedsMinimumRequests() {
+    failRequests(ServiceNowConstants.CIRCUIT_BREAKER_MIN_REQUESTS - 1);
+    Assert.assertEquals(RestAPICircuitBreaker.State.CLOSED, breaker.getState());
+    failRequests(1);
+    Assert.assertEquals(RestAPICircuitBreaker.State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void testProbeClosesCircuit() {
+    failRequests(ServiceNowConstants.CIRCUIT_BREAKER_MIN_REQUESTS);
+    now.addAndGet(ServiceNowConstants.CIRCUIT_BREAKER_OPEN_TIME);
+
+    // a single probe is sent while the circuit is half-open
+    Assert.assertEquals(0, breaker.tryAcquire());
+    Assert.assertEquals(RestAPICircuitBreaker.State.HALF_OPEN, breaker.getState());
+    Assert.assertTrue(breaker.tryAcquire() > 0);
+
+    breaker.onSuccess();
+    Assert.assertEquals(RestAPICircuitBreaker.State.CLOSED, breaker.getState());
+    Assert.assertEquals(0, breaker.tryAcquire());
+  }
+
+  @Test
+  public void testFailedProbeOpensCircuitAgain() {
+    failRequests(ServiceNowConstants.CIRCUIT_BREAKER_MIN_REQUESTS);
+    now.addAndGet(ServiceNowConstants.CIRCUIT_BREAKER_OPEN_TIME + 5000);
+    Assert.assertEquals(0, breaker.tryAcquire());
+    breaker.onFailure();
+
+    Assert.assertEquals(RestAPICircuitBreaker.State.OPEN, breaker.getState());
+    Assert.assertEquals(ServiceNowConstants.CIRCUIT_BREAKER_OPEN_TIME, breaker.tryAcquire());
+  }
+
+  private void failRequests(int count) {
+    for (int i = 0; i < count; i++) {
+      Assert.assertEquals(0, breaker.tryAcquire());
+      breaker.onFailure();
+    }
+  }
+}
@@ -5,26 +5,30 @@ import io.cdap.plugin.servicenow.apiclient.RetryableException;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIRequestBuilder;
 import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.message.BasicStatusLine;
 import org.apache.http.util.EntityUtils;
+import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
 
 @RunWith(PowerMockRunner.class)
+@PowerMockIgnore({"javax.net.ssl.*", "javax.security.*"})
 @PrepareForTest({
   RestAPIClient.class,
-  HttpClientBuilder.class,
+  RestAPIConnectionPool.class,
   RestAPIResponse.class,
   ServiceNowTableAPIClientImpl.class,
   EntityUtils.class
@@ -39,10 +43,8 @@ public class RestAPIClientTest {
     Mockito.when(httpResponse.getStatusLine()).thenReturn(statusLine);
 
     CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
-    HttpClientBuilder httpClientBuilder = Mockito.mock(HttpClientBuilder.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
-    PowerMockito.when(HttpClientBuilder.create()).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(httpClient);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
     Mockito.when(httpClient.execute(Mockito.any())).thenReturn(httpResponse);
 
     ServiceNowTableAPIRequestBuilder builder = new ServiceNowTableAPIRequestBuilder("url");
@@ -53,6 +55,58 @@ public class RestAPIClientTest {
     client.executeGet(request);
   }
 
+  @Test
+  public void testExecuteGet_retryAfterIsPassedToRetry() throws IOException {
+    CloseableHttpResponse httpResponse = Mockito.mock(CloseableHttpResponse.class);
+    StatusLine statusLine = Mockito.mock(BasicStatusLine.class);
+    Mockito.when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_SERVICE_UNAVAILABLE);
+    Mockito.when(httpResponse.getStatusLine()).thenReturn(statusLine);
+    Mockito.when(httpResponse.getFirstHeader("Retry-After")).thenReturn(new BasicHeader("Retry-After", "0"));
+
+    CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
+    Mockito.when(httpClient.execute(Mockito.any())).thenReturn(httpResponse);
+
+    ServiceNowTableAPIRequestBuilder builder = new ServiceNowTableAPIRequestBuilder("url");
+    ServiceNowConnectorConfig config = Mockito.mock(ServiceNowConnectorConfig.class);
+    ServiceNowTableAPIClientImpl client = new ServiceNowTableAPIClientImpl(config);
+    try {
+      client.executeGet(builder.build());
+      Assert.fail("Expected a RetryableException");
+    } catch (RetryableException e) {
+      Assert.assertEquals(0, e.getRetryAfterMillis());
+    }
+
+    Mockito.when(httpResponse.getFirstHeader("Retry-After")).thenReturn(new BasicHeader("Retry-After", "2"));
+    Assert.assertEquals(2000, RestAPIResponse.getRetryAfterMillis(httpResponse, 0));
+  }
+
+  @Test
+  public void testRetryAfterHeaders() {
+    long now = 1646128800000L;
+    CloseableHttpResponse httpResponse = Mockito.mock(CloseableHttpResponse.class);
+    Assert.assertEquals(0, RestAPIResponse.getRetryAfterMillis(httpResponse, now));
+
+    Mockito.when(httpResponse.getFirstHeader("Retry-After"))
+      .thenReturn(new BasicHeader("Retry-After", "Tue, 01 Mar 2022 10:00:30 GMT"));
+    Assert.assertEquals(30000, RestAPIResponse.getRetryAfterMillis(httpResponse, now));
+
+    Mockito.when(httpResponse.getFirstHeader("Retry-After")).thenReturn(new BasicHeader("Retry-After", "soon"));
+    Assert.assertEquals(0, RestAPIResponse.getRetryAfterMillis(httpResponse, now));
+
+    // the rate limit only asks to wait once no request is left in the window
+    Mockito.when(httpResponse.getFirstHeader("Retry-After")).thenReturn(null);
+    Mockito.when(httpResponse.getFirstHeader("X-RateLimit-Reset"))
+      .thenReturn(new BasicHeader("X-RateLimit-Reset", String.valueOf(now / 1000 + 45)));
+    Mockito.when(httpResponse.getFirstHeader("X-RateLimit-Remaining"))
+      .thenReturn(new BasicHeader("X-RateLimit-Remaining", "12"));
+    Assert.assertEquals(0, RestAPIResponse.getRetryAfterMillis(httpResponse, now));
+    Mockito.when(httpResponse.getFirstHeader("X-RateLimit-Remaining"))
+      .thenReturn(new BasicHeader("X-RateLimit-Remaining", "0"));
+    Assert.assertEquals(45000, RestAPIResponse.getRetryAfterMillis(httpResponse, now));
+  }
+
   @Test(expected = NonRetryableException.class)
   public void testExecuteGet_throwIOException() throws IOException {
     CloseableHttpResponse httpResponse = Mockito.mock(CloseableHttpResponse.class);
@@ -61,10 +115,8 @@ public class RestAPIClientTest {
     Mockito.when(httpResponse.getStatusLine()).thenReturn(statusLine);
 
     CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
-    HttpClientBuilder httpClientBuilder = Mockito.mock(HttpClientBuilder.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
-    PowerMockito.when(HttpClientBuilder.create()).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(httpClient);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
     Mockito.when(httpClient.execute(Mockito.any())).thenReturn(httpResponse);
 
     ServiceNowTableAPIRequestBuilder builder = new ServiceNowTableAPIRequestBuilder("url");
@@ -83,10 +135,8 @@ public class RestAPIClientTest {
     Mockito.when(httpResponse.getStatusLine()).thenReturn(statusLine);
 
     CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
-    HttpClientBuilder httpClientBuilder = Mockito.mock(HttpClientBuilder.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
-    PowerMockito.when(HttpClientBuilder.create()).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(httpClient);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
     Mockito.when(httpClient.execute(Mockito.any())).thenReturn(httpResponse);
 
     PowerMockito.mockStatic(EntityUtils.class);
@@ -99,4 +149,15 @@ public class RestAPIClientTest {
     ServiceNowTableAPIClientImpl client = new ServiceNowTableAPIClientImpl(config);
     client.executeGet(request);
   }
+
+  @Test
+  public void testClientsShareConnectionPool() {
+    ServiceNowConnectorConfig config = Mockito.mock(ServiceNowConnectorConfig.class);
+    ServiceNowTableAPIClientImpl client1 = new ServiceNowTableAPIClientImpl(config);
+    ServiceNowTableAPIClientImpl client2 = new ServiceNowTableAPIClientImpl(config);
+
+    Assert.assertSame(client1.getHttpClient(), client2.getHttpClient());
+    Assert.assertEquals(ServiceNowConstants.HTTP_MAX_CONNECTIONS, RestAPIConnectionPool.getPoolStats().getMax());
+    Assert.assertEquals(0, RestAPIConnectionPool.getPoolStats().getLeased());
+  }
 }
@@ -0,0 +1,264 @@
+package io.cdap.plugin.servicenow.restapi;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpServer;
+import io.cdap.cdap.etl.api.StageMetrics;
+import io.cdap.plugin.servicenow.apiclient.NonRetryableException;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowStageMetrics;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class RestAPIContentEncodingTest {
+  private static final String RESULT = "{\"result\":{}}";
+  private static final String BODY = "{\"result\":[" + repeat("{\"number\":\"INC0000001\"},", 100) + "{}]}";
+
+  @Test
+  public void testGzipContentIsDecoded() throws IOException {
+    byte[] compressed = gzip(BODY.getBytes(StandardCharsets.UTF_8));
+    ByteArrayEntity entity = new ByteArrayEntity(compressed);
+    entity.setContentEncoding("gzip");
+
+    ServiceNowStageMetrics metrics = new ServiceNowStageMetrics("gzip");
+    HttpEntity decodingEntity = RestAPIContentEncoding.decode(entity, metrics);
+    Assert.assertNull(decodingEntity.getContentEncoding());
+    Assert.assertEquals(-1, decodingEntity.getContentLength());
+    Assert.assertEquals(BODY, EntityUtils.toString(decodingEntity, StandardCharsets.UTF_8));
+
+    Assert.assertEquals(compressed.length, metrics.getUnreported(ServiceNowConstants.METRIC_RECEIVED_BYTES));
+    Assert.assertEquals(BODY.length(), metrics.getUnreported(ServiceNowConstants.METRIC_DECODED_BYTES));
+    Assert.assertTrue(compressed.length < BODY.length() / 5);
+  }
+
+  @Test
+  public void testDeflateContentIsDecoded() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+      deflater.write(BODY.getBytes(StandardCharsets.UTF_8));
+    }
+    ByteArrayEntity entity = new ByteArrayEntity(out.toByteArray());
+    entity.setContentEncoding("deflate");
+
+    Assert.assertEquals(BODY, EntityUtils.toString(RestAPIContentEncoding.decode(entity, null),
+                                                   StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testIdentityContentIsCounted() throws IOException {
+    ByteArrayEntity entity = new ByteArrayEntity(BODY.getBytes(StandardCharsets.UTF_8));
+    ServiceNowStageMetrics metrics = new ServiceNowStageMetrics("identity");
+
+    HttpEntity decodingEntity = RestAPIContentEncoding.decode(entity, metrics);
+    Assert.assertEquals(BODY.length(), decodingEntity.getContentLength());
+    Assert.assertEquals(BODY, EntityUtils.toString(decodingEntity, StandardCharsets.UTF_8));
+    Assert.assertEquals(BODY.length(), metrics.getUnreported(ServiceNowConstants.METRIC_RECEIVED_BYTES));
+    Assert.assertEquals(BODY.length(), metrics.getUnreported(ServiceNowConstants.METRIC_DECODED_BYTES));
+
+    StageMetrics stageMetrics = Mockito.mock(StageMetrics.class);
+    ServiceNowStageMetrics.register("identity", stageMetrics);
+    try {
+      metrics.report();
+      metrics.report();
+      Mockito.verify(stageMetrics).count(ServiceNowConstants.METRIC_RECEIVED_BYTES, BODY.length());
+      Mockito.verify(stageMetrics).count(ServiceNowConstants.METRIC_DECODED_BYTES, BODY.length());
+      Assert.assertEquals(0, metrics.getUnreported(ServiceNowConstants.METRIC_RECEIVED_BYTES));
+    } finally {
+      ServiceNowStageMetrics.unregister("identity");
+    }
+  }
+
+  @Test
+  public void testCountsAreKeptUntilTheStageIsRegistered() throws IOException {
+    ServiceNowStageMetrics metrics = new ServiceNowStageMetrics("pending");
+    EntityUtils.toString(RestAPIContentEncoding.decode(
+      new ByteArrayEntity(BODY.getBytes(StandardCharsets.UTF_8)), metrics), StandardCharsets.UTF_8);
+    // reported before the stage is initialized in this JVM, like a reader whose split ends early
+    metrics.report();
+    Assert.assertEquals(0, metrics.getUnreported(ServiceNowConstants.METRIC_RECEIVED_BYTES));
+
+    StageMetrics stageMetrics = Mockito.mock(StageMetrics.class);
+    StageMetrics otherStageMetrics = Mockito.mock(StageMetrics.class);
+    ServiceNowStageMetrics.register("other", otherStageMetrics);
+    ServiceNowStageMetrics.register("pending", stageMetrics);
+    try {
+      Mockito.verify(stageMetrics).count(ServiceNowConstants.METRIC_RECEIVED_BYTES, BODY.length());
+      Mockito.verifyZeroInteractions(otherStageMetrics);
+    } finally {
+      ServiceNowStageMetrics.unregister("pending");
+      ServiceNowStageMetrics.unregister("other");
+    }
+
+    // once the stage is destroyed, its counts are not reported to its stale metrics
+    metrics.count(ServiceNowConstants.METRIC_RECEIVED_BYTES, 1);
+    metrics.report();
+    Mockito.verifyNoMoreInteractions(stageMetrics);
+    ServiceNowStageMetrics.unregister("pending");
+  }
+
+  @Test
+  public void testCompressionIsAccepted() {
+    HttpGet request = new HttpGet("http://localhost");
+    RestAPIContentEncoding.acceptCompression(request);
+    Assert.assertEquals(RestAPIContentEncoding.ACCEPTED_ENCODINGS,
+                        request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING).getValue());
+
+    request = new HttpGet("http://localhost");
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+    RestAPIContentEncoding.acceptCompression(request);
+    Assert.assertEquals(1, request.getHeaders(HttpHeaders.ACCEPT_ENCODING).length);
+  }
+
+  @Test
+  public void testRequestBodyIsCompressed() throws Exception {
+    List<String> encodings = new CopyOnWriteArrayList<>();
+    List<String> bodies = new CopyOnWriteArrayList<>();
+    HttpServer server = startServer("localhost", encodings, bodies, 201, RESULT);
+    try {
+      String url = String.format("http://localhost:%d", server.getAddress().getPort());
+      ServiceNowTableAPIClientImpl client = new ServiceNowTableAPIClientImpl(
+        Mockito.mock(ServiceNowConnectorConfig.class));
+      client.setCompressRequests(true);
+
+      RestAPIResponse response = client.executePost(newPost(url));
+      Assert.assertEquals(201, response.getHttpStatus());
+      Assert.assertEquals("[gzip]", encodings.toString());
+      Assert.assertEquals("[{\"records\":[\"a\",\"b\"]}]", bodies.toString());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testUncompressedBodyIsSentWhenCompressionIsRejected() throws Exception {
+    List<String> encodings = new CopyOnWriteArrayList<>();
+    List<String> bodies = new CopyOnWriteArrayList<>();
+    HttpServer server = startServer("127.0.0.1", encodings, bodies, 415, RESULT);
+    try {
+      String url = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+      ServiceNowTableAPIClientImpl client = new ServiceNowTableAPIClientImpl(
+        Mockito.mock(ServiceNowConnectorConfig.class));
+      client.setCompressRequests(true);
+
+      Assert.assertEquals(201, client.executePost(newPost(url)).getHttpStatus());
+      // the following requests are not compressed anymore
+      Assert.assertEquals(201, client.executePost(newPost(url)).getHttpStatus());
+      Assert.assertEquals("[gzip, identity, identity]", encodings.toString());
+      Assert.assertEquals(2, bodies.size());
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testBadPayloadIsNotSentAgainUncompressed() throws Exception {
+    List<String> encodings = new CopyOnWriteArrayList<>();
+    List<String> bodies = new CopyOnWriteArrayList<>();
+    HttpServer server = startServer("localhost", encodings, bodies, 400,
+                                    "{\"error\":{\"message\":\"Invalid table\"},\"status\":\"failure\"}");
+    try {
+      String url = String.format("http://localhost:%d", server.getAddress().getPort());
+      ServiceNowTableAPIClientImpl client = new ServiceNowTableAPIClientImpl(
+        Mockito.mock(ServiceNowConnectorConfig.class));
+      client.setCompressRequests(true);
+
+      try {
+        client.executePost(newPost(url));
+        Assert.fail("Expected the bad request to fail");
+      } catch (NonRetryableException e) {
+        // expected
+      }
+      Assert.assertEquals("[gzip]", encodings.toString());
+      Assert.assertTrue(RestAPIContentEncoding.acceptsCompressedRequests("localhost"));
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  @Test
+  public void testUnreadableRequestErrorIsDetected() {
+    Assert.assertTrue(RestAPIContentEncoding.isUnreadableRequestError(
+      "{\"error\":{\"message\":\"Exception while reading request\",\"detail\":\"The payload is not valid JSON.\"}," +
+        "\"status\":\"failure\"}"));
+    Assert.assertFalse(RestAPIContentEncoding.isUnreadableRequestError(
+      "{\"error\":{\"message\":\"Invalid table\"},\"status\":\"failure\"}"));
+  }
+
+  private static RestAPIRequest newPost(String url) {
+    RestAPIRequest request = new RestAPIRequest();
+    request.setUrl(url);
+    request.setHeaders(ImmutableMap.of(HttpHeaders.CONTENT_TYPE, "application/json"));
+    request.setEntity(new RestAPIJsonEntity(ImmutableMap.of("records", new String[]{"a", "b"}), new Gson()));
+    return request;
+  }
+
+  /**
+   * Starts a server recording the encoding and the decoded body of the requests, which answers compressed bodies
+   * with the given status and response body.
+   */
+  private static HttpServer startServer(String host, List<String> encodings, List<String> bodies,
+                                        int compressedStatus, String compressedResponse) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(host, 0), 0);
+    server.createContext("/", exchange -> {
+      String encoding = exchange.getRequestHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+      encodings.add(encoding == null ? "identity" : encoding);
+      int status = 201;
+      String response = RESULT;
+      try (InputStream in = exchange.getRequestBody()) {
+        if (encoding == null) {
+          bodies.add(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+        } else if (compressedStatus != 201) {
+          ByteStreams.toByteArray(in);
+          status = compressedStatus;
+          response = compressedResponse;
+        } else {
+          bodies.add(new String(ByteStreams.toByteArray(new GZIPInputStream(in)), StandardCharsets.UTF_8));
+        }
+      }
+      byte[] body = response.getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    return server;
+  }
+
+  private static byte[] gzip(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
+  }
+
+  private static String repeat(String value, int times) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      builder.append(value);
+    }
+    return builder.toString();
+  }
+}
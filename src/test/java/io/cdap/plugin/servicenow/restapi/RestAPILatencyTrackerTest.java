@@ -0,0 +1,151 @@
+package io.cdap.plugin.servicenow.restapi;
+
+import com.google.common.io.CharStreams;
+import com.sun.net.httpserver.HttpServer;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RestAPILatencyTrackerTest {
+
+  @Test
+  public void testPercentile() {
+    RestAPILatencyTracker tracker = new RestAPILatencyTracker(10, 5);
+    for (int latency = 1; latency <= 4; latency++) {
+      tracker.record(latency * 100);
+    }
+    // too few latencies to tell
+    Assert.assertEquals(-1, tracker.getPercentile(90));
+
+    for (int latency = 5; latency <= 10; latency++) {
+      tracker.record(latency * 100);
+    }
+    Assert.assertEquals(500, tracker.getPercentile(50));
+    Assert.assertEquals(900, tracker.getPercentile(90));
+    Assert.assertEquals(1000, tracker.getPercentile(99));
+  }
+
+  @Test
+  public void testOnlyLatestLatenciesAreKept() {
+    RestAPILatencyTracker tracker = new RestAPILatencyTracker(4, 4);
+    for (int i = 0; i < 4; i++) {
+      tracker.record(5000);
+    }
+    for (int i = 0; i < 4; i++) {
+      tracker.record(10);
+    }
+    Assert.assertEquals(10, tracker.getPercentile(99));
+  }
+
+  @Test
+  public void testSlowRequestIsHedged() throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    CountDownLatch slowRequest = new CountDownLatch(1);
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", exchange -> {
+      String body = "fast";
+      if (requests.getAndIncrement() == 0) {
+        // the first request is stuck on a slow node
+        try {
+          slowRequest.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        body = "slow";
+      }
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.setExecutor(Executors.newFixedThreadPool(2));
+    server.start();
+
+    RestAPILatencyTracker tracker = RestAPILatencyTracker.forHost("localhost");
+    for (int i = 0; i < ServiceNowConstants.HEDGING_MIN_LATENCIES; i++) {
+      tracker.record(100);
+    }
+    try {
+      String url = String.format("http://localhost:%d", server.getAddress().getPort());
+      ServiceNowTableAPIClientImpl client = new ServiceNowTableAPIClientImpl(
+        Mockito.mock(ServiceNowConnectorConfig.class));
+      client.setHedgePercentile(90);
+
+      long start = System.nanoTime();
+      String body = client.executeGet(new RestAPIRequestStub(url).build(), (content, headers) ->
+        CharStreams.toString(new InputStreamReader(content, StandardCharsets.UTF_8)));
+      long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      Assert.assertEquals("fast", body);
+      Assert.assertEquals(2, requests.get());
+      Assert.assertTrue("Response read in " + elapsedMillis + " ms", elapsedMillis < 10000);
+    } finally {
+      slowRequest.countDown();
+      server.stop(0);
+      ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+  }
+
+  @Test
+  public void testSlowRequestIsNotHedgedWhileInstanceAsksToSlowDown() throws Exception {
+    AtomicInteger requests = new AtomicInteger();
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      requests.incrementAndGet();
+      // the instance asks every client to slow down while it is busy with the request
+      RestAPIThrottle.getInstance().pause("127.0.0.1", 1000);
+      try {
+        TimeUnit.MILLISECONDS.sleep(500);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      byte[] bytes = "slow".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.setExecutor(Executors.newFixedThreadPool(2));
+    server.start();
+
+    RestAPILatencyTracker tracker = RestAPILatencyTracker.forHost("127.0.0.1");
+    for (int i = 0; i < ServiceNowConstants.HEDGING_MIN_LATENCIES; i++) {
+      tracker.record(50);
+    }
+    try {
+      String url = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+      ServiceNowTableAPIClientImpl client = new ServiceNowTableAPIClientImpl(
+        Mockito.mock(ServiceNowConnectorConfig.class));
+      client.setHedgePercentile(90);
+
+      String body = client.executeGet(new RestAPIRequestStub(url).build(), (content, headers) ->
+        CharStreams.toString(new InputStreamReader(content, StandardCharsets.UTF_8)));
+
+      Assert.assertEquals("slow", body);
+      Assert.assertEquals(1, requests.get());
+    } finally {
+      server.stop(0);
+      ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+  }
+
+  private static class RestAPIRequestStub extends RestAPIRequest.Builder {
+    RestAPIRequestStub(String url) {
+      setUrl(url);
+    }
+  }
+}
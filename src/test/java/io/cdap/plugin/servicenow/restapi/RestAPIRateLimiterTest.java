@@ -0,0 +1,103 @@
+package io.cdap.plugin.servicenow.restapi;
+
+import com.sun.net.httpserver.HttpServer;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RestAPIRateLimiterTest {
+
+  @Test
+  public void testRequestsAreSpreadEvenly() {
+    AtomicLong now = new AtomicLong(0);
+    RestAPIRateLimiter limiter = new RestAPIRateLimiter(10, now::get);
+
+    // a single request may be sent at once, the next ones every 100 ms
+    Assert.assertEquals(0, limiter.reserve());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.reserve());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(200), limiter.reserve());
+
+    // an idle limiter does not save up more than a tenth of a second of requests
+    now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    Assert.assertEquals(0, limiter.reserve());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.reserve());
+  }
+
+  @Test
+  public void testBurstIsATenthOfSecond() {
+    RestAPIRateLimiter limiter = new RestAPIRateLimiter(100, () -> 0L);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(0, limiter.reserve());
+    }
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(10), limiter.reserve());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidRate() {
+    new RestAPIRateLimiter(0);
+  }
+
+  @Test
+  public void testClientStaysUnderRateOfServer() throws Exception {
+    List<Long> requestTimes = new CopyOnWriteArrayList<>();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", exchange -> {
+      requestTimes.add(System.nanoTime());
+      byte[] body = "{\"result\":[]}".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.setExecutor(Executors.newFixedThreadPool(4));
+    server.start();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      String url = String.format("http://localhost:%d", server.getAddress().getPort());
+      ServiceNowTableAPIClientImpl client = new ServiceNowTableAPIClientImpl(
+        Mockito.mock(ServiceNowConnectorConfig.class));
+      client.setRateLimiter(new RestAPIRateLimiter(20));
+
+      // threads sharing the client share its rate
+      List<Future<RestAPIResponse>> responses = new CopyOnWriteArrayList<>();
+      for (int i = 0; i < 30; i++) {
+        responses.add(executor.submit(() -> client.executeGet(new ServiceNowTableAPIRequestBuilderStub(url).build())));
+      }
+      for (Future<RestAPIResponse> response : responses) {
+        Assert.assertEquals(200, response.get(30, TimeUnit.SECONDS).getHttpStatus());
+      }
+    } finally {
+      executor.shutdownNow();
+      server.stop(0);
+      ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+
+    Assert.assertEquals(30, requestTimes.size());
+    long first = requestTimes.stream().min(Long::compare).get();
+    long last = requestTimes.stream().max(Long::compare).get();
+    // 30 requests at 20 per second, the first two without waiting, take 1400 ms. The first requests may reach the
+    // server late, while the connections are set up.
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(last - first);
+    Assert.assertTrue("Requests sent in " + elapsedMillis + " ms", elapsedMillis >= 1200 && elapsedMillis < 5000);
+  }
+
+  private static class ServiceNowTableAPIRequestBuilderStub extends RestAPIRequest.Builder {
+    ServiceNowTableAPIRequestBuilderStub(String url) {
+      setUrl(url);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package io.cdap.plugin.servicenow.restapi;
+
+import com.github.rholder.retry.Attempt;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class RestAPIRetryBudgetTest {
+
+  @Test
+  public void testRetriesAreAShareOfRequests() {
+    RestAPIRetryBudget budget = new RestAPIRetryBudget(0.1, 2, 5);
+    Assert.assertTrue(budget.tryRetry());
+    Assert.assertTrue(budget.tryRetry());
+    Assert.assertFalse(budget.tryRetry());
+
+    for (int i = 0; i < 10; i++) {
+      budget.onRequest();
+    }
+    Assert.assertTrue(budget.tryRetry());
+    Assert.assertFalse(budget.tryRetry());
+  }
+
+  @Test
+  public void testBudgetIsCapped() {
+    RestAPIRetryBudget budget = new RestAPIRetryBudget(1, 0, 3);
+    for (int i = 0; i < 100; i++) {
+      budget.onRequest();
+    }
+    for (int i = 0; i < 3; i++) {
+      Assert.assertTrue(budget.tryRetry());
+    }
+    Assert.assertFalse(budget.tryRetry());
+  }
+
+  @Test
+  public void testBudgetIsDividedAmongTasks() {
+    RestAPIRetryBudget budget = new RestAPIRetryBudget(5);
+    int retries = 0;
+    while (budget.tryRetry()) {
+      retries++;
+    }
+    Assert.assertEquals((int) (ServiceNowConstants.RETRY_BUDGET_INITIAL / 5), retries);
+
+    // every task keeps at least one retry
+    budget = new RestAPIRetryBudget(1000);
+    Assert.assertTrue(budget.tryRetry());
+    Assert.assertFalse(budget.tryRetry());
+  }
+
+  @Test
+  public void testRetriesStopWhenBudgetIsSpent() {
+    RestAPIRetryStopStrategy strategy = new RestAPIRetryStopStrategy(5, new RestAPIRetryBudget(0.1, 1, 10));
+
+    Assert.assertFalse(strategy.shouldStop(failedAttempt(1)));
+    Assert.assertTrue(strategy.shouldStop(failedAttempt(2)));
+  }
+
+  @Test
+  public void testRetriesStopAfterMaxAttempts() {
+    RestAPIRetryStopStrategy strategy = new RestAPIRetryStopStrategy(3, new RestAPIRetryBudget(0.1, 10, 10));
+
+    Assert.assertFalse(strategy.shouldStop(failedAttempt(2)));
+    Assert.assertTrue(strategy.shouldStop(failedAttempt(3)));
+  }
+
+  private static Attempt<?> failedAttempt(long attemptNumber) {
+    Attempt<?> attempt = Mockito.mock(Attempt.class);
+    Mockito.when(attempt.getAttemptNumber()).thenReturn(attemptNumber);
+    return attempt;
+  }
+}
@@ -0,0 +1,50 @@
+package io.cdap.plugin.servicenow.restapi;
+
+import com.github.rholder.retry.Attempt;
+import io.cdap.plugin.servicenow.apiclient.RetryableException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Random;
+
+public class RestAPIRetryWaitStrategyTest {
+
+  @Test
+  public void testDelayDoublesUpToMaximum() {
+    RestAPIRetryWaitStrategy lowest = new RestAPIRetryWaitStrategy(1000, 10000, () -> fixedRandom(0));
+    RestAPIRetryWaitStrategy highest = new RestAPIRetryWaitStrategy(1000, 10000, () -> fixedRandom(0.999999));
+
+    Assert.assertEquals(500, lowest.computeSleepTime(failedAttempt(1, new RetryableException("error"))));
+    Assert.assertEquals(999, highest.computeSleepTime(failedAttempt(1, new RetryableException("error"))));
+    Assert.assertEquals(2000, lowest.computeSleepTime(failedAttempt(3, new RetryableException("error"))));
+    Assert.assertEquals(3999, highest.computeSleepTime(failedAttempt(3, new RetryableException("error"))));
+    Assert.assertEquals(5000, lowest.computeSleepTime(failedAttempt(5, new RetryableException("error"))));
+    Assert.assertEquals(9999, highest.computeSleepTime(failedAttempt(100, new RetryableException("error"))));
+  }
+
+  @Test
+  public void testDelayAskedByServerIsUsed() {
+    RestAPIRetryWaitStrategy strategy = new RestAPIRetryWaitStrategy(1000, 10000, () -> fixedRandom(0));
+
+    Assert.assertEquals(7000, strategy.computeSleepTime(failedAttempt(1, new RetryableException("error", 7000))));
+    Assert.assertEquals(10000, strategy.computeSleepTime(failedAttempt(1, new RetryableException("error", 60000))));
+  }
+
+  private static Attempt<?> failedAttempt(long attemptNumber, Throwable cause) {
+    Attempt<?> attempt = Mockito.mock(Attempt.class);
+    Mockito.when(attempt.getAttemptNumber()).thenReturn(attemptNumber);
+    Mockito.when(attempt.hasException()).thenReturn(true);
+    Mockito.when(attempt.getExceptionCause()).thenReturn(cause);
+    return attempt;
+  }
+
+  private static Random fixedRandom(double value) {
+    return new Random() {
+      @Override
+      public double nextDouble() {
+        return value;
+      }
+    };
+  }
+}
@@ -0,0 +1,59 @@
+package io.cdap.plugin.servicenow.restapi;
+
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RestAPIThrottleTest {
+
+  private static final String HOST = "example.service-now.com";
+
+  private final AtomicLong now = new AtomicLong();
+  private RestAPIThrottle throttle;
+
+  @Before
+  public void setUp() {
+    now.set(1000000L);
+    throttle = new RestAPIThrottle(now::get);
+  }
+
+  @Test
+  public void testRequestsAreHeldBackUntilDelayIsOver() {
+    Assert.assertEquals(0, throttle.getDelayMillis(HOST));
+
+    throttle.pause(HOST, 30000);
+    now.addAndGet(10000);
+    Assert.assertEquals(20000, throttle.getDelayMillis(HOST));
+    Assert.assertEquals(0, throttle.getDelayMillis("other.service-now.com"));
+
+    now.addAndGet(20000);
+    Assert.assertEquals(0, throttle.getDelayMillis(HOST));
+  }
+
+  @Test
+  public void testShorterDelayDoesNotShortenPause() {
+    throttle.pause(HOST, 30000);
+    throttle.pause(HOST, 1000);
+    Assert.assertEquals(30000, throttle.getDelayMillis(HOST));
+
+    throttle.pause(HOST, 60000);
+    Assert.assertEquals(60000, throttle.getDelayMillis(HOST));
+  }
+
+  @Test
+  public void testDelayIsCapped() {
+    throttle.pause(HOST, ServiceNowConstants.WAIT_TIME * 10L);
+    Assert.assertEquals(ServiceNowConstants.WAIT_TIME, throttle.getDelayMillis(HOST));
+  }
+
+  @Test
+  public void testAwaitWithoutDelayReturnsImmediately() throws Exception {
+    throttle.pause(null, 0);
+    long start = System.nanoTime();
+    throttle.await(null);
+    Assert.assertTrue(System.nanoTime() - start < 1000000000L);
+  }
+}
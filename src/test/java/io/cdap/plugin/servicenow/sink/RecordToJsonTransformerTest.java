@@ -22,6 +22,7 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.etl.api.validation.CauseAttributes;
 import io.cdap.cdap.etl.api.validation.ValidationException;
 import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
+import io.cdap.plugin.servicenow.sink.model.SerializedRecord;
 import io.cdap.plugin.servicenow.sink.transform.ServiceNowTransformer;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
 import org.junit.Assert;
@@ -29,7 +30,10 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
+import java.util.Random;
 
 public class RecordToJsonTransformerTest {
 
@@ -101,4 +105,70 @@ public class RecordToJsonTransformerTest {
     ServiceNowTransformer recordToJsonTransformer = new ServiceNowTransformer();
     recordToJsonTransformer.transform(record);
   }
+
+  @Test
+  public void testSerializeMatchesJsonObject() {
+    Schema schema = Schema.recordOf("record",
+                                    Schema.Field.of("na\"me", Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("description", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                                    Schema.Field.of("comments", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+    String description = "quote \" backslash \\ slash / tab \t newline \n control \u0001 <html> & 'apostrophe' " +
+      "\u00e9\u4e2d\u2028\u2029\ud83d\ude00";
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .set("na\"me", "name")
+      .set("description", description)
+      .build();
+
+    JsonObject expected = new JsonObject();
+    expected.addProperty("na\"me", "name");
+    expected.addProperty("description", description);
+    expected.addProperty("comments", "null");
+    SerializedRecord serialized = new ServiceNowTransformer().serialize(record);
+
+    Assert.assertEquals(expected.toString(), new String(serialized.getJson(), StandardCharsets.UTF_8));
+    Assert.assertArrayEquals(expected.toString().getBytes(StandardCharsets.UTF_8), serialized.getJson());
+  }
+
+  @Test
+  public void testSerializeRoundsDoubles() {
+    Schema schema = Schema.recordOf("record", Schema.Field.of("price", Schema.of(Schema.Type.DOUBLE)));
+    ServiceNowTransformer transformer = new ServiceNowTransformer();
+    Random random = new Random(42);
+    double[] values = new double[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 6);
+    }
+    values[0] = 0.125;
+    values[1] = -0.005;
+    values[2] = 1.0E20;
+    values[3] = 1.0E-7;
+    values[4] = 20.2008;
+
+    for (double value : values) {
+      StructuredRecord record = StructuredRecord.builder(schema).set("price", value).build();
+      String expected = "{\"price\":\"" +
+        BigDecimal.valueOf(value).setScale(ServiceNowConstants.DEFAULT_SCALE, RoundingMode.HALF_UP) + "\"}";
+      Assert.assertEquals(expected, new String(transformer.serialize(record).getJson(), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testSerializeSysId() {
+    Schema schema = Schema.recordOf("record",
+                                    Schema.Field.of(ServiceNowConstants.SYS_ID, Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+    StructuredRecord record = StructuredRecord.builder(schema)
+      .set(ServiceNowConstants.SYS_ID, "123")
+      .set("name", "name")
+      .build();
+
+    SerializedRecord withSysId = new ServiceNowTransformer(false).serialize(record);
+    SerializedRecord withoutSysId = new ServiceNowTransformer(true).serialize(record);
+
+    Assert.assertEquals("{\"sys_id\":\"123\",\"name\":\"name\"}",
+                        new String(withSysId.getJson(), StandardCharsets.UTF_8));
+    Assert.assertEquals("123", withSysId.getSysId());
+    Assert.assertEquals("{\"name\":\"name\"}", new String(withoutSysId.getJson(), StandardCharsets.UTF_8));
+    Assert.assertEquals("123", withoutSysId.getSysId());
+  }
 }
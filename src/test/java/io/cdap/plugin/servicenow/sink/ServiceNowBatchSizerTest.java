@@ -0,0 +1,51 @@
+package io.cdap.plugin.servicenow.sink;
+
+import io.cdap.plugin.servicenow.sink.transform.ServiceNowBatchSizer;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ServiceNowBatchSizerTest {
+
+  @Test
+  public void testFixedBatchSize() {
+    ServiceNowBatchSizer batchSizer = new ServiceNowBatchSizer(50, false, 1000);
+
+    batchSizer.onBatchCompleted(50, 10, false);
+    Assert.assertEquals(50, batchSizer.getBatchSize());
+    batchSizer.onBatchCompleted(50, 5000, true);
+    Assert.assertEquals(50, batchSizer.getBatchSize());
+  }
+
+  @Test
+  public void testAdaptiveBatchSizeGrowsWithinTargetLatency() {
+    ServiceNowBatchSizer batchSizer = new ServiceNowBatchSizer(80, true, 1000);
+
+    batchSizer.onBatchCompleted(80, 500, false);
+    Assert.assertEquals(90, batchSizer.getBatchSize());
+    // A partial batch says nothing about larger batches
+    batchSizer.onBatchCompleted(10, 500, false);
+    Assert.assertEquals(90, batchSizer.getBatchSize());
+  }
+
+  @Test
+  public void testAdaptiveBatchSizeShrinks() {
+    ServiceNowBatchSizer batchSizer = new ServiceNowBatchSizer(80, true, 1000);
+
+    batchSizer.onBatchCompleted(80, 2000, false);
+    Assert.assertEquals(40, batchSizer.getBatchSize());
+    batchSizer.onBatchCompleted(40, 500, true);
+    Assert.assertEquals(20, batchSizer.getBatchSize());
+  }
+
+  @Test
+  public void testAdaptiveBatchSizeBounds() {
+    ServiceNowBatchSizer batchSizer = new ServiceNowBatchSizer(1, true, 1000);
+    batchSizer.onBatchCompleted(1, 500, true);
+    Assert.assertEquals(1, batchSizer.getBatchSize());
+
+    batchSizer = new ServiceNowBatchSizer(ServiceNowConstants.MAX_RECORDS_PER_BATCH, true, 1000);
+    batchSizer.onBatchCompleted(ServiceNowConstants.MAX_RECORDS_PER_BATCH, 500, false);
+    Assert.assertEquals(ServiceNowConstants.MAX_RECORDS_PER_BATCH, batchSizer.getBatchSize());
+  }
+}
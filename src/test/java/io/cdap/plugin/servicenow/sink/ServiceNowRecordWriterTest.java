@@ -15,21 +15,28 @@
  */
 package io.cdap.plugin.servicenow.sink;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import io.cdap.plugin.servicenow.ServiceNowBaseConfig;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
 import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
 import io.cdap.plugin.servicenow.restapi.RestAPIClient;
+import io.cdap.plugin.servicenow.restapi.RestAPIConnectionPool;
 import io.cdap.plugin.servicenow.restapi.RestAPIRequest;
 import io.cdap.plugin.servicenow.restapi.RestAPIResponse;
+import io.cdap.plugin.servicenow.sink.model.RestRequest;
+import io.cdap.plugin.servicenow.sink.model.SerializedRecord;
 import io.cdap.plugin.servicenow.sink.service.ServiceNowSinkAPIRequestImpl;
+import io.cdap.plugin.servicenow.sink.transform.ServiceNowBatchSizer;
 import io.cdap.plugin.servicenow.sink.transform.ServiceNowRecordWriter;
 import io.cdap.plugin.servicenow.source.ServiceNowBaseSourceConfig;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
 import org.apache.oltu.oauth2.client.OAuthClient;
 import org.apache.oltu.oauth2.client.URLConnectionClient;
 import org.apache.oltu.oauth2.client.response.OAuthJSONAccessTokenResponse;
@@ -39,19 +46,28 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({ServiceNowBaseSourceConfig.class,
-  HttpClientBuilder.class, RestAPIResponse.class, ServiceNowTableAPIClientImpl.class, RestAPIClient.class,
+  RestAPIConnectionPool.class, RestAPIResponse.class, ServiceNowTableAPIClientImpl.class, RestAPIClient.class,
   ServiceNowSinkAPIRequestImpl.class})
 public class ServiceNowRecordWriterTest {
   private static final String CLIENT_ID = "clientId";
@@ -88,7 +104,7 @@ public class ServiceNowRecordWriterTest {
       "ZCI6IjIwMjItMDYtMTUgMDY6Mzk6NTMiLCJzeXNfdXBkYXRlZF9vbiI6IjIwMjItMDYtMTUgMDY6Mzk6NTMiLCJzeXNfdGFncyI6IiIsInN" +
       "5c19jcmVhdGVkX2J5IjoicGlwZWxpbmUudXNlci4xIn19\",\"status_code\":201,\"status_text\":\"Created\",\"headers\":" +
       "[],\"execution_time\":8}]}";
-    JsonObject jsonObject = new JsonObject();
+    SerializedRecord record = newRecord("{}");
     ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
     Mockito.when(restApi.getAccessToken()).thenReturn("token");
     PowerMockito.whenNew(ServiceNowTableAPIClientImpl.class).withParameterTypes(ServiceNowConnectorConfig.class)
@@ -110,14 +126,12 @@ public class ServiceNowRecordWriterTest {
       thenReturn(accessTokenResponse);
     Mockito.when(accessTokenResponse.getAccessToken()).thenReturn("token");
     CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
-    HttpClientBuilder httpClientBuilder = Mockito.mock(HttpClientBuilder.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
-    PowerMockito.when(HttpClientBuilder.create()).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(httpClient);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
     CloseableHttpResponse httpResponse = Mockito.mock(CloseableHttpResponse.class);
     Mockito.when(httpClient.execute(Mockito.any())).thenReturn(httpResponse);
-    ServiceNowRecordWriter serviceNowRecordWriter = new ServiceNowRecordWriter(serviceNowSinkConfig);
-    serviceNowRecordWriter.write(null, jsonObject);
+    ServiceNowRecordWriter serviceNowRecordWriter = new ServiceNowRecordWriter(serviceNowSinkConfig, null);
+    serviceNowRecordWriter.write(null, record);
     Assert.assertEquals(500, restAPIResponse.getHttpStatus());
   }
 
@@ -131,14 +145,15 @@ public class ServiceNowRecordWriterTest {
       "TUgMDY6Mzk6NTMiLCJzeXNfdXBkYXRlZF9vbiI6IjIwMjItMDYtMTUgMDY6Mzk6NTMiLCJzeXNfdGFncyI6IiIsInN5c19jcmVhdGVkX2J5Ijo" +
       "icGlwZWxpbmUudXNlci4xIn19\",\"status_code\":201,\"status_text\":\"Created\",\"headers\":[],\"execution_time\"" +
       ":8}],\"unserviced_requests\":[]}";
-    JsonObject jsonObject = new JsonObject();
+    SerializedRecord record = newRecord("{}");
     ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
     Mockito.when(restApi.getAccessToken()).thenReturn("token");
     PowerMockito.whenNew(ServiceNowTableAPIClientImpl.class).withParameterTypes(ServiceNowConnectorConfig.class)
       .withArguments(Mockito.any(ServiceNowConnectorConfig.class)).thenReturn(restApi);
     ServiceNowSinkAPIRequestImpl serviceNowSinkAPIRequest = Mockito.mock(ServiceNowSinkAPIRequestImpl.class);
-    PowerMockito.whenNew(ServiceNowSinkAPIRequestImpl.class).withParameterTypes(ServiceNowSinkConfig.class)
-      .withArguments(Mockito.any(ServiceNowSinkConfig.class)).thenReturn(serviceNowSinkAPIRequest);
+    PowerMockito.whenNew(ServiceNowSinkAPIRequestImpl.class)
+      .withParameterTypes(ServiceNowSinkConfig.class, String.class)
+      .withArguments(Mockito.any(ServiceNowSinkConfig.class), Mockito.isNull()).thenReturn(serviceNowSinkAPIRequest);
     Map<String, String> map = new HashMap<>();
     List<Map<String, String>> result = new ArrayList<>();
     map.put("key", "value");
@@ -157,17 +172,15 @@ public class ServiceNowRecordWriterTest {
     Mockito.when(accessTokenResponse.getAccessToken()).thenReturn("token");
     RestAPIResponse response = Mockito.spy(restAPIResponse);
     CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
-    HttpClientBuilder httpClientBuilder = Mockito.mock(HttpClientBuilder.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
     PowerMockito.mockStatic(RestAPIResponse.class);
-    PowerMockito.when(HttpClientBuilder.create()).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(httpClient);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
     CloseableHttpResponse httpResponse = Mockito.mock(CloseableHttpResponse.class);
     Mockito.when(httpClient.execute(Mockito.any())).thenReturn(httpResponse);
     PowerMockito.when(RestAPIResponse.parse(ArgumentMatchers.any(), ArgumentMatchers.anyString())).
       thenReturn(response);
-    ServiceNowRecordWriter serviceNowRecordWriter = new ServiceNowRecordWriter(serviceNowSinkConfig);
-    serviceNowRecordWriter.write(null, jsonObject);
+    ServiceNowRecordWriter serviceNowRecordWriter = new ServiceNowRecordWriter(serviceNowSinkConfig, null);
+    serviceNowRecordWriter.write(null, record);
     Assert.assertEquals(200, restAPIResponse.getHttpStatus());
   }
 
@@ -181,14 +194,15 @@ public class ServiceNowRecordWriterTest {
       "TUgMDY6Mzk6NTMiLCJzeXNfdXBkYXRlZF9vbiI6IjIwMjItMDYtMTUgMDY6Mzk6NTMiLCJzeXNfdGFncyI6IiIsInN5c19jcmVhdGVkX2J5Ijo" +
       "icGlwZWxpbmUudXNlci4xIn19\",\"status_code\":201,\"status_text\":\"Created\",\"headers\":[],\"execution_time\"" +
       ":8}],\"unserviced_requests\":[\"200\"]}";
-    JsonObject jsonObject = new JsonObject();
+    SerializedRecord record = newRecord("{}");
     ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
     Mockito.when(restApi.getAccessToken()).thenReturn("token");
     PowerMockito.whenNew(ServiceNowTableAPIClientImpl.class).withParameterTypes(ServiceNowConnectorConfig.class)
       .withArguments(Mockito.any(ServiceNowConnectorConfig.class)).thenReturn(restApi);
     ServiceNowSinkAPIRequestImpl serviceNowSinkAPIRequest = Mockito.mock(ServiceNowSinkAPIRequestImpl.class);
-    PowerMockito.whenNew(ServiceNowSinkAPIRequestImpl.class).withParameterTypes(ServiceNowSinkConfig.class)
-      .withArguments(Mockito.any(ServiceNowSinkConfig.class)).thenReturn(serviceNowSinkAPIRequest);
+    PowerMockito.whenNew(ServiceNowSinkAPIRequestImpl.class)
+      .withParameterTypes(ServiceNowSinkConfig.class, String.class)
+      .withArguments(Mockito.any(ServiceNowSinkConfig.class), Mockito.isNull()).thenReturn(serviceNowSinkAPIRequest);
     Map<String, String> map = new HashMap<>();
     List<Map<String, String>> result = new ArrayList<>();
     map.put("key", "value");
@@ -207,17 +221,139 @@ public class ServiceNowRecordWriterTest {
     Mockito.when(accessTokenResponse.getAccessToken()).thenReturn("token");
     RestAPIResponse response = Mockito.spy(restAPIResponse);
     CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
-    HttpClientBuilder httpClientBuilder = Mockito.mock(HttpClientBuilder.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
     PowerMockito.mockStatic(RestAPIResponse.class);
-    PowerMockito.when(HttpClientBuilder.create()).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(httpClient);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
     CloseableHttpResponse httpResponse = Mockito.mock(CloseableHttpResponse.class);
     Mockito.when(httpClient.execute(Mockito.any())).thenReturn(httpResponse);
     PowerMockito.when(RestAPIResponse.parse(ArgumentMatchers.any(), ArgumentMatchers.anyString())).
      thenReturn(response);
-    ServiceNowRecordWriter serviceNowRecordWriter = new ServiceNowRecordWriter(serviceNowSinkConfig);
-    serviceNowRecordWriter.write(null, jsonObject);
+    ServiceNowRecordWriter serviceNowRecordWriter = new ServiceNowRecordWriter(serviceNowSinkConfig, null);
+    serviceNowRecordWriter.write(null, record);
     Assert.assertEquals(200, restAPIResponse.getHttpStatus());
   }
+
+  @Test
+  public void testBatchesAreWrittenConcurrently() throws Exception {
+    ServiceNowSinkAPIRequestImpl serviceNowSinkAPIRequest = newSinkAPIRequestMock();
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    AtomicInteger batches = new AtomicInteger();
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    Mockito.doAnswer(invocation -> {
+      maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+      bothStarted.countDown();
+      bothStarted.await(5, TimeUnit.SECONDS);
+      batches.incrementAndGet();
+      inFlight.decrementAndGet();
+      return false;
+    }).when(serviceNowSinkAPIRequest).createPostRequestRetryableMode(Mockito.anyMap());
+
+    ServiceNowRecordWriter serviceNowRecordWriter =
+      new ServiceNowRecordWriter(serviceNowSinkAPIRequest, newFixedBatchSizer(), false, 2);
+    for (int i = 0; i < 5 * ServiceNowConstants.RECORDS_PER_BATCH + 1; i++) {
+      serviceNowRecordWriter.write(null, newRecord("{}"));
+    }
+    serviceNowRecordWriter.close(null);
+
+    Assert.assertEquals(6, batches.get());
+    Assert.assertEquals(2, maxInFlight.get());
+  }
+
+  @Test
+  public void testFailuresAreReportedInBatchOrder() throws Exception {
+    ServiceNowSinkAPIRequestImpl serviceNowSinkAPIRequest = newSinkAPIRequestMock();
+    CountDownLatch secondFailed = new CountDownLatch(1);
+    Mockito.doAnswer(invocation -> {
+      Map<String, RestRequest> batch = invocation.getArgument(0);
+      if (batch.containsKey("0")) {
+        secondFailed.await(5, TimeUnit.SECONDS);
+        throw new ExecutionException(new IllegalStateException("batch 1 failed"));
+      }
+      secondFailed.countDown();
+      throw new ExecutionException(new IllegalStateException("batch 2 failed"));
+    }).when(serviceNowSinkAPIRequest).createPostRequestRetryableMode(Mockito.anyMap());
+
+    ServiceNowRecordWriter serviceNowRecordWriter =
+      new ServiceNowRecordWriter(serviceNowSinkAPIRequest, newFixedBatchSizer(), false, 2);
+    for (int i = 0; i < 2 * ServiceNowConstants.RECORDS_PER_BATCH; i++) {
+      serviceNowRecordWriter.write(null, newRecord("{}"));
+    }
+    try {
+      serviceNowRecordWriter.close(null);
+      Assert.fail("Expected the failure of the first batch");
+    } catch (IOException e) {
+      Assert.assertEquals("batch 1 failed", e.getCause().getCause().getMessage());
+      Assert.assertEquals(1, e.getSuppressed().length);
+      Assert.assertEquals("batch 2 failed", e.getSuppressed()[0].getCause().getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testImportSetBatches() throws Exception {
+    ServiceNowSinkAPIRequestImpl serviceNowSinkAPIRequest = Mockito.mock(ServiceNowSinkAPIRequestImpl.class);
+    List<Integer> batchSizes = new ArrayList<>();
+    Mockito.doAnswer(invocation -> {
+      batchSizes.add(invocation.<List<SerializedRecord>>getArgument(0).size());
+      return false;
+    }).when(serviceNowSinkAPIRequest).createImportSetRequestRetryableMode(Mockito.anyList());
+
+    ServiceNowRecordWriter serviceNowRecordWriter =
+      new ServiceNowRecordWriter(serviceNowSinkAPIRequest, newFixedBatchSizer(), true, 1);
+    for (int i = 0; i < ServiceNowConstants.RECORDS_PER_BATCH + 10; i++) {
+      serviceNowRecordWriter.write(null, newRecord("{}"));
+    }
+    serviceNowRecordWriter.close(null);
+
+    Assert.assertEquals(Arrays.asList(ServiceNowConstants.RECORDS_PER_BATCH, 10), batchSizes);
+    Mockito.verify(serviceNowSinkAPIRequest, Mockito.never()).createPostRequestRetryableMode(Mockito.anyMap());
+  }
+
+  @Test
+  public void testCreateImportSetRequest() throws Exception {
+    ServiceNowSinkConfig importSetConfig = ServiceNowSinkConfigHelper.newConfigBuilder()
+      .setRestApiEndpoint(REST_API_ENDPOINT)
+      .setTableName("u_staging")
+      .setOperation(ServiceNowConstants.IMPORT_SET_OPERATION)
+      .build();
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    PowerMockito.whenNew(ServiceNowTableAPIClientImpl.class).withParameterTypes(ServiceNowConnectorConfig.class)
+      .withArguments(Mockito.any(ServiceNowConnectorConfig.class)).thenReturn(restApi);
+    String responseBody = "{\"import_set_id\":\"ISET0010001\",\"result\":[{\"status\":\"inserted\"}," +
+      "{\"status\":\"error\",\"error_message\":\"Field 'u_name' is mandatory\"}]}";
+    ArgumentCaptor<RestAPIRequest> request = ArgumentCaptor.forClass(RestAPIRequest.class);
+    Mockito.when(restApi.executePost(request.capture()))
+      .thenReturn(new RestAPIResponse(HttpStatus.SC_CREATED, new HashMap<>(), responseBody));
+
+    ServiceNowSinkAPIRequestImpl serviceNowSinkAPIRequest = new ServiceNowSinkAPIRequestImpl(importSetConfig, null);
+    serviceNowSinkAPIRequest.createImportSetRequest(
+      Arrays.asList(newRecord("{\"u_name\":\"name\"}"), newRecord("{}")), "token");
+
+    Assert.assertEquals(REST_API_ENDPOINT + "/api/now/import/u_staging/insertMultiple", request.getValue().getUrl());
+    JsonObject payload = new JsonParser().parse(EntityUtils.toString(request.getValue().getEntity()))
+      .getAsJsonObject();
+    JsonArray records = payload.getAsJsonArray("records");
+    Assert.assertEquals(2, records.size());
+    Assert.assertEquals("name", records.get(0).getAsJsonObject().get("u_name").getAsString());
+    Assert.assertTrue(records.get(1).getAsJsonObject().entrySet().isEmpty());
+  }
+
+  private static SerializedRecord newRecord(String json) {
+    return new SerializedRecord(json.getBytes(StandardCharsets.UTF_8), null);
+  }
+
+  private static ServiceNowBatchSizer newFixedBatchSizer() {
+    return new ServiceNowBatchSizer(ServiceNowConstants.RECORDS_PER_BATCH, false, Long.MAX_VALUE);
+  }
+
+  private static ServiceNowSinkAPIRequestImpl newSinkAPIRequestMock() {
+    ServiceNowSinkAPIRequestImpl serviceNowSinkAPIRequest = Mockito.mock(ServiceNowSinkAPIRequestImpl.class);
+    AtomicInteger ids = new AtomicInteger();
+    Mockito.when(serviceNowSinkAPIRequest.getRestRequest(Mockito.any())).thenAnswer(invocation -> {
+      RestRequest restRequest = new RestRequest();
+      restRequest.setId(String.valueOf(ids.getAndIncrement()));
+      return restRequest;
+    });
+    return serviceNowSinkAPIRequest;
+  }
 }
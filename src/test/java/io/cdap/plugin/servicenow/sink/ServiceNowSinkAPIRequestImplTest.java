@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2022 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.cdap.plugin.servicenow.sink;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.etl.api.StageMetrics;
+import io.cdap.plugin.servicenow.apiclient.RetryableException;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
+import io.cdap.plugin.servicenow.restapi.RestAPIResponse;
+import io.cdap.plugin.servicenow.restapi.RestAPIRetryWaitStrategy;
+import io.cdap.plugin.servicenow.sink.model.RestRequest;
+import io.cdap.plugin.servicenow.sink.model.SerializedRecord;
+import io.cdap.plugin.servicenow.sink.service.ServiceNowSinkAPIRequestImpl;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowStageMetrics;
+import org.apache.http.HttpStatus;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ServiceNowSinkAPIRequestImpl.class})
+public class ServiceNowSinkAPIRequestImplTest {
+  private static final String REST_API_ENDPOINT = "https://ven05127.service-now.com";
+  private static final String STAGE_KEY = "default.pipeline.0.ServiceNow";
+  private static final String TIMED_OUT_RESPONSE = "{\"serviced_requests\":[{\"id\":\"1\",\"status_code\":500," +
+    "\"body\":\"" + Base64.getEncoder().encodeToString(
+      "{\"error\":{\"detail\":\"maximum execution time exceeded\"}}".getBytes(StandardCharsets.UTF_8)) +
+    "\"}],\"unserviced_requests\":[]}";
+  private static final String IMPORT_SET_RESPONSE = "{\"import_set_id\":\"ISET0010001\",\"result\":[" +
+    "{\"status\":\"inserted\"},{\"status\":\"inserted\"},{\"status\":\"skipped\"}," +
+    "{\"status\":\"error\",\"error_message\":\"Invalid reference\"}]}";
+  private static final String SERVICED_RESPONSE = "{\"serviced_requests\":[{\"id\":\"1\",\"status_code\":201}]," +
+    "\"unserviced_requests\":[]}";
+
+  private ServiceNowTableAPIClientImpl restApi;
+  private ServiceNowSinkConfig config;
+
+  @Before
+  public void initialize() throws Exception {
+    restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    PowerMockito.whenNew(ServiceNowTableAPIClientImpl.class).withParameterTypes(ServiceNowConnectorConfig.class)
+      .withArguments(Mockito.any(ServiceNowConnectorConfig.class)).thenReturn(restApi);
+    Mockito.when(restApi.getAccessTokenRetryableMode()).thenReturn("token");
+    config = ServiceNowSinkConfigHelper.newConfigBuilder()
+      .setRestApiEndpoint(REST_API_ENDPOINT)
+      .setTableName("sys_user")
+      .setOperation(ServiceNowConstants.INSERT_OPERATION)
+      .build();
+  }
+
+  @Test
+  public void testImportSetRowsAreCountedInStageMetrics() throws Exception {
+    StageMetrics metrics = Mockito.mock(StageMetrics.class);
+    ServiceNowStageMetrics.register(STAGE_KEY, metrics);
+    Mockito.when(restApi.executePost(Mockito.any())).thenReturn(newResponse(IMPORT_SET_RESPONSE));
+
+    try {
+      Assert.assertFalse(newSinkAPIRequest().createImportSetRequestRetryableMode(newRecords()));
+      Mockito.verify(metrics).count(ServiceNowConstants.METRIC_IMPORT_SET_ROWS_PREFIX + "inserted", 2);
+      Mockito.verify(metrics).count(ServiceNowConstants.METRIC_IMPORT_SET_ROWS_PREFIX + "skipped", 1);
+      Mockito.verify(metrics).count(ServiceNowConstants.METRIC_IMPORT_SET_ROWS_PREFIX + "error", 1);
+    } finally {
+      ServiceNowStageMetrics.unregister(STAGE_KEY);
+    }
+  }
+
+  @Test
+  public void testImportSetErrorsFailTheBatch() throws Exception {
+    Whitebox.setInternalState(config, "failOnImportSetErrors", true);
+    Mockito.when(restApi.executePost(Mockito.any())).thenReturn(newResponse(IMPORT_SET_RESPONSE));
+
+    try {
+      newSinkAPIRequest().createImportSetRequest(newRecords(), "token");
+      Assert.fail("Expected the batch to fail");
+    } catch (IllegalStateException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("failed 1 of 4 rows"));
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("Invalid reference"));
+    }
+  }
+
+  @Test
+  public void testImportSetErrorsAreLoggedByDefault() throws Exception {
+    Mockito.when(restApi.executePost(Mockito.any())).thenReturn(newResponse(IMPORT_SET_RESPONSE));
+
+    Map<String, Integer> statusCounts = newSinkAPIRequest().createImportSetRequest(newRecords(), "token");
+    Assert.assertEquals(ImmutableMap.of("error", 1, "inserted", 2, "skipped", 1), statusCounts);
+  }
+
+  @Test
+  public void testTooManyRequestsIsRetriedAfterRetryAfterDelay() throws Exception {
+    long retryAfterMillis = 200;
+    Mockito.when(restApi.executePost(Mockito.any()))
+      .thenThrow(new RetryableException("HTTP Error 429", retryAfterMillis))
+      .thenReturn(newResponse(SERVICED_RESPONSE));
+
+    long start = System.nanoTime();
+    Assert.assertFalse(newSinkAPIRequest().createPostRequestRetryableMode(newRequests()));
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= retryAfterMillis);
+    Mockito.verify(restApi, Mockito.times(2)).executePost(Mockito.any());
+  }
+
+  @Test
+  public void testBatchIsRetriedOnceTheCircuitLetsRequestsThrough() throws Exception {
+    long rejectedMillis = 200;
+    // what the client throws while the circuit of the instance is open, before sending the request
+    Mockito.when(restApi.executePost(Mockito.any()))
+      .thenThrow(new RetryableException("Requests to ServiceNow instance 'ven05127.service-now.com' are suspended " +
+                                          "after repeated failures.", rejectedMillis))
+      .thenReturn(newResponse(SERVICED_RESPONSE));
+
+    long start = System.nanoTime();
+    Assert.assertFalse(newSinkAPIRequest().createPostRequestRetryableMode(newRequests()));
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= rejectedMillis);
+    Mockito.verify(restApi, Mockito.times(2)).executePost(Mockito.any());
+  }
+
+  @Test
+  public void testImportSetIsRetriedWhileTheCircuitIsOpen() throws Exception {
+    Mockito.when(restApi.executePost(Mockito.any()))
+      .thenThrow(new RetryableException("Requests to ServiceNow instance 'ven05127.service-now.com' are suspended " +
+                                          "after repeated failures.", 1))
+      .thenThrow(new RetryableException("Requests to ServiceNow instance 'ven05127.service-now.com' are suspended " +
+                                          "after repeated failures.", 1))
+      .thenReturn(newResponse(IMPORT_SET_RESPONSE));
+
+    Assert.assertTrue(newSinkAPIRequest().createImportSetRequestRetryableMode(newRecords()));
+    Mockito.verify(restApi, Mockito.times(3)).executePost(Mockito.any());
+  }
+
+  @Test
+  public void testImportSetIsRetriedWhenServiceNowIsUnavailable() throws Exception {
+    Mockito.when(restApi.executePost(Mockito.any()))
+      .thenThrow(new RetryableException("HTTP Error 503"))
+      .thenReturn(newResponse(IMPORT_SET_RESPONSE));
+
+    Assert.assertTrue(newSinkAPIRequest().createImportSetRequestRetryableMode(newRecords()));
+    Mockito.verify(restApi, Mockito.times(2)).executePost(Mockito.any());
+  }
+
+  @Test
+  public void testTimedOutRequestIsSentAgain() throws Exception {
+    Mockito.when(restApi.executePost(Mockito.any()))
+      .thenReturn(newResponse(TIMED_OUT_RESPONSE))
+      .thenReturn(newResponse(SERVICED_RESPONSE));
+
+    Assert.assertTrue(newSinkAPIRequest().createPostRequest(newRequests(), "token"));
+    Mockito.verify(restApi, Mockito.times(2)).executePost(Mockito.any());
+  }
+
+  @Test
+  public void testTimedOutRequestIsSentAgainAtMostMaxAttempts() throws Exception {
+    Mockito.when(restApi.executePost(Mockito.any())).thenAnswer(invocation -> newResponse(TIMED_OUT_RESPONSE));
+
+    try {
+      newSinkAPIRequest().createPostRequest(newRequests(), "token");
+      Assert.fail("Expected the batch to fail");
+    } catch (IllegalStateException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("did not service 1 requests"));
+    }
+    Mockito.verify(restApi, Mockito.times(ServiceNowConstants.MAX_NUMBER_OF_RETRY_ATTEMPTS))
+      .executePost(Mockito.any());
+  }
+
+  private ServiceNowSinkAPIRequestImpl newSinkAPIRequest() {
+    return new ServiceNowSinkAPIRequestImpl(config, STAGE_KEY, new RestAPIRetryWaitStrategy(1, 1000));
+  }
+
+  private static Map<String, RestRequest> newRequests() {
+    RestRequest request = new RestRequest();
+    request.setId("1");
+    return Collections.singletonMap("1", request);
+  }
+
+  private static List<SerializedRecord> newRecords() {
+    List<SerializedRecord> records = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      records.add(new SerializedRecord(("{\"name\":\"" + i + "\"}").getBytes(StandardCharsets.UTF_8), null));
+    }
+    return records;
+  }
+
+  private static RestAPIResponse newResponse(String body) {
+    return new RestAPIResponse(HttpStatus.SC_OK, new HashMap<>(), body);
+  }
+}
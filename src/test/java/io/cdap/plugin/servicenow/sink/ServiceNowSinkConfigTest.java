@@ -24,6 +24,7 @@ import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
 import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
 import io.cdap.plugin.servicenow.restapi.RestAPIClient;
+import io.cdap.plugin.servicenow.restapi.RestAPIConnectionPool;
 import io.cdap.plugin.servicenow.restapi.RestAPIRequest;
 import io.cdap.plugin.servicenow.restapi.RestAPIResponse;
 import io.cdap.plugin.servicenow.sink.model.SchemaResponse;
@@ -33,7 +34,6 @@ import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.message.BasicStatusLine;
 import org.apache.oltu.oauth2.client.OAuthClient;
 import org.apache.oltu.oauth2.client.URLConnectionClient;
@@ -47,6 +47,7 @@ import org.mockito.Mockito;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -54,7 +55,7 @@ import java.util.List;
 import java.util.Map;
 
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({RestAPIClient.class, HttpClientBuilder.class, RestAPIResponse.class,
+@PrepareForTest({RestAPIClient.class, RestAPIConnectionPool.class, RestAPIResponse.class,
   ServiceNowTableAPIClientImpl.class})
 public class ServiceNowSinkConfigTest {
 
@@ -147,6 +148,12 @@ public class ServiceNowSinkConfigTest {
     Assert.assertEquals("Table", config.getTableName());
   }
 
+  @Test
+  public void testRequestsAreCompressedByDefault() {
+    ServiceNowSinkConfig config = ServiceNowSinkConfigHelper.newConfigBuilder().build();
+    Assert.assertTrue(config.isCompressRequests());
+  }
+
   @Test
   public void testEmptyTableName() {
     MockFailureCollector mockFailureCollector = new MockFailureCollector("Stage Name");
@@ -309,11 +316,9 @@ public class ServiceNowSinkConfigTest {
     Mockito.when(accessTokenResponse.getAccessToken()).thenReturn("token");
     RestAPIResponse response = Mockito.spy(restAPIResponse);
     CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
-    HttpClientBuilder httpClientBuilder = Mockito.mock(HttpClientBuilder.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
     PowerMockito.mockStatic(RestAPIResponse.class);
-    PowerMockito.when(HttpClientBuilder.create()).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(httpClient);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
     CloseableHttpResponse httpResponse = Mockito.mock(CloseableHttpResponse.class);
     Mockito.when(httpClient.execute(Mockito.any())).thenReturn(httpResponse);
     PowerMockito.when(RestAPIResponse.parse(httpResponse, null)).thenReturn(response);
@@ -370,11 +375,9 @@ public class ServiceNowSinkConfigTest {
     Mockito.when(accessTokenResponse.getAccessToken()).thenReturn("token");
     RestAPIResponse response = Mockito.spy(restAPIResponse);
     CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
-    HttpClientBuilder httpClientBuilder = Mockito.mock(HttpClientBuilder.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
     PowerMockito.mockStatic(RestAPIResponse.class);
-    PowerMockito.when(HttpClientBuilder.create()).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(httpClient);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
     CloseableHttpResponse httpResponse = Mockito.mock(CloseableHttpResponse.class);
     StatusLine statusLine = Mockito.mock(BasicStatusLine.class);
     Mockito.when(statusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
@@ -407,6 +410,30 @@ public class ServiceNowSinkConfigTest {
     }
   }
 
+  @Test
+  public void testValidateMaxRequestsPerSecondWithoutConcurrentTasks() {
+    MockFailureCollector collector = new MockFailureCollector();
+    ServiceNowSinkConfig sinkConfig = ServiceNowSinkConfigHelper.newConfigBuilder()
+      .setOperation(ServiceNowConstants.INSERT_OPERATION).build();
+    Whitebox.setInternalState(sinkConfig, "maxRequestsPerSecond", 20);
+    ServiceNowSinkConfig config = withServiceNowValidationMock(sinkConfig, collector);
+
+    config.validate(collector);
+    Assert.assertEquals(1, collector.getValidationFailures().size());
+    Assert.assertEquals(ServiceNowConstants.PROPERTY_CONCURRENT_TASKS, collector.getValidationFailures().get(0)
+      .getCauses().get(0).getAttribute(CauseAttributes.STAGE_CONFIG));
+  }
+
+  @Test
+  public void testRequestsPerSecondAreDividedAmongConcurrentTasks() {
+    ServiceNowSinkConfig config = ServiceNowSinkConfigHelper.newConfigBuilder().build();
+    Assert.assertEquals(0, config.getRequestsPerSecondPerTask(), 0);
+
+    Whitebox.setInternalState(config, "maxRequestsPerSecond", 20);
+    Whitebox.setInternalState(config, "concurrentTasks", 8);
+    Assert.assertEquals(2.5, config.getRequestsPerSecondPerTask(), 0);
+  }
+
   private ServiceNowSinkConfig withServiceNowValidationMock(ServiceNowSinkConfig config,
                                                             FailureCollector collector) {
     ServiceNowSinkConfig spy = Mockito.spy(config);
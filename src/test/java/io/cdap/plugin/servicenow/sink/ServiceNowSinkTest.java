@@ -15,11 +15,11 @@
  */
 package io.cdap.plugin.servicenow.sink;
 
-import com.google.gson.JsonObject;
 import io.cdap.cdap.api.data.format.StructuredRecord;
 import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.dataset.lib.KeyValue;
 import io.cdap.cdap.etl.api.Emitter;
+import io.cdap.cdap.etl.api.StageMetrics;
 import io.cdap.cdap.etl.api.batch.BatchRuntimeContext;
 import io.cdap.cdap.etl.api.batch.BatchSinkContext;
 import io.cdap.cdap.etl.mock.common.MockArguments;
@@ -28,14 +28,15 @@ import io.cdap.cdap.etl.mock.validation.MockFailureCollector;
 import io.cdap.plugin.servicenow.ServiceNowBaseConfig;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
 import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
+import io.cdap.plugin.servicenow.restapi.RestAPIConnectionPool;
 import io.cdap.plugin.servicenow.restapi.RestAPIResponse;
+import io.cdap.plugin.servicenow.sink.model.SerializedRecord;
 import io.cdap.plugin.servicenow.sink.transform.ServiceNowTransformer;
 import io.cdap.plugin.servicenow.source.ServiceNowBaseSourceConfig;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.oltu.oauth2.client.OAuthClient;
 import org.apache.oltu.oauth2.client.URLConnectionClient;
 import org.apache.oltu.oauth2.client.response.OAuthJSONAccessTokenResponse;
@@ -55,7 +56,7 @@ import java.util.Map;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({ServiceNowTableAPIClientImpl.class, ServiceNowBaseSourceConfig.class, ServiceNowSink.class,
-  HttpClientBuilder.class, RestAPIResponse.class})
+  RestAPIConnectionPool.class, RestAPIResponse.class})
 public class ServiceNowSinkTest {
   private static final String CLIENT_ID = "clientId";
   private static final String CLIENT_SECRET = "clientSecret";
@@ -132,7 +133,7 @@ public class ServiceNowSinkTest {
     Schema schema = Schema.recordOf("record",
                                     Schema.Field.of("id", Schema.of(Schema.Type.LONG)),
                                     Schema.Field.of("price", Schema.of(Schema.Type.DOUBLE)));
-    Emitter<KeyValue<NullWritable, JsonObject>> emitter = Mockito.mock(Emitter.class);
+    Emitter<KeyValue<NullWritable, SerializedRecord>> emitter = Mockito.mock(Emitter.class);
     Mockito.when(context.getInputSchema()).thenReturn(schema);
     RestAPIResponse restAPIResponse = new RestAPIResponse(httpStatus, headers, responseBody);
     Mockito.when(restApi.executeGet(Mockito.any())).thenReturn(restAPIResponse);
@@ -146,16 +147,15 @@ public class ServiceNowSinkTest {
     Mockito.when(accessTokenResponse.getAccessToken()).thenReturn("token");
     RestAPIResponse response = Mockito.spy(restAPIResponse);
     CloseableHttpClient httpClient = Mockito.mock(CloseableHttpClient.class);
-    HttpClientBuilder httpClientBuilder = Mockito.mock(HttpClientBuilder.class);
-    PowerMockito.mockStatic(HttpClientBuilder.class);
+    PowerMockito.mockStatic(RestAPIConnectionPool.class);
     PowerMockito.mockStatic(RestAPIResponse.class);
-    PowerMockito.when(HttpClientBuilder.create()).thenReturn(httpClientBuilder);
-    Mockito.when(httpClientBuilder.build()).thenReturn(httpClient);
+    PowerMockito.when(RestAPIConnectionPool.getHttpClient()).thenReturn(httpClient);
     CloseableHttpResponse httpResponse = Mockito.mock(CloseableHttpResponse.class);
     Mockito.when(httpClient.execute(Mockito.any())).thenReturn(httpResponse);
     PowerMockito.when(RestAPIResponse.parse(ArgumentMatchers.any(), ArgumentMatchers.anyString())).
       thenReturn(response);
     BatchRuntimeContext batchRuntimeContext = Mockito.mock(BatchRuntimeContext.class);
+    Mockito.when(batchRuntimeContext.getMetrics()).thenReturn(Mockito.mock(StageMetrics.class));
     StructuredRecord record = Mockito.mock(StructuredRecord.class);
     Mockito.when(record.get("id")).thenReturn(1L);
     Mockito.when(record.get("price")).thenReturn(20.2008);
@@ -165,6 +165,7 @@ public class ServiceNowSinkTest {
     serviceNowSink.initialize(batchRuntimeContext);
     serviceNowSink.transform(record, emitter);
     serviceNowSink.prepareRun(context);
+    serviceNowSink.destroy();
     Assert.assertEquals("1", record.get("id").toString());
     Assert.assertEquals("20.2008", record.get("price").toString());
     Assert.assertEquals(0, mockFailureCollector.getValidationFailures().size());
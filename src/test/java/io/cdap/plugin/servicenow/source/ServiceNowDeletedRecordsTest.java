@@ -0,0 +1,65 @@
+package io.cdap.plugin.servicenow.source;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class ServiceNowDeletedRecordsTest {
+
+  private static final Schema TABLE_SCHEMA = Schema.recordOf(
+    "incident",
+    Schema.Field.of("sys_id", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+    Schema.Field.of("number", Schema.nullableOf(Schema.of(Schema.Type.STRING))));
+
+  @Test
+  public void testAddOperationField() {
+    Schema schema = ServiceNowDeletedRecords.addOperationField(TABLE_SCHEMA);
+    Assert.assertEquals("incident", schema.getRecordName());
+    Assert.assertEquals(3, schema.getFields().size());
+    Assert.assertEquals(Schema.of(Schema.Type.STRING), schema.getField("operation").getSchema());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOperationFieldCollision() {
+    List<Schema.Field> fields = new ArrayList<>(Arrays.asList(
+      Schema.Field.of("operation", Schema.nullableOf(Schema.of(Schema.Type.STRING)))));
+    ServiceNowDeletedRecords.addOperationField("incident", fields);
+  }
+
+  @Test
+  public void testAuditQuery() {
+    Assert.assertEquals("tablename=incident^sys_created_on<=2022-03-01 10:00:00^ORDERBYsys_created_on^ORDERBYsys_id",
+                        ServiceNowDeletedRecords.getAuditQuery("incident", "sys_created_on<=2022-03-01 10:00:00"));
+  }
+
+  @Test
+  public void testCreateTombstone() throws IOException {
+    Schema schema = Schema.recordOf("incident", Schema.Field.of("sys_id", Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("number", Schema.nullableOf(Schema.of(Schema.Type.STRING))),
+                                    Schema.Field.of("tablename", Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("operation", Schema.of(Schema.Type.STRING)));
+    String response = "{\"result\":[{\"documentkey\":\"a1\",\"tablename\":\"incident\"}]}";
+    List<StructuredRecord> audits = new ArrayList<>();
+    ServiceNowDeletedRecords.createAuditDecoder().decode(
+      new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)), audits::add);
+    Assert.assertArrayEquals(new String[]{"documentkey"},
+                             ServiceNowDeletedRecords.createAuditDecoder().getSelectedFields());
+    Map<String, String> constantFields = ImmutableMap.of("tablename", "incident", "operation", "upsert");
+
+    StructuredRecord tombstone = ServiceNowDeletedRecords.createTombstone(schema, audits.get(0), constantFields);
+    Assert.assertEquals("a1", tombstone.get("sys_id"));
+    Assert.assertNull(tombstone.get("number"));
+    Assert.assertEquals("incident", tombstone.get("tablename"));
+    Assert.assertEquals("delete", tombstone.get("operation"));
+  }
+}
@@ -0,0 +1,176 @@
+package io.cdap.plugin.servicenow.source;
+
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowHighWaterMark;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ServiceNowIncrementalStateTest {
+  private static final String LAST_SYS_ID = "ffffffffffffffffffffffffffffffff";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testRangeQuery() {
+    ServiceNowHighWaterMark lowerMark = new ServiceNowHighWaterMark("2022-03-01 10:00:00", "a1");
+    ServiceNowHighWaterMark upperMark = new ServiceNowHighWaterMark("2022-03-01 11:00:00", "b2");
+
+    Assert.assertEquals("", ServiceNowHighWaterMark.getRangeQuery(null, null));
+    Assert.assertEquals("sys_updated_on>=2022-03-01 10:00:00^sys_updated_on>2022-03-01 10:00:00^ORsys_id>a1",
+                        ServiceNowHighWaterMark.getRangeQuery(lowerMark, null));
+    Assert.assertEquals("sys_updated_on>=2022-03-01 10:00:00^sys_updated_on>2022-03-01 10:00:00^ORsys_id>a1"
+                          + "^sys_updated_on<=2022-03-01 11:00:00^sys_updated_on<2022-03-01 11:00:00^ORsys_id<=b2",
+                        ServiceNowHighWaterMark.getRangeQuery(lowerMark, upperMark));
+  }
+
+  @Test
+  public void testRecordsUpdatedInTheSameSecondAreOrderedBySysId() {
+    ServiceNowHighWaterMark first = new ServiceNowHighWaterMark("2022-03-01 10:00:00", "a1");
+    ServiceNowHighWaterMark second = new ServiceNowHighWaterMark("2022-03-01 10:00:00", "b2");
+    ServiceNowHighWaterMark later = new ServiceNowHighWaterMark("2022-03-01 10:00:01", "00");
+
+    Assert.assertEquals(second, ServiceNowHighWaterMark.max(first, second));
+    Assert.assertEquals(later, ServiceNowHighWaterMark.max(later, second));
+    Assert.assertEquals(first, ServiceNowHighWaterMark.max(null, first));
+  }
+
+  @Test
+  public void testLastSecondsAreLeftToTheNextRun() {
+    ServiceNowHighWaterMark mark = new ServiceNowHighWaterMark("2022-03-01 00:00:05", "a1");
+    ServiceNowHighWaterMark upperMark = mark.lookBack(10);
+
+    Assert.assertEquals(new ServiceNowHighWaterMark("2022-02-28 23:59:55", LAST_SYS_ID), upperMark);
+    // every record of the last second read is before the upper mark, whatever its sys_id
+    Assert.assertTrue(new ServiceNowHighWaterMark("2022-02-28 23:59:56", "00").compareTo(upperMark) > 0);
+    Assert.assertTrue(new ServiceNowHighWaterMark("2022-02-28 23:59:55", "b2").compareTo(upperMark) < 0);
+    Assert.assertSame(ServiceNowHighWaterMark.EARLIEST, ServiceNowHighWaterMark.EARLIEST.lookBack(10));
+  }
+
+  @Test
+  public void testFirstRunReadsUpToCurrentMark() throws Exception {
+    ServiceNowIncrementalState state = ServiceNowIncrementalState.load(
+      new File(temporaryFolder.getRoot(), "state.json").getPath(), new Configuration());
+    state.fetchCurrentMarks(mockMarks("incident", new ServiceNowHighWaterMark("2022-03-01 10:00:00", "a1")),
+                            Collections.singletonList("incident"), null);
+
+    Assert.assertEquals("sys_updated_on<=2022-03-01 09:59:50^sys_updated_on<2022-03-01 09:59:50^ORsys_id<="
+                          + LAST_SYS_ID, state.getFilter("incident"));
+    Assert.assertNull(state.getFilter("empty"));
+  }
+
+  @Test
+  public void testNextRunReadsFromSavedMark() throws Exception {
+    String path = new File(temporaryFolder.getRoot(), "state.json").getPath();
+    Configuration conf = new Configuration();
+    ServiceNowHighWaterMark firstMark = new ServiceNowHighWaterMark("2022-03-01 10:00:00", "a1");
+    ServiceNowHighWaterMark secondMark = new ServiceNowHighWaterMark("2022-03-01 11:00:00", "b2");
+
+    ServiceNowIncrementalState firstRun = ServiceNowIncrementalState.load(path, conf);
+    firstRun.fetchCurrentMarks(mockMarks("incident", firstMark), Collections.singletonList("incident"), null);
+    firstRun.save(conf);
+
+    ServiceNowIncrementalState secondRun = ServiceNowIncrementalState.load(path, conf);
+    secondRun.fetchCurrentMarks(mockMarks("incident", secondMark), Arrays.asList("incident"), null);
+    Assert.assertEquals(ServiceNowHighWaterMark.getRangeQuery(lookBack(firstMark), lookBack(secondMark)),
+                        secondRun.getFilter("incident"));
+    secondRun.save(conf);
+
+    // the saved mark is kept when a table is not read
+    ServiceNowIncrementalState thirdRun = ServiceNowIncrementalState.load(path, conf);
+    thirdRun.save(conf);
+    Assert.assertEquals(ServiceNowHighWaterMark.getRangeQuery(lookBack(secondMark), lookBack(secondMark)),
+                        ServiceNowIncrementalState.load(path, conf).getFilter("incident"));
+  }
+
+  @Test
+  public void testBackupIsLoadedWhenStateWasNotReplaced() throws Exception {
+    File stateFile = new File(temporaryFolder.getRoot(), "state.json");
+    Configuration conf = new Configuration();
+    ServiceNowHighWaterMark firstMark = new ServiceNowHighWaterMark("2022-03-01 10:00:00", "a1");
+    ServiceNowHighWaterMark secondMark = new ServiceNowHighWaterMark("2022-03-01 11:00:00", "b2");
+
+    ServiceNowIncrementalState firstRun = ServiceNowIncrementalState.load(stateFile.getPath(), conf);
+    firstRun.fetchCurrentMarks(mockMarks("incident", firstMark), Collections.singletonList("incident"), null);
+    firstRun.save(conf);
+    ServiceNowIncrementalState secondRun = ServiceNowIncrementalState.load(stateFile.getPath(), conf);
+    secondRun.fetchCurrentMarks(mockMarks("incident", secondMark), Collections.singletonList("incident"), null);
+    secondRun.save(conf);
+
+    // a run that failed after backing up the state, before renaming the new state in its place
+    Assert.assertTrue(stateFile.delete());
+    Assert.assertEquals(ServiceNowHighWaterMark.getRangeQuery(lookBack(firstMark), lookBack(firstMark)),
+                        ServiceNowIncrementalState.load(stateFile.getPath(), conf).getFilter("incident"));
+  }
+
+  @Test
+  public void testNothingIsReadWhenRecordsBeforeMarkAreGone() throws Exception {
+    String path = new File(temporaryFolder.getRoot(), "state.json").getPath();
+    Configuration conf = new Configuration();
+    ServiceNowHighWaterMark savedMark = new ServiceNowHighWaterMark("2022-03-01 11:00:00", "b2");
+    ServiceNowIncrementalState firstRun = ServiceNowIncrementalState.load(path, conf);
+    firstRun.fetchCurrentMarks(mockMarks("incident", savedMark), Collections.singletonList("incident"), null);
+    firstRun.save(conf);
+
+    ServiceNowIncrementalState secondRun = ServiceNowIncrementalState.load(path, conf);
+    secondRun.fetchCurrentMarks(mockMarks("incident", new ServiceNowHighWaterMark("2022-03-01 10:00:00", "a1")),
+                                Collections.singletonList("incident"), null);
+
+    Assert.assertEquals(ServiceNowHighWaterMark.getRangeQuery(lookBack(savedMark), lookBack(savedMark)),
+                        secondRun.getFilter("incident"));
+  }
+
+  @Test
+  public void testDeletedRecordsAreReadFromSecondRun() throws Exception {
+    String path = new File(temporaryFolder.getRoot(), "state.json").getPath();
+    Configuration conf = new Configuration();
+    ServiceNowHighWaterMark deleteMark = new ServiceNowHighWaterMark("2022-03-01 10:00:00", "d1");
+
+    // no audit yet: the first run only records that the next run reads all audits
+    ServiceNowIncrementalState firstRun = ServiceNowIncrementalState.load(path, conf);
+    firstRun.fetchCurrentDeletesMark(mockDeletesMark(null), Collections.singletonList("incident"));
+    Assert.assertNull(firstRun.getDeletesRange());
+    firstRun.save(conf);
+
+    ServiceNowIncrementalState secondRun = ServiceNowIncrementalState.load(path, conf);
+    secondRun.fetchCurrentDeletesMark(mockDeletesMark(deleteMark), Collections.singletonList("incident"));
+    Assert.assertEquals("sys_created_on<=2022-03-01 09:59:50^sys_created_on<2022-03-01 09:59:50^ORsys_id<="
+                          + LAST_SYS_ID, secondRun.getDeletesRange());
+    secondRun.save(conf);
+
+    ServiceNowIncrementalState thirdRun = ServiceNowIncrementalState.load(path, conf);
+    thirdRun.fetchCurrentDeletesMark(mockDeletesMark(deleteMark), Collections.singletonList("incident"));
+    Assert.assertNull(thirdRun.getDeletesRange());
+    Assert.assertNull(thirdRun.getFilter("incident"));
+  }
+
+  private static ServiceNowHighWaterMark lookBack(ServiceNowHighWaterMark mark) {
+    return mark.lookBack(ServiceNowConstants.INCREMENTAL_LOOKBACK_SECONDS);
+  }
+
+  private static ServiceNowTableAPIClientImpl mockDeletesMark(ServiceNowHighWaterMark mark) throws Exception {
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    Mockito.when(restApi.getAccessToken()).thenReturn("token");
+    Mockito.when(restApi.fetchHighWaterMark("sys_audit_delete", "sys_created_on", "tablenameINincident", "token"))
+      .thenReturn(mark);
+    return restApi;
+  }
+
+  private static ServiceNowTableAPIClientImpl mockMarks(String tableName, ServiceNowHighWaterMark mark)
+    throws Exception {
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    Mockito.when(restApi.getAccessToken()).thenReturn("token");
+    Mockito.when(restApi.fetchHighWaterMark(Mockito.eq(tableName), Mockito.any(), Mockito.eq("token")))
+      .thenReturn(mark);
+    return restApi;
+  }
+}
@@ -18,8 +18,12 @@ package io.cdap.plugin.servicenow.source;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 
@@ -48,10 +52,67 @@ public class ServiceNowInputSplitTest {
     Mockito.when(objectInputStream.readInt()).thenReturn(1);
     Mockito.when(objectInputStream.readUTF()).thenReturn("Utf");
     serviceNowInputSplit.readFields(objectInputStream);
-    Mockito.verify(objectInputStream).readInt();
+    Mockito.verify(objectInputStream, Mockito.times(2)).readInt();
     Mockito.verify(objectInputStream).readUTF();
     Assert.assertEquals("Utf", serviceNowInputSplit.getTableName());
     Assert.assertEquals(1, serviceNowInputSplit.getOffset());
+    Assert.assertEquals(1, serviceNowInputSplit.getLimit());
+  }
+
+  @Test
+  public void testWriteAndReadOffsetRange() throws IOException {
+    ServiceNowInputSplit split = new ServiceNowInputSplit("Table Name", 20000, 10000);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    split.write(new DataOutputStream(bytes));
+
+    ServiceNowInputSplit actualSplit = new ServiceNowInputSplit();
+    actualSplit.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals("Table Name", actualSplit.getTableName());
+    Assert.assertEquals(20000, actualSplit.getOffset());
+    Assert.assertEquals(10000, actualSplit.getLimit());
+  }
+
+  @Test
+  public void testWriteAndReadEstimate() throws IOException {
+    ServiceNowInputSplit split = new ServiceNowInputSplit("Table Name", 0, 10000);
+    split.setEstimate(10000, 5000000);
+    split.setRequestsPerSecond(2.5);
+    split.setSplitCount(4);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    split.write(new DataOutputStream(bytes));
+
+    ServiceNowInputSplit actualSplit = new ServiceNowInputSplit();
+    actualSplit.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals(10000, actualSplit.getEstimatedRecordCount());
+    Assert.assertEquals(5000000, actualSplit.getLength());
+    Assert.assertEquals(2.5, actualSplit.getRequestsPerSecond(), 0);
+    Assert.assertEquals(4, actualSplit.getSplitCount());
+  }
+
+  @Test
+  public void testWriteAndReadDeletedRecords() throws IOException {
+    ServiceNowInputSplit split = ServiceNowInputSplit.forDeletedRecords("Table Name");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    split.write(new DataOutputStream(bytes));
+
+    ServiceNowInputSplit actualSplit = new ServiceNowInputSplit();
+    actualSplit.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals("Table Name", actualSplit.getTableName());
+    Assert.assertTrue(actualSplit.isDeletedRecords());
+    Assert.assertFalse(new ServiceNowInputSplit("Table Name", 0, 10).isDeletedRecords());
+  }
+
+  @Test
+  public void testWriteAndReadKeyRange() throws IOException {
+    ServiceNowInputSplit split = new ServiceNowInputSplit("Table Name", null, "8000");
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    split.write(new DataOutputStream(bytes));
+
+    ServiceNowInputSplit actualSplit = new ServiceNowInputSplit();
+    actualSplit.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    Assert.assertEquals("Table Name", actualSplit.getTableName());
+    Assert.assertNull(actualSplit.getLowerKey());
+    Assert.assertEquals("8000", actualSplit.getUpperKey());
   }
 
   @Test
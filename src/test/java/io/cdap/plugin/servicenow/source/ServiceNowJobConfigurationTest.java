@@ -16,10 +16,16 @@
 
 package io.cdap.plugin.servicenow.source;
 
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
 import org.apache.hadoop.conf.Configuration;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class ServiceNowJobConfigurationTest {
 
   @Test
@@ -27,4 +33,26 @@ public class ServiceNowJobConfigurationTest {
     Configuration configuration = new Configuration();
     Assert.assertSame(configuration, (new ServiceNowJobConfiguration(configuration)).getConf());
   }
+
+  @Test
+  public void testTableInfos() {
+    ServiceNowJobConfiguration jobConfig = new ServiceNowJobConfiguration(new Configuration());
+    Schema userSchema = Schema.recordOf("sys_user", Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+    Schema groupSchema = Schema.recordOf("sys_user_group", Schema.Field.of("id", Schema.of(Schema.Type.LONG)));
+    jobConfig.setTableInfos(Arrays.asList(new ServiceNowTableInfo("sys_user_group", groupSchema, 5),
+                                          new ServiceNowTableInfo("sys_user", userSchema, 10)));
+
+    List<ServiceNowTableInfo> tableInfos = jobConfig.getTableInfos();
+    Assert.assertEquals(Arrays.asList("sys_user_group", "sys_user"),
+                        tableInfos.stream().map(ServiceNowTableInfo::getTableName).collect(Collectors.toList()));
+    ServiceNowTableInfo userInfo = jobConfig.getTableInfo("sys_user");
+    Assert.assertEquals(userSchema, userInfo.getSchema());
+    Assert.assertEquals(10, userInfo.getRecordCount());
+    Assert.assertNull(jobConfig.getTableInfo("incident"));
+  }
+
+  @Test
+  public void testTableInfosNotSet() {
+    Assert.assertTrue(new ServiceNowJobConfiguration(new Configuration()).getTableInfos().isEmpty());
+  }
 }
@@ -0,0 +1,49 @@
+package io.cdap.plugin.servicenow.source;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ServiceNowKeyRangeSplitterTest {
+
+  @Test
+  public void testComputeBoundariesUniform() {
+    long[] prefixCounts = new long[16];
+    Arrays.fill(prefixCounts, 100);
+
+    List<String> boundaries = ServiceNowKeyRangeSplitter.computeBoundaries(prefixCounts, 4);
+
+    Assert.assertEquals(Arrays.asList("40000000000000000000000000000000", "80000000000000000000000000000000",
+                                      "c0000000000000000000000000000000"), boundaries);
+  }
+
+  @Test
+  public void testComputeBoundariesSkewed() {
+    long[] prefixCounts = new long[16];
+    prefixCounts[2] = 1000;
+
+    List<String> boundaries = ServiceNowKeyRangeSplitter.computeBoundaries(prefixCounts, 2);
+
+    Assert.assertEquals(Collections.singletonList("28000000000000000000000000000000"), boundaries);
+  }
+
+  @Test
+  public void testComputeBoundariesEmptyTable() {
+    List<String> boundaries = ServiceNowKeyRangeSplitter.computeBoundaries(new long[16], 4);
+
+    Assert.assertTrue(boundaries.isEmpty());
+  }
+
+  @Test
+  public void testComputeBoundariesMoreSplitsThanRecords() {
+    long[] prefixCounts = new long[16];
+    prefixCounts[5] = 1;
+
+    List<String> boundaries = ServiceNowKeyRangeSplitter.computeBoundaries(prefixCounts, 4);
+
+    Assert.assertEquals(Collections.singletonList("50000000000000000000000000000000"), boundaries);
+  }
+}
@@ -17,69 +17,45 @@
 package io.cdap.plugin.servicenow.source;
 
 import io.cdap.cdap.api.data.schema.Schema;
-import io.cdap.plugin.servicenow.apiclient.ServiceNowTableDataResponse;
-import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
-import io.cdap.plugin.servicenow.util.ServiceNowColumn;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
 import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
-import io.cdap.plugin.servicenow.util.SourceValueType;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
-import org.junit.runner.RunWith;
 import org.mockito.Mockito;
-import org.powermock.api.mockito.PowerMockito;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
 
-import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
-@RunWith(PowerMockRunner.class)
-@PrepareForTest({ServiceNowMultiInputFormat.class})
 public class ServiceNowMultiInputFormatTest {
 
-  private static final String CLIENT_ID = "clientId";
-  private static final String CLIENT_SECRET = "clientSecret";
-  private static final String REST_API_ENDPOINT = "https://ven05127.service-now.com";
-  private static final String USER = "user";
-  private static final String PASSWORD = "password";
-  private ServiceNowConnectorConfig connectorConfig;
+  private ServiceNowTableAPIClientImpl restApi;
 
   @Before
-  public void initialize() {
-    connectorConfig = Mockito.spy(new ServiceNowConnectorConfig(CLIENT_ID, CLIENT_SECRET, REST_API_ENDPOINT, USER,
-                                                                PASSWORD));
+  public void initialize() throws Exception {
+    restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    Mockito.when(restApi.getAccessToken()).thenReturn("token");
   }
 
   @Test
-  public void testFetchTablesInfo() {
-    ServiceNowColumn column1 = new ServiceNowColumn("sys_created_by", "string");
-    ServiceNowColumn column2 = new ServiceNowColumn("sys_updated_by", "string");
-    List<ServiceNowColumn> columns = new ArrayList<>();
-    columns.add(column1);
-    columns.add(column2);
-    ServiceNowTableDataResponse response = new ServiceNowTableDataResponse();
-    response.setColumns(columns);
-    int recordCount = response.getTotalRecordCount();
-    String tableName = "sys_user";
-    Schema schema = Schema.of(Schema.LogicalType.TIMESTAMP_MILLIS);
-    Set<ServiceNowTableInfo> serviceNowTableInfos = new HashSet<>();
-    ServiceNowTableInfo serviceNowTableInfo = new ServiceNowTableInfo(tableName, schema, recordCount);
-    serviceNowTableInfos.add(serviceNowTableInfo);
-    PowerMockito.mockStatic(ServiceNowMultiInputFormat.class);
-    SourceValueType valueType = SourceValueType.SHOW_DISPLAY_VALUE;
-    PowerMockito.when(ServiceNowMultiInputFormat.fetchTablesInfo(connectorConfig, "table")).
-      thenReturn(serviceNowTableInfos);
-    Assert.assertEquals(1, ServiceNowMultiInputFormat
-      .fetchTablesInfo(connectorConfig, "table")
-      .size());
+  public void testFetchTablesInfo() throws Exception {
+    Schema schema = Schema.recordOf("sys_user",
+                                    Schema.Field.of("sys_created_by", Schema.of(Schema.Type.STRING)),
+                                    Schema.Field.of("sys_updated_by", Schema.of(Schema.Type.STRING)));
+    Mockito.when(restApi.fetchTableSchema("sys_user", "token")).thenReturn(schema);
+    Mockito.when(restApi.getTableRecordCount("sys_user", null, "token")).thenReturn(2);
+
+    List<ServiceNowTableInfo> tableInfos = ServiceNowTableMetadataFetcher.fetch(
+      restApi, ServiceNowMultiInputFormat.getList("sys_user"), null, ServiceNowConstants.MAX_METADATA_REQUESTS);
+    Assert.assertEquals(1, tableInfos.size());
+    Assert.assertEquals("sys_user", tableInfos.get(0).getTableName());
+    Assert.assertEquals(schema, tableInfos.get(0).getSchema());
+    Assert.assertEquals(2, tableInfos.get(0).getRecordCount());
   }
 
   @Test
   public void testFetchTablesInfoWithEmptyTableNames() {
-    SourceValueType valueType = SourceValueType.SHOW_DISPLAY_VALUE;
-    Assert.assertTrue(ServiceNowMultiInputFormat.fetchTablesInfo(connectorConfig, "").isEmpty());
+    Assert.assertTrue(ServiceNowTableMetadataFetcher.fetch(
+      restApi, ServiceNowMultiInputFormat.getList(""), null, ServiceNowConstants.MAX_METADATA_REQUESTS).isEmpty());
   }
 }
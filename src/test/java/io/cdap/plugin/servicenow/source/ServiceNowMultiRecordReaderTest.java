@@ -24,6 +24,9 @@ import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableDataResponse;
 import io.cdap.plugin.servicenow.connector.ServiceNowRecordConverter;
 import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.oltu.oauth2.common.exception.OAuthProblemException;
 import org.apache.oltu.oauth2.common.exception.OAuthSystemException;
 import org.junit.Assert;
@@ -119,6 +122,22 @@ public class ServiceNowMultiRecordReaderTest {
     Assert.assertTrue(ServiceNowRecordConverter.convertToBooleanValue("1"));
   }
 
+  @Test
+  public void testInitializeWithSchemaFromJobConfiguration() {
+    Configuration configuration = new Configuration();
+    Schema tableSchema = Schema.recordOf("sys_user", Schema.Field.of("name", Schema.of(Schema.Type.STRING)));
+    new ServiceNowJobConfiguration(configuration).setTableInfos(
+      Collections.singletonList(new ServiceNowTableInfo("sys_user", tableSchema, 10)));
+    TaskAttemptContext context = Mockito.mock(TaskAttemptContext.class);
+    Mockito.when(context.getConfiguration()).thenReturn(configuration);
+
+    serviceNowMultiRecordReader.initialize(new ServiceNowInputSplit("sys_user", 0), context);
+
+    Assert.assertEquals(Schema.recordOf("sys_user", Schema.Field.of("name", Schema.of(Schema.Type.STRING)),
+                                        Schema.Field.of("tablename", Schema.of(Schema.Type.STRING))),
+                        serviceNowMultiRecordReader.schema);
+  }
+
   @Test
   public void testFetchData() throws IOException {
     String tableName = serviceNowMultiSourceConfig.getTableNames();
@@ -147,9 +166,9 @@ public class ServiceNowMultiRecordReaderTest {
       Assert.assertTrue(e instanceof RuntimeException);
     }
     Mockito.doNothing().when(serviceNowMultiRecordReader).fetchData();
-    Collections.singletonList(new Object());
-    serviceNowMultiRecordReader.iterator = Collections.singletonList(Collections.singletonMap("key", new String())).
-      iterator();
+    Schema schema = Schema.recordOf("record", Schema.Field.of("key", Schema.of(Schema.Type.STRING)));
+    serviceNowMultiRecordReader.iterator = Collections.singletonList(
+      StructuredRecord.builder(schema).set("key", "value").build()).iterator();
     Assert.assertTrue(serviceNowMultiRecordReader.nextKeyValue());
   }
 
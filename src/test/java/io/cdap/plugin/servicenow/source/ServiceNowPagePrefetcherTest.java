@@ -0,0 +1,111 @@
+package io.cdap.plugin.servicenow.source;
+
+import io.cdap.cdap.api.data.format.StructuredRecord;
+import io.cdap.cdap.api.data.schema.Schema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ServiceNowPagePrefetcherTest {
+
+  private static final Schema SCHEMA = Schema.recordOf("record", Schema.Field.of("page", Schema.of(Schema.Type.INT)));
+
+  @Test
+  public void testPagesInOrderWithoutPrefetch() throws IOException {
+    assertPagesInOrder(0);
+  }
+
+  @Test
+  public void testPagesInOrderWithPrefetch() throws IOException {
+    assertPagesInOrder(2);
+  }
+
+  @Test
+  public void testPrefetchIsBounded() throws Exception {
+    AtomicInteger fetched = new AtomicInteger();
+    ServiceNowPagePrefetcher prefetcher = new ServiceNowPagePrefetcher(previousPage -> {
+      fetched.incrementAndGet();
+      return newPage(getPageNumber(previousPage) + 1);
+    }, 2);
+
+    try {
+      Assert.assertEquals(1, getPageNumber(prefetcher.nextPage()));
+      // Two pages wait in the queue and one more is held by the blocked fetcher
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (fetched.get() < 4 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      Thread.sleep(100);
+      Assert.assertEquals(4, fetched.get());
+    } finally {
+      prefetcher.close();
+    }
+  }
+
+  @Test
+  public void testFailureIsReportedAfterFetchedPages() throws IOException {
+    ServiceNowPagePrefetcher prefetcher = new ServiceNowPagePrefetcher(previousPage -> {
+      if (previousPage != null) {
+        throw new IOException("page 2 failed");
+      }
+      return newPage(1);
+    }, 1);
+
+    Assert.assertEquals(1, getPageNumber(prefetcher.nextPage()));
+    try {
+      prefetcher.nextPage();
+      Assert.fail("Expected the failure of the second page");
+    } catch (IOException e) {
+      Assert.assertEquals("page 2 failed", e.getCause().getMessage());
+    }
+    Assert.assertNull(prefetcher.nextPage());
+  }
+
+  @Test
+  public void testErrorIsReportedInsteadOfBlocking() throws IOException {
+    ServiceNowPagePrefetcher prefetcher = new ServiceNowPagePrefetcher(previousPage -> {
+      throw new AssertionError("page 1 failed");
+    }, 1);
+
+    try {
+      prefetcher.nextPage();
+      Assert.fail("Expected the error of the first page");
+    } catch (AssertionError e) {
+      Assert.assertEquals("page 1 failed", e.getMessage());
+    }
+    Assert.assertNull(prefetcher.nextPage());
+    prefetcher.close();
+  }
+
+  private static void assertPagesInOrder(int pagesAhead) throws IOException {
+    ServiceNowPagePrefetcher prefetcher = new ServiceNowPagePrefetcher(previousPage -> {
+      int number = getPageNumber(previousPage) + 1;
+      return number > 3 ? null : newPage(number);
+    }, pagesAhead);
+
+    List<Integer> numbers = new ArrayList<>();
+    List<StructuredRecord> page;
+    while ((page = prefetcher.nextPage()) != null) {
+      numbers.add(getPageNumber(page));
+    }
+    prefetcher.close();
+
+    Assert.assertEquals(Arrays.asList(1, 2, 3), numbers);
+    Assert.assertNull(prefetcher.nextPage());
+  }
+
+  private static List<StructuredRecord> newPage(int number) {
+    return Collections.singletonList(StructuredRecord.builder(SCHEMA).set("page", number).build());
+  }
+
+  private static int getPageNumber(List<StructuredRecord> page) {
+    return page == null ? 0 : page.get(0).<Integer>get("page");
+  }
+}
@@ -22,6 +22,7 @@ import io.cdap.cdap.api.data.schema.Schema;
 import io.cdap.cdap.api.macro.Macros;
 import io.cdap.cdap.api.plugin.PluginProperties;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableDataDecoder;
 import io.cdap.plugin.servicenow.apiclient.ServiceNowTableDataResponse;
 import io.cdap.plugin.servicenow.connector.ServiceNowConnectorConfig;
 import io.cdap.plugin.servicenow.connector.ServiceNowRecordConverter;
@@ -42,6 +43,8 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -181,14 +184,59 @@ public class ServiceNowRecordReaderTest {
     response.setTotalRecordCount(1);
     PowerMockito.whenNew(ServiceNowTableAPIClientImpl.class).withParameterTypes(ServiceNowConnectorConfig.class)
       .withArguments(Mockito.any(ServiceNowConnectorConfig.class)).thenReturn(restApi);
-    Mockito.when(restApi.fetchTableRecordsRetryableMode(tableName, serviceNowSourceConfig.getValueType(),
-                                                        serviceNowSourceConfig.getStartDate(), serviceNowSourceConfig.
-                                                          getEndDate(), split.getOffset(),
-                                                        serviceNowSourceConfig.getPageSize())).thenReturn(results);
-    Mockito.when(restApi.fetchTableSchema(tableName))
-      .thenReturn(Schema.recordOf(Schema.Field.of("calendar_integration", Schema.of(Schema.Type.STRING))));
-    serviceNowRecordReader.initialize(split);
+    Schema schema = Schema.recordOf(Schema.Field.of("calendar_integration", Schema.of(Schema.Type.STRING)));
+    List<StructuredRecord> records = Collections.singletonList(
+      StructuredRecord.builder(schema).set("calendar_integration", "1").build());
+    Mockito.when(restApi.fetchTableRecordsRetryableMode(Mockito.eq(tableName),
+                                                        Mockito.eq(serviceNowSourceConfig.getValueType()),
+                                                        Mockito.eq(serviceNowSourceConfig.getStartDate()),
+                                                        Mockito.eq(serviceNowSourceConfig.getEndDate()),
+                                                        Mockito.eq(serviceNowSourceConfig.getFilter()),
+                                                        Mockito.eq(split.getOffset()),
+                                                        Mockito.eq(serviceNowSourceConfig.getPageSize()),
+                                                        Mockito.any(ServiceNowTableDataDecoder.class)))
+      .thenReturn(records);
+    serviceNowRecordReader.initialize(split, schema);
     Assert.assertTrue(serviceNowRecordReader.nextKeyValue());
+    Assert.assertEquals("1", serviceNowRecordReader.getCurrentValue().get("calendar_integration"));
+  }
+
+  @Test
+  public void testSplitIsReadPageByPage() throws Exception {
+    String tableName = serviceNowSourceConfig.getTableName();
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    PowerMockito.whenNew(ServiceNowTableAPIClientImpl.class).withParameterTypes(ServiceNowConnectorConfig.class)
+      .withArguments(Mockito.any(ServiceNowConnectorConfig.class)).thenReturn(restApi);
+    Schema schema = Schema.recordOf(Schema.Field.of("calendar_integration", Schema.of(Schema.Type.STRING)));
+    StructuredRecord record = StructuredRecord.builder(schema).set("calendar_integration", "1").build();
+    List<String> pages = new ArrayList<>();
+    Mockito.when(restApi.fetchTableRecordsRetryableMode(Mockito.eq(tableName), Mockito.any(), Mockito.any(),
+                                                        Mockito.any(), Mockito.any(), Mockito.anyInt(),
+                                                        Mockito.anyInt(), Mockito.any()))
+      .thenAnswer(invocation -> {
+        int offset = invocation.getArgument(5);
+        int limit = invocation.getArgument(6);
+        pages.add(offset + ":" + limit);
+        return Collections.nCopies(limit, record);
+      });
+
+    ServiceNowInputSplit split = new ServiceNowInputSplit(tableName, 30, 25);
+    split.setEstimate(25, 2500);
+    ServiceNowRecordReader serviceNowRecordReader = new ServiceNowRecordReader(serviceNowSourceConfig);
+    serviceNowRecordReader.initialize(split, schema);
+    Assert.assertEquals(0.0f, serviceNowRecordReader.getProgress(), 0.0f);
+    int records = 0;
+    while (serviceNowRecordReader.nextKeyValue()) {
+      records++;
+      if (records == 10) {
+        Assert.assertEquals(0.4f, serviceNowRecordReader.getProgress(), 0.001f);
+      }
+    }
+    Assert.assertEquals(1.0f, serviceNowRecordReader.getProgress(), 0.0f);
+    serviceNowRecordReader.close();
+
+    Assert.assertEquals(25, records);
+    Assert.assertEquals(Arrays.asList("30:10", "40:10", "50:5"), pages);
   }
 
   @Test
@@ -235,14 +283,24 @@ public class ServiceNowRecordReaderTest {
     response.setTotalRecordCount(1);
     PowerMockito.whenNew(ServiceNowTableAPIClientImpl.class).withParameterTypes(ServiceNowConnectorConfig.class)
       .withArguments(Mockito.any(ServiceNowConnectorConfig.class)).thenReturn(restApi);
-    Mockito.when(restApi.fetchTableRecordsRetryableMode(tableName, serviceNowSourceConfig.getValueType(),
-                                                        serviceNowSourceConfig.getStartDate(),
-                                                        serviceNowSourceConfig.getEndDate(), split.getOffset(),
-                                                        serviceNowSourceConfig.getPageSize())).thenReturn(results);
-    Mockito.when(restApi.fetchTableSchema(tableName))
-      .thenReturn(Schema.recordOf(Schema.Field.of("calendar_integration", Schema.of(Schema.Type.STRING))));
-    serviceNowRecordReader.initialize(split);
+    Schema schema = Schema.recordOf(Schema.Field.of("calendar_integration", Schema.of(Schema.Type.STRING)));
+    List<StructuredRecord> records = Collections.singletonList(
+      StructuredRecord.builder(Schema.recordOf(tableName, Schema.Field.of("calendar_integration",
+                                                                          Schema.of(Schema.Type.STRING)),
+                                               Schema.Field.of("tablename", Schema.of(Schema.Type.STRING))))
+        .set("calendar_integration", "1").set("tablename", tableName).build());
+    Mockito.when(restApi.fetchTableRecordsRetryableMode(Mockito.eq(tableName),
+                                                        Mockito.eq(serviceNowSourceConfig.getValueType()),
+                                                        Mockito.eq(serviceNowSourceConfig.getStartDate()),
+                                                        Mockito.eq(serviceNowSourceConfig.getEndDate()),
+                                                        Mockito.eq(serviceNowSourceConfig.getFilter()),
+                                                        Mockito.eq(split.getOffset()),
+                                                        Mockito.eq(serviceNowSourceConfig.getPageSize()),
+                                                        Mockito.any(ServiceNowTableDataDecoder.class)))
+      .thenReturn(records);
+    serviceNowRecordReader.initialize(split, schema);
     Assert.assertTrue(serviceNowRecordReader.nextKeyValue());
+    Assert.assertEquals(tableName, serviceNowRecordReader.getCurrentValue().get("tablename"));
   }
 
   @Test
@@ -0,0 +1,180 @@
+package io.cdap.plugin.servicenow.source;
+
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.util.ServiceNowConstants;
+import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
+import io.cdap.plugin.servicenow.util.SourcePaginationMode;
+import io.cdap.plugin.servicenow.util.SourceValueType;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class ServiceNowSplitPlannerTest {
+
+  @Test
+  public void testOnePagePerSplitByDefault() {
+    Assert.assertEquals(5, ServiceNowSplitPlanner.getSplitCount(45000, 10000, null, null));
+    Assert.assertEquals(1, ServiceNowSplitPlanner.getSplitCount(0, 10000, null, null));
+  }
+
+  @Test
+  public void testSplitCountFromRowsPerSplit() {
+    Assert.assertEquals(50, ServiceNowSplitPlanner.getSplitCount(50000000, 10000, 1000000, null));
+    // a split holds at least one page
+    Assert.assertEquals(5, ServiceNowSplitPlanner.getSplitCount(45000, 10000, 100, null));
+  }
+
+  @Test
+  public void testSplitCountFromSplitsPerTable() {
+    Assert.assertEquals(8, ServiceNowSplitPlanner.getSplitCount(50000000, 10000, null, 8));
+    // a table has at most one split per page
+    Assert.assertEquals(2, ServiceNowSplitPlanner.getSplitCount(15000, 10000, null, 8));
+  }
+
+  @Test
+  public void testOffsetSplitsHoldWholePages() {
+    List<InputSplit> splits = ServiceNowSplitPlanner.createOffsetSplits("table", 45000, 5000, 4);
+
+    Assert.assertEquals(Arrays.asList("0:15000", "15000:15000", "30000:15000"), describe(splits));
+  }
+
+  @Test
+  public void testSingleOffsetSplit() {
+    Assert.assertEquals(Arrays.asList("0:5000"),
+                        describe(ServiceNowSplitPlanner.createOffsetSplits("table", 20, 5000, 1)));
+    Assert.assertEquals(Arrays.asList("0:20000"),
+                        describe(ServiceNowSplitPlanner.createOffsetSplits("table", 20000, 5000, 1)));
+  }
+
+  @Test
+  public void testOffsetSplitEstimates() {
+    List<InputSplit> splits = ServiceNowSplitPlanner.createOffsetSplits("table", 45000, 5000, 4);
+    ServiceNowSplitPlanner.setEstimates(splits, 45000, 200L, SourcePaginationMode.OFFSET);
+
+    Assert.assertEquals(Arrays.asList(15000L, 15000L, 15000L), estimatedRecordCounts(splits));
+    Assert.assertEquals(3000000L, ((ServiceNowInputSplit) splits.get(0)).getLength());
+
+    // the single split of a small table reads a whole page, but holds only the records of the table
+    List<InputSplit> singleSplit = ServiceNowSplitPlanner.createOffsetSplits("table", 20, 5000, 1);
+    ServiceNowSplitPlanner.setEstimates(singleSplit, 20, null, SourcePaginationMode.OFFSET);
+    Assert.assertEquals(Collections.singletonList(20L), estimatedRecordCounts(singleSplit));
+    Assert.assertEquals(20 * ServiceNowConstants.DEFAULT_RECORD_SIZE,
+                        ((ServiceNowInputSplit) singleSplit.get(0)).getLength());
+  }
+
+  @Test
+  public void testKeyRangeSplitEstimates() {
+    List<InputSplit> splits = Arrays.asList(new ServiceNowInputSplit("table", null, "4"),
+                                            new ServiceNowInputSplit("table", "4", "8"),
+                                            new ServiceNowInputSplit("table", "8", null));
+    ServiceNowSplitPlanner.setEstimates(splits, 3000, 100L, SourcePaginationMode.KEYSET);
+
+    Assert.assertEquals(Arrays.asList(1000L, 1000L, 1000L), estimatedRecordCounts(splits));
+    Assert.assertEquals(100000L, ((ServiceNowInputSplit) splits.get(2)).getLength());
+  }
+
+  @Test
+  public void testLargestSplitsFirst() throws IOException {
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    Mockito.when(restApi.sampleRecordSize(Mockito.eq("narrow"), Mockito.any(), Mockito.any(), Mockito.any(),
+                                          Mockito.any(), Mockito.anyCollection(), Mockito.anyInt())).thenReturn(10L);
+    Mockito.when(restApi.sampleRecordSize(Mockito.eq("wide"), Mockito.any(), Mockito.any(), Mockito.any(),
+                                          Mockito.any(), Mockito.anyCollection(), Mockito.anyInt())).thenReturn(1000L);
+    ServiceNowBaseSourceConfig pluginConf = newPluginConf(100);
+
+    List<InputSplit> splits = ServiceNowSplitPlanner.createSplits(
+      restApi, Arrays.asList(newTableInfo("narrow", 250), newTableInfo("wide", 150)), pluginConf);
+
+    Assert.assertEquals(Arrays.asList("wide:0:100", "wide:100:100", "narrow:0:100", "narrow:100:100",
+                                      "narrow:200:100"),
+                        splits.stream()
+                          .map(split -> (ServiceNowInputSplit) split)
+                          .map(split -> split.getTableName() + ":" + split.getOffset() + ":" + split.getLimit())
+                          .collect(Collectors.toList()));
+    Assert.assertEquals(Arrays.asList(100000L, 50000L, 1000L, 1000L, 500L),
+                        splits.stream()
+                          .map(split -> ((ServiceNowInputSplit) split).getLength())
+                          .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testRecordSizeDefaultsWhenSamplingFails() throws IOException {
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    Mockito.when(restApi.sampleRecordSize(Mockito.eq("failing"), Mockito.any(), Mockito.any(), Mockito.any(),
+                                          Mockito.any(), Mockito.anyCollection(), Mockito.anyInt()))
+      .thenThrow(new IOException("timeout"));
+    Mockito.when(restApi.sampleRecordSize(Mockito.eq("sampled"), Mockito.any(), Mockito.any(), Mockito.any(),
+                                          Mockito.any(), Mockito.anyCollection(), Mockito.eq(50))).thenReturn(300L);
+
+    Map<String, Long> recordSizes = ServiceNowSplitPlanner.estimateRecordSizes(
+      restApi, Arrays.asList(newTableInfo("failing", 10), newTableInfo("sampled", 10), newTableInfo("empty", 0)),
+      newPluginConf(50), 2);
+
+    Assert.assertEquals(ServiceNowConstants.DEFAULT_RECORD_SIZE, (long) recordSizes.get("failing"));
+    Assert.assertEquals(300L, (long) recordSizes.get("sampled"));
+    Assert.assertFalse(recordSizes.containsKey("empty"));
+  }
+
+  private static ServiceNowBaseSourceConfig newPluginConf(int pageSize) {
+    ServiceNowBaseSourceConfig pluginConf = Mockito.mock(ServiceNowBaseSourceConfig.class);
+    Mockito.when(pluginConf.getPageSize()).thenReturn(pageSize);
+    Mockito.when(pluginConf.getPaginationMode()).thenReturn(SourcePaginationMode.OFFSET);
+    Mockito.when(pluginConf.getRowsPerSplit()).thenReturn(null);
+    Mockito.when(pluginConf.getSplitsPerTable()).thenReturn(null);
+    Mockito.when(pluginConf.getValueType()).thenReturn(SourceValueType.SHOW_DISPLAY_VALUE);
+    return pluginConf;
+  }
+
+  private static ServiceNowTableInfo newTableInfo(String tableName, int recordCount) {
+    Schema schema = Schema.recordOf(tableName, Schema.Field.of("sys_id", Schema.of(Schema.Type.STRING)));
+    return new ServiceNowTableInfo(tableName, schema, recordCount);
+  }
+
+  private static List<Long> estimatedRecordCounts(List<InputSplit> splits) {
+    return splits.stream()
+      .map(split -> ((ServiceNowInputSplit) split).getEstimatedRecordCount())
+      .collect(Collectors.toList());
+  }
+
+  private static List<String> describe(List<InputSplit> splits) {
+    return splits.stream()
+      .map(split -> (ServiceNowInputSplit) split)
+      .map(split -> split.getOffset() + ":" + split.getLimit())
+      .collect(Collectors.toList());
+  }
+
+  @Test
+  public void testRequestsPerSecondAreDividedAmongConcurrentTasks() {
+    ServiceNowSourceConfig conf = Mockito.mock(ServiceNowSourceConfig.class);
+    Mockito.when(conf.getRequestsPerSecondPerTask()).thenReturn(2.5);
+    List<InputSplit> splits = Arrays.asList(new ServiceNowInputSplit("incident", 0, 10),
+                                            new ServiceNowInputSplit("incident", 10, 10),
+                                            ServiceNowInputSplit.forDeletedRecords("incident"));
+
+    ServiceNowSplitPlanner.setRequestsPerSecond(splits, conf);
+    for (InputSplit split : splits) {
+      Assert.assertEquals(2.5, ((ServiceNowInputSplit) split).getRequestsPerSecond(), 0);
+    }
+  }
+
+  @Test
+  public void testRetryBudgetIsDividedAmongSplits() {
+    List<InputSplit> splits = Arrays.asList(new ServiceNowInputSplit("incident", 0, 10),
+                                            new ServiceNowInputSplit("incident", 10, 10),
+                                            ServiceNowInputSplit.forDeletedRecords("incident"));
+
+    ServiceNowSplitPlanner.setSplitCount(splits);
+    for (InputSplit split : splits) {
+      Assert.assertEquals(3, ((ServiceNowInputSplit) split).getSplitCount());
+    }
+  }
+}
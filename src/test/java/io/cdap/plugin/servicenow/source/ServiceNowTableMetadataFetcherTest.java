@@ -0,0 +1,132 @@
+package io.cdap.plugin.servicenow.source;
+
+import io.cdap.cdap.api.data.schema.Schema;
+import io.cdap.plugin.servicenow.apiclient.ServiceNowTableAPIClientImpl;
+import io.cdap.plugin.servicenow.util.ServiceNowHighWaterMark;
+import io.cdap.plugin.servicenow.util.ServiceNowTableInfo;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class ServiceNowTableMetadataFetcherTest {
+
+  @Test
+  public void testFetchWithSharedToken() throws Exception {
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    Mockito.when(restApi.getAccessToken()).thenReturn("token");
+    Mockito.when(restApi.fetchTableSchema(Mockito.anyString(), Mockito.eq("token")))
+      .thenAnswer(invocation -> newSchema(invocation.getArgument(0)));
+    Mockito.when(restApi.getTableRecordCount(Mockito.anyString(), Mockito.eq("query"), Mockito.eq("token")))
+      .thenAnswer(invocation -> invocation.<String>getArgument(0).length());
+
+    List<ServiceNowTableInfo> tableInfos = ServiceNowTableMetadataFetcher.fetch(
+      restApi, Arrays.asList("a", "bb", "ccc"), "query", 4);
+
+    Assert.assertEquals(Arrays.asList("a", "bb", "ccc"),
+                        tableInfos.stream().map(ServiceNowTableInfo::getTableName).collect(Collectors.toList()));
+    Assert.assertEquals(Arrays.asList(1, 2, 3),
+                        tableInfos.stream().map(ServiceNowTableInfo::getRecordCount).collect(Collectors.toList()));
+    Assert.assertEquals("bb", tableInfos.get(1).getSchema().getRecordName());
+    Mockito.verify(restApi, Mockito.times(1)).getAccessToken();
+  }
+
+  @Test
+  public void testRequestsAreSentTogether() throws Exception {
+    CountDownLatch requests = new CountDownLatch(4);
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    Mockito.when(restApi.fetchTableSchema(Mockito.anyString(), Mockito.nullable(String.class)))
+      .thenAnswer(invocation -> {
+        requests.countDown();
+        requests.await(5, TimeUnit.SECONDS);
+        return newSchema(invocation.getArgument(0));
+      });
+    Mockito.when(restApi.getTableRecordCount(Mockito.anyString(), Mockito.any(), Mockito.any()))
+      .thenAnswer(invocation -> {
+        requests.countDown();
+        requests.await(5, TimeUnit.SECONDS);
+        return 1;
+      });
+
+    ServiceNowTableMetadataFetcher.fetch(restApi, Arrays.asList("a", "b"), null, 4);
+
+    Assert.assertEquals(0, requests.getCount());
+  }
+
+  @Test
+  public void testFailuresDoNotStopOtherTables() throws Exception {
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    Mockito.when(restApi.fetchTableSchema(Mockito.anyString(), Mockito.nullable(String.class)))
+      .thenAnswer(invocation -> newSchema(invocation.getArgument(0)));
+    Mockito.when(restApi.getTableRecordCount(Mockito.anyString(), Mockito.any(), Mockito.any()))
+      .thenAnswer(invocation -> {
+        String tableName = invocation.getArgument(0);
+        if (!tableName.equals("b")) {
+          throw new IOException(tableName + " is not readable");
+        }
+        return 1;
+      });
+
+    try {
+      ServiceNowTableMetadataFetcher.fetch(restApi, Arrays.asList("a", "b", "c"), null, 2);
+      Assert.fail("Expected the failure of tables a and c");
+    } catch (RuntimeException e) {
+      Assert.assertTrue(e.getMessage().contains("a: a is not readable; c: c is not readable"));
+      Assert.assertEquals("a is not readable", e.getCause().getMessage());
+      Assert.assertEquals(1, e.getSuppressed().length);
+    }
+    Mockito.verify(restApi).getTableRecordCount(Mockito.eq("c"), Mockito.any(), Mockito.any());
+  }
+
+  @Test
+  public void testFetchWithoutTables() {
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+
+    Assert.assertTrue(ServiceNowTableMetadataFetcher.fetch(restApi, Collections.emptyList(), null, 4).isEmpty());
+    Mockito.verifyZeroInteractions(restApi);
+  }
+
+  @Test
+  public void testFetchWithTableFilters() throws Exception {
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    Mockito.when(restApi.getAccessToken()).thenReturn("token");
+    Mockito.when(restApi.fetchTableSchema(Mockito.anyString(), Mockito.eq("token")))
+      .thenAnswer(invocation -> newSchema(invocation.getArgument(0)));
+    Mockito.when(restApi.getTableRecordCount("a", "active=true^sys_id>1", "token")).thenReturn(5);
+    Mockito.when(restApi.getTableRecordCount("b", "active=true", "token")).thenReturn(7);
+
+    List<ServiceNowTableInfo> tableInfos = ServiceNowTableMetadataFetcher.fetch(
+      restApi, Arrays.asList("a", "b"), "active=true", Collections.singletonMap("a", "sys_id>1"), 2);
+
+    Assert.assertEquals(5, tableInfos.get(0).getRecordCount());
+    Assert.assertEquals("sys_id>1", tableInfos.get(0).getFilter());
+    Assert.assertEquals(7, tableInfos.get(1).getRecordCount());
+    Assert.assertNull(tableInfos.get(1).getFilter());
+  }
+
+  @Test
+  public void testFetchHighWaterMarks() throws Exception {
+    ServiceNowTableAPIClientImpl restApi = Mockito.mock(ServiceNowTableAPIClientImpl.class);
+    Mockito.when(restApi.getAccessToken()).thenReturn("token");
+    ServiceNowHighWaterMark mark = new ServiceNowHighWaterMark("2022-03-01 10:00:00", "a1");
+    Mockito.when(restApi.fetchHighWaterMark("a", "query", "token")).thenReturn(mark);
+    Mockito.when(restApi.fetchHighWaterMark("empty", "query", "token")).thenReturn(null);
+
+    Map<String, ServiceNowHighWaterMark> marks = ServiceNowTableMetadataFetcher.fetchHighWaterMarks(
+      restApi, Arrays.asList("a", "empty"), "query", 2);
+
+    Assert.assertEquals(Collections.singletonMap("a", mark), marks);
+  }
+
+  private static Schema newSchema(String tableName) {
+    return Schema.recordOf(tableName, Schema.Field.of("sys_id", Schema.of(Schema.Type.STRING)));
+  }
+}